@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.core.internal.runtime.RuntimeLog;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * A job listener that forwards the events selected by an event mask to another
+ * listener, on tasks submitted to an executor rather than on the thread that
+ * changed the state of the job.
+ * <p>
+ * Events that were not delivered yet are queued per job. A newer event for a job
+ * replaces the queued events for that job, except for done events, which are
+ * always delivered. At most one delivery task is submitted to the executor at a
+ * time, and it delivers all events queued until the queue is empty.
+ * <p>
+ * The executor must run every task it accepts. A task that is discarded without
+ * an exception is never known to have ended, so no further task is submitted.
+ *
+ * @see IJobManager#addJobChangeListener(IJobChangeListener, Executor, int)
+ */
+class AsyncJobChangeListener implements IJobChangeListener {
+	/**
+	 * An event that was not delivered yet.
+	 */
+	private static final class PendingEvent {
+		final int kind;
+		final IJobChangeEvent event;
+
+		PendingEvent(int kind, IJobChangeEvent event) {
+			this.kind = kind;
+			this.event = event;
+		}
+	}
+
+	private final JobListeners jobListeners;
+	private final IJobChangeListener delegate;
+	private final Executor executor;
+	private final int eventMask;
+
+	/**
+	 * Events that were not delivered yet, by job, in the order in which the jobs
+	 * first got an event.
+	 * @GuardedBy("this")
+	 */
+	private LinkedHashMap<Job, List<PendingEvent>> pending = new LinkedHashMap<>();
+
+	/**
+	 * Whether a delivery task was submitted to the executor and has not finished yet.
+	 * @GuardedBy("this")
+	 */
+	private boolean delivering = false;
+
+	private final Runnable deliverTask = this::deliver;
+
+	AsyncJobChangeListener(JobListeners jobListeners, IJobChangeListener delegate, Executor executor, int eventMask) {
+		this.jobListeners = jobListeners;
+		this.delegate = delegate;
+		this.executor = executor;
+		this.eventMask = eventMask;
+	}
+
+	IJobChangeListener getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void aboutToRun(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_ABOUT_TO_RUN, event);
+	}
+
+	@Override
+	public void awake(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_AWAKE, event);
+	}
+
+	@Override
+	public void done(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_DONE, event);
+	}
+
+	@Override
+	public void running(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_RUNNING, event);
+	}
+
+	@Override
+	public void scheduled(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_SCHEDULED, event);
+	}
+
+	@Override
+	public void sleeping(IJobChangeEvent event) {
+		enqueue(IJobManager.EVENT_SLEEPING, event);
+	}
+
+	private void enqueue(int kind, IJobChangeEvent event) {
+		if ((eventMask & kind) == 0)
+			return;
+		synchronized (this) {
+			List<PendingEvent> events = pending.get(event.getJob());
+			if (events == null) {
+				events = new ArrayList<>(2);
+				pending.put(event.getJob(), events);
+			} else {
+				//coalesce with the events of this job that were not delivered yet
+				for (Iterator<PendingEvent> it = events.iterator(); it.hasNext();) {
+					if (it.next().kind != IJobManager.EVENT_DONE)
+						it.remove();
+				}
+			}
+			events.add(new PendingEvent(kind, event));
+			if (delivering)
+				return;
+			delivering = true;
+		}
+		try {
+			executor.execute(deliverTask);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				pending.clear();
+				delivering = false;
+			}
+			String msg = "Job change events could not be delivered to listener: " + delegate; //$NON-NLS-1$
+			RuntimeLog.log(new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, msg, e));
+		}
+	}
+
+	/**
+	 * Delivers all pending events to the delegate listener. If delivery ends
+	 * with an exception, a later event submits a new delivery task.
+	 */
+	private void deliver() {
+		boolean finished = false;
+		try {
+			while (true) {
+				LinkedHashMap<Job, List<PendingEvent>> toDeliver;
+				synchronized (this) {
+					if (pending.isEmpty()) {
+						delivering = false;
+						finished = true;
+						return;
+					}
+					toDeliver = pending;
+					pending = new LinkedHashMap<>();
+				}
+				for (List<PendingEvent> events : toDeliver.values()) {
+					for (int i = 0, size = events.size(); i < size; i++) {
+						PendingEvent pendingEvent = events.get(i);
+						try {
+							notifyDelegate(pendingEvent.kind, pendingEvent.event);
+						} catch (Throwable e) {
+							jobListeners.handleException(delegate, e);
+						}
+					}
+				}
+			}
+		} finally {
+			if (!finished) {
+				synchronized (this) {
+					delivering = false;
+				}
+			}
+		}
+	}
+
+	private void notifyDelegate(int kind, IJobChangeEvent event) {
+		switch (kind) {
+			case IJobManager.EVENT_ABOUT_TO_RUN :
+				delegate.aboutToRun(event);
+				break;
+			case IJobManager.EVENT_AWAKE :
+				delegate.awake(event);
+				break;
+			case IJobManager.EVENT_DONE :
+				delegate.done(event);
+				break;
+			case IJobManager.EVENT_RUNNING :
+				delegate.running(event);
+				break;
+			case IJobManager.EVENT_SCHEDULED :
+				delegate.scheduled(event);
+				break;
+			case IJobManager.EVENT_SLEEPING :
+				delegate.sleeping(event);
+				break;
+		}
+	}
+}
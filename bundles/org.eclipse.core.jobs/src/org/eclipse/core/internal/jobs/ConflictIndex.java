@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * An index of jobs by scheduling rule, used to find a job whose rule conflicts
+ * with a given job without asking every indexed rule.
+ * <p>
+ * Jobs whose rule is an {@link IHierarchicalRule}, a {@link SharedRule} of one,
+ * or a {@link MultiRule} whose children are all such rules, are stored in a trie
+ * keyed by the segments of the rule paths. A lookup for such a rule only visits
+ * the ancestors and descendants of its paths. All other jobs with a rule are kept
+ * in a separate set that is always scanned. A lookup for a rule that cannot be
+ * indexed falls back to scanning all indexed jobs.
+ * <p>
+ * Conflicts found in the index are always confirmed with
+ * {@link InternalJob#isConflicting(InternalJob)}, so the index never reports
+ * more conflicts than a linear scan would.
+ * <p>
+ * Implementation note: this class is not thread safe, it is guarded by the lock
+ * of the job manager owning it.
+ */
+class ConflictIndex {
+	/**
+	 * A node of the trie. Each node corresponds to a path prefix.
+	 */
+	private static final class Node {
+		final Node parent;
+		final Object segment;
+		/**
+		 * Children of this node by segment, or null if there are none.
+		 */
+		HashMap<Object, Node> children;
+		/**
+		 * Jobs with a rule whose path ends at this node, or null if there are none.
+		 */
+		ArrayList<InternalJob> jobs;
+		/**
+		 * The number of jobs stored in the subtree rooted at this node.
+		 */
+		int size;
+
+		Node(Node parent, Object segment) {
+			this.parent = parent;
+			this.segment = segment;
+		}
+	}
+
+	private static final Node[] NO_NODES = new Node[0];
+
+	/**
+	 * The nodes each indexed job is stored at. Jobs with a rule that
+	 * cannot be indexed map to an empty array.
+	 */
+	private final HashMap<InternalJob, Node[]> entries = new HashMap<>();
+
+	/**
+	 * Indexed jobs with a rule that cannot be indexed.
+	 */
+	private final HashSet<InternalJob> opaque = new HashSet<>();
+
+	private final Node root = new Node(null, null);
+
+	/**
+	 * Returns the paths of the given rule, or null if the rule cannot be indexed.
+	 */
+	private static IPath[] getPaths(ISchedulingRule rule) {
+		IPath path = RulePaths.getPath(rule);
+		if (path != null)
+			return new IPath[] {path};
+		if (!(rule instanceof MultiRule))
+			return null;
+		ISchedulingRule[] children = ((MultiRule) rule).getChildren();
+		IPath[] paths = new IPath[children.length];
+		for (int i = 0; i < children.length; i++) {
+			paths[i] = RulePaths.getPath(children[i]);
+			if (paths[i] == null)
+				return null;
+		}
+		return paths;
+	}
+
+	/**
+	 * Adds a job with a non-null rule to the index.
+	 */
+	void add(InternalJob job) {
+		IPath[] paths = getPaths(job.getRule());
+		if (paths == null) {
+			opaque.add(job);
+			entries.put(job, NO_NODES);
+			return;
+		}
+		Node[] nodes = new Node[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			Node node = root;
+			String[] key = RulePaths.getKey(paths[i]);
+			for (int j = 0; j < key.length; j++) {
+				if (node.children == null)
+					node.children = new HashMap<>(4);
+				Node child = node.children.get(key[j]);
+				if (child == null) {
+					child = new Node(node, key[j]);
+					node.children.put(key[j], child);
+				}
+				node = child;
+			}
+			if (node.jobs == null)
+				node.jobs = new ArrayList<>(2);
+			node.jobs.add(job);
+			for (Node n = node; n != null; n = n.parent)
+				n.size++;
+			nodes[i] = node;
+		}
+		entries.put(job, nodes);
+	}
+
+	/**
+	 * Removes all jobs from the index.
+	 */
+	void clear() {
+		entries.clear();
+		opaque.clear();
+		root.children = null;
+		root.jobs = null;
+		root.size = 0;
+	}
+
+	/**
+	 * Returns an indexed job whose rule conflicts with the rule of the given job,
+	 * or null if there is no such job.
+	 */
+	InternalJob findConflicting(InternalJob job) {
+		if (entries.isEmpty())
+			return null;
+		IPath[] paths = getPaths(job.getRule());
+		if (paths == null) {
+			//the rule could conflict with anything
+			for (InternalJob indexed : entries.keySet())
+				if (job.isConflicting(indexed))
+					return indexed;
+			return null;
+		}
+		for (InternalJob indexed : opaque)
+			if (job.isConflicting(indexed))
+				return indexed;
+		for (int i = 0; i < paths.length; i++) {
+			Node node = root;
+			String[] key = RulePaths.getKey(paths[i]);
+			//check the ancestors
+			for (int j = 0; node != null; j++) {
+				InternalJob conflict = findConflicting(job, node.jobs);
+				if (conflict != null)
+					return conflict;
+				if (j == key.length) {
+					//check the descendants
+					conflict = findConflictingDescendant(job, node);
+					if (conflict != null)
+						return conflict;
+					break;
+				}
+				node = node.children == null ? null : node.children.get(key[j]);
+			}
+		}
+		return null;
+	}
+
+	private InternalJob findConflicting(InternalJob job, ArrayList<InternalJob> candidates) {
+		if (candidates == null)
+			return null;
+		for (int i = 0, size = candidates.size(); i < size; i++) {
+			InternalJob candidate = candidates.get(i);
+			if (job.isConflicting(candidate))
+				return candidate;
+		}
+		return null;
+	}
+
+	private InternalJob findConflictingDescendant(InternalJob job, Node node) {
+		if (node.children == null)
+			return null;
+		for (Node child : node.children.values()) {
+			InternalJob conflict = findConflicting(job, child.jobs);
+			if (conflict == null)
+				conflict = findConflictingDescendant(job, child);
+			if (conflict != null)
+				return conflict;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether there are no jobs in this index.
+	 */
+	boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Removes a job from the index. Does nothing if the job is not indexed.
+	 */
+	void remove(InternalJob job) {
+		Node[] nodes = entries.remove(job);
+		if (nodes == null)
+			return;
+		if (nodes == NO_NODES) {
+			opaque.remove(job);
+			return;
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[i];
+			node.jobs.remove(job);
+			if (node.jobs.isEmpty())
+				node.jobs = null;
+			for (Node n = node; n != null; n = n.parent) {
+				//prune nodes that no longer hold any jobs
+				if (--n.size == 0 && n.parent != null)
+					n.parent.children.remove(n.segment);
+			}
+		}
+	}
+}
@@ -10,18 +10,21 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * Simple thread-safe long counter.
+ * Simple thread-safe long counter. The counter is lock-free so that
+ * incrementing it never contends with other monitors held by the caller.
  * @ThreadSafe
  */
 public class Counter {
-	private long value = 0L;
+	private final AtomicLong value = new AtomicLong();
 
 	public Counter() {
 		super();
 	}
 
-	public synchronized long increment() {
-		return value++;
+	public long increment() {
+		return value.getAndIncrement();
 	}
 }
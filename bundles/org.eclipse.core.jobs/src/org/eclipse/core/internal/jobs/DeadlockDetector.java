@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2012 IBM Corporation and others.
+ * Copyright (c) 2003, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,23 +12,23 @@ package org.eclipse.core.internal.jobs;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
+import java.util.*;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
-import org.eclipse.core.runtime.jobs.ILock;
-import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.*;
 
 /**
  * Stores all the relationships between locks (rules are also considered locks),
- * and the threads that own them. All the relationships are stored in a 2D integer array.
- * The rows in the array are threads, while the columns are locks.
- * Two corresponding arrayLists store the actual threads and locks.
- * The index of a thread in the first arrayList is the index of the row in the graph.
- * The index of a lock in the second arrayList is the index of the column in the graph.
+ * and the threads that own them. The relationships form a graph whose rows are
+ * threads and whose columns are locks. The graph is sparse: every row only stores
+ * the entries of the locks the thread is related to, and every column only stores
+ * the threads related to the lock, so that the cost of an update does not depend
+ * on the total number of threads and locks in the graph.
+ * Rows and columns are kept in the order they were added to the graph.
  * An entry greater than 0 in the graph is the number of times a thread in the entry's row
  * acquired the lock in the entry's column.
  * An entry of -1 means that the thread is waiting to acquire the lock.
- * An entry of 0 means that the thread and the lock have no relationship.
+ * An entry of 0 means that the thread and the lock have no relationship, and is not stored.
  *
  * The difference between rules and locks is that locks can be suspended, while
  * rules are implicit locks and as such cannot be suspended.
@@ -36,6 +36,10 @@ import org.eclipse.core.runtime.jobs.ISchedulingRule;
  * locks. Failing that, it will find a thread in the deadlock that owns at least
  * one lock and suspend it.
  *
+ * When a thread starts waiting, only the threads reachable from it through wait-for
+ * edges (a thread waiting for a lock, the lock owned by another thread) are visited
+ * to check whether the new edge closes a cycle.
+ *
  * Deadlock can only occur among locks, or among locks in combination with rules.
  * Deadlock among rules only is impossible. Therefore, in any deadlock one can always
  * find a thread that owns at least one lock that can be suspended.
@@ -69,16 +73,42 @@ class DeadlockDetector {
 	private static int NO_STATE = 0;
 	//state variables in the graph
 	private static int WAITING_FOR_LOCK = -1;
-	//empty matrix
-	private static final int[][] EMPTY_MATRIX = new int[0][0];
-	//matrix of relationships between threads and locks
-	private int[][] graph = EMPTY_MATRIX;
-	//index is column in adjacency matrix for the lock
-	private final ArrayList<ISchedulingRule> locks = new ArrayList<>();
-	//index is row in adjacency matrix for the thread
-	private final ArrayList<Thread> lockThreads = new ArrayList<>();
-	//whether the graph needs to be resized
-	private boolean resize = false;
+
+	/**
+	 * A row of the graph: the non-empty entries of a thread, keyed by lock.
+	 */
+	private static final class ThreadRow {
+		final long order;
+		final HashMap<ISchedulingRule, Integer> entries = new HashMap<>(4);
+		/**
+		 * The time the thread started waiting for a lock, as returned by
+		 * System#nanoTime().
+		 */
+		long waitStart;
+
+		ThreadRow(long order) {
+			this.order = order;
+		}
+	}
+
+	/**
+	 * A column of the graph: the threads having a non-empty entry for a lock.
+	 */
+	private static final class LockColumn {
+		final long order;
+		final HashSet<Thread> threads = new HashSet<>(4);
+
+		LockColumn(long order) {
+			this.order = order;
+		}
+	}
+
+	//the columns of the graph, in the order the locks were added
+	private final LinkedHashMap<ISchedulingRule, LockColumn> locks = new LinkedHashMap<>();
+	//the rows of the graph, in the order the threads were added
+	private final LinkedHashMap<Thread, ThreadRow> lockThreads = new LinkedHashMap<>();
+	//the order of the next row or column added to the graph
+	private long nextOrder;
 
 	/**
 	 * Recursively check if any of the threads that prevent the current thread from running
@@ -121,38 +151,68 @@ class DeadlockDetector {
 	/**
 	 * Check that the addition of a waiting thread did not produce deadlock.
 	 * If deadlock is detected return true, else return false.
+	 * Only the threads reachable from the given lock through wait-for edges are
+	 * visited, and every thread is explored at most once.
 	 */
-	private boolean checkWaitCycles(int[] waitingThreads, int lockIndex) {
+	private boolean checkWaitCycles(Set<Thread> visiting, Set<Thread> explored, ISchedulingRule lock) {
 		/**
-		 * find the lock that this thread is waiting for
+		 * find the threads that own this lock
 		 * recursively check if this is a cycle (i.e. a thread waiting on itself)
 		 */
-		for (int i = 0; i < graph.length; i++) {
-			if (graph[i][lockIndex] > NO_STATE) {
-				if (waitingThreads[i] > NO_STATE) {
-					return true;
-				}
-				//keep track that we already visited this thread
-				waitingThreads[i]++;
-				for (int j = 0; j < graph[i].length; j++) {
-					if (graph[i][j] == WAITING_FOR_LOCK) {
-						if (checkWaitCycles(waitingThreads, j))
-							return true;
-					}
+		LockColumn column = locks.get(lock);
+		if (column == null)
+			return false;
+		for (Thread owner : column.threads) {
+			ThreadRow row = lockThreads.get(owner);
+			if (row.entries.get(lock).intValue() <= NO_STATE)
+				continue;
+			if (visiting.contains(owner))
+				return true;
+			//a thread explored before does not lead to a cycle
+			if (!explored.add(owner))
+				continue;
+			//keep track that we are visiting this thread
+			visiting.add(owner);
+			for (Map.Entry<ISchedulingRule, Integer> entry : row.entries.entrySet()) {
+				if (entry.getValue().intValue() == WAITING_FOR_LOCK) {
+					if (checkWaitCycles(visiting, explored, entry.getKey()))
+						return true;
 				}
-				//this thread is not involved in a cycle yet, so remove the visited flag
-				waitingThreads[i]--;
 			}
+			//this thread is not involved in a cycle yet
+			visiting.remove(owner);
 		}
 		return false;
 	}
 
 	/**
-	 * Returns true IFF the matrix contains a row for the given thread.
+	 * Returns a copy of the rows of the graph, in the order the threads were
+	 * added: the locks each thread owns with their depth, and the lock it waits
+	 * for along with the time it has been waiting at the given time.
+	 */
+	List<IThreadSnapshot> snapshot(long now) {
+		List<IThreadSnapshot> threads = new ArrayList<>(lockThreads.size());
+		for (Map.Entry<Thread, ThreadRow> row : lockThreads.entrySet()) {
+			Map<ISchedulingRule, Integer> held = new LinkedHashMap<>();
+			ISchedulingRule waiting = null;
+			for (Map.Entry<ISchedulingRule, Integer> entry : row.getValue().entries.entrySet()) {
+				if (entry.getValue().intValue() > NO_STATE)
+					held.put(entry.getKey(), entry.getValue());
+				else if (waiting == null)
+					waiting = entry.getKey();
+			}
+			long waitTime = waiting == null ? 0 : now - row.getValue().waitStart;
+			threads.add(new JobManagerSnapshot.ThreadEntry(row.getKey(), held, waiting, waitTime));
+		}
+		return threads;
+	}
+
+	/**
+	 * Returns true IFF the graph contains a row for the given thread.
 	 * (meaning the given thread either owns locks or is waiting for locks)
 	 */
 	boolean contains(Thread t) {
-		return lockThreads.contains(t);
+		return lockThreads.containsKey(t);
 	}
 
 	/**
@@ -160,41 +220,86 @@ class DeadlockDetector {
 	 * Find a rule it conflicts with and update the new rule with the number of times
 	 * it was acquired implicitly when threads acquired conflicting rule.
 	 */
-	private void fillPresentEntries(ISchedulingRule newLock, int lockIndex) {
+	private void fillPresentEntries(ISchedulingRule newLock) {
+		ArrayList<ISchedulingRule> conflicting = new ArrayList<>(1);
+		for (ISchedulingRule lock : locks.keySet()) {
+			if ((lock != newLock) && (isConflicting(newLock, lock)))
+				conflicting.add(lock);
+		}
 		//fill in the entries for the new rule from rules it conflicts with
-		for (int j = 0; j < locks.size(); j++) {
-			if ((j != lockIndex) && (newLock.isConflicting(locks.get(j)))) {
-				for (int i = 0; i < graph.length; i++) {
-					if ((graph[i][j] > NO_STATE) && (graph[i][lockIndex] == NO_STATE))
-						graph[i][lockIndex] = graph[i][j];
-				}
+		for (ISchedulingRule lock : conflicting) {
+			for (Thread thread : locks.get(lock).threads.toArray(new Thread[0])) {
+				int state = get(thread, lock);
+				if ((state > NO_STATE) && (get(thread, newLock) == NO_STATE))
+					set(thread, newLock, state);
 			}
 		}
 		//now back fill the entries for rules the current rule conflicts with
-		for (int j = 0; j < locks.size(); j++) {
-			if ((j != lockIndex) && (newLock.isConflicting(locks.get(j)))) {
-				for (int i = 0; i < graph.length; i++) {
-					if ((graph[i][lockIndex] > NO_STATE) && (graph[i][j] == NO_STATE))
-						graph[i][j] = graph[i][lockIndex];
-				}
+		for (ISchedulingRule lock : conflicting) {
+			for (Thread thread : locks.get(newLock).threads.toArray(new Thread[0])) {
+				int state = get(thread, newLock);
+				if ((state > NO_STATE) && (get(thread, lock) == NO_STATE))
+					set(thread, lock, state);
 			}
 		}
 	}
 
 	/**
-	 * Returns all the locks owned by the given thread
+	 * Returns the entry of the graph for the given thread and lock.
 	 */
-	private Object[] getOwnedLocks(Thread current) {
-		ArrayList<ISchedulingRule> ownedLocks = new ArrayList<>(1);
-		int index = indexOf(current, false);
+	private int get(Thread thread, ISchedulingRule lock) {
+		ThreadRow row = lockThreads.get(thread);
+		if (row == null)
+			return NO_STATE;
+		Integer state = row.entries.get(lock);
+		return state == null ? NO_STATE : state.intValue();
+	}
 
-		for (int j = 0; j < graph[index].length; j++) {
-			if (graph[index][j] > NO_STATE)
-				ownedLocks.add(locks.get(j));
+	/**
+	 * Sets the entry of the graph for the given thread and lock. The row and
+	 * the column must already be in the graph.
+	 */
+	private void set(Thread thread, ISchedulingRule lock, int state) {
+		ThreadRow row = lockThreads.get(thread);
+		LockColumn column = locks.get(lock);
+		if (state == NO_STATE) {
+			row.entries.remove(lock);
+			column.threads.remove(thread);
+		} else {
+			row.entries.put(lock, Integer.valueOf(state));
+			column.threads.add(thread);
 		}
-		if (ownedLocks.size() == 0)
+	}
+
+	/**
+	 * Returns the locks of the given thread whose entry satisfies the given
+	 * condition, in the order of the columns of the graph.
+	 */
+	private ISchedulingRule[] getLocks(Thread current, boolean owned, boolean waiting, boolean realLocks) {
+		ThreadRow row = lockThreads.get(current);
+		if (row == null)
+			return new ISchedulingRule[0];
+		ArrayList<ISchedulingRule> result = new ArrayList<>(1);
+		for (Map.Entry<ISchedulingRule, Integer> entry : row.entries.entrySet()) {
+			int state = entry.getValue().intValue();
+			if (owned && state > NO_STATE || waiting && state == WAITING_FOR_LOCK) {
+				if (!realLocks || entry.getKey() instanceof ILock)
+					result.add(entry.getKey());
+			}
+		}
+		if (result.size() > 1)
+			result.sort((first, second) -> Long.compare(locks.get(first).order, locks.get(second).order));
+		return result.toArray(new ISchedulingRule[result.size()]);
+	}
+
+	/**
+	 * Returns all the locks owned by the given thread
+	 */
+	private Object[] getOwnedLocks(Thread current) {
+		Object[] ownedLocks = getLocks(current, true, false, false);
+		if (ownedLocks.length == 0)
 			Assert.isLegal(false, "A thread with no locks is part of a deadlock."); //$NON-NLS-1$
-		return ownedLocks.toArray();
+		return ownedLocks;
 	}
 
 	/**
@@ -213,21 +318,24 @@ class DeadlockDetector {
 	}
 
 	/**
-	 * Returns the thread(s) that own the given lock.
+	 * Returns the thread(s) that own the given lock, in the order of the rows
+	 * of the graph.
 	 */
 	private Thread[] getThreadsOwningLock(ISchedulingRule rule) {
 		if (rule == null)
 			return new Thread[0];
-		int lockIndex = indexOf(rule, false);
+		LockColumn column = locks.get(rule);
 		ArrayList<Thread> blocking = new ArrayList<>(1);
-		for (int i = 0; i < graph.length; i++) {
-			if (graph[i][lockIndex] > NO_STATE)
-				blocking.add(lockThreads.get(i));
+		for (Thread thread : column == null ? Collections.<Thread> emptySet() : column.threads) {
+			if (get(thread, rule) > NO_STATE)
+				blocking.add(thread);
 		}
 		if ((blocking.size() == 0) && (JobManager.DEBUG_LOCKS))
 			System.out.println("Lock " + rule + " is involved in deadlock but is not owned by any thread."); //$NON-NLS-1$ //$NON-NLS-2$
 		if ((blocking.size() > 1) && (rule instanceof ILock) && (JobManager.DEBUG_LOCKS))
 			System.out.println("Lock " + rule + " is owned by more than 1 thread, but it is not a rule."); //$NON-NLS-1$ //$NON-NLS-2$
+		if (blocking.size() > 1)
+			blocking.sort((first, second) -> Long.compare(lockThreads.get(first).order, lockThreads.get(second).order));
 		return blocking.toArray(new Thread[blocking.size()]);
 	}
 
@@ -235,61 +343,52 @@ class DeadlockDetector {
 	 * Returns the lock the given thread is waiting for.
 	 */
 	private Object getWaitingLock(Thread current) {
-		int index = indexOf(current, false);
-		//find the lock that this thread is waiting for
-		for (int j = 0; j < graph[index].length; j++) {
-			if (graph[index][j] == WAITING_FOR_LOCK)
-				return locks.get(j);
-		}
+		ISchedulingRule[] waiting = getLocks(current, false, true, false);
 		//it can happen that a thread is not waiting for any lock (it is not really part of the deadlock)
-		return null;
+		return waiting.length == 0 ? null : waiting[0];
 	}
 
 	/**
-	 * Returns the index of the given lock in the lock array. If the lock is
-	 * not present in the array, it is added to the end.
+	 * Adds a column for the given lock to the graph, if it is not present yet.
 	 */
-	private int indexOf(ISchedulingRule lock, boolean add) {
-		int index = locks.indexOf(lock);
-		if ((index < 0) && add) {
-			locks.add(lock);
-			resize = true;
-			index = locks.size() - 1;
-		}
-		return index;
+	private void addLock(ISchedulingRule lock) {
+		if (!locks.containsKey(lock))
+			locks.put(lock, new LockColumn(nextOrder++));
 	}
 
 	/**
-	 * Returns the index of the given thread in the thread array. If the thread
-	 * is not present in the array, it is added to the end.
+	 * Adds a row for the given thread to the graph, if it is not present yet.
 	 */
-	private int indexOf(Thread owner, boolean add) {
-		int index = lockThreads.indexOf(owner);
-		if ((index < 0) && add) {
-			lockThreads.add(owner);
-			resize = true;
-			index = lockThreads.size() - 1;
-		}
-		return index;
+	private void addThread(Thread owner) {
+		if (!lockThreads.containsKey(owner))
+			lockThreads.put(owner, new ThreadRow(nextOrder++));
 	}
 
 	/**
-	 * Returns true IFF the adjacency matrix is empty.
+	 * Returns true IFF the given locks conflict. Client rules do not know about
+	 * shared rules, so when one of the locks is a shared rule, it is asked.
+	 */
+	private static boolean isConflicting(ISchedulingRule lock, ISchedulingRule other) {
+		if (other instanceof SharedRule && !(lock instanceof SharedRule))
+			return other.isConflicting(lock);
+		return lock.isConflicting(other);
+	}
+
+	/**
+	 * Returns true IFF the graph is empty.
 	 */
 	boolean isEmpty() {
-		return (locks.size() == 0) && (lockThreads.size() == 0) && (graph.length == 0);
+		return locks.isEmpty() && lockThreads.isEmpty();
 	}
 
 	/**
 	 * The given lock was acquired by the given thread.
 	 */
 	void lockAcquired(Thread owner, ISchedulingRule lock) {
-		int lockIndex = indexOf(lock, true);
-		int threadIndex = indexOf(owner, true);
-		if (resize)
-			resizeGraph();
-		if (graph[threadIndex][lockIndex] == WAITING_FOR_LOCK)
-			graph[threadIndex][lockIndex] = NO_STATE;
+		addLock(lock);
+		addThread(owner);
+		if (get(owner, lock) == WAITING_FOR_LOCK)
+			set(owner, lock, NO_STATE);
 		/**
 		 * acquire all locks that conflict with the given lock
 		 * or conflict with a lock the given lock will acquire implicitly
@@ -299,15 +398,14 @@ class DeadlockDetector {
 		//only need two passes through all the locks to pick up all conflicting rules
 		int NUM_PASSES = 2;
 		conflicting.add(lock);
-		graph[threadIndex][lockIndex]++;
+		set(owner, lock, get(owner, lock) + 1);
 		for (int i = 0; i < NUM_PASSES; i++) {
 			for (int k = 0; k < conflicting.size(); k++) {
 				ISchedulingRule current = conflicting.get(k);
-				for (int j = 0; j < locks.size(); j++) {
-					ISchedulingRule possible = locks.get(j);
-					if (current.isConflicting(possible) && !conflicting.contains(possible)) {
+				for (ISchedulingRule possible : locks.keySet()) {
+					if (isConflicting(current, possible) && !conflicting.contains(possible)) {
 						conflicting.add(possible);
-						graph[threadIndex][j]++;
+						set(owner, possible, get(owner, possible) + 1);
 					}
 				}
 			}
@@ -318,39 +416,39 @@ class DeadlockDetector {
 	 * The given lock was released by the given thread. Update the graph.
 	 */
 	void lockReleased(Thread owner, ISchedulingRule lock) {
-		int lockIndex = indexOf(lock, false);
-		int threadIndex = indexOf(owner, false);
+		ThreadRow row = lockThreads.get(owner);
 		//make sure the lock and thread exist in the graph
-		if (threadIndex < 0) {
+		if (row == null) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("[lockReleased] Lock " + lock + " was already released by thread " + owner.getName()); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		if (lockIndex < 0) {
+		if (!locks.containsKey(lock)) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("[lockReleased] Thread " + owner.getName() + " already released lock " + lock); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
 		//if this lock was suspended, set it to NO_STATE
-		if ((lock instanceof ILock) && (graph[threadIndex][lockIndex] == WAITING_FOR_LOCK)) {
-			graph[threadIndex][lockIndex] = NO_STATE;
+		if ((lock instanceof ILock) && (get(owner, lock) == WAITING_FOR_LOCK)) {
+			set(owner, lock, NO_STATE);
 			return;
 		}
+		if (JobManager.DEBUG_LOCKS) {
+			for (ISchedulingRule other : locks.keySet()) {
+				if (isConflicting(lock, other) && (get(owner, other) == NO_STATE))
+					System.out.println("[lockReleased] More releases than acquires for thread " + owner.getName() + " and lock " + lock); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
 		//release all locks that conflict with the given lock
 		//or release all rules that are owned by the given thread, if we are releasing a rule
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if ((lock.isConflicting(locks.get(j))) || (!(lock instanceof ILock) && !(locks.get(j) instanceof ILock) && (graph[threadIndex][j] > NO_STATE))) {
-				if (graph[threadIndex][j] == NO_STATE) {
-					if (JobManager.DEBUG_LOCKS)
-						System.out.println("[lockReleased] More releases than acquires for thread " + owner.getName() + " and lock " + lock); //$NON-NLS-1$ //$NON-NLS-2$
-				} else {
-					graph[threadIndex][j]--;
-				}
-			}
+		for (ISchedulingRule other : row.entries.keySet().toArray(new ISchedulingRule[0])) {
+			int state = get(owner, other);
+			if ((isConflicting(lock, other)) || (!(lock instanceof ILock) && !(other instanceof ILock) && (state > NO_STATE)))
+				set(owner, other, state - 1);
 		}
 		//if this thread just released the given lock, try to simplify the graph
-		if (graph[threadIndex][lockIndex] == NO_STATE)
-			reduceGraph(threadIndex, lock);
+		if (get(owner, lock) == NO_STATE)
+			reduceGraph(owner, lock);
 	}
 
 	/**
@@ -358,15 +456,14 @@ class DeadlockDetector {
 	 * Release this rule regardless of how many times it was acquired.
 	 */
 	void lockReleasedCompletely(Thread owner, ISchedulingRule rule) {
-		int ruleIndex = indexOf(rule, false);
-		int threadIndex = indexOf(owner, false);
+		ThreadRow row = lockThreads.get(owner);
 		//need to make sure that the given thread and rule were not already removed from the graph
-		if (threadIndex < 0) {
+		if (row == null) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("[lockReleasedCompletely] Lock " + rule + " was already released by thread " + owner.getName()); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		if (ruleIndex < 0) {
+		if (!locks.containsKey(rule)) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("[lockReleasedCompletely] Thread " + owner.getName() + " already released lock " + rule); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
@@ -376,11 +473,11 @@ class DeadlockDetector {
 		 * (not just rules that conflict with the rule we are releasing)
 		 * if we are releasing a lock, then only update the one entry for the lock
 		 */
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if (!(locks.get(j) instanceof ILock) && (graph[threadIndex][j] > NO_STATE))
-				graph[threadIndex][j] = NO_STATE;
+		for (ISchedulingRule other : row.entries.keySet().toArray(new ISchedulingRule[0])) {
+			if (!(other instanceof ILock) && (get(owner, other) > NO_STATE))
+				set(owner, other, NO_STATE);
 		}
-		reduceGraph(threadIndex, rule);
+		reduceGraph(owner, rule);
 	}
 
 	/**
@@ -389,10 +486,9 @@ class DeadlockDetector {
 	 */
 	Deadlock lockWaitStart(Thread client, ISchedulingRule lock) {
 		setToWait(client, lock, false);
-		int lockIndex = indexOf(lock, false);
-		int[] temp = new int[lockThreads.size()];
+		lockThreads.get(client).waitStart = System.nanoTime();
 		//check if the addition of the waiting thread caused deadlock
-		if (!checkWaitCycles(temp, lockIndex))
+		if (!checkWaitCycles(new HashSet<Thread>(), new HashSet<Thread>(), lock))
 			return null;
 		//there is a deadlock in the graph
 		Thread[] threads = getThreadsInDeadlock(client);
@@ -417,39 +513,33 @@ class DeadlockDetector {
 	 * If the lock has already been granted, then it isn't removed.
 	 */
 	void lockWaitStop(Thread owner, ISchedulingRule lock) {
-		int lockIndex = indexOf(lock, false);
-		int threadIndex = indexOf(owner, false);
 		//make sure the thread and lock exist in the graph
-		if (threadIndex < 0) {
+		if (!lockThreads.containsKey(owner)) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("Thread " + owner.getName() + " was already removed."); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		if (lockIndex < 0) {
+		if (!locks.containsKey(lock)) {
 			if (JobManager.DEBUG_LOCKS)
 				System.out.println("Lock " + lock + " was already removed."); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		if (graph[threadIndex][lockIndex] != WAITING_FOR_LOCK) {
+		int state = get(owner, lock);
+		if (state != WAITING_FOR_LOCK) {
 			// Lock has already been granted, nothing to do...
 			if (JobManager.DEBUG_LOCKS)
-				System.out.println("Lock " + lock + " already granted to depth: " + graph[threadIndex][lockIndex]); //$NON-NLS-1$ //$NON-NLS-2$
+				System.out.println("Lock " + lock + " already granted to depth: " + state); //$NON-NLS-1$ //$NON-NLS-2$
 			return;
 		}
-		graph[threadIndex][lockIndex] = NO_STATE;
-		reduceGraph(threadIndex, lock);
+		set(owner, lock, NO_STATE);
+		reduceGraph(owner, lock);
 	}
 
 	/**
 	 * Returns true IFF the given thread owns a single lock
 	 */
 	private boolean ownsLocks(Thread cause) {
-		int threadIndex = indexOf(cause, false);
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if (graph[threadIndex][j] > NO_STATE)
-				return true;
-		}
-		return false;
+		return owns(cause, false, false);
 	}
 
 	/**
@@ -457,15 +547,7 @@ class DeadlockDetector {
 	 * A real lock is a lock that can be suspended.
 	 */
 	private boolean ownsRealLocks(Thread owner) {
-		int threadIndex = indexOf(owner, false);
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if (graph[threadIndex][j] > NO_STATE) {
-				Object lock = locks.get(j);
-				if (lock instanceof ILock)
-					return true;
-			}
-		}
-		return false;
+		return owns(owner, true, false);
 	}
 
 	/**
@@ -473,11 +555,20 @@ class DeadlockDetector {
 	 * cannot be suspended)
 	 */
 	private boolean ownsRuleLocks(Thread owner) {
-		int threadIndex = indexOf(owner, false);
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if (graph[threadIndex][j] > NO_STATE) {
-				Object lock = locks.get(j);
-				if (!(lock instanceof ILock))
+		return owns(owner, false, true);
+	}
+
+	/**
+	 * Returns true IFF the given thread owns a lock of the requested kind.
+	 */
+	private boolean owns(Thread owner, boolean realLocks, boolean ruleLocks) {
+		ThreadRow row = lockThreads.get(owner);
+		if (row == null)
+			return false;
+		for (Map.Entry<ISchedulingRule, Integer> entry : row.entries.entrySet()) {
+			if (entry.getValue().intValue() > NO_STATE) {
+				boolean isLock = entry.getKey() instanceof ILock;
+				if ((!realLocks || isLock) && (!ruleLocks || !isLock))
 					return true;
 			}
 		}
@@ -489,106 +580,30 @@ class DeadlockDetector {
 	 * Real locks are locks that implement the ILock interface and can be suspended.
 	 */
 	private ISchedulingRule[] realLocksForThread(Thread owner) {
-		int threadIndex = indexOf(owner, false);
-		ArrayList<ISchedulingRule> ownedLocks = new ArrayList<>(1);
-		for (int j = 0; j < graph[threadIndex].length; j++) {
-			if ((graph[threadIndex][j] > NO_STATE) && (locks.get(j) instanceof ILock))
-				ownedLocks.add(locks.get(j));
-		}
-		if (ownedLocks.size() == 0)
+		ISchedulingRule[] ownedLocks = getLocks(owner, true, false, true);
+		if (ownedLocks.length == 0)
 			Assert.isLegal(false, "A thread with no real locks was chosen to resolve deadlock."); //$NON-NLS-1$
-		return ownedLocks.toArray(new ISchedulingRule[ownedLocks.size()]);
+		return ownedLocks;
 	}
 
 	/**
-	 * The matrix has been simplified. Check if any unnecessary rows or columns
+	 * The graph has been simplified. Check if any unnecessary rows or columns
 	 * can be removed.
 	 */
-	private void reduceGraph(int row, ISchedulingRule lock) {
-		int numLocks = locks.size();
-		boolean[] emptyColumns = new boolean[numLocks];
-
+	private void reduceGraph(Thread owner, ISchedulingRule lock) {
 		/**
-		 * find all columns that could possibly be empty
+		 * remove all columns that are empty and could have been emptied
 		 * (consist of locks which conflict with the given lock, or of locks which are rules)
 		 */
-		for (int j = 0; j < numLocks; j++) {
-			if ((lock.isConflicting(locks.get(j))) || !(locks.get(j) instanceof ILock))
-				emptyColumns[j] = true;
-		}
-
-		boolean rowEmpty = true;
-		int numEmpty = 0;
-		//check if the given row is empty
-		for (int j = 0; j < graph[row].length; j++) {
-			if (graph[row][j] != NO_STATE) {
-				rowEmpty = false;
-				break;
-			}
-		}
-		/**
-		 * Check if the possibly empty columns are actually empty.
-		 * If a column is actually empty, remove the corresponding lock from the list of locks
-		 * Start at the last column so that when locks are removed from the list,
-		 * the index of the remaining locks is unchanged. Store the number of empty columns.
-		 */
-		for (int j = emptyColumns.length - 1; j >= 0; j--) {
-			for (int i = 0; i < graph.length; i++) {
-				if (emptyColumns[j] && (graph[i][j] != NO_STATE)) {
-					emptyColumns[j] = false;
-					break;
-				}
-			}
-			if (emptyColumns[j]) {
-				locks.remove(j);
-				numEmpty++;
-			}
-		}
-		//if no columns or rows are empty, return right away
-		if ((numEmpty == 0) && (!rowEmpty))
-			return;
-
-		if (rowEmpty)
-			lockThreads.remove(row);
-
-		//new graph (the list of locks and the list of threads are already updated)
-		final int numThreads = lockThreads.size();
-		numLocks = locks.size();
-		//optimize empty graph case
-		if (numThreads == 0 && numLocks == 0) {
-			graph = EMPTY_MATRIX;
-			return;
-		}
-		int[][] tempGraph = new int[numThreads][numLocks];
-
-		//the number of rows we need to skip to get the correct entry from the old graph
-		int numRowsSkipped = 0;
-		for (int i = 0; i < graph.length - numRowsSkipped; i++) {
-			if ((i == row) && rowEmpty) {
-				numRowsSkipped++;
-				//check if we need to skip the last row
-				if (i >= graph.length - numRowsSkipped)
-					break;
-			}
-			//the number of columns we need to skip to get the correct entry from the old graph
-			//needs to be reset for every new row
-			int numColsSkipped = 0;
-			for (int j = 0; j < graph[i].length - numColsSkipped; j++) {
-				while (emptyColumns[j + numColsSkipped]) {
-					numColsSkipped++;
-					//check if we need to skip the last column
-					if (j >= graph[i].length - numColsSkipped)
-						break;
-				}
-				//need to break out of the outer loop
-				if (j >= graph[i].length - numColsSkipped)
-					break;
-				tempGraph[i][j] = graph[i + numRowsSkipped][j + numColsSkipped];
-			}
-		}
-		graph = tempGraph;
-		Assert.isTrue(numThreads == graph.length, "Rows and threads don't match."); //$NON-NLS-1$
-		Assert.isTrue(numLocks == ((graph.length > 0) ? graph[0].length : 0), "Columns and locks don't match."); //$NON-NLS-1$
+		for (Iterator<Map.Entry<ISchedulingRule, LockColumn>> it = locks.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<ISchedulingRule, LockColumn> entry = it.next();
+			if (entry.getValue().threads.isEmpty() && ((isConflicting(lock, entry.getKey())) || !(entry.getKey() instanceof ILock)))
+				it.remove();
+		}
+		//remove the given row if it is empty
+		ThreadRow row = lockThreads.get(owner);
+		if (row != null && row.entries.isEmpty())
+			lockThreads.remove(owner);
 	}
 
 	/**
@@ -616,28 +631,6 @@ class DeadlockDetector {
 		RuntimeLog.log(main);
 	}
 
-	/**
-	 * The number of threads/locks in the graph has changed. Update the
-	 * underlying matrix.
-	 */
-	private void resizeGraph() {
-		// a new row and/or a new column was added to the graph.
-		// since new rows/columns are always added to the end, just transfer
-		// old entries to the new graph, with the same indices.
-		final int newRows = lockThreads.size();
-		final int newCols = locks.size();
-		//optimize 0x0 and 1x1 matrices
-		if (newRows == 0 && newCols == 0) {
-			graph = EMPTY_MATRIX;
-			return;
-		}
-		int[][] tempGraph = new int[newRows][newCols];
-		for (int i = 0; i < graph.length; i++)
-			System.arraycopy(graph[i], 0, tempGraph[i], 0, graph[i].length);
-		graph = tempGraph;
-		resize = false;
-	}
-
 	/**
 	 * Get the thread whose locks can be suspended. (i.e. all locks it owns are
 	 * actual locks and not rules). Return the first thread in the array by default.
@@ -669,32 +662,29 @@ class DeadlockDetector {
 		 */
 		if (!suspend && !(lock instanceof ILock))
 			needTransfer = true;
-		int lockIndex = indexOf(lock, !suspend);
-		int threadIndex = indexOf(owner, !suspend);
-		if (resize)
-			resizeGraph();
-
-		graph[threadIndex][lockIndex] = WAITING_FOR_LOCK;
+		addLock(lock);
+		addThread(owner);
+		set(owner, lock, WAITING_FOR_LOCK);
 		if (needTransfer)
-			fillPresentEntries(lock, lockIndex);
+			fillPresentEntries(lock);
 	}
 
 	/**
-	 * Prints out the current matrix to standard output.
+	 * Prints out the current graph to standard output.
 	 * Only used for debugging.
 	 */
 	public String toDebugString() {
 		StringWriter sWriter = new StringWriter();
 		PrintWriter out = new PrintWriter(sWriter, true);
 		out.println(" :: "); //$NON-NLS-1$
-		for (int j = 0; j < locks.size(); j++) {
-			out.print(" " + locks.get(j) + ','); //$NON-NLS-1$
+		for (ISchedulingRule lock : locks.keySet()) {
+			out.print(" " + lock + ','); //$NON-NLS-1$
 		}
 		out.println();
-		for (int i = 0; i < graph.length; i++) {
-			out.print(" " + lockThreads.get(i).getName() + " : "); //$NON-NLS-1$ //$NON-NLS-2$
-			for (int j = 0; j < graph[i].length; j++) {
-				out.print(" " + graph[i][j] + ','); //$NON-NLS-1$
+		for (Thread thread : lockThreads.keySet()) {
+			out.print(" " + thread.getName() + " : "); //$NON-NLS-1$ //$NON-NLS-2$
+			for (ISchedulingRule lock : locks.keySet()) {
+				out.print(" " + get(thread, lock) + ','); //$NON-NLS-1$
 			}
 			out.println();
 		}
@@ -11,6 +11,7 @@
 package org.eclipse.core.internal.jobs;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
@@ -39,10 +40,11 @@ class ImplicitJobs {
 
 	/**
 	 * Maps (Thread->ThreadJob), threads to the currently running job for that
-	 * thread.
+	 * thread. Only modified while holding this object's monitor, but may be
+	 * read without it by {@link #getThreadJob(Thread)}.
 	 * @GuardedBy("this")
 	 */
-	private final Map<Thread, ThreadJob> threadJobs = new HashMap<>(20);
+	private final Map<Thread, ThreadJob> threadJobs = new ConcurrentHashMap<>(20);
 
 	ImplicitJobs(JobManager manager) {
 		this.manager = manager;
@@ -206,7 +208,7 @@ class ImplicitJobs {
 	 */
 	void notifyWaitingThreadJobs(InternalJob job) {
 		synchronized (job.jobStateLock) {
-			job.jobStateLock.notifyAll();
+			job.notifyStateWaiters();
 		}
 	}
 
@@ -291,7 +293,12 @@ class ImplicitJobs {
 		manager.enqueue(manager.waitingThreadJobs, threadJob);
 	}
 
-	synchronized ThreadJob getThreadJob(Thread thread) {
+	/**
+	 * Returns the thread job of the given thread, or null if the thread has not
+	 * begun a rule. Does not block. The answer is only stable when asking for
+	 * the current thread, or while holding this object's monitor.
+	 */
+	ThreadJob getThreadJob(Thread thread) {
 		return threadJobs.get(thread);
 	}
 
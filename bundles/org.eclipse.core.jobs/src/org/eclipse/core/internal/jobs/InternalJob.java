@@ -15,6 +15,8 @@
 package org.eclipse.core.internal.jobs;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
 
@@ -76,6 +78,18 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Start time constant indicating that the job has no start time.
 	 */
 	static final long T_NONE = -1;
+	/**
+	 * State stamp constant indicating that the time of the last state change
+	 * was not measured.
+	 */
+	static final long T_UNKNOWN = Long.MIN_VALUE;
+
+	/**
+	 * Updater used to modify the flags atomically. State transitions are still
+	 * serialized by the state lock of the job, but flag bits such as the cancellation markers
+	 * may be changed concurrently from other threads without holding any lock.
+	 */
+	private static final AtomicIntegerFieldUpdater<InternalJob> FLAGS = AtomicIntegerFieldUpdater.newUpdater(InternalJob.class, "flags"); //$NON-NLS-1$
 
 	private volatile int flags = Job.NONE;
 	private final int jobNumber = getNextJobNumber();
@@ -88,14 +102,36 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	private volatile IProgressMonitor monitor;
 	private String name;
 	private JobGroup jobGroup;
+	/**
+	 * The time in milliseconds after becoming ready to run by which this job
+	 * should be done, or T_NONE if the job has no deadline.
+	 */
+	private volatile long deadline = T_NONE;
+	/**
+	 * The time by which the current run of this job should be done, as returned
+	 * by System#currentTimeMillis(), or T_NONE if the job has no deadline. Set
+	 * each time the job becomes ready to run.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private long deadlineTime = T_NONE;
+	/**
+	 * Whether the last run of this job was done after its deadline.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private boolean deadlineMissed;
+	/**
+	 * The families declared by this job, or null if the job did not declare
+	 * its families. Only changes while the job is not scheduled.
+	 */
+	private Object[] families = null;
 	/**
 	 * The job ahead of me in a queue or list.
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("manager.lock, or the wait lane the job is queued in")
 	 */
 	private InternalJob next;
 	/**
 	 * The job behind me in a queue or list.
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("manager.lock, or the wait lane the job is queued in")
 	 */
 	private InternalJob previous;
 	private int priority = Job.LONG;
@@ -118,8 +154,9 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * If the job is waiting, this represents the time the job should start by.
 	 * If this job is sleeping, this represents the time the job should wake up.
 	 * If this job is running, this represents the delay automatic rescheduling,
-	 * or -1 if the job should not be rescheduled.
-	 * @GuardedBy("manager.lock")
+	 * or -1 if the job should not be rescheduled. While the job is in a queue
+	 * ordered by start time, it only changes with that queue locked as well.
+	 * @GuardedBy("jobStateLock")
 	 */
 	private long startTime;
 
@@ -127,10 +164,48 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Stamp added when a job is added to the wait queue. Used to ensure
 	 * jobs in the wait queue maintain their insertion order even if they are
 	 * removed from the wait queue temporarily while blocked
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("jobStateLock")
 	 */
 	private long waitQueueStamp = T_NONE;
 
+	/**
+	 * The index of this job in the heap of a heap based queue, or -1 if the job
+	 * is not in such a queue.
+	 * @GuardedBy("the queue holding the job")
+	 */
+	private int queueIndex = -1;
+
+	/**
+	 * The priority lane of the job manager this job is queued in while
+	 * waiting, or -1 if it is in the shared wait queue or not waiting.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private int waitLane = -1;
+
+	/**
+	 * Stamp added when a job is added to a heap based queue. Used to keep
+	 * the insertion order of jobs with the same start time.
+	 * @GuardedBy("the queue holding the job")
+	 */
+	private long queueSequence;
+
+	/**
+	 * The time the job entered its current state, as returned by
+	 * System#nanoTime(), or T_UNKNOWN. The time is only measured while job
+	 * metrics are collected or a trace is recorded.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private long stateStamp = T_UNKNOWN;
+
+	/**
+	 * The time the job was last scheduled, woken up or put to sleep, as returned
+	 * by System#currentTimeMillis(), or T_NONE if it is not waiting or sleeping.
+	 * Set from clock readings the job manager makes anyway, so that snapshots can
+	 * tell for how long a job has been waiting or sleeping without metrics.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private long queueTime = T_NONE;
+
 	/*
 	 * The thread that is currently running this job
 	 */
@@ -149,6 +224,35 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 */
 	final Object jobStateLock = new Object();
 
+	/**
+	 * The number of times the threads waiting on jobStateLock have been
+	 * notified. A thread that found this job blocking it can tell from this
+	 * count whether the job changed state before the thread started waiting.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private int stateNotifications = 0;
+
+	/**
+	 * The future completed with the result of this job the next time it is
+	 * done, or <code>null</code> if no future was requested.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private JobFuture future;
+
+	/**
+	 * The timings of the current run of this job, or <code>null</code> if
+	 * metrics are not collected.
+	 * @GuardedBy("jobStateLock")
+	 */
+	private JobMetrics.Record metricsRecord;
+
+	/**
+	 * Returns the number that identifies this job for debugging purposes.
+	 */
+	final int getJobNumber() {
+		return jobNumber;
+	}
+
 	private static synchronized int getNextJobNumber() {
 		return nextJobNumber++;
 	}
@@ -164,7 +268,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 
 	/**
 	 * Adds an entry at the end of the list of which this item is the head.
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("manager.lock, or the wait lane the job is queued in")
 	 */
 	final void addLast(InternalJob entry) {
 		InternalJob last = this;
@@ -178,6 +282,12 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	}
 
 	protected boolean belongsTo(Object family) {
+		Object[] declared = families;
+		if (declared != null) {
+			for (int i = 0; i < declared.length; i++)
+				if (declared[i].equals(family))
+					return true;
+		}
 		return false;
 	}
 
@@ -198,6 +308,29 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		manager.endJob(this, endResult, true);
 	}
 
+	/**
+	 * Returns the families declared by this job, without copying them, or null
+	 * if the job did not declare its families.
+	 */
+	final Object[] internalGetFamilies() {
+		return families;
+	}
+
+	/**
+	 * Returns whether this job belongs to the given family. Jobs that declared
+	 * their families are members of exactly those families, other jobs are asked
+	 * through belongsTo.
+	 */
+	final boolean isMemberOf(Object family) {
+		Object[] declared = families;
+		if (declared == null)
+			return belongsTo(family);
+		for (int i = 0; i < declared.length; i++)
+			if (declared[i].equals(family))
+				return true;
+		return false;
+	}
+
 	/**
 	 * Returns the job listeners that are only listening to this job. Never returns
 	 * null.
@@ -206,6 +339,22 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		return listeners;
 	}
 
+	protected Object[] getFamilies() {
+		Object[] declared = families;
+		return declared == null ? null : declared.clone();
+	}
+
+	protected long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final long getDeadlineTime() {
+		return deadlineTime;
+	}
+
 	protected String getName() {
 		return name;
 	}
@@ -277,6 +426,24 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		return flags & M_STATE;
 	}
 
+	/**
+	 * Returns the number of times the threads waiting on jobStateLock have been
+	 * notified.
+	 * @GuardedBy("jobStateLock")
+	 */
+	final int getStateNotifications() {
+		return stateNotifications;
+	}
+
+	/**
+	 * Wakes up all threads waiting on jobStateLock.
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void notifyStateWaiters() {
+		stateNotifications++;
+		jobStateLock.notifyAll();
+	}
+
 	/**
 	 * Must be called from JobManager#setPriority
 	 */
@@ -291,11 +458,18 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		this.schedulingRule = rule;
 	}
 
+	/**
+	 * Must be called from JobManager#setThread
+	 */
+	final void internalSetThread(Thread thread) {
+		this.thread = thread;
+	}
+
 	/**
 	 * Must be called from JobManager#changeState
 	 */
 	final void internalSetState(int i) {
-		flags = (flags & ~M_STATE) | i;
+		updateFlags(M_STATE, i);
 	}
 
 	/**
@@ -323,6 +497,9 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		ISchedulingRule otherRule = otherJob.getRule();
 		if (schedulingRule == null || otherRule == null)
 			return false;
+		//shared rules never conflict with each other, even when they are the same rule
+		if (schedulingRule instanceof SharedRule)
+			return !(otherRule instanceof SharedRule) && schedulingRule.isConflicting(otherRule);
 		//if one of the rules is a compound rule, it must be asked the question.
 		if (schedulingRule.getClass() == MultiRule.class)
 			return schedulingRule.isConflicting(otherRule);
@@ -382,19 +559,23 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 			manager.schedule(this, delay, false);
 	}
 
+	protected void scheduleCoalesced(long delay, boolean leading) {
+		if (shouldSchedule())
+			manager.scheduleCoalesced(this, delay, leading);
+	}
+
 	/**
 	 * Sets whether this job was canceled when it was about to run
 	 */
 	final void setAboutToRunCanceled(boolean value) {
-		flags = value ? flags | M_ABOUT_TO_RUN_CANCELED : flags & ~M_ABOUT_TO_RUN_CANCELED;
-
+		updateFlags(M_ABOUT_TO_RUN_CANCELED, value ? M_ABOUT_TO_RUN_CANCELED : 0);
 	}
 
 	/**
 	 * Sets whether this job was canceled when it was running
 	 */
 	final void setRunCanceled(boolean value) {
-		flags = value ? flags | M_RUN_CANCELED : flags & ~M_RUN_CANCELED;
+		updateFlags(M_RUN_CANCELED, value ? M_RUN_CANCELED : 0);
 	}
 
 	protected void setName(String name) {
@@ -418,6 +599,31 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		this.previous = entry;
 	}
 
+	protected void setDeadline(long deadline) {
+		this.deadline = deadline < 0 ? T_NONE : deadline;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setDeadlineTime(long deadlineTime) {
+		this.deadlineTime = deadlineTime;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final boolean isDeadlineMissed() {
+		return deadlineMissed;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setDeadlineMissed(boolean deadlineMissed) {
+		this.deadlineMissed = deadlineMissed;
+	}
+
 	protected void setPriority(int newPriority) {
 		switch (newPriority) {
 			case Job.INTERACTIVE :
@@ -473,7 +679,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	/**
 	 * Sets or clears the result of an execution of this job.
 	 * @param result a result status, or <code>null</code>
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("jobStateLock")
 	 */
 	final void setResult(IStatus result) {
 		this.result = result;
@@ -487,26 +693,37 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Sets a time to start, wake up, or schedule this job,
 	 * depending on the current state
 	 * @param time a time in milliseconds
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("jobStateLock")
 	 */
 	final void setStartTime(long time) {
 		startTime = time;
 	}
 
+	protected void setFamilies(Object[] families) {
+		if (getState() != Job.NONE)
+			throw new IllegalStateException("Setting families of an already scheduled job is not allowed"); //$NON-NLS-1$
+		if (families != null) {
+			families = families.clone();
+			for (int i = 0; i < families.length; i++)
+				Assert.isLegal(families[i] != null, "Job family must not be null"); //$NON-NLS-1$
+		}
+		this.families = families;
+	}
+
 	protected void setSystem(boolean value) {
 		if (getState() != Job.NONE)
 			throw new IllegalStateException();
-		flags = value ? flags | M_SYSTEM : flags & ~M_SYSTEM;
+		updateFlags(M_SYSTEM, value ? M_SYSTEM : 0);
 	}
 
 	protected void setThread(Thread thread) {
-		this.thread = thread;
+		manager.setThread(this, thread);
 	}
 
 	protected void setUser(boolean value) {
 		if (getState() != Job.NONE)
 			throw new IllegalStateException();
-		flags = value ? flags | M_USER : flags & ~M_USER;
+		updateFlags(M_USER, value ? M_USER : 0);
 	}
 
 	protected void setJobGroup(JobGroup jobGroup) {
@@ -523,6 +740,10 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		return manager.sleep(this);
 	}
 
+	protected CompletableFuture<IStatus> toFuture() {
+		return manager.toFuture(this);
+	}
+
 	protected Job yieldRule(IProgressMonitor progressMonitor) {
 		return manager.yieldRule(this, progressMonitor);
 	}
@@ -536,9 +757,131 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		manager.wakeUp(this, delay);
 	}
 
+	/**
+	 * Atomically clears the bits in <code>mask</code> and then sets the bits in
+	 * <code>bits</code>, retrying until no concurrent modification interferes.
+	 */
+	private void updateFlags(int mask, int bits) {
+		int oldFlags;
+		do {
+			oldFlags = flags;
+		} while (!FLAGS.compareAndSet(this, oldFlags, (oldFlags & ~mask) | bits));
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final JobFuture getFuture() {
+		return future;
+	}
+
+	/**
+	 * Must be called from JobManager#toFuture
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setFuture(JobFuture future) {
+		this.future = future;
+	}
+
+	/**
+	 * Returns and forgets the future to complete now that this job is done.
+	 * Must be called from JobManager when the job changes state to NONE.
+	 * @GuardedBy("jobStateLock")
+	 */
+	final JobFuture takeFuture() {
+		JobFuture result = future;
+		future = null;
+		return result;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final JobMetrics.Record getMetricsRecord() {
+		return metricsRecord;
+	}
+
+	/**
+	 * Must be called from JobMetrics#stateChanged
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setMetricsRecord(JobMetrics.Record record) {
+		this.metricsRecord = record;
+	}
+
+	/**
+	 * @GuardedBy("the queue holding the job")
+	 */
+	final int getQueueIndex() {
+		return queueIndex;
+	}
+
+	/**
+	 * @GuardedBy("the queue holding the job")
+	 */
+	final void setQueueIndex(int queueIndex) {
+		this.queueIndex = queueIndex;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final int getWaitLane() {
+		return waitLane;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setWaitLane(int waitLane) {
+		this.waitLane = waitLane;
+	}
+
+	/**
+	 * @GuardedBy("the queue holding the job")
+	 */
+	final long getQueueSequence() {
+		return queueSequence;
+	}
+
+	/**
+	 * @GuardedBy("the queue holding the job")
+	 */
+	final void setQueueSequence(long queueSequence) {
+		this.queueSequence = queueSequence;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final long getStateStamp() {
+		return stateStamp;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setStateStamp(long stateStamp) {
+		this.stateStamp = stateStamp;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final long getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * @GuardedBy("jobStateLock")
+	 */
+	final void setQueueTime(long queueTime) {
+		this.queueTime = queueTime;
+	}
+
 	/**
 	 * @param waitQueueStamp The waitQueueStamp to set.
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("jobStateLock")
 	 */
 	void setWaitQueueStamp(long waitQueueStamp) {
 		this.waitQueueStamp = waitQueueStamp;
@@ -546,7 +889,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 
 	/**
 	 * @return Returns the waitQueueStamp.
-	 * @GuardedBy("manager.lock")
+	 * @GuardedBy("jobStateLock")
 	 */
 	long getWaitQueueStamp() {
 		return waitQueueStamp;
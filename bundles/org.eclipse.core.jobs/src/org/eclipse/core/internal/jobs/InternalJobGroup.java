@@ -12,6 +12,7 @@
 package org.eclipse.core.internal.jobs;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.JobGroup;
@@ -46,7 +47,10 @@ public class InternalJobGroup {
 
 	private volatile int state = JobGroup.NONE;
 	private volatile MultiStatus result;
-	private final Set<InternalJob> runningJobs = new HashSet<>();
+	/**
+	 * The running jobs of this group, and the times they started running.
+	 */
+	private final Map<InternalJob, Long> runningJobs = new HashMap<>();
 	private final Set<InternalJob> otherActiveJobs = new HashSet<>();
 	private final List<IStatus> results = new ArrayList<>();
 	private boolean cancelingDueToError;
@@ -54,6 +58,51 @@ public class InternalJobGroup {
 	private int canceledJobsCount;
 	private int seedJobsCount;
 	private int seedJobsRemainingCount;
+	/**
+	 * The future completed with the result of this group the next time it
+	 * finishes, or <code>null</code> if no future was requested.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private JobFuture future;
+	/**
+	 * The number of worker threads this group is entitled to while other jobs are waiting.
+	 */
+	private volatile int weight = 1;
+	/**
+	 * For each priority, the earliest start time of the next job of this group
+	 * that becomes ready to run. Spreads the start times of a group that queues
+	 * many jobs at once, so that jobs queued later by others are not held back.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private final long[] nextStartTimes = new long[5];
+	/**
+	 * The waiting jobs of this group, and how far each of them pushed back the
+	 * next start time of the priority it had when it was queued. Released if the
+	 * job stops waiting without running.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private final Map<InternalJob, Share> queuedShares = new HashMap<>();
+	/**
+	 * The moving average of the run time of the jobs of this group, in
+	 * milliseconds, or -1 if no job of this group has run yet.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private long averageRunTime = -1;
+
+	/**
+	 * How far a waiting job pushed back the next start time of a priority. The
+	 * priority is recorded, because the priority of the job may change while
+	 * it is waiting.
+	 */
+	private static final class Share {
+		final int index;
+		final long amount;
+
+		Share(int index, long amount) {
+			this.index = index;
+			this.amount = amount;
+		}
+	}
 
 	protected InternalJobGroup(String name, int maxThreads, int seedJobsCount) {
 		Assert.isNotNull(name);
@@ -73,6 +122,15 @@ public class InternalJobGroup {
 		return maxThreads;
 	}
 
+	protected int getWeight() {
+		return weight;
+	}
+
+	protected void setWeight(int weight) {
+		Assert.isLegal(weight > 0, "Job group weight must be positive"); //$NON-NLS-1$
+		this.weight = weight;
+	}
+
 	protected MultiStatus getResult() {
 		return result;
 	}
@@ -93,6 +151,14 @@ public class InternalJobGroup {
 		return manager.join(this, timeout, monitor);
 	}
 
+	protected void schedule(Collection<? extends Job> jobs, long delay) {
+		manager.schedule(this, jobs, delay);
+	}
+
+	protected CompletableFuture<IStatus> toFuture() {
+		return manager.toFuture(this);
+	}
+
 	/**
 	 * Called by the JobManager when the state of a job belonging to this group has changed.
 	 * Must be called from JobManager#changeState
@@ -109,9 +175,16 @@ public class InternalJobGroup {
 			case Job.SLEEPING :
 			case Job.WAITING :
 				otherActiveJobs.remove(job);
+				//a waiting job that is canceled or put to sleep gives up its share
+				if (newState == Job.NONE || newState == Job.SLEEPING)
+					releaseShare(job);
+				else if (newState == Job.RUNNING)
+					queuedShares.remove(job);
 				break;
 			case Job.RUNNING :
-				runningJobs.remove(job);
+				Long runStart = runningJobs.remove(job);
+				if (newState == Job.NONE && runStart != null)
+					jobFinished(System.currentTimeMillis() - runStart.longValue());
 				break;
 			default :
 				Assert.isLegal(false, "Invalid job state: " + job + ", state: " + oldState); //$NON-NLS-1$//$NON-NLS-2$
@@ -126,7 +199,7 @@ public class InternalJobGroup {
 				otherActiveJobs.add(job);
 				break;
 			case Job.RUNNING :
-				runningJobs.add(job);
+				runningJobs.put(job, Long.valueOf(System.currentTimeMillis()));
 				break;
 			default :
 				Assert.isLegal(false, "Invalid job state: " + job + ", state: " + newState); //$NON-NLS-1$//$NON-NLS-2$
@@ -168,6 +241,57 @@ public class InternalJobGroup {
 
 	}
 
+	/**
+	 * Updates the average run time of the jobs of this group with the run time
+	 * of a job that just finished.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private void jobFinished(long runTime) {
+		averageRunTime = averageRunTime < 0 ? runTime : averageRunTime + (runTime - averageRunTime) / 8;
+	}
+
+	/**
+	 * Returns the start time of a job of this group that becomes ready to run at
+	 * the given time, and would start after the given delay if it was alone.
+	 * The returned start time is never later than the given limit.
+	 * <p>
+	 * Each job that becomes ready to run pushes back the jobs of the same group
+	 * and priority that become ready after it by the average run time of the jobs
+	 * of the group, divided by the weight of the group. The start times of a group
+	 * that keeps more worker threads busy than its weight therefore move ahead of
+	 * the current time, and jobs that become ready later in other groups, or
+	 * without group, can start before its remaining jobs. A group that keeps up
+	 * with its jobs is not affected. The push stops at the limit, which keeps the
+	 * jobs of a group ahead of jobs of a lower priority that become ready later.
+	 * </p>
+	 * Must be called from JobManager when the job is put in the wait queue.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	final long nextStartTime(InternalJob job, long now, long delay, long limit) {
+		int index = job.getPriority() / 10 - 1;
+		long latest = Math.max(now, limit - delay);
+		long start = Math.min(Math.max(now, nextStartTimes[index]), latest);
+		//until a job has run, assume the jobs run as long as their priority suggests
+		long runTime = averageRunTime >= 0 ? averageRunTime : delay;
+		long share = Math.min(Math.max(1, runTime / weight), latest - start);
+		nextStartTimes[index] = start + share;
+		if (share > 0)
+			queuedShares.put(job, new Share(index, share));
+		return start + delay;
+	}
+
+	/**
+	 * Moves the next start time of the priority of a waiting job back by the
+	 * amount the job pushed it, so that a job that never runs does not hold
+	 * back the jobs of this group that become ready after it.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	private void releaseShare(InternalJob job) {
+		Share share = queuedShares.remove(job);
+		if (share != null)
+			nextStartTimes[share.index] -= share.amount;
+	}
+
 	/**
 	 * Returns the job group of the job currently running in this thread. Will return null if
 	 * either this thread is not running a job or the job is not part of a job group.
@@ -239,9 +363,35 @@ public class InternalJobGroup {
 		}
 	}
 
+	/**
+	 * @GuardedBy("JobManager.lock")
+	 */
+	final JobFuture getFuture() {
+		return future;
+	}
+
+	/**
+	 * Must be called from JobManager#toFuture
+	 * @GuardedBy("JobManager.lock")
+	 */
+	final void setFuture(JobFuture future) {
+		this.future = future;
+	}
+
+	/**
+	 * Returns and forgets the future to complete now that this group has finished.
+	 * Must be called from JobManager#updateJobGroup.
+	 * @GuardedBy("JobManager.lock")
+	 */
+	final JobFuture takeFuture() {
+		JobFuture result = future;
+		future = null;
+		return result;
+	}
+
 	final List<Job> internalGetActiveJobs() {
 		List<Job> activeJobs = new ArrayList<>(runningJobs.size() + otherActiveJobs.size());
-		for (InternalJob job : runningJobs)
+		for (InternalJob job : runningJobs.keySet())
 			activeJobs.add((Job) job);
 		for (InternalJob job : otherActiveJobs)
 			activeJobs.add((Job) job);
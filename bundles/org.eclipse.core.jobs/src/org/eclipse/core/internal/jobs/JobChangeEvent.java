@@ -40,6 +40,10 @@ public class JobChangeEvent implements IJobChangeEvent {
 	 * Whether this job is being immediately rescheduled.
 	 */
 	boolean reschedule = false;
+	/**
+	 * Whether the job was done after its deadline.
+	 */
+	boolean deadlineMissed = false;
 
 	@Override
 	public long getDelay() {
@@ -60,4 +64,9 @@ public class JobChangeEvent implements IJobChangeEvent {
 	public IStatus getJobGroupResult() {
 		return jobGroupResult;
 	}
+
+	@Override
+	public boolean isDeadlineMissed() {
+		return deadlineMissed;
+	}
 }
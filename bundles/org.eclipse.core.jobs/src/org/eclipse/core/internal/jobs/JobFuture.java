@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.core.runtime.IStatus;
+
+/**
+ * A future that is completed by the job manager with the result of a job or
+ * job group the next time it finishes. The future is held by the job or group
+ * itself and completed directly from JobManager, so no job change listener is
+ * needed to track it. Canceling the future cancels the job or job group.
+ *
+ * @see InternalJob#toFuture()
+ * @see InternalJobGroup#toFuture()
+ */
+class JobFuture extends CompletableFuture<IStatus> {
+	private final InternalJob job;
+	private final InternalJobGroup jobGroup;
+
+	JobFuture(InternalJob job) {
+		this.job = job;
+		this.jobGroup = null;
+	}
+
+	JobFuture(InternalJobGroup jobGroup) {
+		this.job = null;
+		this.jobGroup = jobGroup;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean canceled = super.cancel(mayInterruptIfRunning);
+		//propagate outside of any lock, canceling the job calls listeners
+		if (canceled) {
+			if (job != null)
+				job.cancel();
+			else
+				jobGroup.cancel();
+		}
+		return canceled;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + '[' + (job != null ? job : jobGroup.getName()) + ']';
+	}
+}
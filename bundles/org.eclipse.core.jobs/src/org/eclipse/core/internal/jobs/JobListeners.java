@@ -36,6 +36,15 @@ class JobListeners {
 	 */
 	protected final ListenerList<IJobChangeListener> global = new ListenerList<>(ListenerList.IDENTITY);
 
+	/**
+	 * The metrics charged with the time spent notifying listeners.
+	 */
+	private final JobMetrics metrics;
+
+	JobListeners(JobMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	/**
 	 * TODO Could use an instance pool to re-use old event objects
 	 */
@@ -64,6 +73,8 @@ class JobListeners {
 	 * on the given job.
 	 */
 	private void doNotify(final IListenerDoit doit, final IJobChangeEvent event) {
+		boolean measure = metrics.isEnabled();
+		long start = measure ? System.nanoTime() : 0;
 		//notify all global listeners
 		for (IJobChangeListener listener : global) {
 			try {
@@ -79,9 +90,11 @@ class JobListeners {
 				handleException(listener, e);
 			}
 		}
+		if (measure)
+			metrics.listenersNotified((InternalJob) event.getJob(), System.nanoTime() - start);
 	}
 
-	private void handleException(IJobChangeListener listener, Throwable e) {
+	void handleException(IJobChangeListener listener, Throwable e) {
 		//this code is roughly copied from InternalPlatform.run(ISafeRunnable),
 		//but in-lined here for performance reasons
 		if (e instanceof OperationCanceledException)
@@ -93,12 +106,26 @@ class JobListeners {
 		RuntimeLog.log(new Status(IStatus.ERROR, pluginId, JobManager.PLUGIN_ERROR, message, e));
 	}
 
-	public void add(IJobChangeListener listener) {
+	/**
+	 * Adds a global listener, unless the same listener is already registered,
+	 * synchronously or asynchronously. The first registration of a listener wins.
+	 */
+	public synchronized void add(IJobChangeListener listener) {
+		IJobChangeListener delegate = listener instanceof AsyncJobChangeListener ? ((AsyncJobChangeListener) listener).getDelegate() : listener;
+		for (IJobChangeListener registered : global) {
+			if (registered == delegate || (registered instanceof AsyncJobChangeListener && ((AsyncJobChangeListener) registered).getDelegate() == delegate))
+				return;
+		}
 		global.add(listener);
 	}
 
-	public void remove(IJobChangeListener listener) {
+	public synchronized void remove(IJobChangeListener listener) {
 		global.remove(listener);
+		//also remove the listener if it was registered for asynchronous notification
+		for (IJobChangeListener registered : global) {
+			if (registered instanceof AsyncJobChangeListener && ((AsyncJobChangeListener) registered).getDelegate() == listener)
+				global.remove(registered);
+		}
 	}
 
 	public void aboutToRun(Job job) {
@@ -109,9 +136,10 @@ class JobListeners {
 		doNotify(awake, newEvent(job));
 	}
 
-	public void done(Job job, IStatus result, boolean reschedule) {
+	public void done(Job job, IStatus result, boolean reschedule, boolean deadlineMissed) {
 		JobChangeEvent event = newEvent(job, result);
 		event.reschedule = reschedule;
+		event.deadlineMissed = deadlineMissed;
 		doNotify(done, event);
 	}
 
@@ -20,8 +20,13 @@
 package org.eclipse.core.internal.jobs;
 
 //don't use ICU because this is used for debugging only (see bug 135785)
+import java.io.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
@@ -32,10 +37,24 @@ import org.eclipse.osgi.util.NLS;
 /**
  * Implementation of API type IJobManager
  *
- * Implementation note: all the data structures of this class are protected by a
- * single lock object held as a private field in this class. The JobManager
- * instance itself is not used because this class is publicly reachable, and
- * third party clients may try to synchronize on it.
+ * Implementation note: the data structures of this class are split over several
+ * locks, so that jobs that do not interact with each other do not serialize on a
+ * single monitor. The JobManager instance itself is not used because this class
+ * is publicly reachable, and third party clients may try to synchronize on it.
+ *
+ * The state of a job, and the fields of the job that depend on it, only change
+ * while holding the jobStateLock of the job. Jobs without a scheduling rule and
+ * without a job group can neither block other jobs nor be blocked or throttled,
+ * so their state changes need no other job to be looked at: they are queued in
+ * the wait lanes, each guarded by its own monitor, and are scheduled, started
+ * and ended while holding only their jobStateLock. The sleeping queue is guarded
+ * by its own monitor too. The running jobs and the family index are concurrent
+ * collections. The global lock, held as a private field in this class, guards
+ * everything that involves scheduling rules, job groups and thread jobs: the
+ * shared wait queue, the blocked jobs, the running rules and the yielding jobs.
+ * State changes of jobs with a rule or a group, of thread jobs, and any other
+ * code that reads the state of an arbitrary job and acts on it, hold the global
+ * lock first and then the jobStateLock of the job.
  *
  * There are various locks used and held throughout the JobManager
  * implementation. When multiple locks interact, circular hold and waits must
@@ -43,7 +62,24 @@ import org.eclipse.osgi.util.NLS;
  * order that locks must be acquired.
  *
  * WorkerPool -> JobManager.implicitJobs -> JobManager.lock ->
- * InternalJob.jobStateLock or InternalJobGroup.jobGroupStateLock
+ * InternalJob.jobStateLock -> a wait lane or the sleeping queue ->
+ * InternalJobGroup.jobGroupStateLock
+ *
+ * To keep idle and polling workers off the locks, a few summary values of the
+ * guarded data structures (the number of waiting jobs, the wake-up time of the
+ * first sleeping job, and the suspended flag) are published through volatile
+ * or atomic fields. They are only written while holding the lock of the data
+ * structure they summarize, but may be read without it wherever a slightly
+ * stale answer is acceptable, because any thread that changes the queues
+ * notifies the worker pool afterwards.
+ *
+ * Sleeping jobs are woken up by a dedicated timer thread, which moves them
+ * to the wait queue when they are due and then notifies the worker pool. The
+ * timer is notified while holding the lock of the sleeping queue, so the lock
+ * order above continues with JobTimer. The timer also decides when the worker pool
+ * grows beyond its eager size. The pool asks for these checks while holding
+ * its own lock (WorkerPool -> JobTimer), and the timer performs them without
+ * holding any lock.
  *
  * @ThreadSafe
  */
@@ -60,11 +96,24 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	 */
 	public static final int PLUGIN_ERROR = 2;
 
+	/**
+	 * A system property key for the path of a file to record a trace of all
+	 * job state changes to, from the time the job manager starts.
+	 * @see JobTrace
+	 */
+	public static final String PROP_TRACE = "eclipse.jobs.trace"; //$NON-NLS-1$
+
 	/**
 	 * Determines how often the progress monitor is checked for cancellation during the join call.
 	 */
 	private static final long MAX_WAIT_INTERVAL = 100;
 
+	/**
+	 * The default minimum time in milliseconds between two progress updates
+	 * forwarded to the progress monitors of running jobs.
+	 */
+	static final int DEFAULT_PROGRESS_INTERVAL = 50;
+
 	private static final String OPTION_DEADLOCK_ERROR = PI_JOBS + "/jobs/errorondeadlock"; //$NON-NLS-1$
 	private static final String OPTION_DEBUG_BEGIN_END = PI_JOBS + "/jobs/beginend"; //$NON-NLS-1$
 	private static final String OPTION_DEBUG_YIELDING = PI_JOBS + "/jobs/yielding"; //$NON-NLS-1$
@@ -130,16 +179,29 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	final ImplicitJobs implicitJobs = new ImplicitJobs(this);
 
+	/**
+	 * The metrics collected about the jobs, only updated while enabled.
+	 */
+	private final JobMetrics metrics = new JobMetrics();
+
+	/**
+	 * The trace all job state changes are recorded to, or null. Written while
+	 * holding the lock, may be read without it.
+	 * @GuardedBy("lock")
+	 */
+	private volatile JobTrace trace;
+
 	/**
 	 * Listeners for the job lifecycle. It is important that the
 	 * JobManager#JobGroupUpdater is the first one that is dispatched to, since
 	 * it updates the JobChangeEvent#jobGroupStatus field, which other listeners
 	 * may use.
 	 */
-	private final JobListeners jobListeners = new JobListeners();
+	private final JobListeners jobListeners = new JobListeners(metrics);
 
 	/**
-	 * The lock for synchronizing all activity in the job manager.  To avoid deadlock,
+	 * The lock for synchronizing the activity of the job manager that involves
+	 * scheduling rules, job groups and thread jobs.  To avoid deadlock,
 	 * this lock must never be held for extended periods, and must never be
 	 * held while third party code is being called.
 	 * @GuardedBy("itself")
@@ -159,14 +221,90 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	private WorkerPool pool;
 
 	/**
+	 * Set without holding any lock, read when a job starts.
+	 */
+	private volatile ProgressProvider progressProvider = null;
+
+	/**
+	 * The minimum time in milliseconds between two progress updates forwarded
+	 * to the monitors created by the progress provider, or 0 to forward all updates.
+	 */
+	private int progressInterval;
+
+	/**
+	 * The longest time in milliseconds a waiting job can be passed by jobs that
+	 * became ready to run after it, or a negative value if there is no limit.
+	 * See #delayFor(int) and IJobManager#PROP_PRIORITY_AGING. Written while
+	 * holding the lock, may be read without it.
+	 * @GuardedBy("lock")
+	 */
+	private volatile long priorityAging;
+
+	/**
+	 * Whether waiting jobs with a deadline are ordered by deadline.
+	 * See #getStartTime(InternalJob, long) and IJobManager#PROP_DEADLINE_SCHEDULING.
+	 * Written while holding the lock, may be read without it.
 	 * @GuardedBy("lock")
 	 */
-	private ProgressProvider progressProvider = null;
+	private volatile boolean deadlineScheduling;
 	/**
 	 * Jobs that are currently running. Should only be modified from changeState
+	 * while holding the state lock of the job, and may be read without holding
+	 * any lock.
+	 */
+	private final Set<InternalJob> running = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Maps threads other than worker threads to the running jobs whose thread
+	 * they are, so that currentJob() does not need to scan the running jobs.
+	 * A thread almost always runs a single job. Should only be modified from
+	 * changeState and setThread while holding the state lock of the job, and
+	 * may be read without holding any lock.
+	 */
+	private final ConcurrentHashMap<Thread, InternalJob[]> runningThreads = new ConcurrentHashMap<>();
+
+	/**
+	 * Index of the running jobs that have a scheduling rule. Should only be
+	 * modified from changeState
+	 * @GuardedBy("lock")
+	 */
+	private final ConflictIndex runningRules = new ConflictIndex();
+
+	/**
+	 * Index of the blocked jobs that have a scheduling rule. Should only be
+	 * modified from changeState
 	 * @GuardedBy("lock")
 	 */
-	private final HashSet<InternalJob> running;
+	private final ConflictIndex blockedRules = new ConflictIndex();
+
+	/**
+	 * Index of the jobs that declared their families, from each family to the
+	 * jobs of that family that are waiting, sleeping, running, blocked or
+	 * yielding. Should only be modified from changeState while holding the state
+	 * lock of the job. Each set is only modified while computing its entry in
+	 * the map, so that a job is never added to a set that was just removed.
+	 */
+	private final ConcurrentHashMap<Object, Set<InternalJob>> familyIndex = new ConcurrentHashMap<>();
+
+	/**
+	 * The waiting, sleeping, running, blocked or yielding jobs that did not
+	 * declare their families, and must be asked whether they belong to a
+	 * family. Thread jobs are never part of a family and are not included.
+	 * Should only be modified from changeState while holding the state lock of
+	 * the job.
+	 */
+	private final Set<InternalJob> undeclaredFamilies = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The independent jobs that are waiting, sleeping or running, see
+	 * #isIndependent(InternalJob). These jobs move between the wait lanes, the
+	 * sleeping queue and the running jobs without holding the lock, so selectAll
+	 * finds them here rather than in those collections: a job stays in this set
+	 * for as long as it is scheduled, and is therefore found exactly once by a
+	 * select that runs meanwhile. Should only be modified from changeState
+	 * while holding the state lock of the job.
+	 */
+	private final Set<InternalJob> independentJobs = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * Jobs that are currently yielding. Should only be modified from changeState
@@ -177,25 +315,41 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	/**
 	 * Jobs that are sleeping.  Some sleeping jobs are scheduled to wake
 	 * up at a given start time, while others will sleep indefinitely until woken.
-	 * Should only be modified from changeState
-	 * @GuardedBy("lock")
+	 * Should only be modified from changeState. The start time of a job orders
+	 * the queue, so it must not change while the job is in the queue unless
+	 * the queue is locked.
+	 * @GuardedBy("itself")
 	 */
 	private final JobQueue sleeping;
 	/**
 	 * True if this manager has been suspended, and false otherwise.  A job manager
 	 * starts out not suspended, and becomes suspended when <code>suspend</code>
 	 * is invoked. Once suspended, no jobs will start running until <code>resume</code>
-	 * is called.
+	 * is called. Written while holding the lock, may be read without it.
 	 * @GuardedBy("lock")
 	 */
-	private boolean suspended = false;
+	private volatile boolean suspended = false;
 
 	/**
-	 * jobs that are waiting to be run. Should only be modified from changeState
+	 * Jobs with a scheduling rule or a job group that are waiting to be run.
+	 * Should only be modified from changeState
 	 * @GuardedBy("lock")
 	 */
 	private final JobQueue waiting;
 
+	/**
+	 * Waiting jobs without a scheduling rule and without a job group, with one
+	 * queue per priority class, indexed by priority / 10 - 1. These jobs can never
+	 * be blocked, so they are kept out of the waiting queue: within a priority
+	 * class their start times only grow, which makes insertion constant time
+	 * unless deadline scheduling moves a job ahead. Each lane is guarded by its
+	 * own monitor, so that workers that start jobs from different lanes, or
+	 * jobs from a lane and from the shared queue, do not contend.
+	 * Should only be modified from changeState
+	 * @GuardedBy("each lane itself")
+	 */
+	private final JobQueue[] waitingLanes = new JobQueue[5];
+
 	/**
 	 * ThreadJobs that are waiting to be run. Should only be modified from changeState
 	 * @GuardedBy("lock")
@@ -203,9 +357,30 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	final JobQueue waitingThreadJobs;
 
 	/**
-	 * Counter to record wait queue insertion order.
+	 * The number of jobs in the shared waiting queue. Should only be modified
+	 * from changeState, may be read without holding the lock.
 	 * @GuardedBy("lock")
 	 */
+	private volatile int waitingCount = 0;
+
+	/**
+	 * The number of jobs in the wait lanes. Should only be modified from
+	 * changeState, may be read without holding any lock.
+	 */
+	private final AtomicInteger waitingLaneCount = new AtomicInteger();
+
+	/**
+	 * The start time of the first job in the sleeping queue, or
+	 * InternalJob.T_INFINITE if no sleeping job will wake up by itself. Should only
+	 * be modified from changeState, may be read without holding any lock.
+	 * @GuardedBy("sleeping")
+	 */
+	private volatile long nextWakeTime = InternalJob.T_INFINITE;
+
+	/**
+	 * Counter to record wait queue insertion order.
+	 * @ThreadSafe
+	 */
 	Counter waitQueueCounter = new Counter();
 
 	/**
@@ -216,6 +391,11 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	private final InternalWorker internalWorker;
 
+	/**
+	 * The thread that wakes up sleeping jobs when they are due.
+	 */
+	private final JobTimer timer;
+
 	public static void debug(String msg) {
 		StringBuffer msgBuf = new StringBuffer(msg.length() + 40);
 		if (DEBUG_TIMING) {
@@ -300,16 +480,35 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		instance = this;
 		synchronized (lock) {
 			waiting = new JobQueue(false);
+			for (int i = 0; i < waitingLanes.length; i++)
+				waitingLanes[i] = new JobQueue(true);
 			waitingThreadJobs = new JobQueue(false, false);
-			sleeping = new JobQueue(true);
-			running = new HashSet<>(10);
+			sleeping = new JobQueue(true, true, true);
 			yielding = new HashSet<>(10);
 			pool = new WorkerPool(this);
 		}
 		pool.setDaemon(JobOSGiUtils.getDefault().useDaemonThreads());
+		pool.setUseVirtualThreads(JobOSGiUtils.getDefault().useVirtualThreads());
+		JobOSGiUtils utils = JobOSGiUtils.getDefault();
+		pool.configure(utils.getIntegerProperty(PROP_MIN_THREADS, WorkerPool.DEFAULT_MIN_THREADS), utils.getIntegerProperty(PROP_MAX_THREADS, Integer.MAX_VALUE), utils.getIntegerProperty(PROP_KEEP_ALIVE, (int) WorkerPool.DEFAULT_KEEP_ALIVE));
+		progressInterval = utils.getIntegerProperty(PROP_PROGRESS_INTERVAL, DEFAULT_PROGRESS_INTERVAL);
+		priorityAging = utils.getIntegerProperty(PROP_PRIORITY_AGING, -1);
+		deadlineScheduling = "true".equalsIgnoreCase(utils.getProperty(PROP_DEADLINE_SCHEDULING)); //$NON-NLS-1$
+		metrics.setEnabled(JobOSGiUtils.getDefault().collectMetrics());
+		String traceFile = utils.getProperty(PROP_TRACE);
+		if (traceFile != null) {
+			try {
+				startTrace(new FileOutputStream(traceFile));
+			} catch (IOException e) {
+				RuntimeLog.log(new Status(IStatus.ERROR, PI_JOBS, PLUGIN_ERROR, "Unable to record a job trace to: " + traceFile, e)); //$NON-NLS-1$
+			}
+		}
 		internalWorker = new InternalWorker(this);
 		internalWorker.setDaemon(JobOSGiUtils.getDefault().useDaemonThreads());
 		internalWorker.start();
+		timer = new JobTimer(this);
+		timer.setDaemon(JobOSGiUtils.getDefault().useDaemonThreads());
+		timer.start();
 		jobListeners.add(jobGroupUpdater);
 	}
 
@@ -318,6 +517,13 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		jobListeners.add(listener);
 	}
 
+	@Override
+	public void addJobChangeListener(IJobChangeListener listener, Executor executor, int eventMask) {
+		Assert.isNotNull(listener);
+		Assert.isNotNull(executor);
+		jobListeners.add(new AsyncJobChangeListener(jobListeners, listener, executor, eventMask));
+	}
+
 	@Override
 	public void beginRule(ISchedulingRule rule, IProgressMonitor monitor) {
 		validateRule(rule);
@@ -330,24 +536,28 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	protected boolean cancel(InternalJob job) {
 		IProgressMonitor monitor = null;
 		boolean runCanceling = false;
+		JobFuture future = null;
 		synchronized (lock) {
-			switch (job.getState()) {
-				case Job.NONE :
-					return true;
-				case Job.RUNNING :
-					//cannot cancel a job that has already started (as opposed to ABOUT_TO_RUN)
-					if (job.internalGetState() == Job.RUNNING) {
-						monitor = job.getProgressMonitor();
-						runCanceling = !job.isRunCanceled();
-						if (runCanceling)
-							job.setRunCanceled(true);
-						break;
-					}
-					//signal that the job should be canceled before it gets a chance to run
-					job.setAboutToRunCanceled(true);
-					return false;
-				default :
-					changeState(job, Job.NONE);
+			synchronized (job.jobStateLock) {
+				switch (job.getState()) {
+					case Job.NONE :
+						return true;
+					case Job.RUNNING :
+						//cannot cancel a job that has already started (as opposed to ABOUT_TO_RUN)
+						if (job.internalGetState() == Job.RUNNING) {
+							monitor = job.getProgressMonitor();
+							runCanceling = !job.isRunCanceled();
+							if (runCanceling)
+								job.setRunCanceled(true);
+							break;
+						}
+						//signal that the job should be canceled before it gets a chance to run
+						job.setAboutToRunCanceled(true);
+						return false;
+					default :
+						changeState(job, Job.NONE);
+						future = job.takeFuture();
+				}
 			}
 		}
 		//call monitor and canceling outside sync block
@@ -360,7 +570,9 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 			return false;
 		}
 		//only notify listeners if the job was waiting or sleeping
-		jobListeners.done((Job) job, Status.CANCEL_STATUS, false);
+		jobListeners.done((Job) job, Status.CANCEL_STATUS, false, false);
+		if (future != null)
+			future.complete(Status.CANCEL_STATUS);
 		return true;
 	}
 
@@ -395,134 +607,292 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	/**
 	 * Atomically updates the state of a job, adding or removing from the
-	 * necessary queues or sets.
+	 * necessary queues or sets. The caller must hold the lock, unless the job
+	 * is independent and neither its old nor its new state is BLOCKED or
+	 * YIELDING, see #isIndependent(InternalJob).
 	 */
 	private void changeState(InternalJob job, int newState) {
-		boolean blockedJobs = false;
-		synchronized (lock) {
-			int oldJobState;
-			synchronized (job.jobStateLock) {
-				job.jobStateLock.notifyAll();
-				oldJobState = job.getState();
-				int oldState = job.internalGetState();
-				switch (oldState) {
-					case InternalJob.YIELDING :
-						yielding.remove(job);
-					case Job.NONE :
-					case InternalJob.ABOUT_TO_SCHEDULE :
-						break;
-					case InternalJob.BLOCKED :
-						//remove this job from the linked list of blocked jobs
-						job.remove();
-						break;
-					case Job.WAITING :
-						try {
-							waiting.remove(job);
-						} catch (RuntimeException e) {
-							Assert.isLegal(false, "Tried to remove a job that wasn't in the queue"); //$NON-NLS-1$
-						}
-						break;
-					case Job.SLEEPING :
+		boolean wakeWorker = false;
+		int oldJobState;
+		synchronized (job.jobStateLock) {
+			job.notifyStateWaiters();
+			oldJobState = job.getState();
+			int oldState = job.internalGetState();
+			switch (oldState) {
+				case InternalJob.YIELDING :
+					yielding.remove(job);
+				case Job.NONE :
+				case InternalJob.ABOUT_TO_SCHEDULE :
+					break;
+				case InternalJob.BLOCKED :
+					//remove this job from the linked list of blocked jobs
+					job.remove();
+					blockedRules.remove(job);
+					break;
+				case Job.WAITING :
+					try {
+						dequeueWaiting(job);
+					} catch (RuntimeException e) {
+						Assert.isLegal(false, "Tried to remove a job that wasn't in the queue"); //$NON-NLS-1$
+					}
+					break;
+				case Job.SLEEPING :
+					synchronized (sleeping) {
 						try {
 							sleeping.remove(job);
 						} catch (RuntimeException e) {
 							Assert.isLegal(false, "Tried to remove a job that wasn't in the queue"); //$NON-NLS-1$
 						}
+						updateNextWakeTime();
+					}
+					break;
+				case Job.RUNNING :
+				case InternalJob.ABOUT_TO_RUN :
+					running.remove(job);
+					removeRunningThread(job, job.getThread());
+					//independent jobs never block other jobs
+					if (isIndependent(job))
 						break;
-					case Job.RUNNING :
-					case InternalJob.ABOUT_TO_RUN :
-						running.remove(job);
-						//add any blocked jobs back to the wait queue
-						InternalJob blocked = job.previous();
-						job.remove();
-						blockedJobs = blocked != null;
-						while (blocked != null) {
-							InternalJob previous = blocked.previous();
-							changeState(blocked, Job.WAITING);
-							blocked = previous;
-						}
-						break;
-					default :
-						Assert.isLegal(false, "Invalid job state: " + job + ", state: " + oldState); //$NON-NLS-1$ //$NON-NLS-2$
-				}
-				job.internalSetState(newState);
-				switch (newState) {
-					case Job.NONE :
-						job.setStartTime(InternalJob.T_NONE);
-						job.setWaitQueueStamp(InternalJob.T_NONE);
-						job.setRunCanceled(false);
-					case InternalJob.BLOCKED :
-						break;
-					case Job.WAITING :
-						waiting.enqueue(job);
-						break;
-					case Job.SLEEPING :
+					runningRules.remove(job);
+					//add any blocked jobs back to the wait queue
+					InternalJob blocked = job.previous();
+					job.remove();
+					//a throttled job group may now be able to start one of its waiting jobs
+					InternalJobGroup group = job.getJobGroup();
+					wakeWorker = blocked != null || (group != null && group.getMaxThreads() != 0);
+					while (blocked != null) {
+						InternalJob previous = blocked.previous();
+						changeState(blocked, Job.WAITING);
+						blocked = previous;
+					}
+					break;
+				default :
+					Assert.isLegal(false, "Invalid job state: " + job + ", state: " + oldState); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			job.internalSetState(newState);
+			updateFamilyIndex(job, oldState, newState);
+			if (isIndependent(job) && isSelectable(oldState) != isSelectable(newState)) {
+				if (isSelectable(newState))
+					independentJobs.add(job);
+				else
+					independentJobs.remove(job);
+			}
+			//only read the clock for the diagnostics that need it
+			boolean measure = metrics.isEnabled();
+			JobTrace currentTrace = trace;
+			if (measure || currentTrace != null) {
+				long now = System.nanoTime();
+				job.setStateStamp(now);
+				if (measure)
+					metrics.stateChanged(job, oldState, newState, now);
+				if (currentTrace != null)
+					currentTrace.stateChanged(job, oldState, newState, now);
+			} else {
+				job.setStateStamp(InternalJob.T_UNKNOWN);
+			}
+			switch (newState) {
+				case Job.NONE :
+					job.setStartTime(InternalJob.T_NONE);
+					job.setWaitQueueStamp(InternalJob.T_NONE);
+					job.setQueueTime(InternalJob.T_NONE);
+					job.setRunCanceled(false);
+					break;
+				case InternalJob.BLOCKED :
+					if (job.getRule() != null)
+						blockedRules.add(job);
+					break;
+				case Job.WAITING :
+					enqueueWaiting(job);
+					break;
+				case Job.SLEEPING :
+					synchronized (sleeping) {
 						try {
 							sleeping.enqueue(job);
 						} catch (RuntimeException e) {
 							throw new RuntimeException("Error changing from state: " + oldState); //$NON-NLS-1$
 						}
-						break;
-					case Job.RUNNING :
-					case InternalJob.ABOUT_TO_RUN :
-						// These flags must be reset in all cases, including resuming from yield
-						job.setStartTime(InternalJob.T_NONE);
-						job.setWaitQueueStamp(InternalJob.T_NONE);
-						running.add(job);
-						break;
-					case InternalJob.YIELDING :
-						yielding.add(job);
-					case InternalJob.ABOUT_TO_SCHEDULE :
-						break;
-					default :
-						Assert.isLegal(false, "Invalid job state: " + job + ", state: " + newState); //$NON-NLS-1$ //$NON-NLS-2$
-				}
+						updateNextWakeTime();
+					}
+					break;
+				case Job.RUNNING :
+				case InternalJob.ABOUT_TO_RUN :
+					// These flags must be reset in all cases, including resuming from yield
+					job.setStartTime(InternalJob.T_NONE);
+					job.setWaitQueueStamp(InternalJob.T_NONE);
+					job.setQueueTime(InternalJob.T_NONE);
+					running.add(job);
+					addRunningThread(job, job.getThread());
+					if (job.getRule() != null)
+						runningRules.add(job);
+					break;
+				case InternalJob.YIELDING :
+					yielding.add(job);
+				case InternalJob.ABOUT_TO_SCHEDULE :
+					break;
+				default :
+					Assert.isLegal(false, "Invalid job state: " + job + ", state: " + newState); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+		}
 
-			InternalJobGroup jobGroup = job.getJobGroup();
-			if (jobGroup != null) {
-				jobGroup.jobStateChanged(job, oldJobState, job.getState());
-			}
+		InternalJobGroup jobGroup = job.getJobGroup();
+		if (jobGroup != null) {
+			jobGroup.jobStateChanged(job, oldJobState, job.getState());
 		}
 
 		//notify queue outside sync block
-		if (blockedJobs)
+		if (wakeWorker)
 			pool.jobQueued();
 	}
 
+	/**
+	 * Returns whether the given job is independent of all other jobs: it has no
+	 * scheduling rule and no job group, and is not a thread job. Independent jobs
+	 * can neither block other jobs nor be blocked or throttled, so they are
+	 * queued in the wait lanes, and their state changes only need their own state
+	 * lock. The rule and the group of a job can only change while the job is not
+	 * scheduled.
+	 */
+	private static boolean isIndependent(InternalJob job) {
+		return job.getRule() == null && job.getJobGroup() == null && !(job instanceof ThreadJob);
+	}
+
+	/**
+	 * Returns the lock that must be held to read the state of the given job and
+	 * act on it, before its state lock: the lock of the job manager, unless the
+	 * job is independent.
+	 */
+	private Object lockFor(InternalJob job) {
+		return isIndependent(job) ? job.jobStateLock : lock;
+	}
+
+	/**
+	 * Returns whether jobs in the given internal state can be found by
+	 * select().
+	 */
+	private static boolean isSelectable(int state) {
+		return state != Job.NONE && state != InternalJob.ABOUT_TO_SCHEDULE;
+	}
+
+	/**
+	 * Adds the given job to the family index or removes it, when it changes
+	 * between a state in which select() can find it and one in which it cannot.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private void updateFamilyIndex(InternalJob job, int oldState, int newState) {
+		boolean wasSelectable = isSelectable(oldState);
+		if (wasSelectable == isSelectable(newState) || job instanceof ThreadJob)
+			return;
+		Object[] families = job.internalGetFamilies();
+		if (families == null) {
+			if (wasSelectable)
+				undeclaredFamilies.remove(job);
+			else
+				undeclaredFamilies.add(job);
+			return;
+		}
+		for (int i = 0; i < families.length; i++) {
+			if (wasSelectable) {
+				familyIndex.computeIfPresent(families[i], (family, members) -> {
+					members.remove(job);
+					return members.isEmpty() ? null : members;
+				});
+			} else {
+				familyIndex.compute(families[i], (family, members) -> {
+					if (members == null)
+						members = ConcurrentHashMap.newKeySet();
+					members.add(job);
+					return members;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Records that the given running job runs in the given thread.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private void addRunningThread(InternalJob job, Thread thread) {
+		//worker threads know their current job
+		if (thread == null || Worker.isWorkerThread(thread))
+			return;
+		//jobs of the same thread may change concurrently under different job locks
+		runningThreads.compute(thread, (t, jobs) -> {
+			if (jobs == null)
+				return new InternalJob[] {job};
+			InternalJob[] grown = new InternalJob[jobs.length + 1];
+			System.arraycopy(jobs, 0, grown, 0, jobs.length);
+			grown[jobs.length] = job;
+			return grown;
+		});
+	}
+
+	/**
+	 * Records that the given job no longer runs in the given thread.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private void removeRunningThread(InternalJob job, Thread thread) {
+		if (thread == null || Worker.isWorkerThread(thread))
+			return;
+		runningThreads.computeIfPresent(thread, (t, jobs) -> {
+			for (int i = 0; i < jobs.length; i++) {
+				if (jobs[i] == job) {
+					if (jobs.length == 1)
+						return null;
+					InternalJob[] shrunk = new InternalJob[jobs.length - 1];
+					System.arraycopy(jobs, 0, shrunk, 0, i);
+					System.arraycopy(jobs, i + 1, shrunk, i, shrunk.length - i);
+					return shrunk;
+				}
+			}
+			return jobs;
+		});
+	}
+
 	/**
 	 * Returns a new progress monitor for this job, belonging to the given
 	 * progress group.  Returns null if it is not a valid time to set the job's group.
 	 */
 	protected IProgressMonitor createMonitor(InternalJob job, IProgressMonitor group, int ticks) {
 		synchronized (lock) {
-			//group must be set before the job is scheduled
-			//this includes the ABOUT_TO_SCHEDULE state, during which it is still
-			//valid to set the progress monitor
-			if (job.getState() != Job.NONE)
-				return null;
-			IProgressMonitor monitor = null;
-			if (progressProvider != null)
-				monitor = progressProvider.createMonitor((Job) job, group, ticks);
-			if (monitor == null)
-				monitor = new NullProgressMonitor();
-			return monitor;
+			synchronized (job.jobStateLock) {
+				//group must be set before the job is scheduled
+				//this includes the ABOUT_TO_SCHEDULE state, during which it is still
+				//valid to set the progress monitor
+				if (job.getState() != Job.NONE)
+					return null;
+				IProgressMonitor monitor = null;
+				if (progressProvider != null)
+					monitor = throttle(progressProvider.createMonitor((Job) job, group, ticks));
+				if (monitor == null)
+					monitor = new NullProgressMonitor();
+				return monitor;
+			}
 		}
 	}
 
 	/**
 	 * Returns a new progress monitor for this job.  Never returns null.
-	 * @GuardedBy("lock")
+	 * @GuardedBy("job.jobStateLock")
 	 */
 	private IProgressMonitor createMonitor(Job job) {
 		IProgressMonitor monitor = null;
 		if (progressProvider != null)
-			monitor = progressProvider.createMonitor(job);
+			monitor = throttle(progressProvider.createMonitor(job));
 		if (monitor == null)
 			monitor = new NullProgressMonitor();
 		return monitor;
 	}
 
+	/**
+	 * Returns a monitor that forwards progress to the given monitor of a job at
+	 * most once per progress interval, or null if the given monitor is null.
+	 */
+	private IProgressMonitor throttle(IProgressMonitor monitor) {
+		if (monitor == null || progressInterval <= 0 || monitor.getClass() == NullProgressMonitor.class)
+			return monitor;
+		return new ThrottledProgressMonitor(monitor, progressInterval);
+	}
+
 	@Override
 	public IProgressMonitor createProgressGroup() {
 		if (progressProvider != null)
@@ -532,17 +902,11 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	@Override
 	public Job currentJob() {
-		Thread current = Thread.currentThread();
-		if (current instanceof Worker)
-			return ((Worker) current).currentJob();
-		synchronized (lock) {
-			for (Iterator<InternalJob> it = running.iterator(); it.hasNext();) {
-				Job job = (Job) it.next();
-				if (job.getThread() == current)
-					return job;
-			}
-		}
-		return null;
+		Worker worker = Worker.getCurrent();
+		if (worker != null)
+			return worker.currentJob();
+		InternalJob[] jobs = runningThreads.get(Thread.currentThread());
+		return jobs == null ? null : (Job) jobs[0];
 	}
 
 	@Override
@@ -559,52 +923,161 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	/**
 	 * Returns the delay in milliseconds that a job with a given priority can
-	 * tolerate waiting.
+	 * tolerate waiting. The delay is bounded by the priority aging limit.
 	 */
 	private long delayFor(int priority) {
+		long delay;
 		//these values may need to be tweaked based on machine speed
 		switch (priority) {
 			case Job.INTERACTIVE :
-				return 0L;
+				delay = 0L;
+				break;
 			case Job.SHORT :
-				return 50L;
+				delay = 50L;
+				break;
 			case Job.LONG :
-				return 100L;
+				delay = 100L;
+				break;
 			case Job.BUILD :
-				return 500L;
+				delay = 500L;
+				break;
 			case Job.DECORATE :
-				return 1000L;
+				delay = 1000L;
+				break;
 			default :
 				Assert.isTrue(false, "Job has invalid priority: " + priority); //$NON-NLS-1$
 				return 0;
 		}
+		return priorityAging < 0 ? delay : Math.min(delay, priorityAging);
+	}
+
+	@Override
+	public void setPriorityAging(long aging) {
+		synchronized (lock) {
+			priorityAging = aging;
+		}
+	}
+
+	@Override
+	public void setDeadlineScheduling(boolean enabled) {
+		synchronized (lock) {
+			deadlineScheduling = enabled;
+		}
+	}
+
+	/**
+	 * Sets whether new workers run jobs on virtual threads. Idle workers of the
+	 * other kind end. Returns whether virtual threads are used, which is never
+	 * the case if the running VM does not support them.
+	 * @see IJobManager#PROP_USE_VIRTUAL_THREADS
+	 */
+	public boolean setUseVirtualThreads(boolean enabled) {
+		return pool.setUseVirtualThreads(enabled);
+	}
+
+	/**
+	 * Returns the start time of a job that becomes ready to run at the given time.
+	 * The start time orders the wait queue. It is delayed according to the priority
+	 * of the job, and for jobs of a group, according to the share of the group.
+	 * With deadline scheduling, it is never later than the deadline of the job,
+	 * which must have been set with #getDeadlineTime(InternalJob, long) first.
+	 * @see InternalJobGroup#nextStartTime(InternalJob, long, long, long)
+	 * @GuardedBy("lockFor(job)")
+	 */
+	private long getStartTime(InternalJob job, long now) {
+		long delay = delayFor(job.getPriority());
+		InternalJobGroup jobGroup = job.getJobGroup();
+		long startTime;
+		if (jobGroup == null) {
+			startTime = now + delay;
+		} else {
+			//the share of a busy group must not put its jobs behind jobs of the next lower priority
+			int priority = job.getPriority();
+			long limit = priority == Job.DECORATE ? InternalJob.T_INFINITE : now + delayFor(priority + 10);
+			startTime = jobGroup.nextStartTime(job, now, delay, limit);
+			//the share of a busy group must not hold back its jobs forever either
+			if (priorityAging >= 0)
+				startTime = Math.min(startTime, now + priorityAging);
+		}
+		return capToDeadline(job, startTime);
+	}
+
+	/**
+	 * Returns the given time, or the deadline of the given job if it is earlier
+	 * and deadline scheduling is enabled. The priority of a job acts as its
+	 * implicit deadline, so a deadline can only move a job ahead.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private long capToDeadline(InternalJob job, long time) {
+		long deadlineTime = job.getDeadlineTime();
+		if (!deadlineScheduling || deadlineTime == InternalJob.T_NONE)
+			return time;
+		return Math.min(time, deadlineTime);
+	}
+
+	/**
+	 * Returns the time by which a job that becomes ready to run at the given time
+	 * should be done, or InternalJob.T_NONE if the job has no deadline.
+	 */
+	private static long getDeadlineTime(InternalJob job, long now) {
+		long deadline = job.getDeadline();
+		if (deadline == InternalJob.T_NONE)
+			return InternalJob.T_NONE;
+		return deadline > InternalJob.T_INFINITE - now ? InternalJob.T_INFINITE : now + deadline;
 	}
 
 	/**
 	 * Performs the scheduling of a job.  Does not perform any notifications.
+	 * Returns whether the job was added to the wait queue.
 	 */
-	private void doSchedule(InternalJob job, long delay) {
-		synchronized (lock) {
-			//job may have been canceled already
-			int state = job.internalGetState();
-			if (state != InternalJob.ABOUT_TO_SCHEDULE && state != Job.SLEEPING)
-				return;
-			//if it's a decoration job with no rule, don't run it right now if the system is busy
-			if (job.getPriority() == Job.DECORATE && job.getRule() == null) {
-				long minDelay = running.size() * 100;
-				delay = Math.max(delay, minDelay);
-			}
-			if (delay > 0) {
-				job.setStartTime(System.currentTimeMillis() + delay);
-				changeState(job, Job.SLEEPING);
-			} else {
-				job.setStartTime(System.currentTimeMillis() + delayFor(job.getPriority()));
+	private boolean doSchedule(InternalJob job, long delay) {
+		synchronized (lockFor(job)) {
+			synchronized (job.jobStateLock) {
+				//job may have been canceled already
+				int state = job.internalGetState();
+				if (state != InternalJob.ABOUT_TO_SCHEDULE && state != Job.SLEEPING)
+					return false;
+				//if it's a decoration job with no rule, don't run it right now if the system is busy
+				if (job.getPriority() == Job.DECORATE && job.getRule() == null) {
+					long minDelay = running.size() * 100;
+					delay = Math.max(delay, minDelay);
+				}
+				long now = System.currentTimeMillis();
+				if (delay > 0) {
+					//a sleeping job that is rescheduled has been sleeping since it was put to sleep
+					if (state != Job.SLEEPING)
+						job.setQueueTime(now);
+					changeStateToSleeping(job, now + delay);
+					return false;
+				}
+				job.setQueueTime(now);
+				job.setDeadlineTime(getDeadlineTime(job, now));
+				job.setStartTime(getStartTime(job, now));
 				job.setWaitQueueStamp(waitQueueCounter.increment());
 				changeState(job, Job.WAITING);
+				return true;
 			}
 		}
 	}
 
+	/**
+	 * Puts a job to sleep until the given time. The start time orders the
+	 * sleeping queue, so the start time of a job that is already sleeping is
+	 * only changed while the queue is locked.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private void changeStateToSleeping(InternalJob job, long startTime) {
+		if (job.internalGetState() != Job.SLEEPING) {
+			job.setStartTime(startTime);
+			changeState(job, Job.SLEEPING);
+			return;
+		}
+		synchronized (sleeping) {
+			job.setStartTime(startTime);
+			changeState(job, Job.SLEEPING);
+		}
+	}
+
 	/**
 	 * Shuts down the job manager.  Currently running jobs will be told
 	 * to stop, but worker threads may still continue processing.
@@ -620,8 +1093,18 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 			//cancel all running jobs
 			toCancel = running.toArray(new Job[running.size()]);
 			//discard any jobs that have not yet started running
-			sleeping.clear();
+			synchronized (sleeping) {
+				sleeping.clear();
+				updateNextWakeTime();
+			}
 			waiting.clear();
+			waitingCount = 0;
+			for (int i = 0; i < waitingLanes.length; i++) {
+				synchronized (waitingLanes[i]) {
+					waitingLanes[i].clear();
+				}
+			}
+			waitingLaneCount.set(0);
 		}
 
 		// Give running jobs a chance to finish. Wait 0.1 seconds for up to 3 times.
@@ -661,6 +1144,7 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 			}
 		}
 		internalWorker.cancel();
+		timer.cancel();
 		if (toCancel != null) {
 			for (int i = 0; i < toCancel.length; i++) {
 				String jobName = printJobName(toCancel[i]);
@@ -677,10 +1161,17 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		synchronized (lock) {
 			//discard reference to any jobs still running at this point
 			running.clear();
+			runningRules.clear();
+			blockedRules.clear();
 		}
 
 		pool.shutdown();
 		jobListeners.remove(jobGroupUpdater);
+		try {
+			stopTrace();
+		} catch (IOException e) {
+			RuntimeLog.log(new Status(IStatus.ERROR, PI_JOBS, PLUGIN_ERROR, "Unable to write the job trace", e)); //$NON-NLS-1$
+		}
 	}
 
 	/**
@@ -690,25 +1181,36 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	 */
 	protected void endJob(InternalJob job, IStatus result, boolean notify) {
 		long rescheduleDelay = InternalJob.T_NONE;
-		synchronized (lock) {
-			//if the job is finishing asynchronously, there is nothing more to do for now
-			if (result == Job.ASYNC_FINISH)
-				return;
-			//if job is not known then it cannot be done
-			if (job.getState() == Job.NONE)
-				return;
-			if (JobManager.DEBUG && notify)
-				JobManager.debug("Ending job: " + job); //$NON-NLS-1$
-			job.setResult(result);
-			job.setProgressMonitor(null);
-			job.setThread(null);
-			rescheduleDelay = job.getStartTime();
-			changeState(job, Job.NONE);
+		boolean deadlineMissed;
+		JobFuture future;
+		//if the job is finishing asynchronously, there is nothing more to do for now
+		if (result == Job.ASYNC_FINISH)
+			return;
+		synchronized (lockFor(job)) {
+			synchronized (job.jobStateLock) {
+				//if job is not known then it cannot be done
+				if (job.getState() == Job.NONE)
+					return;
+				if (JobManager.DEBUG && notify)
+					JobManager.debug("Ending job: " + job); //$NON-NLS-1$
+				job.setResult(result);
+				job.setProgressMonitor(null);
+				job.setThread(null);
+				rescheduleDelay = job.getStartTime();
+				long deadlineTime = job.getDeadlineTime();
+				deadlineMissed = deadlineTime != InternalJob.T_NONE && System.currentTimeMillis() > deadlineTime;
+				job.setDeadlineMissed(deadlineMissed);
+				changeState(job, Job.NONE);
+				future = job.takeFuture();
+			}
 		}
 		//notify listeners outside sync block
 		final boolean reschedule = active && rescheduleDelay > InternalJob.T_NONE && job.shouldSchedule();
 		if (notify)
-			jobListeners.done((Job) job, result, reschedule);
+			jobListeners.done((Job) job, result, reschedule, deadlineMissed);
+		//complete the future after the listeners, so the job group result is known when it is a group member
+		if (future != null)
+			future.complete(result);
 		//reschedule the job if requested and we are still active
 		if (reschedule)
 			schedule(job, rescheduleDelay, reschedule);
@@ -729,6 +1231,32 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		return members.toArray(new Job[members.size()]);
 	}
 
+	@Override
+	public IJobMetrics getMetrics() {
+		return metrics.getSnapshot(pool);
+	}
+
+	@Override
+	public IJobManagerSnapshot snapshot() {
+		long time;
+		List<IJobSnapshot> jobs;
+		synchronized (lock) {
+			time = System.currentTimeMillis();
+			long now = System.nanoTime();
+			List<InternalJob> members = selectAll(Job.WAITING | Job.SLEEPING | Job.RUNNING);
+			jobs = new ArrayList<>(members.size());
+			for (InternalJob job : members) {
+				synchronized (job.jobStateLock) {
+					//an independent job may have been done since it was selected
+					if (job.getState() != Job.NONE)
+						jobs.add(new JobManagerSnapshot.JobEntry(job, time, now));
+				}
+			}
+		}
+		//copy the locks without holding the job manager lock, see LockManager
+		return new JobManagerSnapshot(time, jobs, lockManager.snapshot(System.nanoTime()));
+	}
+
 	List<Job> find(InternalJobGroup jobGroup) {
 		Assert.isLegal(jobGroup != null, "jobGroup should not be null"); //$NON-NLS-1$
 		synchronized (lock) {
@@ -746,33 +1274,13 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		if (waitingJob.getRule() == null)
 			return null;
 		synchronized (lock) {
-			if (running.isEmpty())
-				return null;
-			//check the running jobs
-			boolean hasBlockedJobs = false;
-			for (Iterator<InternalJob> it = running.iterator(); it.hasNext();) {
-				InternalJob job = it.next();
-				if (waitingJob.isConflicting(job))
-					return job;
-				if (!hasBlockedJobs)
-					hasBlockedJobs = job.previous() != null;
-			}
-			//there are no blocked jobs, so we are done
-			if (!hasBlockedJobs)
-				return null;
-			//check all jobs blocked by running jobs
-			for (Iterator<InternalJob> it = running.iterator(); it.hasNext();) {
-				InternalJob job = it.next();
-				while (true) {
-					job = job.previous();
-					if (job == null)
-						break;
-					if (waitingJob.isConflicting(job))
-						return job;
-				}
-			}
+			//check the running jobs first
+			InternalJob blocker = runningRules.findConflicting(waitingJob);
+			if (blocker != null)
+				return blocker;
+			//then all jobs blocked by running jobs
+			return blockedRules.findConflicting(waitingJob);
 		}
-		return null;
 	}
 
 	/**
@@ -828,6 +1336,9 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	 * job.
 	 */
 	protected boolean isBlocking(InternalJob runningJob) {
+		//a job without a rule conflicts with no other job
+		if (runningJob.getRule() == null)
+			return false;
 		synchronized (lock) {
 			// if this job isn't running, it can't be blocking anyone
 			if (runningJob.getState() != Job.RUNNING)
@@ -859,15 +1370,13 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	@Override
 	public boolean isIdle() {
 		synchronized (lock) {
-			return running.isEmpty() && waiting.isEmpty();
+			return running.isEmpty() && waitingCount == 0 && waitingLaneCount.get() == 0;
 		}
 	}
 
 	@Override
 	public boolean isSuspended() {
-		synchronized (lock) {
-			return suspended;
-		}
+		return suspended;
 	}
 
 	protected boolean join(InternalJob job, long timeout, IProgressMonitor monitor) throws InterruptedException {
@@ -884,24 +1393,27 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		final IJobChangeListener listener;
 		final Semaphore barrier;
 		synchronized (lock) {
-			int state = job.getState();
-			if (state == Job.NONE)
-				return true;
-			//don't join a waiting or sleeping job when suspended (deadlock risk)
-			if (suspended && state != Job.RUNNING)
-				return true;
-			//it's an error for a job to join itself
-			if (state == Job.RUNNING && job.getThread() == Thread.currentThread())
-				throw new IllegalStateException("Job attempted to join itself"); //$NON-NLS-1$
-			//the semaphore will be released when the job is done
-			barrier = new Semaphore(null);
-			listener = new JobChangeAdapter() {
-				@Override
-				public void done(IJobChangeEvent event) {
-					barrier.release();
-				}
-			};
-			job.addJobChangeListener(listener);
+			//the job must not be done before the listener is added
+			synchronized (job.jobStateLock) {
+				int state = job.getState();
+				if (state == Job.NONE)
+					return true;
+				//don't join a waiting or sleeping job when suspended (deadlock risk)
+				if (suspended && state != Job.RUNNING)
+					return true;
+				//it's an error for a job to join itself
+				if (state == Job.RUNNING && job.getThread() == Thread.currentThread())
+					throw new IllegalStateException("Job attempted to join itself"); //$NON-NLS-1$
+				//the semaphore will be released when the job is done
+				barrier = new Semaphore(null);
+				listener = new JobChangeAdapter() {
+					@Override
+					public void done(IJobChangeEvent event) {
+						barrier.release();
+					}
+				};
+				job.addJobChangeListener(listener);
+			}
 		}
 
 		//wait until listener notifies this thread.
@@ -942,51 +1454,76 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	@Override
 	public void join(final Object family, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException {
 		monitor = monitorFor(monitor);
-		IJobChangeListener listener = null;
-		final Set<InternalJob> jobs;
-		int jobCount;
-		Job blocking = null;
-		synchronized (lock) {
-			//don't join a waiting or sleeping job when suspended (deadlock risk)
-			int states = suspended ? Job.RUNNING : Job.RUNNING | Job.WAITING | Job.SLEEPING;
-			jobs = Collections.synchronizedSet(new HashSet<>(select(family, states)));
-			jobCount = jobs.size();
-			if (jobCount > 0) {
-				//if there is only one blocking job, use it in the blockage callback below
-				if (jobCount == 1)
-					blocking = (Job) jobs.iterator().next();
-				listener = new JobChangeAdapter() {
-					@Override
-					public void done(IJobChangeEvent event) {
-						//don't remove from list if job is being rescheduled
-						if (!((JobChangeEvent) event).reschedule)
-							jobs.remove(event.getJob());
+		final Set<InternalJob> jobs = Collections.synchronizedSet(new HashSet<>());
+		//the jobs that are done for good while the jobs are selected
+		final Set<InternalJob> finished = new HashSet<>();
+		final boolean[] selecting = new boolean[] {true};
+		//jobs without rule and group are done without holding the lock, so the
+		//listener must be added before the jobs are selected
+		IJobChangeListener listener = new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				//don't remove from list if job is being rescheduled
+				if (!((JobChangeEvent) event).reschedule) {
+					//wake up the joining thread, which waits on the list
+					synchronized (jobs) {
+						jobs.remove(event.getJob());
+						if (selecting[0])
+							finished.add(event.getJob());
+						jobs.notifyAll();
 					}
+				}
+			}
 
-					//update the list of jobs if new ones are started during the join
-					@Override
-					public void running(IJobChangeEvent event) {
-						Job job = event.getJob();
-						if (family == null || job.belongsTo(family))
-							jobs.add(job);
-					}
+			//update the list of jobs if new ones are started during the join
+			@Override
+			public void running(IJobChangeEvent event) {
+				InternalJob job = event.getJob();
+				if (family == null || job.isMemberOf(family))
+					jobs.add(job);
+			}
 
-					//update the list of jobs if new ones are scheduled during the join
-					@Override
-					public void scheduled(IJobChangeEvent event) {
-						//don't add to list if job is being rescheduled
-						if (((JobChangeEvent) event).reschedule)
-							return;
-						//if job manager is suspended we only wait for running jobs
-						if (isSuspended())
-							return;
-						Job job = event.getJob();
-						if (family == null || job.belongsTo(family))
-							jobs.add(job);
-					}
-				};
-				addJobChangeListener(listener);
+			//update the list of jobs if new ones are scheduled during the join
+			@Override
+			public void scheduled(IJobChangeEvent event) {
+				//don't add to list if job is being rescheduled
+				if (((JobChangeEvent) event).reschedule)
+					return;
+				//if job manager is suspended we only wait for running jobs
+				if (isSuspended())
+					return;
+				InternalJob job = event.getJob();
+				if (family == null || job.isMemberOf(family))
+					jobs.add(job);
+			}
+		};
+		addJobChangeListener(listener);
+		int jobCount = 0;
+		Job blocking = null;
+		try {
+			List<InternalJob> members;
+			synchronized (lock) {
+				//don't join a waiting or sleeping job when suspended (deadlock risk)
+				int states = suspended ? Job.RUNNING : Job.RUNNING | Job.WAITING | Job.SLEEPING;
+				members = select(family, states);
+			}
+			synchronized (jobs) {
+				//leave out the jobs that were done after they were selected, but
+				//not those that are only between two runs
+				for (InternalJob job : members) {
+					if (!finished.contains(job))
+						jobs.add(job);
+				}
+				selecting[0] = false;
+				finished.clear();
+				jobCount = jobs.size();
+				//if there is only one blocking job, use it in the blockage callback below
+				if (jobCount == 1)
+					blocking = (Job) jobs.iterator().next();
 			}
+		} finally {
+			if (jobCount == 0)
+				removeJobChangeListener(listener);
 		}
 		if (jobCount == 0) {
 			//use up the monitor outside synchronized block because monitors call untrusted code
@@ -1016,7 +1553,11 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 					throw new OperationCanceledException();
 				//notify hook to service pending syncExecs before falling asleep
 				lockManager.aboutToWait(null);
-				Thread.sleep(100);
+				//wait until a job is done, but keep checking the monitor for cancelation
+				synchronized (jobs) {
+					if (jobs.size() == jobsLeft)
+						jobs.wait(MAX_WAIT_INTERVAL);
+				}
 			}
 		} finally {
 			lockManager.aboutToRelease();
@@ -1099,56 +1640,93 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		return lockManager.newLock();
 	}
 
+	@Override
+	public IReadWriteLock newReadWriteLock() {
+		return lockManager.newReadWriteLock();
+	}
+
 	/**
 	 * Removes and returns the first waiting job in the queue which is ready to run.
 	 * Returns null if there are no items waiting in the queue.  If an item is
 	 * removed from the queue, it is moved to the running jobs list.
 	 */
 	private Job nextJob() {
-		synchronized (lock) {
-			// do nothing if the job manager is suspended
-			if (suspended)
+		while (true) {
+			// avoid taking the lock when there is obviously nothing to do
+			if (suspended || (waitingCount == 0 && waitingLaneCount.get() == 0))
 				return null;
-			// tickle the sleep queue to see if anyone wakes up
-			long now = System.currentTimeMillis();
-			InternalJob job = sleeping.peek();
-			while (job != null && job.getStartTime() < now) {
-				job.setStartTime(now + delayFor(job.getPriority()));
-				job.setWaitQueueStamp(waitQueueCounter.increment());
-				changeState(job, Job.WAITING);
-				job = sleeping.peek();
-			}
-			InternalJobGroup jobGroup = null;
-			// process the wait queue until we find a job whose rules are satisfied.
-			job = waiting.peek();
-			while (job != null) {
-				InternalJob blocker = findBlockingJob(job);
-				jobGroup = job.getJobGroup();
-				// previous() method returns the next job in the queue.
-				InternalJob nextWaitingJob = job.previous();
-				if (blocker != null) {
-					// queue this job after the job that's blocking it
-					changeState(job, InternalJob.BLOCKED);
-					// assert job does not already belong to some other data structure
-					Assert.isTrue(job.next() == null);
-					Assert.isTrue(job.previous() == null);
-					blocker.addLast(job);
-
-				} else if (jobGroup == null || jobGroup.getMaxThreads() == 0 || (jobGroup.getState() != JobGroup.CANCELING && jobGroup.getRunningJobsCount() < jobGroup.getMaxThreads())) {
-					break;
+			InternalJob laneJob;
+			if (waitingCount == 0) {
+				// only independent jobs are waiting, they are started without the lock
+				laneJob = peekWaitingLanes();
+			} else {
+				synchronized (lock) {
+					// do nothing if the job manager is suspended
+					if (suspended)
+						return null;
+					// sleeping jobs are moved to the wait queue by the timer
+					InternalJobGroup jobGroup = null;
+					// jobs without rule and group can always run, so only the first one matters
+					laneJob = peekWaitingLanes();
+					// process the wait queue until we find a job whose rules are satisfied.
+					InternalJob job = waiting.peek();
+					while (job != null) {
+						if (laneJob != null && isBefore(laneJob, job)) {
+							job = null;
+							break;
+						}
+						InternalJob blocker = findBlockingJob(job);
+						jobGroup = job.getJobGroup();
+						// previous() method returns the next job in the queue.
+						InternalJob nextWaitingJob = job.previous();
+						if (blocker != null) {
+							// queue this job after the job that's blocking it
+							changeState(job, InternalJob.BLOCKED);
+							// assert job does not already belong to some other data structure
+							Assert.isTrue(job.next() == null);
+							Assert.isTrue(job.previous() == null);
+							blocker.addLast(job);
+
+						} else if (!isThrottled(jobGroup)) {
+							break;
+						}
+						// skip this job as either this job is blocked on another job or
+						// the maximum number of jobs from the same group are already running.
+						job = nextWaitingJob == waiting.dummy ? null : nextWaitingJob;
+					}
+					// the job to run must be in the running list before we exit
+					// the sync block, otherwise two jobs with conflicting rules could start at once
+					if (job != null) {
+						changeState(job, InternalJob.ABOUT_TO_RUN);
+						if (JobManager.DEBUG)
+							JobManager.debug("Starting job: " + job); //$NON-NLS-1$
+						return (Job) job;
+					}
 				}
-				// skip this job as either this job is blocked on another job or
-				// the maximum number of jobs from the same group are already running.
-				job = nextWaitingJob == waiting.dummy ? null : nextWaitingJob;
-			}
-			// the job to run must be in the running list before we exit
-			// the sync block, otherwise two jobs with conflicting rules could start at once
-			if (job != null) {
-				changeState(job, InternalJob.ABOUT_TO_RUN);
+			}
+			if (laneJob == null)
+				return null;
+			if (startWaitingLaneJob(laneJob)) {
 				if (JobManager.DEBUG)
-					JobManager.debug("Starting job: " + job); //$NON-NLS-1$
+					JobManager.debug("Starting job: " + laneJob); //$NON-NLS-1$
+				return (Job) laneJob;
 			}
-			return (Job) job;
+			// another worker started the job first, or it was canceled or put to sleep
+		}
+	}
+
+	/**
+	 * Moves the given job from a wait lane to the running jobs, unless it left the
+	 * lane since it was found there, or the job manager is suspended. Returns
+	 * whether the job was moved.
+	 */
+	private boolean startWaitingLaneJob(InternalJob job) {
+		synchronized (job.jobStateLock) {
+			// the job may have been rescheduled with a rule or group meanwhile
+			if (suspended || job.internalGetState() != Job.WAITING || job.getWaitLane() < 0)
+				return false;
+			changeState(job, InternalJob.ABOUT_TO_RUN);
+			return true;
 		}
 	}
 
@@ -1208,6 +1786,8 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 			suspended = false;
 			//poke the job pool
 			pool.jobQueued();
+			//sleeping jobs may have become due while suspended
+			timer.wakeTimeChanged(nextWakeTime);
 		}
 	}
 
@@ -1247,6 +1827,12 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 				// atomically release waiting
 				implicitJobs.removeWaiting(job);
 			}
+		} else {
+			//remember how often the blocking job has notified its waiters, so that
+			//the thread job can tell whether it must still wait for it
+			synchronized (blocking.jobStateLock) {
+				job.blockerNotifications = blocking.getStateNotifications();
+			}
 		}
 		return blocking;
 	}
@@ -1256,20 +1842,22 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 			throw new IllegalStateException("Job manager has been shut down."); //$NON-NLS-1$
 		Assert.isNotNull(job, "Job is null"); //$NON-NLS-1$
 		Assert.isLegal(delay >= 0, "Scheduling delay is negative"); //$NON-NLS-1$
-		synchronized (lock) {
-			//if the job is already running, set it to be rescheduled when done
-			if (job.getState() == Job.RUNNING) {
-				job.setStartTime(delay);
-				return;
+		synchronized (lockFor(job)) {
+			synchronized (job.jobStateLock) {
+				//if the job is already running, set it to be rescheduled when done
+				if (job.getState() == Job.RUNNING) {
+					job.setStartTime(delay);
+					return;
+				}
+				//can't schedule a job that is waiting or sleeping
+				if (job.internalGetState() != Job.NONE)
+					return;
+				if (JobManager.DEBUG)
+					JobManager.debug("Scheduling job: " + job); //$NON-NLS-1$
+				//remember that we are about to schedule the job
+				//to prevent multiple schedule attempts from succeeding (bug 68452)
+				changeState(job, InternalJob.ABOUT_TO_SCHEDULE);
 			}
-			//can't schedule a job that is waiting or sleeping
-			if (job.internalGetState() != Job.NONE)
-				return;
-			if (JobManager.DEBUG)
-				JobManager.debug("Scheduling job: " + job); //$NON-NLS-1$
-			//remember that we are about to schedule the job
-			//to prevent multiple schedule attempts from succeeding (bug 68452)
-			changeState(job, InternalJob.ABOUT_TO_SCHEDULE);
 		}
 		//notify listeners outside sync block
 		jobListeners.scheduled((Job) job, delay, reschedule);
@@ -1280,15 +1868,138 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	}
 
 	/**
-	 * Adds all family members in the list of jobs to the collection
+	 * Schedules a job, merging the request with the pending run of the job if
+	 * there is one. A merged request never notifies listeners and never moves
+	 * the job in the wait queue. In trailing mode, the wake up time of a sleeping
+	 * job is pushed back to the given delay from now, which only re-shuffles the
+	 * sleep queue. In leading mode, a job that is not scheduled yet runs right
+	 * away, and the pending run absorbs later requests as is.
+	 * @see InternalJob#scheduleCoalesced(long, boolean)
+	 */
+	protected void scheduleCoalesced(InternalJob job, long delay, boolean leading) {
+		if (!active)
+			throw new IllegalStateException("Job manager has been shut down."); //$NON-NLS-1$
+		Assert.isNotNull(job, "Job is null"); //$NON-NLS-1$
+		Assert.isLegal(delay >= 0, "Scheduling delay is negative"); //$NON-NLS-1$
+		synchronized (lock) {
+			synchronized (job.jobStateLock) {
+				switch (job.internalGetState()) {
+					case Job.NONE :
+						break;
+					case Job.RUNNING :
+						//run again once the current run is done, like schedule does
+						job.setStartTime(delay);
+						return;
+					case Job.SLEEPING :
+						//jobs that were put to sleep stay asleep until woken up
+						if (leading || job.getStartTime() == InternalJob.T_INFINITE)
+							return;
+						if (JobManager.DEBUG)
+							JobManager.debug("Coalescing job: " + job); //$NON-NLS-1$
+						synchronized (sleeping) {
+							job.setStartTime(System.currentTimeMillis() + delay);
+							sleeping.resort(job);
+							updateNextWakeTime();
+						}
+						return;
+					default :
+						//the job is waiting, blocked or about to run: the pending run absorbs the request
+						return;
+				}
+			}
+		}
+		//nothing to merge with, schedule the job normally
+		schedule(job, leading ? 0 : delay, false);
+	}
+
+	@Override
+	public void schedule(Collection<? extends Job> jobs, long delay) {
+		Assert.isNotNull(jobs, "Jobs are null"); //$NON-NLS-1$
+		schedule(jobs.toArray(new InternalJob[jobs.size()]), delay);
+	}
+
+	/**
+	 * Adds the given jobs to the given job group and schedules them. All jobs
+	 * are checked before any of them is added to the group, so that no job is
+	 * moved to the group if one of them cannot be.
+	 */
+	void schedule(InternalJobGroup jobGroup, Collection<? extends Job> jobs, long delay) {
+		Assert.isNotNull(jobs, "Jobs are null"); //$NON-NLS-1$
+		Assert.isLegal(delay >= 0, "Scheduling delay is negative"); //$NON-NLS-1$
+		InternalJob[] toSchedule = jobs.toArray(new InternalJob[jobs.size()]);
+		for (int i = 0; i < toSchedule.length; i++) {
+			Assert.isNotNull(toSchedule[i], "Job is null"); //$NON-NLS-1$
+			if (toSchedule[i].getState() != Job.NONE)
+				throw new IllegalStateException("Setting job group of an already scheduled job is not allowed"); //$NON-NLS-1$
+		}
+		for (int i = 0; i < toSchedule.length; i++)
+			toSchedule[i].setJobGroup((JobGroup) jobGroup);
+		schedule(toSchedule, delay);
+	}
+
+	/**
+	 * Schedules all the given jobs, taking the lock and notifying the worker
+	 * pool only once for all of them.
+	 */
+	private void schedule(InternalJob[] jobs, long delay) {
+		if (!active)
+			throw new IllegalStateException("Job manager has been shut down."); //$NON-NLS-1$
+		Assert.isLegal(delay >= 0, "Scheduling delay is negative"); //$NON-NLS-1$
+		//must call shouldSchedule outside sync block because it is third party code
+		boolean[] shouldSchedule = new boolean[jobs.length];
+		for (int i = 0; i < jobs.length; i++) {
+			Assert.isNotNull(jobs[i], "Job is null"); //$NON-NLS-1$
+			shouldSchedule[i] = jobs[i].shouldSchedule();
+		}
+		int count = 0;
+		synchronized (lock) {
+			for (int i = 0; i < jobs.length; i++) {
+				InternalJob job = jobs[i];
+				if (!shouldSchedule[i])
+					continue;
+				synchronized (job.jobStateLock) {
+					//if the job is already running, set it to be rescheduled when done
+					if (job.getState() == Job.RUNNING) {
+						job.setStartTime(delay);
+						continue;
+					}
+					//can't schedule a job that is waiting or sleeping
+					if (job.internalGetState() != Job.NONE)
+						continue;
+					if (JobManager.DEBUG)
+						JobManager.debug("Scheduling job: " + job); //$NON-NLS-1$
+					changeState(job, InternalJob.ABOUT_TO_SCHEDULE);
+				}
+				//compact the array to the jobs that are being scheduled
+				jobs[count++] = job;
+			}
+		}
+		//notify listeners outside sync block
+		for (int i = 0; i < count; i++)
+			jobListeners.scheduled((Job) jobs[i], delay, false);
+		int waitingJobs = 0;
+		synchronized (lock) {
+			for (int i = 0; i < count; i++) {
+				if (doSchedule(jobs[i], delay))
+					waitingJobs++;
+			}
+		}
+		//call the pool outside sync block to avoid deadlock
+		if (waitingJobs > 0)
+			pool.jobQueued(waitingJobs);
+	}
+
+	/**
+	 * Adds the jobs in the list of jobs starting at the given job that are in one
+	 * of the provided states to the collection
 	 */
-	private void select(List<InternalJob> members, Object family, InternalJob firstJob, int stateMask) {
+	private void select(List<InternalJob> members, InternalJob firstJob, int stateMask) {
 		if (firstJob == null)
 			return;
 		InternalJob job = firstJob;
 		do {
 			//note that job state cannot be NONE at this point
-			if ((family == null || job.belongsTo(family)) && ((job.getState() & stateMask) != 0))
+			if ((job.getState() & stateMask) != 0)
 				members.add(job);
 			job = job.previous();
 		} while (job != null && job != firstJob);
@@ -1306,21 +2017,79 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	 * family and are in one of the provided states.
 	 */
 	private List<InternalJob> select(Object family, int stateMask) {
+		if (family == null)
+			return selectAll(stateMask);
 		List<InternalJob> members = new ArrayList<>();
 		synchronized (lock) {
+			Set<InternalJob> declared = familyIndex.get(family);
+			if (declared != null) {
+				for (Iterator<InternalJob> it = declared.iterator(); it.hasNext();) {
+					InternalJob job = it.next();
+					if ((job.getState() & stateMask) != 0)
+						members.add(job);
+				}
+			}
+			//jobs that did not declare their families must be asked
+			for (Iterator<InternalJob> it = undeclaredFamilies.iterator(); it.hasNext();) {
+				InternalJob job = it.next();
+				if ((job.getState() & stateMask) != 0 && job.belongsTo(family))
+					members.add(job);
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Returns a list of all jobs known to the job manager that are in one of
+	 * the provided states. A job that stays scheduled while the jobs are
+	 * selected is listed exactly once.
+	 */
+	private List<InternalJob> selectAll(int stateMask) {
+		List<InternalJob> members = new ArrayList<>();
+		synchronized (lock) {
+			//independent jobs change state without the lock, so each of them is
+			//checked on its own, and listed with the jobs of the same state
+			List<InternalJob> independentRunning = new ArrayList<>();
+			List<InternalJob> independentWaiting = new ArrayList<>();
+			List<InternalJob> independentSleeping = new ArrayList<>();
+			for (Iterator<InternalJob> it = independentJobs.iterator(); it.hasNext();) {
+				InternalJob job = it.next();
+				int state = job.getState();
+				if ((state & stateMask) == 0)
+					continue;
+				if (state == Job.RUNNING)
+					independentRunning.add(job);
+				else if (state == Job.WAITING)
+					independentWaiting.add(job);
+				else
+					independentSleeping.add(job);
+			}
 			if ((stateMask & Job.RUNNING) != 0) {
 				for (Iterator<InternalJob> it = running.iterator(); it.hasNext();) {
-					select(members, family, it.next(), stateMask);
+					InternalJob job = it.next();
+					if (!isIndependent(job))
+						select(members, job, stateMask);
 				}
+				members.addAll(independentRunning);
 			}
 			if ((stateMask & Job.WAITING) != 0) {
-				select(members, family, waiting.peek(), stateMask);
+				select(members, waiting.peek(), stateMask);
+				members.addAll(independentWaiting);
 				for (Iterator<InternalJob> it = yielding.iterator(); it.hasNext();) {
-					select(members, family, it.next(), stateMask);
+					select(members, it.next(), stateMask);
+				}
+			}
+			if ((stateMask & Job.SLEEPING) != 0) {
+				//a heap based queue cannot be walked through the job links
+				synchronized (sleeping) {
+					for (Iterator it = sleeping.iterator(); it.hasNext();) {
+						InternalJob job = (InternalJob) it.next();
+						if (!isIndependent(job))
+							select(members, job, stateMask);
+					}
 				}
+				members.addAll(independentSleeping);
 			}
-			if ((stateMask & Job.SLEEPING) != 0)
-				select(members, family, sleeping.peek(), stateMask);
 		}
 		return members;
 	}
@@ -1330,20 +2099,82 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		lockManager.setLockListener(listener);
 	}
 
+	@Override
+	public void setMetricsEnabled(boolean enabled) {
+		metrics.setEnabled(enabled);
+	}
+
+	/**
+	 * Starts recording all job state changes to the given stream, which is closed
+	 * once the trace is stopped. Stops the trace that was recorded so far, if any.
+	 * @see JobTrace
+	 */
+	public void startTrace(OutputStream output) throws IOException {
+		JobTrace newTrace = new JobTrace(output);
+		JobTrace oldTrace;
+		synchronized (lock) {
+			oldTrace = trace;
+			trace = newTrace;
+		}
+		//the writer of the old trace is drained without holding the lock
+		if (oldTrace != null)
+			oldTrace.close();
+	}
+
+	/**
+	 * Stops recording job state changes, writes the state changes recorded so
+	 * far, and closes the trace stream.
+	 */
+	public void stopTrace() throws IOException {
+		JobTrace oldTrace;
+		synchronized (lock) {
+			oldTrace = trace;
+			trace = null;
+		}
+		if (oldTrace != null)
+			oldTrace.close();
+	}
+
+	/**
+	 * Implementation of Job#setThread. Keeps the threads of running jobs
+	 * up to date for currentJob().
+	 */
+	void setThread(InternalJob job, Thread thread) {
+		//changeState holds the job state lock while it moves a job in or out
+		//of the running state, so the global lock is not needed here
+		synchronized (job.jobStateLock) {
+			Thread oldThread = job.getThread();
+			if (oldThread == thread)
+				return;
+			int state = job.internalGetState();
+			boolean isRunning = state == Job.RUNNING || state == InternalJob.ABOUT_TO_RUN;
+			if (isRunning)
+				removeRunningThread(job, oldThread);
+			job.internalSetThread(thread);
+			if (isRunning)
+				addRunningThread(job, thread);
+		}
+	}
+
 	/**
 	 * Changes a job priority.
 	 */
 	protected void setPriority(InternalJob job, int newPriority) {
 		synchronized (lock) {
-			int oldPriority = job.getPriority();
-			if (oldPriority == newPriority)
-				return;
-			job.internalSetPriority(newPriority);
-			//if the job is waiting to run, re-shuffle the queue
-			if (job.getState() == Job.WAITING) {
-				long oldStart = job.getStartTime();
-				job.setStartTime(oldStart + (delayFor(newPriority) - delayFor(oldPriority)));
-				waiting.resort(job);
+			synchronized (job.jobStateLock) {
+				int oldPriority = job.getPriority();
+				if (oldPriority == newPriority)
+					return;
+				//if the job is waiting to run, re-shuffle the queue
+				if (job.internalGetState() == Job.WAITING) {
+					dequeueWaiting(job);
+					job.internalSetPriority(newPriority);
+					long oldStart = job.getStartTime();
+					job.setStartTime(capToDeadline(job, oldStart + (delayFor(newPriority) - delayFor(oldPriority))));
+					enqueueWaiting(job);
+				} else {
+					job.internalSetPriority(newPriority);
+				}
 			}
 		}
 	}
@@ -1355,10 +2186,12 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	public void setRule(InternalJob job, ISchedulingRule rule) {
 		synchronized (lock) {
-			//cannot change the rule of a job that is already running
-			Assert.isLegal(job.getState() == Job.NONE);
-			validateRule(rule);
-			job.internalSetRule(rule);
+			synchronized (job.jobStateLock) {
+				//cannot change the rule of a job that is already running
+				Assert.isLegal(job.getState() == Job.NONE);
+				validateRule(rule);
+				job.internalSetRule(rule);
+			}
 		}
 	}
 
@@ -1367,27 +2200,27 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	 */
 	protected boolean sleep(InternalJob job) {
 		synchronized (lock) {
-			switch (job.getState()) {
-				case Job.RUNNING :
-					//cannot be paused if it is already running (as opposed to ABOUT_TO_RUN)
-					if (job.internalGetState() == Job.RUNNING)
-						return false;
-					//job hasn't started running yet (aboutToRun listener)
-					break;
-				case Job.SLEEPING :
-					//update the job wake time
-					job.setStartTime(InternalJob.T_INFINITE);
-					//change state again to re-shuffle the sleep queue
-					changeState(job, Job.SLEEPING);
-					return true;
-				case Job.NONE :
-					return true;
-				case Job.WAITING :
-					//put the job to sleep
-					break;
+			synchronized (job.jobStateLock) {
+				switch (job.getState()) {
+					case Job.RUNNING :
+						//cannot be paused if it is already running (as opposed to ABOUT_TO_RUN)
+						if (job.internalGetState() == Job.RUNNING)
+							return false;
+						//job hasn't started running yet (aboutToRun listener)
+						break;
+					case Job.SLEEPING :
+						//update the job wake time, and change state again to re-shuffle the sleep queue
+						changeStateToSleeping(job, InternalJob.T_INFINITE);
+						return true;
+					case Job.NONE :
+						return true;
+					case Job.WAITING :
+						//put the job to sleep
+						break;
+				}
+				job.setQueueTime(System.currentTimeMillis());
+				changeStateToSleeping(job, InternalJob.T_INFINITE);
 			}
-			job.setStartTime(InternalJob.T_INFINITE);
-			changeState(job, Job.SLEEPING);
 		}
 		jobListeners.sleeping((Job) job);
 		return true;
@@ -1402,23 +2235,225 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 	}
 
 	/**
-	 * Returns the estimated time in milliseconds before the next job is scheduled
-	 * to wake up. The result may be negative.  Returns InternalJob.T_INFINITE if
-	 * there are no sleeping or waiting jobs.
+	 * Adds a job that becomes waiting to its wait queue: the lane of its
+	 * priority if it is independent, and the shared wait queue otherwise. The
+	 * choice is recorded on the job, so that the job is later removed from the
+	 * same queue. The caller must also hold the lock unless the job is independent.
+	 * @GuardedBy("job.jobStateLock")
 	 */
-	protected long sleepHint() {
+	private void enqueueWaiting(InternalJob job) {
+		if (!isIndependent(job)) {
+			job.setWaitLane(-1);
+			waiting.enqueue(job);
+			waitingCount++;
+			return;
+		}
+		int lane = job.getPriority() / 10 - 1;
+		job.setWaitLane(lane);
+		synchronized (waitingLanes[lane]) {
+			waitingLanes[lane].enqueue(job);
+		}
+		waitingLaneCount.incrementAndGet();
+	}
+
+	/**
+	 * Removes a waiting job from the queue enqueueWaiting added it to. The caller
+	 * must also hold the lock unless the job is in a wait lane.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	private void dequeueWaiting(InternalJob job) {
+		int lane = job.getWaitLane();
+		if (lane < 0) {
+			waiting.remove(job);
+			waitingCount--;
+			return;
+		}
+		synchronized (waitingLanes[lane]) {
+			waitingLanes[lane].remove(job);
+		}
+		job.setWaitLane(-1);
+		waitingLaneCount.decrementAndGet();
+	}
+
+	/**
+	 * Returns whether the first waiting job should run before the second one.
+	 * Jobs run in order of start time, and in order of insertion into the wait
+	 * queue if their start times are equal.
+	 */
+	private static boolean isBefore(InternalJob first, InternalJob second) {
+		if (first.getStartTime() != second.getStartTime())
+			return first.getStartTime() < second.getStartTime();
+		return first.getWaitQueueStamp() < second.getWaitQueueStamp();
+	}
+
+	/**
+	 * Returns the independent waiting job that should run first, or null if
+	 * there is none. The lanes are peeked one at a time, so the result is only
+	 * a hint: the job may have left its lane since, which startWaitingLaneJob
+	 * checks under the state lock of the job.
+	 */
+	private InternalJob peekWaitingLanes() {
+		InternalJob first = null;
+		long firstStart = 0, firstStamp = 0;
+		for (int i = 0; i < waitingLanes.length; i++) {
+			synchronized (waitingLanes[i]) {
+				InternalJob job = waitingLanes[i].peek();
+				if (job == null)
+					continue;
+				long start = job.getStartTime(), stamp = job.getWaitQueueStamp();
+				if (first == null || start < firstStart || (start == firstStart && stamp < firstStamp)) {
+					first = job;
+					firstStart = start;
+					firstStamp = stamp;
+				}
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the time after which the first waiting job is late, and a new worker
+	 * should be created for it if the given number of workers are all busy. Jobs are
+	 * late once they have waited longer than the delay of their priority. Jobs of the
+	 * processor bound priorities wait longer the more the processors are
+	 * oversubscribed. Returns InternalJob.T_INFINITE if there are no waiting jobs.
+	 */
+	long getGrowthTime(int threads) {
 		synchronized (lock) {
-			//wait forever if job manager is suspended
 			if (suspended)
 				return InternalJob.T_INFINITE;
-			if (!waiting.isEmpty())
-				return 0L;
-			//return the anticipated time that the next sleeping job will wake
-			InternalJob next = sleeping.peek();
-			if (next == null)
-				return InternalJob.T_INFINITE;
-			return next.getStartTime() - System.currentTimeMillis();
+			long growthTime = InternalJob.T_INFINITE;
+			//skip the jobs that nextJob would not start either. Later jobs start
+			//no earlier, so stop once they cannot beat the best time found
+			InternalJob job = waiting.peek();
+			while (job != null && job.getStartTime() < growthTime) {
+				if (findBlockingJob(job) == null && !isThrottled(job.getJobGroup()))
+					growthTime = Math.min(growthTime, getGrowthTime(job, threads));
+				InternalJob next = job.previous();
+				job = next == waiting.dummy ? null : next;
+			}
+			return Math.min(growthTime, getLaneGrowthTime(threads));
+		}
+	}
+
+	/**
+	 * Returns the time after which the first independent waiting job is late,
+	 * see #getGrowthTime(int).
+	 */
+	private long getLaneGrowthTime(int threads) {
+		long growthTime = InternalJob.T_INFINITE;
+		for (int i = 0; i < waitingLanes.length; i++) {
+			synchronized (waitingLanes[i]) {
+				InternalJob job = waitingLanes[i].peek();
+				if (job != null)
+					growthTime = Math.min(growthTime, getGrowthTime(job, threads));
+			}
+		}
+		return growthTime;
+	}
+
+	/**
+	 * Returns whether the given job group, if any, already runs as many jobs as
+	 * it may, or is being canceled, so that none of its waiting jobs can start.
+	 * @GuardedBy("lock")
+	 */
+	private static boolean isThrottled(InternalJobGroup jobGroup) {
+		if (jobGroup == null || jobGroup.getMaxThreads() == 0)
+			return false;
+		return jobGroup.getState() == JobGroup.CANCELING || jobGroup.getRunningJobsCount() >= jobGroup.getMaxThreads();
+	}
+
+	private long getGrowthTime(InternalJob job, int threads) {
+		//the start time of a waiting job is the time it was queued plus the delay of its priority
+		long startTime = job.getStartTime();
+		int priority = job.getPriority();
+		if (priority == Job.BUILD || priority == Job.DECORATE)
+			startTime = capToDeadline(job, startTime + delayFor(priority) * Math.max(0, threads / WorkerPool.PROCESSORS - 1));
+		return startTime;
+	}
+
+	/**
+	 * Checks whether the worker pool must grow for a late job. Called by the timer thread.
+	 */
+	void checkWorkerPool() {
+		pool.checkGrowth();
+	}
+
+	/**
+	 * Asks the timer to check the worker pool at the given time.
+	 */
+	void checkWorkerPoolAt(long time) {
+		timer.checkPoolAt(time);
+	}
+
+	/**
+	 * Returns the time at which the timer must wake up the next sleeping job, or
+	 * InternalJob.T_INFINITE if no sleeping job will wake up by itself or the job
+	 * manager is suspended.
+	 */
+	long getNextWakeTime() {
+		//called by the timer while holding its own monitor, so it must not take the lock
+		return suspended ? InternalJob.T_INFINITE : nextWakeTime;
+	}
+
+	/**
+	 * Returns the estimated time in milliseconds before the next job can be started.
+	 * Returns 0 if there are waiting jobs, and InternalJob.T_INFINITE if there are
+	 * none. Sleeping jobs are not considered, because the timer queues them and
+	 * notifies the pool when they wake up.
+	 */
+	protected long sleepHint() {
+		//this is called by every worker before and after starting a job, so it must not take the lock
+		//wait forever if job manager is suspended
+		if (suspended)
+			return InternalJob.T_INFINITE;
+		return waitingCount > 0 || waitingLaneCount.get() > 0 ? 0L : InternalJob.T_INFINITE;
+	}
+
+	/**
+	 * Publishes the wake-up time of the first sleeping job for lock-free readers.
+	 * @GuardedBy("sleeping")
+	 */
+	private void updateNextWakeTime() {
+		InternalJob next = sleeping.peek();
+		long wakeTime = next == null ? InternalJob.T_INFINITE : next.getStartTime();
+		if (wakeTime == nextWakeTime)
+			return;
+		nextWakeTime = wakeTime;
+		timer.wakeTimeChanged(wakeTime);
+	}
+
+	/**
+	 * Moves all sleeping jobs that are due to the wait queue, and notifies the
+	 * worker pool if any job was woken up. Called by the timer thread.
+	 */
+	void wakeSleepingJobs() {
+		boolean woken = false;
+		long now = System.currentTimeMillis();
+		while (!suspended) {
+			InternalJob job;
+			synchronized (sleeping) {
+				job = sleeping.peek();
+				if (job == null || job.getStartTime() > now)
+					break;
+			}
+			//the job may have been woken or put back to sleep since it was peeked
+			synchronized (lockFor(job)) {
+				synchronized (job.jobStateLock) {
+					if (job.getState() != Job.SLEEPING || job.getStartTime() > now)
+						continue;
+					job.setQueueTime(now);
+					job.setDeadlineTime(getDeadlineTime(job, now));
+					job.setStartTime(getStartTime(job, now));
+					job.setWaitQueueStamp(waitQueueCounter.increment());
+					changeState(job, Job.WAITING);
+					woken = true;
+				}
+			}
 		}
+		//notify the pool outside sync block
+		if (woken)
+			pool.jobQueued();
 	}
 
 	/**
@@ -1629,7 +2664,7 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 				jobListeners.aboutToRun(job);
 			//listeners may have canceled or put the job to sleep
 			boolean endJob = false;
-			synchronized (lock) {
+			synchronized (lockFor(job)) {
 				JobGroup jobGroup = job.getJobGroup();
 				if (jobGroup != null && jobGroup.getState() == JobGroup.CANCELING)
 					shouldRun = false;
@@ -1639,9 +2674,10 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 						if (shouldRun && !internal.isAboutToRunCanceled()) {
 							internal.setProgressMonitor(createMonitor(job));
 							//change from ABOUT_TO_RUN to RUNNING
-							internal.setThread(worker);
+							//the worker may be running on a virtual thread
+							internal.setThread(Thread.currentThread());
 							internal.internalSetState(Job.RUNNING);
-							internal.jobStateLock.notifyAll();
+							internal.notifyStateWaiters();
 							break;
 						}
 						internal.setAboutToRunCanceled(false);
@@ -1675,6 +2711,37 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 		implicitJobs.suspend(rule, monitorFor(monitor));
 	}
 
+	/**
+	 * Returns the future that is completed with the result of the given job
+	 * the next time it is done.
+	 */
+	CompletableFuture<IStatus> toFuture(InternalJob job) {
+		synchronized (job.jobStateLock) {
+			JobFuture future = job.getFuture();
+			//a future canceled while the job was not scheduled is never taken
+			if (future == null || future.isDone()) {
+				future = new JobFuture(job);
+				job.setFuture(future);
+			}
+			return future;
+		}
+	}
+
+	/**
+	 * Returns the future that is completed with the result of the given job
+	 * group the next time it finishes.
+	 */
+	CompletableFuture<IStatus> toFuture(InternalJobGroup jobGroup) {
+		synchronized (lock) {
+			JobFuture future = jobGroup.getFuture();
+			if (future == null || future.isDone()) {
+				future = new JobFuture(jobGroup);
+				jobGroup.setFuture(future);
+			}
+			return future;
+		}
+	}
+
 	@Override
 	public void transferRule(ISchedulingRule rule, Thread destinationThread) {
 		implicitJobs.transfer(rule, destinationThread);
@@ -1708,11 +2775,13 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 
 	protected void wakeUp(InternalJob job, long delay) {
 		Assert.isLegal(delay >= 0, "Scheduling delay is negative"); //$NON-NLS-1$
-		synchronized (lock) {
-			//cannot wake up if it is not sleeping
-			if (job.getState() != Job.SLEEPING)
-				return;
-			doSchedule(job, delay);
+		synchronized (lockFor(job)) {
+			synchronized (job.jobStateLock) {
+				//cannot wake up if it is not sleeping
+				if (job.getState() != Job.SLEEPING)
+					return;
+				doSchedule(job, delay);
+			}
 		}
 		//call the pool outside sync block to avoid deadlock
 		pool.jobQueued();
@@ -1793,15 +2862,19 @@ public class JobManager implements IJobManager, DebugOptionsListener {
 				MultiStatus jobGroupResult = jobGroup.computeGroupResult(jobResults);
 				Assert.isLegal(jobGroupResult != null, "The group result should not be null"); //$NON-NLS-1$
 				boolean isJobGroupCompleted = false;
+				JobFuture future = null;
 				synchronized (jobManagerLock) {
 					// If more jobs were added to the group while were computing the result, the job group
 					// remains in the ACTIVE state and the computed result is discarded to be recomputed later,
 					// after the new jobs finish.
 					if (jobGroup.getState() != JobGroup.NONE && jobGroup.getActiveJobsCount() == 0) {
 						jobGroup.endJobGroup(jobGroupResult);
+						future = jobGroup.takeFuture();
 						isJobGroupCompleted = true;
 					}
 				}
+				if (future != null)
+					future.complete(jobGroupResult);
 
 				// If the job group is completing, add the job group's status to the event
 				// and log errors and warnings.
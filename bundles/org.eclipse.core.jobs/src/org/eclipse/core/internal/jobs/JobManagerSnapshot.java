@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * The implementation of IJobManagerSnapshot. The jobs are copied by
+ * JobManager#snapshot() while the job manager lock and the state lock of each
+ * job are held, and the threads are copied from the deadlock detection graph
+ * by LockManager#snapshot(long).
+ */
+class JobManagerSnapshot implements IJobManagerSnapshot {
+	/**
+	 * The state of one job in a snapshot.
+	 */
+	static final class JobEntry implements IJobSnapshot {
+		private final Job job;
+		private final int number;
+		private final int state;
+		private final int publicState;
+		private final int priority;
+		private final ISchedulingRule rule;
+		private final InternalJob blocker;
+		private final Thread thread;
+		private final long stateTime;
+		private final long wakeTime;
+
+		/**
+		 * Copies the state of the given job at the given time, as returned by
+		 * System#currentTimeMillis() and by System#nanoTime().
+		 * @GuardedBy("job.jobStateLock")
+		 */
+		JobEntry(InternalJob job, long time, long now) {
+			this.job = (Job) job;
+			this.number = job.getJobNumber();
+			this.state = job.internalGetState();
+			this.publicState = job.getState();
+			this.priority = job.getPriority();
+			this.rule = job.getRule();
+			this.thread = job.getThread();
+			//waiting and sleeping jobs always know when they were queued
+			long queueTime = job.getQueueTime();
+			long stamp = job.getStateStamp();
+			if (publicState != Job.RUNNING && queueTime != InternalJob.T_NONE)
+				this.stateTime = Math.max(0, time - queueTime) * 1000000;
+			else
+				this.stateTime = stamp == InternalJob.T_UNKNOWN ? -1 : now - stamp;
+			//the running job is at the head of the list of the jobs it blocks
+			InternalJob head = null;
+			if (state == InternalJob.BLOCKED) {
+				head = job.next();
+				while (head != null && head.internalGetState() == InternalJob.BLOCKED)
+					head = head.next();
+			}
+			this.blocker = head;
+			long startTime = job.getStartTime();
+			this.wakeTime = state != Job.SLEEPING || startTime == InternalJob.T_INFINITE ? -1 : startTime;
+		}
+
+		@Override
+		public Job getJob() {
+			return job;
+		}
+
+		@Override
+		public String getName() {
+			return job.getName();
+		}
+
+		@Override
+		public int getState() {
+			return publicState;
+		}
+
+		@Override
+		public boolean isBlocked() {
+			return state == InternalJob.BLOCKED;
+		}
+
+		@Override
+		public boolean isYielding() {
+			return state == InternalJob.YIELDING;
+		}
+
+		@Override
+		public int getPriority() {
+			return priority;
+		}
+
+		@Override
+		public ISchedulingRule getRule() {
+			return rule;
+		}
+
+		@Override
+		public Job getBlockingJob() {
+			return (Job) blocker;
+		}
+
+		@Override
+		public Thread getThread() {
+			return thread;
+		}
+
+		@Override
+		public long getStateTime() {
+			return stateTime;
+		}
+
+		@Override
+		public long getWakeTime() {
+			return wakeTime;
+		}
+
+		@Override
+		public String toString() {
+			return job.toString();
+		}
+	}
+
+	/**
+	 * The locks of one thread in a snapshot.
+	 */
+	static final class ThreadEntry implements IThreadSnapshot {
+		private final Thread thread;
+		private final Map<ISchedulingRule, Integer> heldLocks;
+		private final ISchedulingRule waitingLock;
+		private final long waitTime;
+
+		ThreadEntry(Thread thread, Map<ISchedulingRule, Integer> heldLocks, ISchedulingRule waitingLock, long waitTime) {
+			this.thread = thread;
+			this.heldLocks = Collections.unmodifiableMap(heldLocks);
+			this.waitingLock = waitingLock;
+			this.waitTime = waitTime;
+		}
+
+		@Override
+		public Thread getThread() {
+			return thread;
+		}
+
+		@Override
+		public Map<ISchedulingRule, Integer> getHeldLocks() {
+			return heldLocks;
+		}
+
+		@Override
+		public ISchedulingRule getWaitingLock() {
+			return waitingLock;
+		}
+
+		@Override
+		public long getWaitTime() {
+			return waitTime;
+		}
+
+		@Override
+		public String toString() {
+			return thread.getName();
+		}
+	}
+
+	private final long time;
+	private final List<IJobSnapshot> jobs;
+	private final List<IThreadSnapshot> threads;
+
+	JobManagerSnapshot(long time, List<IJobSnapshot> jobs, List<IThreadSnapshot> threads) {
+		this.time = time;
+		this.jobs = Collections.unmodifiableList(jobs);
+		this.threads = Collections.unmodifiableList(threads);
+	}
+
+	@Override
+	public long getTime() {
+		return time;
+	}
+
+	@Override
+	public List<IJobSnapshot> getJobs() {
+		return jobs;
+	}
+
+	@Override
+	public List<IThreadSnapshot> getThreads() {
+		return threads;
+	}
+
+	private static String stateName(IJobSnapshot job) {
+		if (job.isBlocked())
+			return "BLOCKED"; //$NON-NLS-1$
+		if (job.isYielding())
+			return "YIELDING"; //$NON-NLS-1$
+		switch (job.getState()) {
+			case Job.RUNNING :
+				return "RUNNING"; //$NON-NLS-1$
+			case Job.SLEEPING :
+				return "SLEEPING"; //$NON-NLS-1$
+			default :
+				return "WAITING"; //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Appends the given text to the given buffer as a JSON string.
+	 */
+	private static void appendString(StringBuilder buf, Object text) {
+		if (text == null) {
+			buf.append("null"); //$NON-NLS-1$
+			return;
+		}
+		String string = text.toString();
+		buf.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+				case '"' :
+				case '\\' :
+					buf.append('\\').append(c);
+					break;
+				case '\n' :
+					buf.append("\\n"); //$NON-NLS-1$
+					break;
+				case '\r' :
+					buf.append("\\r"); //$NON-NLS-1$
+					break;
+				case '\t' :
+					buf.append("\\t"); //$NON-NLS-1$
+					break;
+				default :
+					if (c < 0x20)
+						buf.append(String.format("\\u%04x", Integer.valueOf(c))); //$NON-NLS-1$
+					else
+						buf.append(c);
+			}
+		}
+		buf.append('"');
+	}
+
+	private static void appendThread(StringBuilder buf, Thread thread) {
+		appendString(buf, thread == null ? null : thread.getName());
+	}
+
+	@Override
+	public String toJSON() {
+		StringBuilder buf = new StringBuilder(256 + jobs.size() * 128);
+		buf.append("{\"time\":").append(time); //$NON-NLS-1$
+		buf.append(",\"jobs\":["); //$NON-NLS-1$
+		for (int i = 0; i < jobs.size(); i++) {
+			JobEntry job = (JobEntry) jobs.get(i);
+			if (i > 0)
+				buf.append(',');
+			buf.append("{\"id\":").append(job.number); //$NON-NLS-1$
+			buf.append(",\"name\":"); //$NON-NLS-1$
+			appendString(buf, job.getName());
+			buf.append(",\"state\":"); //$NON-NLS-1$
+			appendString(buf, stateName(job));
+			buf.append(",\"priority\":").append(job.priority); //$NON-NLS-1$
+			buf.append(",\"rule\":"); //$NON-NLS-1$
+			appendString(buf, job.rule);
+			buf.append(",\"blocker\":"); //$NON-NLS-1$
+			if (job.blocker == null)
+				buf.append("null"); //$NON-NLS-1$
+			else
+				buf.append(job.blocker.getJobNumber());
+			buf.append(",\"thread\":"); //$NON-NLS-1$
+			appendThread(buf, job.thread);
+			buf.append(",\"stateTime\":").append(job.stateTime); //$NON-NLS-1$
+			buf.append(",\"wakeTime\":").append(job.wakeTime); //$NON-NLS-1$
+			buf.append('}');
+		}
+		buf.append("],\"threads\":["); //$NON-NLS-1$
+		for (int i = 0; i < threads.size(); i++) {
+			IThreadSnapshot thread = threads.get(i);
+			if (i > 0)
+				buf.append(',');
+			buf.append("{\"name\":"); //$NON-NLS-1$
+			appendThread(buf, thread.getThread());
+			buf.append(",\"locks\":["); //$NON-NLS-1$
+			boolean first = true;
+			for (Map.Entry<ISchedulingRule, Integer> lock : thread.getHeldLocks().entrySet()) {
+				if (!first)
+					buf.append(',');
+				first = false;
+				buf.append("{\"lock\":"); //$NON-NLS-1$
+				appendString(buf, lock.getKey());
+				buf.append(",\"depth\":").append(lock.getValue()).append('}'); //$NON-NLS-1$
+			}
+			buf.append("],\"waitingFor\":"); //$NON-NLS-1$
+			appendString(buf, thread.getWaitingLock());
+			buf.append(",\"waitTime\":").append(thread.getWaitTime()); //$NON-NLS-1$
+			buf.append('}');
+		}
+		buf.append("]}"); //$NON-NLS-1$
+		return buf.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJSON();
+	}
+}
@@ -0,0 +1,538 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Measures the lifecycle of jobs and aggregates the timings of each job run by
+ * priority, declared family and job group name.
+ *
+ * The job manager reports every state change of a job while metrics are enabled.
+ * The timings of the current run of a job are kept in a record held by the job,
+ * which is only accessed with the state lock of the job held. When the job is done,
+ * the record is added to lock-free accumulators, which are read without any lock
+ * when a snapshot is taken. When metrics are disabled, the job manager does not
+ * call into this class at all.
+ */
+class JobMetrics {
+	/**
+	 * The timings of one run of a job.
+	 */
+	static final class Record {
+		/**
+		 * The statistics this record will be added to.
+		 */
+		final Collected collected;
+		/**
+		 * The time of the last state change of the job.
+		 */
+		long stamp;
+		long queueTime;
+		long blockedTime;
+		long runTime;
+		int yields;
+		/**
+		 * Whether the job started running in this run.
+		 */
+		boolean started;
+		/**
+		 * Whether the job had a deadline in this run, and whether it was done
+		 * after it.
+		 */
+		boolean deadline;
+		boolean deadlineMissed;
+
+		Record(Collected collected) {
+			this.collected = collected;
+		}
+	}
+
+	/**
+	 * Counts times in nanoseconds in buckets. The times from 2^n to 2^(n+1) are
+	 * counted in eight buckets of equal width, so each bucket is at most an eighth
+	 * of its lower bound wide, and times below eight have a bucket each.
+	 * @ThreadSafe
+	 */
+	static final class Histogram {
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+		/**
+		 * Returns the bucket of the given time.
+		 */
+		static int bucket(long time) {
+			if (time < SUB_BUCKETS)
+				return (int) Math.max(0, time);
+			int exponent = 63 - Long.numberOfLeadingZeros(time);
+			int sub = (int) (time >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		/**
+		 * Returns the largest time counted in the given bucket.
+		 */
+		static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int shift = bucket / SUB_BUCKETS - 1;
+			long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+			return lower + (1L << shift) - 1;
+		}
+
+		/**
+		 * Returns the time that the given percentage of the counted times do not
+		 * exceed, according to the given bucket counts, bounded by the given
+		 * maximum time.
+		 */
+		static long percentile(long[] counts, double percentile, long max) {
+			Assert.isLegal(percentile >= 0 && percentile <= 100, "Percentile out of range: " + percentile); //$NON-NLS-1$
+			long total = 0;
+			for (int i = 0; i < counts.length; i++)
+				total += counts[i];
+			if (total == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(upperBound(i), max);
+			}
+			return max;
+		}
+
+		void add(long time) {
+			counts.incrementAndGet(bucket(time));
+		}
+
+		long[] snapshot() {
+			long[] copy = new long[BUCKETS];
+			for (int i = 0; i < copy.length; i++)
+				copy[i] = counts.get(i);
+			return copy;
+		}
+	}
+
+	/**
+	 * Accumulates the timings of the runs of a set of jobs.
+	 * @ThreadSafe
+	 */
+	private static final class Accumulator {
+		final LongAdder jobCount = new LongAdder();
+		final LongAdder queueTime = new LongAdder();
+		final LongAccumulator maxQueueTime = new LongAccumulator(Math::max, 0);
+		final Histogram queueTimes = new Histogram();
+		final LongAdder blockedTime = new LongAdder();
+		final LongAdder runTime = new LongAdder();
+		final LongAdder yieldCount = new LongAdder();
+		final LongAdder deadlineCount = new LongAdder();
+		final LongAdder missedDeadlineCount = new LongAdder();
+		final LongAdder listenerTime = new LongAdder();
+
+		void add(Record record) {
+			jobCount.increment();
+			queueTime.add(record.queueTime);
+			maxQueueTime.accumulate(record.queueTime);
+			queueTimes.add(record.queueTime);
+			blockedTime.add(record.blockedTime);
+			runTime.add(record.runTime);
+			yieldCount.add(record.yields);
+			if (record.deadline)
+				deadlineCount.increment();
+			if (record.deadlineMissed)
+				missedDeadlineCount.increment();
+		}
+
+		Statistics snapshot() {
+			return new Statistics(jobCount.sum(), queueTime.sum(), maxQueueTime.get(), queueTimes.snapshot(), blockedTime.sum(), runTime.sum(), yieldCount.sum(), deadlineCount.sum(), missedDeadlineCount.sum(), listenerTime.sum());
+		}
+	}
+
+	/**
+	 * All the statistics collected since metrics were last enabled.
+	 * @ThreadSafe
+	 */
+	static final class Collected {
+		final Accumulator total = new Accumulator();
+		/**
+		 * Accumulators by priority, see #priorityIndex.
+		 */
+		final Accumulator[] priorities = new Accumulator[PRIORITIES.length];
+		/**
+		 * Accumulators by declared family, at most MAX_TABLE_SIZE of them. Families
+		 * are often created per resource or per job, so the table must not grow
+		 * with every family that ever had a job run.
+		 */
+		final ConcurrentHashMap<Object, Accumulator> families = new ConcurrentHashMap<>();
+		/**
+		 * Accumulators by job group name, at most MAX_TABLE_SIZE of them. Job
+		 * groups with the same name share their accumulator.
+		 */
+		final ConcurrentHashMap<String, Accumulator> jobGroups = new ConcurrentHashMap<>();
+
+		Collected() {
+			for (int i = 0; i < priorities.length; i++)
+				priorities[i] = new Accumulator();
+		}
+
+		/**
+		 * Adds the given run of a job to all the statistics the job counts in.
+		 */
+		void add(InternalJob job, Record record) {
+			total.add(record);
+			int index = priorityIndex(job.getPriority());
+			if (index >= 0)
+				priorities[index].add(record);
+			Object[] declared = job.internalGetFamilies();
+			if (declared != null) {
+				for (int i = 0; i < declared.length; i++) {
+					Accumulator family = accumulatorFor(families, declared[i]);
+					if (family != null)
+						family.add(record);
+				}
+			}
+			InternalJobGroup jobGroup = job.getJobGroup();
+			if (jobGroup != null) {
+				Accumulator group = accumulatorFor(jobGroups, jobGroup.getName());
+				if (group != null)
+					group.add(record);
+			}
+		}
+
+		/**
+		 * Adds time spent notifying listeners about the given job to all the
+		 * statistics the job counts in.
+		 */
+		void addListenerTime(InternalJob job, long time) {
+			total.listenerTime.add(time);
+			int index = priorityIndex(job.getPriority());
+			if (index >= 0)
+				priorities[index].listenerTime.add(time);
+			Object[] declared = job.internalGetFamilies();
+			if (declared != null) {
+				for (int i = 0; i < declared.length; i++) {
+					Accumulator family = accumulatorFor(families, declared[i]);
+					if (family != null)
+						family.listenerTime.add(time);
+				}
+			}
+			InternalJobGroup jobGroup = job.getJobGroup();
+			if (jobGroup != null) {
+				Accumulator group = accumulatorFor(jobGroups, jobGroup.getName());
+				if (group != null)
+					group.listenerTime.add(time);
+			}
+		}
+
+		/**
+		 * Returns the accumulator of the given key in the given table, or null if
+		 * the key is new and the table is full. Only new keys lock the table.
+		 */
+		private static <K> Accumulator accumulatorFor(ConcurrentHashMap<K, Accumulator> table, K key) {
+			Accumulator accumulator = table.get(key);
+			if (accumulator != null || table.size() >= MAX_TABLE_SIZE)
+				return accumulator;
+			synchronized (table) {
+				accumulator = table.get(key);
+				if (accumulator == null && table.size() < MAX_TABLE_SIZE) {
+					accumulator = new Accumulator();
+					table.put(key, accumulator);
+				}
+				return accumulator;
+			}
+		}
+	}
+
+	/**
+	 * An immutable copy of the statistics of a set of jobs.
+	 */
+	private static final class Statistics implements IJobStatistics {
+		static final Statistics EMPTY = new Statistics(0, 0, 0, new long[0], 0, 0, 0, 0, 0, 0);
+
+		private final long jobCount;
+		private final long queueTime;
+		private final long maxQueueTime;
+		/**
+		 * The bucket counts of the queue times, see Histogram.
+		 */
+		private final long[] queueTimes;
+		private final long blockedTime;
+		private final long runTime;
+		private final long yieldCount;
+		private final long deadlineCount;
+		private final long missedDeadlineCount;
+		private final long listenerTime;
+
+		Statistics(long jobCount, long queueTime, long maxQueueTime, long[] queueTimes, long blockedTime, long runTime, long yieldCount, long deadlineCount, long missedDeadlineCount, long listenerTime) {
+			this.jobCount = jobCount;
+			this.queueTime = queueTime;
+			this.maxQueueTime = maxQueueTime;
+			this.queueTimes = queueTimes;
+			this.blockedTime = blockedTime;
+			this.runTime = runTime;
+			this.yieldCount = yieldCount;
+			this.deadlineCount = deadlineCount;
+			this.missedDeadlineCount = missedDeadlineCount;
+			this.listenerTime = listenerTime;
+		}
+
+		@Override
+		public long getJobCount() {
+			return jobCount;
+		}
+
+		@Override
+		public long getQueueTime() {
+			return queueTime;
+		}
+
+		@Override
+		public long getMaxQueueTime() {
+			return maxQueueTime;
+		}
+
+		@Override
+		public long getQueueTimePercentile(double percentile) {
+			return Histogram.percentile(queueTimes, percentile, maxQueueTime);
+		}
+
+		@Override
+		public long getBlockedTime() {
+			return blockedTime;
+		}
+
+		@Override
+		public long getRunTime() {
+			return runTime;
+		}
+
+		@Override
+		public long getYieldCount() {
+			return yieldCount;
+		}
+
+		@Override
+		public long getDeadlineCount() {
+			return deadlineCount;
+		}
+
+		@Override
+		public long getMissedDeadlineCount() {
+			return missedDeadlineCount;
+		}
+
+		@Override
+		public long getListenerTime() {
+			return listenerTime;
+		}
+
+		@Override
+		public String toString() {
+			return "JobStatistics(jobs=" + jobCount + ", queue=" + queueTime + "ns, medianQueue=" + getQueueTimePercentile(50) + "ns, p99Queue=" + getQueueTimePercentile(99) + "ns, maxQueue=" + maxQueueTime + "ns, blocked=" + blockedTime + "ns, run=" + runTime + "ns, yields=" + yieldCount + ", deadlines=" + deadlineCount + ", missedDeadlines=" + missedDeadlineCount + ", listeners=" + listenerTime + "ns)"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+		}
+	}
+
+	/**
+	 * An immutable copy of all the collected statistics.
+	 */
+	private static final class Snapshot implements IJobMetrics {
+		private final Statistics total;
+		private final Statistics[] priorities;
+		private final Map<Object, IJobStatistics> families;
+		private final Map<String, IJobStatistics> jobGroups;
+		private final int workerCount;
+		private final int busyWorkerCount;
+		private final int peakWorkerCount;
+		private final long createdWorkerCount;
+
+		Snapshot(Collected collected, WorkerPool pool) {
+			total = collected.total.snapshot();
+			priorities = new Statistics[collected.priorities.length];
+			for (int i = 0; i < priorities.length; i++)
+				priorities[i] = collected.priorities[i].snapshot();
+			Map<Object, IJobStatistics> familyCopy = new HashMap<>();
+			collected.families.forEach((family, accumulator) -> familyCopy.put(family, accumulator.snapshot()));
+			families = Collections.unmodifiableMap(familyCopy);
+			Map<String, IJobStatistics> jobGroupCopy = new HashMap<>();
+			collected.jobGroups.forEach((name, accumulator) -> jobGroupCopy.put(name, accumulator.snapshot()));
+			jobGroups = Collections.unmodifiableMap(jobGroupCopy);
+			synchronized (pool) {
+				workerCount = pool.getThreadCount();
+				busyWorkerCount = pool.getBusyThreadCount();
+				peakWorkerCount = pool.getPeakThreadCount();
+				createdWorkerCount = pool.getCreatedThreadCount();
+			}
+		}
+
+		@Override
+		public IJobStatistics getTotal() {
+			return total;
+		}
+
+		@Override
+		public IJobStatistics getPriorityStatistics(int priority) {
+			int index = priorityIndex(priority);
+			return index < 0 ? Statistics.EMPTY : priorities[index];
+		}
+
+		@Override
+		public Map<Object, IJobStatistics> getFamilyStatistics() {
+			return families;
+		}
+
+		@Override
+		public Map<String, IJobStatistics> getJobGroupStatistics() {
+			return jobGroups;
+		}
+
+		@Override
+		public int getWorkerCount() {
+			return workerCount;
+		}
+
+		@Override
+		public int getBusyWorkerCount() {
+			return busyWorkerCount;
+		}
+
+		@Override
+		public int getPeakWorkerCount() {
+			return peakWorkerCount;
+		}
+
+		@Override
+		public long getCreatedWorkerCount() {
+			return createdWorkerCount;
+		}
+
+		@Override
+		public String toString() {
+			return "JobMetrics(total=" + total + ", families=" + families + ", jobGroups=" + jobGroups + ", workers=" + workerCount + ", busyWorkers=" + busyWorkerCount + ')'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
+	}
+
+	private static final int[] PRIORITIES = {Job.INTERACTIVE, Job.SHORT, Job.LONG, Job.BUILD, Job.DECORATE};
+
+	/**
+	 * The largest number of families, and of job group names, that statistics
+	 * are kept for. Each of them costs a few kilobytes, mostly for the histogram
+	 * of queue times. See IJobMetrics.
+	 */
+	static final int MAX_TABLE_SIZE = 256;
+
+	/**
+	 * Whether the job manager reports job state changes.
+	 */
+	private volatile boolean enabled = false;
+
+	/**
+	 * The statistics collected since metrics were last enabled. Records that
+	 * were started for older statistics are discarded.
+	 */
+	private volatile Collected collected = new Collected();
+
+	static int priorityIndex(int priority) {
+		for (int i = 0; i < PRIORITIES.length; i++)
+			if (PRIORITIES[i] == priority)
+				return i;
+		return -1;
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	synchronized void setEnabled(boolean enabled) {
+		if (enabled && !this.enabled)
+			collected = new Collected();
+		this.enabled = enabled;
+	}
+
+	IJobMetrics getSnapshot(WorkerPool pool) {
+		return new Snapshot(collected, pool);
+	}
+
+	/**
+	 * Records that the given job spent the given time notifying listeners.
+	 */
+	void listenersNotified(InternalJob job, long time) {
+		if (!(job instanceof ThreadJob))
+			collected.addListenerTime(job, time);
+	}
+
+	/**
+	 * Records a state change of the given job at the given time, as returned by
+	 * System#nanoTime(). Must be called from JobManager#changeState.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	void stateChanged(InternalJob job, int oldState, int newState, long now) {
+		//thread jobs are not scheduled, they stand for threads that begin rules
+		if (job instanceof ThreadJob)
+			return;
+		Collected current = collected;
+		Record record = job.getMetricsRecord();
+		if (record == null || record.collected != current) {
+			//the run started before metrics were enabled, measure from now on
+			if (newState == Job.NONE) {
+				job.setMetricsRecord(null);
+				return;
+			}
+			record = new Record(current);
+			job.setMetricsRecord(record);
+		} else {
+			long elapsed = now - record.stamp;
+			switch (oldState) {
+				case InternalJob.BLOCKED :
+					record.blockedTime += elapsed;
+				case Job.WAITING :
+					record.queueTime += elapsed;
+					break;
+				case InternalJob.YIELDING :
+					record.blockedTime += elapsed;
+					break;
+				case InternalJob.ABOUT_TO_RUN :
+				case Job.RUNNING :
+					record.runTime += elapsed;
+					break;
+			}
+		}
+		record.stamp = now;
+		switch (newState) {
+			case InternalJob.ABOUT_TO_RUN :
+			case Job.RUNNING :
+				record.started = true;
+				break;
+			case InternalJob.YIELDING :
+				record.yields++;
+				break;
+			case Job.NONE :
+				job.setMetricsRecord(null);
+				if (!record.started)
+					break;
+				//the job manager decides whether the deadline was missed before the job is done
+				record.deadline = job.getDeadlineTime() != InternalJob.T_NONE;
+				record.deadlineMissed = job.isDeadlineMissed();
+				current.add(job, record);
+				if (JobManager.DEBUG)
+					JobManager.debug("Job metrics: " + job + " queue=" + record.queueTime / 1000 + "us, blocked=" + record.blockedTime / 1000 + "us, run=" + record.runTime / 1000 + "us, yields=" + record.yields); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
+	}
+}
@@ -124,4 +124,66 @@ class JobOSGiUtils {
 			return false;
 		return "true".equalsIgnoreCase(value); //$NON-NLS-1$
 	}
+
+	/**
+	 * Calculates whether the job plugin should run jobs on virtual threads.
+	 * @return <code>true</code> if jobs should run on virtual threads,
+	 * and <code>false</code> otherwise.
+	 */
+	boolean useVirtualThreads() {
+		BundleContext context = JobActivator.getContext();
+		String value;
+		if (context == null) {
+			//we are running stand-alone, so consult global system property
+			value = System.getProperty(IJobManager.PROP_USE_VIRTUAL_THREADS);
+		} else {
+			value = context.getProperty(IJobManager.PROP_USE_VIRTUAL_THREADS);
+		}
+		return "true".equalsIgnoreCase(value); //$NON-NLS-1$
+	}
+
+	/**
+	 * Calculates whether the job manager should collect metrics from the start.
+	 * @return <code>true</code> if metrics should be collected,
+	 * and <code>false</code> otherwise.
+	 */
+	boolean collectMetrics() {
+		BundleContext context = JobActivator.getContext();
+		String value;
+		if (context == null) {
+			//we are running stand-alone, so consult global system property
+			value = System.getProperty(IJobManager.PROP_COLLECT_METRICS);
+		} else {
+			value = context.getProperty(IJobManager.PROP_COLLECT_METRICS);
+		}
+		return "true".equalsIgnoreCase(value); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the value of the given property, or <code>null</code> if the
+	 * property is not defined.
+	 */
+	String getProperty(String key) {
+		BundleContext context = JobActivator.getContext();
+		if (context == null) {
+			//we are running stand-alone, so consult global system property
+			return System.getProperty(key);
+		}
+		return context.getProperty(key);
+	}
+
+	/**
+	 * Returns the value of the given integer property, or the default value if the
+	 * property is not defined or is not an integer.
+	 */
+	int getIntegerProperty(String key, int defaultValue) {
+		String value = getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
 }
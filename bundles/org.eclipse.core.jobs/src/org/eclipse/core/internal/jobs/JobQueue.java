@@ -11,10 +11,15 @@
 package org.eclipse.core.internal.jobs;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import org.eclipse.core.runtime.*;
 
 /**
- * A linked list based priority queue.
+ * A priority queue of jobs. By default the queue is a linked list, which keeps
+ * the insertion order of the wait queue stamps and can prevent jobs from
+ * overtaking conflicting jobs. Queues that are only ordered by start time
+ * can instead be backed by a binary heap, which makes insertion and removal
+ * logarithmic rather than linear in the size of the queue.
  */
 public final class JobQueue {
 	/**
@@ -32,6 +37,23 @@ public final class JobQueue {
 
 	private final boolean allowPriorityOvertaking;
 
+	/**
+	 * The heap of queued jobs if this queue is heap based, and null if the queue
+	 * is a linked list. The job at index 0 has the earliest start time; among jobs
+	 * with the same start time, the job that was enqueued first comes first.
+	 */
+	private InternalJob[] heap;
+
+	/**
+	 * The number of jobs in the heap.
+	 */
+	private int heapSize;
+
+	/**
+	 * Counter recording the insertion order of jobs in the heap.
+	 */
+	private long heapCounter;
+
 	/**
 	 * Create a new job queue.
 	 */
@@ -43,7 +65,19 @@ public final class JobQueue {
 	 * Create a new job queue.
 	 */
 	public JobQueue(boolean allowConflictOvertaking, boolean allowPriorityOvertaking) {
+		this(allowConflictOvertaking, allowPriorityOvertaking, false);
+	}
+
+	/**
+	 * Create a new job queue. A heap based queue orders jobs only by start time,
+	 * and ignores wait queue stamps. It can therefore only be used for queues that
+	 * allow both conflict and priority overtaking, such as the sleeping queue.
+	 */
+	public JobQueue(boolean allowConflictOvertaking, boolean allowPriorityOvertaking, boolean useHeap) {
+		Assert.isLegal(!useHeap || (allowConflictOvertaking && allowPriorityOvertaking), "A heap based queue must allow overtaking"); //$NON-NLS-1$
 		this.allowPriorityOvertaking = allowPriorityOvertaking;
+		if (useHeap)
+			heap = new InternalJob[16];
 		//compareTo on dummy is never called
 		dummy = new InternalJob("Queue-Head") {//$NON-NLS-1$
 			@Override
@@ -62,12 +96,25 @@ public final class JobQueue {
 	public void clear() {
 		dummy.setNext(dummy);
 		dummy.setPrevious(dummy);
+		if (heap != null) {
+			for (int i = 0; i < heapSize; i++)
+				heap[i].setQueueIndex(-1);
+			heap = new InternalJob[16];
+			heapSize = 0;
+		}
 	}
 
 	/**
 	 * Return and remove the element with highest priority, or null if empty.
 	 */
 	public InternalJob dequeue() {
+		if (heap != null) {
+			if (heapSize == 0)
+				return null;
+			InternalJob first = heap[0];
+			remove(first);
+			return first;
+		}
 		InternalJob toRemove = dummy.previous();
 		if (toRemove == dummy)
 			return null;
@@ -81,6 +128,17 @@ public final class JobQueue {
 		//assert new entry is does not already belong to some other data structure
 		Assert.isTrue(newEntry.next() == null);
 		Assert.isTrue(newEntry.previous() == null);
+		if (heap != null) {
+			Assert.isTrue(newEntry.getQueueIndex() < 0);
+			if (heapSize == heap.length) {
+				InternalJob[] newHeap = new InternalJob[heapSize * 2];
+				System.arraycopy(heap, 0, newHeap, 0, heapSize);
+				heap = newHeap;
+			}
+			newEntry.setQueueSequence(heapCounter++);
+			siftUp(newEntry, heapSize++);
+			return;
+		}
 		InternalJob tail = dummy.next();
 		//overtake lower priority jobs. Only overtake conflicting jobs if allowed to
 		while (canOvertake(newEntry, tail))
@@ -112,10 +170,76 @@ public final class JobQueue {
 		return allowConflictOvertaking || !newEntry.isConflicting(queueEntry);
 	}
 
+	/**
+	 * Returns whether the first job must be dequeued before the second job.
+	 */
+	private static boolean isBefore(InternalJob first, InternalJob second) {
+		long firstStart = first.getStartTime();
+		long secondStart = second.getStartTime();
+		if (firstStart != secondStart)
+			return firstStart < secondStart;
+		return first.getQueueSequence() < second.getQueueSequence();
+	}
+
+	/**
+	 * Places the given job in the heap at the given index, or at one of its
+	 * ancestors if the job must be dequeued before them.
+	 */
+	private void siftUp(InternalJob job, int index) {
+		while (index > 0) {
+			int parentIndex = (index - 1) >>> 1;
+			InternalJob parent = heap[parentIndex];
+			if (!isBefore(job, parent))
+				break;
+			setHeapEntry(parent, index);
+			index = parentIndex;
+		}
+		setHeapEntry(job, index);
+	}
+
+	/**
+	 * Places the given job in the heap at the given index, or at one of its
+	 * descendants if they must be dequeued before the job.
+	 */
+	private void siftDown(InternalJob job, int index) {
+		int half = heapSize >>> 1;
+		while (index < half) {
+			int childIndex = 2 * index + 1;
+			InternalJob child = heap[childIndex];
+			int rightIndex = childIndex + 1;
+			if (rightIndex < heapSize && isBefore(heap[rightIndex], child))
+				child = heap[childIndex = rightIndex];
+			if (!isBefore(child, job))
+				break;
+			setHeapEntry(child, index);
+			index = childIndex;
+		}
+		setHeapEntry(job, index);
+	}
+
+	private void setHeapEntry(InternalJob job, int index) {
+		heap[index] = job;
+		job.setQueueIndex(index);
+	}
+
 	/**
 	 * Removes the given element from the queue.
 	 */
 	public void remove(InternalJob toRemove) {
+		if (heap != null) {
+			int index = toRemove.getQueueIndex();
+			Assert.isTrue(index >= 0 && index < heapSize && heap[index] == toRemove);
+			toRemove.setQueueIndex(-1);
+			InternalJob last = heap[--heapSize];
+			heap[heapSize] = null;
+			if (last != toRemove) {
+				//move the last job into the hole, then restore the heap order
+				siftDown(last, index);
+				if (heap[index] == last)
+					siftUp(last, index);
+			}
+			return;
+		}
 		toRemove.remove();
 		//previous of toRemove might now bubble up
 	}
@@ -133,6 +257,8 @@ public final class JobQueue {
 	 * Returns true if the queue is empty, and false otherwise.
 	 */
 	public boolean isEmpty() {
+		if (heap != null)
+			return heapSize == 0;
 		return dummy.next() == dummy;
 	}
 
@@ -140,10 +266,39 @@ public final class JobQueue {
 	 * Return greatest element without removing it, or null if empty
 	 */
 	public InternalJob peek() {
+		if (heap != null)
+			return heapSize == 0 ? null : heap[0];
 		return dummy.previous() == dummy ? null : dummy.previous();
 	}
 
+	/**
+	 * Returns an iterator over the jobs in this queue. The jobs of a linked list
+	 * queue are returned in queue order, the jobs of a heap based queue in no
+	 * particular order. The queue must not be modified during the iteration.
+	 */
 	public Iterator iterator() {
+		if (heap != null) {
+			return new Iterator() {
+				int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < heapSize;
+				}
+
+				@Override
+				public Object next() {
+					if (index >= heapSize)
+						throw new NoSuchElementException();
+					return heap[index++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
 		return new Iterator() {
 			InternalJob pointer = dummy;
 
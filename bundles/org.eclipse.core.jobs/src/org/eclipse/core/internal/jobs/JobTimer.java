@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+/**
+ * Wakes up sleeping jobs when their scheduled start time has come. The timer
+ * sleeps until the wake-up time of the first job in the sleeping queue, and is
+ * notified by the job manager whenever a job with an earlier wake-up time is
+ * put to sleep. Worker threads therefore never need to poll the sleeping queue.
+ *
+ * The timer also decides when the worker pool grows beyond its eager size, by
+ * checking the pool at the times the pool asked for. This happens outside of
+ * any lock, since the check looks at the wait queue of the job manager.
+ */
+class JobTimer extends Thread {
+	private final JobManager manager;
+	/**
+	 * @GuardedBy("this")
+	 */
+	private boolean canceled;
+	/**
+	 * The wake-up time the timer is currently waiting for, or InternalJob.T_NONE
+	 * if the timer is not waiting.
+	 * @GuardedBy("this")
+	 */
+	private long waitUntil = InternalJob.T_NONE;
+	/**
+	 * The time at which the worker pool must be checked for growth, or
+	 * InternalJob.T_INFINITE if no check was requested.
+	 * @GuardedBy("this")
+	 */
+	private long growthCheckTime = InternalJob.T_INFINITE;
+
+	JobTimer(JobManager manager) {
+		super("Worker-JM-Timer"); //$NON-NLS-1$
+		this.manager = manager;
+	}
+
+	/**
+	 * Terminate this thread. Once terminated, it cannot be restarted.
+	 */
+	synchronized void cancel() {
+		canceled = true;
+		notifyAll();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			boolean checkPool;
+			synchronized (this) {
+				if (canceled)
+					return;
+				long now = System.currentTimeMillis();
+				checkPool = growthCheckTime <= now;
+				if (checkPool) {
+					growthCheckTime = InternalJob.T_INFINITE;
+				} else {
+					long wakeTime = Math.min(manager.getNextWakeTime(), growthCheckTime);
+					long delay = wakeTime - now;
+					if (delay > 0) {
+						waitUntil = wakeTime;
+						try {
+							wait(wakeTime == InternalJob.T_INFINITE ? 0 : delay);
+						} catch (InterruptedException e) {
+							// loop
+						} finally {
+							waitUntil = InternalJob.T_NONE;
+						}
+						continue;
+					}
+				}
+			}
+			if (checkPool)
+				manager.checkWorkerPool();
+			else
+				manager.wakeSleepingJobs();
+		}
+	}
+
+	/**
+	 * Notifies the timer that the first sleeping job may have to wake up at the
+	 * given time. Wakes the timer if it is waiting for a later time.
+	 */
+	synchronized void wakeTimeChanged(long wakeTime) {
+		if (wakeTime < waitUntil)
+			notifyAll();
+	}
+
+	/**
+	 * Asks the timer to check the worker pool for growth at the given time.
+	 * Wakes the timer if it is waiting for a later time.
+	 */
+	synchronized void checkPoolAt(long time) {
+		if (time >= growthCheckTime)
+			return;
+		growthCheckTime = time;
+		if (time < waitUntil)
+			notifyAll();
+	}
+}
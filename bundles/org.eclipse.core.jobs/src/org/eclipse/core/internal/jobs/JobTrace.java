@@ -0,0 +1,620 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.core.internal.runtime.RuntimeLog;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Records every state change of every job to a binary trace, so that the
+ * scheduling pattern of a real workload can be replayed later on. Implicit
+ * jobs of threads that begin rules are recorded too.
+ *
+ * The job manager reports state changes while holding the state lock of the
+ * job, and state changes of different jobs are reported concurrently, so recording
+ * a state change only copies it into a small immutable event, which is put in
+ * a bounded lock-free queue. A dedicated writer thread takes the events from
+ * the queue and writes them with a DataOutputStream through a large buffer.
+ * When the queue is full, events are dropped rather than blocking the job
+ * manager, and the number of dropped events is written to the trace once the
+ * writer catches up. All times are in nanoseconds since the trace was started,
+ * except for sleep delays that are in milliseconds like in Job#schedule(long).
+ * A trace consists of a header followed by records that start with a tag:
+ *
+ * <pre>
+ * header: int MAGIC, short VERSION, long start time (System#currentTimeMillis)
+ * RULE:   byte TAG_RULE, int rule, UTF description
+ * GROUP:  byte TAG_GROUP, int group, UTF name, int max threads, int weight
+ * JOB:    byte TAG_JOB, int job, UTF name, byte flags, int rule, int group
+ * STATE:  byte TAG_STATE, int job, long time, byte old state, byte new state,
+ *         byte priority, and for the SLEEPING state only, int delay
+ * LOST:   byte TAG_LOST, int number of dropped events
+ * </pre>
+ *
+ * A JOB record is written each time a job leaves the NONE state, preceded by
+ * the RULE and GROUP records of the rule and group it refers to the first time
+ * they appear. Rules that are equal share their number, and a rule or group
+ * number of -1 stands for none. A delay of -1 stands for a job that was put
+ * to sleep until it is woken up.
+ */
+public class JobTrace {
+	static final int MAGIC = 0x454A5452;
+	static final short VERSION = 2;
+
+	static final byte TAG_RULE = 1;
+	static final byte TAG_GROUP = 2;
+	static final byte TAG_JOB = 3;
+	static final byte TAG_STATE = 4;
+	static final byte TAG_LOST = 5;
+
+	static final int FLAG_SYSTEM = 0x01;
+	static final int FLAG_USER = 0x02;
+	/**
+	 * The job stands for a thread that began a rule.
+	 */
+	static final int FLAG_IMPLICIT = 0x04;
+
+	/**
+	 * Rule descriptions and names are cut to that length.
+	 */
+	private static final int MAX_DESCRIPTION = 256;
+
+	/**
+	 * The maximum number of events waiting to be written.
+	 */
+	static final int QUEUE_CAPACITY = 64 * 1024;
+
+	/**
+	 * The time the writer sleeps when there is nothing to write, unless it is
+	 * woken up because the queue fills up.
+	 */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * The runs of the jobs in a trace, and the rules and groups they refer to.
+	 */
+	public static final class Trace {
+		private final long startTime;
+		private final List<Run> runs = new ArrayList<>();
+		final Map<Integer, String> rules = new HashMap<>();
+		final Map<Integer, Group> groups = new HashMap<>();
+		long lostCount;
+
+		Trace(long startTime) {
+			this.startTime = startTime;
+		}
+
+		/**
+		 * Returns the time the trace was started, as returned by
+		 * System#currentTimeMillis().
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns all the runs of jobs in the trace, in the order they were
+		 * scheduled. Runs that were still going on when the trace ended are
+		 * included.
+		 */
+		public List<Run> getRuns() {
+			return Collections.unmodifiableList(runs);
+		}
+
+		/**
+		 * Returns the description of the given rule, or null if it is unknown.
+		 */
+		public String getRuleDescription(int rule) {
+			return rules.get(Integer.valueOf(rule));
+		}
+
+		/**
+		 * Returns the given job group, or null if it is unknown.
+		 */
+		public Group getGroup(int group) {
+			return groups.get(Integer.valueOf(group));
+		}
+
+		/**
+		 * Returns the number of state changes that were dropped while recording
+		 * the trace. The runs of a trace with dropped state changes may be
+		 * incomplete.
+		 */
+		public long getLostCount() {
+			return lostCount;
+		}
+	}
+
+	/**
+	 * A job group as recorded in a trace.
+	 */
+	public static final class Group {
+		final String name;
+		final int maxThreads;
+		final int weight;
+
+		Group(String name, int maxThreads, int weight) {
+			this.name = name;
+			this.maxThreads = maxThreads;
+			this.weight = weight;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getMaxThreads() {
+			return maxThreads;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+	}
+
+	/**
+	 * One run of a job in a trace, from the time it left the NONE state until
+	 * it was done.
+	 */
+	public static final class Run {
+		final int job;
+		final String name;
+		final int flags;
+		final int rule;
+		final int group;
+		int priority;
+		/**
+		 * The time the run was scheduled.
+		 */
+		long scheduled;
+		/**
+		 * The time the job was first waiting to run, or -1.
+		 */
+		long ready = -1;
+		/**
+		 * The time the job started running, or -1.
+		 */
+		long started = -1;
+		/**
+		 * The time the job was done, or -1.
+		 */
+		long ended = -1;
+		long runTime;
+		/**
+		 * The state the job is in and the time it entered it.
+		 */
+		int state;
+		long stamp;
+
+		Run(int job, String name, int flags, int rule, int group) {
+			this.job = job;
+			this.name = name;
+			this.flags = flags;
+			this.rule = rule;
+			this.group = group;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isImplicit() {
+			return (flags & FLAG_IMPLICIT) != 0;
+		}
+
+		public boolean isSystem() {
+			return (flags & FLAG_SYSTEM) != 0;
+		}
+
+		public boolean isUser() {
+			return (flags & FLAG_USER) != 0;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Returns the number of the rule of the job, or -1 if it has none.
+		 */
+		public int getRule() {
+			return rule;
+		}
+
+		/**
+		 * Returns the number of the job group of the job, or -1 if it has none.
+		 */
+		public int getGroup() {
+			return group;
+		}
+
+		/**
+		 * Returns the time the run was scheduled in nanoseconds since the trace
+		 * was started.
+		 */
+		public long getScheduleTime() {
+			return scheduled;
+		}
+
+		/**
+		 * Returns the time in milliseconds between the time the run was scheduled
+		 * and the time the job was ready to run, which is the delay the job was
+		 * scheduled with, unless the job was put to sleep or woken up early.
+		 */
+		public long getDelay() {
+			return ready < 0 ? 0 : (ready - scheduled) / 1000000;
+		}
+
+		/**
+		 * Returns whether the job started running in this run.
+		 */
+		public boolean isStarted() {
+			return started >= 0;
+		}
+
+		/**
+		 * Returns the time in nanoseconds the job waited to run, from the time it
+		 * was ready to run until it started, or -1 if it never started.
+		 */
+		public long getQueueTime() {
+			return started < 0 || ready < 0 ? -1 : started - ready;
+		}
+
+		/**
+		 * Returns the time in nanoseconds the job spent running, not including
+		 * the time it yielded its rule to other jobs.
+		 */
+		public long getRunTime() {
+			return runTime;
+		}
+
+		@Override
+		public String toString() {
+			return name + "(" + job + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * A state change of a job, copied while the state lock of the job is held.
+	 */
+	private static final class Event {
+		final int job;
+		final long time;
+		final byte oldState;
+		final byte newState;
+		final byte priority;
+		final int delay;
+		/**
+		 * The name, flags, rule and group of the job if it left the NONE state,
+		 * and null otherwise.
+		 */
+		final String name;
+		final byte flags;
+		final ISchedulingRule rule;
+		final InternalJobGroup group;
+		final int maxThreads;
+		final int weight;
+
+		Event(InternalJob job, long time, int oldState, int newState, int delay) {
+			this.job = job.getJobNumber();
+			this.time = time;
+			this.oldState = (byte) oldState;
+			this.newState = (byte) newState;
+			this.priority = (byte) job.getPriority();
+			this.delay = delay;
+			if (oldState != Job.NONE) {
+				name = null;
+				flags = 0;
+				rule = null;
+				group = null;
+				maxThreads = 0;
+				weight = 0;
+				return;
+			}
+			int jobFlags = job instanceof ThreadJob ? FLAG_IMPLICIT : 0;
+			if (job.isSystem())
+				jobFlags |= FLAG_SYSTEM;
+			if (job.isUser())
+				jobFlags |= FLAG_USER;
+			name = job.getName();
+			flags = (byte) jobFlags;
+			rule = job.getRule();
+			group = job.getJobGroup();
+			maxThreads = group == null ? 0 : group.getMaxThreads();
+			weight = group == null ? 0 : group.getWeight();
+		}
+	}
+
+	private final DataOutputStream out;
+	private final long startNanos;
+	private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+	/**
+	 * The number of events in the queue.
+	 */
+	private final AtomicInteger queueSize = new AtomicInteger();
+	/**
+	 * The number of events dropped since the writer last wrote a LOST record.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+	/**
+	 * The total number of events dropped since the trace was started.
+	 */
+	private final AtomicLong lostCount = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean closed = false;
+	/**
+	 * The failure that stopped the writer, or null.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * The numbers of the rules and groups written so far. Only used by the
+	 * writer thread.
+	 */
+	private final Map<ISchedulingRule, Integer> rules = new WeakHashMap<>();
+	private final Map<InternalJobGroup, Integer> groups = new WeakHashMap<>();
+	private int nextRule = 0;
+	private int nextGroup = 0;
+
+	/**
+	 * Starts a trace written to the given stream.
+	 */
+	JobTrace(OutputStream output) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024));
+		startNanos = System.nanoTime();
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		writer = new Thread(this::write, "Job Trace Writer"); //$NON-NLS-1$
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Writes all queued events and closes the trace. Must not be called while
+	 * holding a lock of the job manager, since the writer may still be busy.
+	 */
+	void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writer);
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Returns the number of state changes dropped because the writer could not
+	 * keep up.
+	 */
+	long getLostCount() {
+		return lostCount.get();
+	}
+
+	private static String cut(String text) {
+		if (text == null)
+			return ""; //$NON-NLS-1$
+		return text.length() > MAX_DESCRIPTION ? text.substring(0, MAX_DESCRIPTION) : text;
+	}
+
+	/**
+	 * Records a state change of the given job at the given time, as returned by
+	 * System#nanoTime(). Must be called from JobManager#changeState. Never blocks: the state change is dropped if the
+	 * writer is behind by QUEUE_CAPACITY events.
+	 * @GuardedBy("job.jobStateLock")
+	 */
+	void stateChanged(InternalJob job, int oldState, int newState, long now) {
+		if (closed || failure != null)
+			return;
+		int size = queueSize.incrementAndGet();
+		if (size > QUEUE_CAPACITY) {
+			queueSize.decrementAndGet();
+			dropped.incrementAndGet();
+			lostCount.incrementAndGet();
+			return;
+		}
+		int delay = 0;
+		if (newState == Job.SLEEPING) {
+			long startTime = job.getStartTime();
+			delay = startTime == InternalJob.T_INFINITE ? -1 : (int) Math.min(Integer.MAX_VALUE, Math.max(0, startTime - System.currentTimeMillis()));
+		}
+		queue.offer(new Event(job, now - startNanos, oldState, newState, delay));
+		//wake the writer early when the queue fills up
+		if (size == QUEUE_CAPACITY / 2)
+			LockSupport.unpark(writer);
+	}
+
+	/**
+	 * The loop of the writer thread, until the trace is closed or fails.
+	 */
+	private void write() {
+		try {
+			try {
+				while (true) {
+					boolean stop = closed;
+					Event event;
+					while ((event = queue.poll()) != null) {
+						queueSize.decrementAndGet();
+						write(event);
+					}
+					long lost = dropped.getAndSet(0);
+					if (lost > 0) {
+						out.writeByte(TAG_LOST);
+						out.writeInt((int) Math.min(Integer.MAX_VALUE, lost));
+					}
+					if (stop)
+						break;
+					out.flush();
+					LockSupport.parkNanos(this, IDLE_NANOS);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			failure = e;
+			queue.clear();
+			RuntimeLog.log(new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, "Unable to write the job trace, the trace is stopped", e)); //$NON-NLS-1$
+		}
+	}
+
+	private void write(Event event) throws IOException {
+		if (event.name != null) {
+			int rule = ruleNumber(event.rule);
+			int group = groupNumber(event);
+			out.writeByte(TAG_JOB);
+			out.writeInt(event.job);
+			out.writeUTF(cut(event.name));
+			out.writeByte(event.flags);
+			out.writeInt(rule);
+			out.writeInt(group);
+		}
+		out.writeByte(TAG_STATE);
+		out.writeInt(event.job);
+		out.writeLong(event.time);
+		out.writeByte(event.oldState);
+		out.writeByte(event.newState);
+		out.writeByte(event.priority);
+		if (event.newState == Job.SLEEPING)
+			out.writeInt(event.delay);
+	}
+
+	private int ruleNumber(ISchedulingRule rule) throws IOException {
+		if (rule == null)
+			return -1;
+		Integer number = rules.get(rule);
+		if (number != null)
+			return number.intValue();
+		int result = nextRule++;
+		rules.put(rule, Integer.valueOf(result));
+		out.writeByte(TAG_RULE);
+		out.writeInt(result);
+		out.writeUTF(cut(rule.toString()));
+		return result;
+	}
+
+	private int groupNumber(Event event) throws IOException {
+		InternalJobGroup group = event.group;
+		if (group == null)
+			return -1;
+		Integer number = groups.get(group);
+		if (number != null)
+			return number.intValue();
+		int result = nextGroup++;
+		groups.put(group, Integer.valueOf(result));
+		out.writeByte(TAG_GROUP);
+		out.writeInt(result);
+		out.writeUTF(cut(group.getName()));
+		out.writeInt(event.maxThreads);
+		out.writeInt(event.weight);
+		return result;
+	}
+
+	/**
+	 * Reads the trace in the given stream. A trace that was cut short, for
+	 * example because the process ended, is read up to its last whole record.
+	 */
+	public static Trace read(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a job trace"); //$NON-NLS-1$
+		short version = in.readShort();
+		if (version != VERSION)
+			throw new IOException("Unsupported job trace version: " + version); //$NON-NLS-1$
+		Trace trace = new Trace(in.readLong());
+		Map<Integer, Run> current = new HashMap<>();
+		try {
+			while (true) {
+				byte tag = in.readByte();
+				switch (tag) {
+					case TAG_RULE :
+						trace.rules.put(Integer.valueOf(in.readInt()), in.readUTF());
+						break;
+					case TAG_GROUP :
+						trace.groups.put(Integer.valueOf(in.readInt()), new Group(in.readUTF(), in.readInt(), in.readInt()));
+						break;
+					case TAG_JOB :
+						Run run = new Run(in.readInt(), in.readUTF(), in.readByte(), in.readInt(), in.readInt());
+						current.put(Integer.valueOf(run.job), run);
+						trace.runs.add(run);
+						break;
+					case TAG_LOST :
+						trace.lostCount += in.readInt();
+						break;
+					case TAG_STATE :
+						Integer job = Integer.valueOf(in.readInt());
+						long time = in.readLong();
+						in.readByte();
+						int newState = in.readByte();
+						int priority = in.readByte();
+						if (newState == Job.SLEEPING)
+							in.readInt();
+						run = current.get(job);
+						if (run != null)
+							stateChanged(run, time, newState, priority);
+						if (newState == Job.NONE)
+							current.remove(job);
+						break;
+					default :
+						throw new IOException("Corrupted job trace, unknown tag: " + tag); //$NON-NLS-1$
+				}
+			}
+		} catch (EOFException e) {
+			//end of the trace
+		}
+		return trace;
+	}
+
+	private static void stateChanged(Run run, long time, int newState, int priority) {
+		if (run.state == Job.NONE) {
+			run.scheduled = time;
+		} else if (run.state == InternalJob.ABOUT_TO_RUN || run.state == Job.RUNNING) {
+			run.runTime += time - run.stamp;
+		}
+		switch (newState) {
+			case Job.WAITING :
+			case InternalJob.BLOCKED :
+				if (run.ready < 0)
+					run.ready = time;
+				break;
+			case InternalJob.ABOUT_TO_RUN :
+			case Job.RUNNING :
+				if (run.ready < 0)
+					run.ready = time;
+				if (run.started < 0)
+					run.started = time;
+				break;
+			case Job.NONE :
+				run.ended = time;
+				break;
+		}
+		run.priority = priority;
+		run.state = newState;
+		run.stamp = time;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2003, 2014 IBM Corporation and others.
+ *  Copyright (c) 2003, 2017 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,12 +10,10 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
-import java.util.HashMap;
-import java.util.Stack;
+import java.util.*;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
-import org.eclipse.core.runtime.jobs.ISchedulingRule;
-import org.eclipse.core.runtime.jobs.LockListener;
+import org.eclipse.core.runtime.jobs.*;
 
 /**
  * Stores the only reference to the graph that contains all the known
@@ -33,14 +31,23 @@ public class LockManager {
 	private static class LockState {
 		private int depth;
 		private OrderedLock lock;
+		private int[] readWriteDepths;
+		private ReadWriteLock readWriteLock;
 
 		/**
-		 * Suspends ownership of the given lock, and returns the saved state.
+		 * Suspends ownership of the given lock by the given thread, and returns
+		 * the saved state.
 		 */
-		protected static LockState suspend(OrderedLock lock) {
+		protected static LockState suspend(ISchedulingRule lock, Thread owner) {
 			LockState state = new LockState();
-			state.lock = lock;
-			state.depth = lock.forceRelease();
+			if (lock instanceof OrderedLock) {
+				state.lock = (OrderedLock) lock;
+				state.depth = state.lock.forceRelease();
+			} else {
+				//read/write locks are recorded in the graph by their write lock
+				state.readWriteLock = ((ReadWriteLock.Mode) lock).getReadWriteLock();
+				state.readWriteDepths = state.readWriteLock.forceRelease(owner);
+			}
 			return state;
 		}
 
@@ -48,6 +55,10 @@ public class LockManager {
 		 * Re-acquires a suspended lock and reverts to the correct lock depth.
 		 */
 		public void resume() {
+			if (readWriteLock != null) {
+				readWriteLock.resume(readWriteDepths);
+				return;
+			}
 			//spin until the lock is successfully acquired
 			//NOTE: spinning here allows the UI thread to service pending syncExecs
 			//if the UI thread is waiting to acquire a lock.
@@ -163,7 +174,7 @@ public class LockManager {
 			ISchedulingRule[] toSuspend = found.getLocks();
 			LockState[] suspended = new LockState[toSuspend.length];
 			for (int i = 0; i < toSuspend.length; i++)
-				suspended[i] = LockState.suspend((OrderedLock) toSuspend[i]);
+				suspended[i] = LockState.suspend(toSuspend[i], found.getCandidate());
 			synchronized (suspendedLocks) {
 				Stack<LockState[]> prevLocks = suspendedLocks.get(found.getCandidate());
 				if (prevLocks == null)
@@ -231,8 +242,7 @@ public class LockManager {
 	public boolean isLockOwner() {
 		//all job threads have to be treated as lock owners because UI thread
 		//may try to join a job
-		Thread current = Thread.currentThread();
-		if (current instanceof Worker)
+		if (Worker.getCurrent() != null)
 			return true;
 		DeadlockDetector tempLocks = locks;
 		if (tempLocks == null)
@@ -242,6 +252,19 @@ public class LockManager {
 		}
 	}
 
+	/**
+	 * Returns a copy of the locks owned and waited for by each thread, for a
+	 * snapshot of the job manager taken at the given time.
+	 */
+	List<IThreadSnapshot> snapshot(long now) {
+		DeadlockDetector tempLocks = locks;
+		if (tempLocks == null)
+			return Collections.emptyList();
+		synchronized (tempLocks) {
+			return tempLocks.snapshot(now);
+		}
+	}
+
 	/**
 	 * Creates and returns a new lock.
 	 */
@@ -249,6 +272,13 @@ public class LockManager {
 		return new OrderedLock(this);
 	}
 
+	/**
+	 * Creates and returns a new read/write lock.
+	 */
+	public synchronized ReadWriteLock newReadWriteLock() {
+		return new ReadWriteLock(this);
+	}
+
 	/**
 	 * Releases all the acquires that were called on the given rule. Needs to be called only once.
 	 */
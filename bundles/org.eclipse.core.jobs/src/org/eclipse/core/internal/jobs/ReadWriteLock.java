@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.HashMap;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * A lock that can be held by many readers or by a single writer.
+ *
+ * Both the read and the write lock are recorded in the deadlock detection graph
+ * as the write lock, so that a writer waiting for readers and readers waiting for
+ * a writer form the same wait-for edges as threads waiting for an exclusive lock.
+ * When deadlock is detected, all the holds of the chosen thread on this lock are
+ * suspended, and restored once the thread has acquired the lock it was waiting for.
+ *
+ * Waiting writers have precedence over new readers, so that a stream of readers
+ * cannot starve writers. A thread that already holds the read lock is never made
+ * to wait for a waiting writer, since the writer waits for it.
+ */
+public class ReadWriteLock implements IReadWriteLock {
+	/**
+	 * Locks are sequentially ordered for debugging purposes.
+	 */
+	private static int nextLockNumber = 0;
+
+	/**
+	 * One of the two locks of a read/write lock.
+	 */
+	final class Mode implements ILock, ISchedulingRule {
+		private final boolean write;
+
+		Mode(boolean write) {
+			this.write = write;
+		}
+
+		ReadWriteLock getReadWriteLock() {
+			return ReadWriteLock.this;
+		}
+
+		@Override
+		public void acquire() {
+			//spin until the lock is successfully acquired
+			//NOTE: spinning here allows the UI thread to service pending syncExecs
+			//if the UI thread is waiting to acquire a lock.
+			boolean interrupted = false;
+			while (true) {
+				try {
+					if (acquire(Long.MAX_VALUE))
+						break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			//preserve thread interrupt state
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		@Override
+		public boolean acquire(long delay) throws InterruptedException {
+			return ReadWriteLock.this.acquire(write, delay);
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public int getDepth() {
+			return ReadWriteLock.this.getDepth(write);
+		}
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public void release() {
+			ReadWriteLock.this.release(write);
+		}
+
+		/**
+		 * For debugging purposes only.
+		 */
+		@Override
+		public String toString() {
+			return "ReadWriteLock (" + number + (write ? ", write)" : ", read)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	/**
+	 * The manager that implements the deadlock detection and resolution protocol.
+	 */
+	private final LockManager manager;
+	private final int number;
+	private final Mode readLock = new Mode(false);
+	/**
+	 * The write lock, also used as the node of this lock in the deadlock detection graph.
+	 */
+	private final Mode writeLock = new Mode(true);
+
+	/**
+	 * The thread holding the write lock, or null.
+	 * @GuardedBy("this")
+	 */
+	private Thread writer;
+	/**
+	 * The number of nested acquires of the write lock.
+	 * @GuardedBy("this")
+	 */
+	private int writeDepth;
+	/**
+	 * The number of nested acquires of the read lock by each reading thread.
+	 * @GuardedBy("this")
+	 */
+	private final HashMap<Thread, Integer> readers = new HashMap<>();
+	/**
+	 * The number of threads waiting for the write lock.
+	 * @GuardedBy("this")
+	 */
+	private int waitingWriters;
+
+	ReadWriteLock(LockManager manager) {
+		this.manager = manager;
+		this.number = nextLockNumber++;
+	}
+
+	@Override
+	public ILock readLock() {
+		return readLock;
+	}
+
+	@Override
+	public ILock writeLock() {
+		return writeLock;
+	}
+
+	boolean acquire(boolean write, long delay) throws InterruptedException {
+		if (Thread.interrupted())
+			throw new InterruptedException();
+		if (attempt(write))
+			return true;
+		if (delay <= 0)
+			return false;
+		boolean success = doAcquire(write, delay);
+		manager.resumeSuspendedLocks(Thread.currentThread());
+		if (!success && Thread.interrupted())
+			throw new InterruptedException();
+		return success;
+	}
+
+	/**
+	 * Attempts to acquire the lock in the given mode for the current thread.
+	 * Returns false if the lock is not available and true if it has been acquired.
+	 */
+	private synchronized boolean attempt(boolean write) {
+		Thread current = Thread.currentThread();
+		if (write) {
+			if (writer == current) {
+				grantWrite(current);
+				return true;
+			}
+			if (readers.containsKey(current))
+				throw new IllegalStateException("A read lock cannot be upgraded to a write lock: " + this); //$NON-NLS-1$
+			if (writer != null || !readers.isEmpty())
+				return false;
+			grantWrite(current);
+			return true;
+		}
+		//readers wait for waiting writers, unless they already hold the lock
+		if (writer == current || readers.containsKey(current) || (writer == null && waitingWriters == 0)) {
+			grantRead(current);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Blocks until the lock is granted in the given mode, or until the delay has elapsed.
+	 */
+	private boolean doAcquire(boolean write, long delay) {
+		final Thread current = Thread.currentThread();
+		//notify hook to service pending syncExecs before falling asleep
+		Thread owner;
+		synchronized (this) {
+			owner = writer;
+		}
+		if (manager.aboutToWait(owner) && owner != null) {
+			//hook granted immediate access on behalf of the writer
+			synchronized (this) {
+				if (write)
+					grantWrite(writer == null ? current : writer);
+				else
+					grantRead(current);
+			}
+			return true;
+		}
+		synchronized (this) {
+			if (attempt(write))
+				return true;
+			if (write)
+				waitingWriters++;
+		}
+		manager.addLockWaitThread(current, writeLock);
+		boolean success = false;
+		try {
+			synchronized (this) {
+				long start = System.currentTimeMillis();
+				long remaining = delay;
+				while (!(success = attemptWaiting(write)) && remaining > 0) {
+					wait(remaining);
+					if (delay != Long.MAX_VALUE)
+						remaining = delay - (System.currentTimeMillis() - start);
+				}
+			}
+		} catch (InterruptedException e) {
+			//remember the interrupt to throw it later
+			current.interrupt();
+		} finally {
+			synchronized (this) {
+				//the waiting writer was counted until it was granted the lock
+				if (write && !success)
+					waitingWriters--;
+				//readers held back by a writer that gave up may proceed
+				if (!success)
+					notifyAll();
+			}
+		}
+		if (!success)
+			manager.removeLockWaitThread(current, writeLock);
+		return success;
+	}
+
+	/**
+	 * Attempts to acquire the lock for a thread that is already counted as waiting.
+	 * @GuardedBy("this")
+	 */
+	private boolean attemptWaiting(boolean write) {
+		if (!write)
+			return attempt(false);
+		Thread current = Thread.currentThread();
+		if (writer != null || !readers.isEmpty())
+			return false;
+		waitingWriters--;
+		grantWrite(current);
+		return true;
+	}
+
+	/**
+	 * Suspends all the holds of the given thread on this lock, and returns their
+	 * depths, write depth first. Used to resolve deadlock.
+	 */
+	synchronized int[] forceRelease(Thread owner) {
+		int[] depths = new int[2];
+		if (writer == owner) {
+			depths[0] = writeDepth;
+			writer = null;
+			writeDepth = 0;
+		}
+		Integer readDepth = readers.remove(owner);
+		if (readDepth != null)
+			depths[1] = readDepth.intValue();
+		if (depths[0] > 0 || depths[1] > 0) {
+			manager.aboutToRelease();
+			manager.removeLockThread(owner, writeLock);
+			notifyAll();
+		}
+		return depths;
+	}
+
+	int getDepth(boolean write) {
+		synchronized (this) {
+			if (write)
+				return writeDepth;
+			Integer readDepth = readers.get(Thread.currentThread());
+			return readDepth == null ? 0 : readDepth.intValue();
+		}
+	}
+
+	/**
+	 * Grants the write lock to the given thread.
+	 * @GuardedBy("this")
+	 */
+	private void grantWrite(Thread thread) {
+		writer = thread;
+		writeDepth++;
+		manager.addLockThread(thread, writeLock);
+	}
+
+	/**
+	 * Grants the read lock to the given thread.
+	 * @GuardedBy("this")
+	 */
+	private void grantRead(Thread thread) {
+		Integer readDepth = readers.get(thread);
+		readers.put(thread, Integer.valueOf(readDepth == null ? 1 : readDepth.intValue() + 1));
+		manager.addLockThread(thread, writeLock);
+	}
+
+	synchronized void release(boolean write) {
+		if (write) {
+			if (writeDepth == 0)
+				return;
+			Thread owner = writer;
+			if (--writeDepth == 0) {
+				//notify hook
+				manager.aboutToRelease();
+				writer = null;
+				notifyAll();
+			}
+			manager.removeLockThread(owner, writeLock);
+			return;
+		}
+		Thread current = Thread.currentThread();
+		Integer readDepth = readers.get(current);
+		if (readDepth == null)
+			return;
+		Assert.isTrue(readDepth.intValue() > 0, "Lock released too many times"); //$NON-NLS-1$
+		if (readDepth.intValue() == 1) {
+			manager.aboutToRelease();
+			readers.remove(current);
+			if (readers.isEmpty())
+				notifyAll();
+		} else {
+			readers.put(current, Integer.valueOf(readDepth.intValue() - 1));
+		}
+		manager.removeLockThread(current, writeLock);
+	}
+
+	/**
+	 * Re-acquires the holds suspended by forceRelease in the current thread,
+	 * and reverts to the correct depths.
+	 */
+	void resume(int[] depths) {
+		if (depths[0] > 0) {
+			acquireSuspended(writeLock);
+			synchronized (this) {
+				for (int i = writeDepth; i < depths[0]; i++)
+					grantWrite(writer);
+			}
+		}
+		if (depths[1] > 0) {
+			acquireSuspended(readLock);
+			synchronized (this) {
+				for (int i = getDepth(false); i < depths[1]; i++)
+					grantRead(Thread.currentThread());
+			}
+		}
+	}
+
+	private void acquireSuspended(Mode mode) {
+		//spin until the lock is successfully acquired
+		while (true) {
+			try {
+				if (mode.acquire(Long.MAX_VALUE))
+					break;
+			} catch (InterruptedException e) {
+				//ignore and loop
+			}
+		}
+	}
+
+	/**
+	 * For debugging purposes only.
+	 */
+	@Override
+	public String toString() {
+		return "ReadWriteLock (" + number + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
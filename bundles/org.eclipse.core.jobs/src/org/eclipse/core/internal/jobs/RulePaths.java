@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Finds the paths of hierarchical scheduling rules, and the keys MultiRule
+ * and ConflictIndex look those paths up by. Two paths have keys with equal
+ * segments wherever IPath#isPrefixOf considers the paths equal.
+ */
+public final class RulePaths {
+	private RulePaths() {
+		super();
+	}
+
+	/**
+	 * Returns the path of the given rule, or null if the rule is not hierarchical.
+	 * A shared rule only conflicts with the rules its underlying rule conflicts
+	 * with, so it has the path of its underlying rule.
+	 */
+	public static IPath getPath(ISchedulingRule rule) {
+		if (rule instanceof SharedRule)
+			rule = ((SharedRule) rule).getRule();
+		if (rule instanceof IHierarchicalRule)
+			return ((IHierarchicalRule) rule).getRulePath();
+		return null;
+	}
+
+	/**
+	 * Returns the key of the given path: its segments, preceded by its device
+	 * if it has one. IPath#isPrefixOf ignores the case of devices, so they are
+	 * folded to one case.
+	 */
+	public static String[] getKey(IPath path) {
+		String[] segments = path.segments();
+		String device = path.getDevice();
+		if (device == null)
+			return segments;
+		//the device is the outermost segment of the hierarchy
+		String[] key = new String[segments.length + 1];
+		key[0] = foldCase(device);
+		System.arraycopy(segments, 0, key, 1, segments.length);
+		return key;
+	}
+
+	/**
+	 * Returns the given string with each character folded the way
+	 * String#equalsIgnoreCase compares them.
+	 */
+	private static String foldCase(String string) {
+		char[] chars = string.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		return new String(chars);
+	}
+}
@@ -71,6 +71,13 @@ class ThreadJob extends Job {
 	 */
 	boolean isWaiting;
 
+	/**
+	 * The number of notifications of the job blocking this thread job, at the
+	 * time the job manager found it blocking. Only used by the thread waiting
+	 * in joinRun().
+	 */
+	int blockerNotifications;
+
 	ThreadJob(ISchedulingRule rule) {
 		super("Implicit Job"); //$NON-NLS-1$
 		setSystem(true);
@@ -295,15 +302,19 @@ class ThreadJob extends Job {
 				manager.getLockManager().addLockWaitThread(currentThread, threadJob.getRule());
 				synchronized (blockingJob.jobStateLock) {
 					try {
-						// Wait until we are no longer definitely blocked (not running).
+						// Wait until we are no longer definitely blocked, that is until
+						// the blocking job changes state or releases its rule. Every such
+						// change notifies the waiters of the blocking job, so there is
+						// nothing to wait for if a notification happened since runNow.
 						// The actual exit conditions are listed above at the beginning of
 						// this while loop
-						int state = blockingJob.getState();
-						//ensure we don't wait forever if the blocker is waiting, because it might have yielded to me
-						if (state == Job.RUNNING && canBlock)
-							blockingJob.jobStateLock.wait();
-						else if (state != Job.NONE)
-							blockingJob.jobStateLock.wait(250);
+						if (blockingJob.getStateNotifications() == threadJob.blockerNotifications) {
+							//threads that cannot block must keep servicing the lock listener
+							if (canBlock)
+								blockingJob.jobStateLock.wait();
+							else
+								blockingJob.jobStateLock.wait(250);
+						}
 					} catch (InterruptedException e) {
 						// This thread may be interrupted via two common scenarios. 1) If
 						// the UISynchronizer is in use and this thread is a UI thread
@@ -362,10 +373,24 @@ class ThreadJob extends Job {
 		if (JobManager.DEBUG_BEGIN_END)
 			lastPush = (RuntimeException) new RuntimeException().fillInStackTrace();
 		//check for containment last because we don't want to fail again on endRule
-		if (baseRule != null && rule != null && !(baseRule.contains(rule) && baseRule.isConflicting(rule)))
+		if (baseRule != null && rule != null && !isNested(baseRule, rule))
 			illegalPush(rule, baseRule);
 	}
 
+	/**
+	 * Returns whether the given rule may be begun by a thread that owns the given
+	 * base rule. A shared rule is nested in any rule containing it, and in any
+	 * client rule containing its underlying rule.
+	 */
+	private static boolean isNested(ISchedulingRule baseRule, ISchedulingRule rule) {
+		if (rule instanceof SharedRule) {
+			if (baseRule instanceof SharedRule || baseRule instanceof MultiRule)
+				return baseRule.contains(rule);
+			rule = ((SharedRule) rule).getRule();
+		}
+		return baseRule.contains(rule) && baseRule.isConflicting(rule);
+	}
+
 	/**
 	 * Reset all of this job's fields so it can be reused.  Returns false if
 	 * reuse is not possible
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.Objects;
+import org.eclipse.core.runtime.*;
+
+/**
+ * A progress monitor that limits how often progress is reported to the monitor
+ * it wraps. Calls to worked and internalWorked are added up, and subTask and
+ * setTaskName only keep the most recent name. Pending progress is forwarded at
+ * most once per interval, when the job reports progress again, and always
+ * before beginTask, done and blocking notifications, so no work is ever lost.
+ * Names that are equal to the one last forwarded are not forwarded again.
+ *
+ * The cancelation flag is kept in a volatile field, so that jobs can poll
+ * isCanceled as often as they like. The wrapped monitor can also be canceled
+ * directly, for example as part of a canceled progress group, so it is still
+ * asked at most once per interval.
+ *
+ * Like other progress monitors, this monitor is meant to be used by the thread
+ * running the job. Only isCanceled and setCanceled may be called from other threads.
+ */
+public class ThrottledProgressMonitor extends ProgressMonitorWrapper {
+	private final long interval;
+	private volatile boolean canceled;
+	/**
+	 * The time when the wrapped monitor is next asked whether it is canceled.
+	 */
+	private volatile long nextCancelCheck;
+
+	/**
+	 * The time when pending progress can be forwarded again.
+	 */
+	private long nextUpdate;
+	private int pendingWorked;
+	private double pendingInternalWorked;
+	/**
+	 * Whether there are task or sub task names to forward.
+	 */
+	private boolean hasPendingTaskName, hasPendingSubTask;
+	private String pendingTaskName, pendingSubTask;
+	/**
+	 * The task and sub task names last forwarded.
+	 */
+	private String taskName, subTask;
+
+	/**
+	 * Creates a monitor that reports progress to the given monitor at most once
+	 * in the given interval in milliseconds.
+	 */
+	public ThrottledProgressMonitor(IProgressMonitor monitor, long interval) {
+		super(monitor);
+		Assert.isLegal(interval > 0, "Progress interval must be positive"); //$NON-NLS-1$
+		this.interval = interval * 1000000;
+		long now = System.nanoTime();
+		this.nextUpdate = now;
+		this.nextCancelCheck = now;
+	}
+
+	@Override
+	public void beginTask(String name, int totalWork) {
+		flush();
+		taskName = name;
+		subTask = null;
+		super.beginTask(name, totalWork);
+	}
+
+	@Override
+	public void clearBlocked() {
+		flush();
+		super.clearBlocked();
+	}
+
+	@Override
+	public void done() {
+		flush();
+		super.done();
+	}
+
+	/**
+	 * Forwards all the pending progress to the wrapped monitor.
+	 */
+	private void flush() {
+		nextUpdate = System.nanoTime() + interval;
+		if (hasPendingTaskName) {
+			String name = pendingTaskName;
+			hasPendingTaskName = false;
+			pendingTaskName = null;
+			if (!Objects.equals(name, taskName)) {
+				taskName = name;
+				super.setTaskName(name);
+			}
+		}
+		if (hasPendingSubTask) {
+			String name = pendingSubTask;
+			hasPendingSubTask = false;
+			pendingSubTask = null;
+			if (!Objects.equals(name, subTask)) {
+				subTask = name;
+				super.subTask(name);
+			}
+		}
+		if (pendingWorked != 0) {
+			int work = pendingWorked;
+			pendingWorked = 0;
+			super.worked(work);
+		}
+		if (pendingInternalWorked != 0) {
+			double work = pendingInternalWorked;
+			pendingInternalWorked = 0;
+			super.internalWorked(work);
+		}
+	}
+
+	/**
+	 * Forwards the pending progress if the interval has elapsed since it was
+	 * last forwarded.
+	 */
+	private void flushIfDue() {
+		if (System.nanoTime() - nextUpdate >= 0)
+			flush();
+	}
+
+	@Override
+	public void internalWorked(double work) {
+		pendingInternalWorked += work;
+		flushIfDue();
+	}
+
+	@Override
+	public boolean isCanceled() {
+		if (canceled)
+			return true;
+		long now = System.nanoTime();
+		if (now - nextCancelCheck < 0)
+			return false;
+		nextCancelCheck = now + interval;
+		if (super.isCanceled())
+			canceled = true;
+		return canceled;
+	}
+
+	@Override
+	public void setBlocked(IStatus reason) {
+		flush();
+		super.setBlocked(reason);
+	}
+
+	@Override
+	public void setCanceled(boolean value) {
+		canceled = value;
+		//ask the wrapped monitor again on the next check
+		nextCancelCheck = System.nanoTime();
+		super.setCanceled(value);
+	}
+
+	@Override
+	public void setTaskName(String name) {
+		pendingTaskName = name;
+		hasPendingTaskName = true;
+		flushIfDue();
+	}
+
+	@Override
+	public void subTask(String name) {
+		pendingSubTask = name;
+		hasPendingSubTask = true;
+		flushIfDue();
+	}
+
+	@Override
+	public void worked(int work) {
+		pendingWorked += work;
+		flushIfDue();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2003, 2014 IBM Corporation and others.
+ *  Copyright (c) 2003, 2017 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,27 +10,88 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.osgi.util.NLS;
 
 /**
- * A worker thread processes jobs supplied to it by the worker pool.  When
+ * A worker processes jobs supplied to it by the worker pool.  When
  * the worker pool gives it a null job, the worker dies.
+ * <p>
+ * A worker normally runs on its own platform thread. When the pool runs jobs on
+ * virtual threads, it runs on a virtual thread instead. Either way, the worker
+ * of the current thread can be found through {@link #getCurrent()}.
  */
-public class Worker extends Thread {
+public class Worker implements Runnable {
 	//worker number used for debugging purposes only
 	private static int nextWorkerNumber = 0;
+	/**
+	 * The workers running on virtual threads, by thread. Empty unless the pool
+	 * runs jobs on virtual threads.
+	 */
+	private static final ConcurrentHashMap<Thread, Worker> virtualWorkers = new ConcurrentHashMap<>();
 	private volatile InternalJob currentJob;
 	private final WorkerPool pool;
+	/**
+	 * The thread running this worker.
+	 */
+	private final Thread thread;
+
+	/**
+	 * The platform thread of a worker.
+	 */
+	private static final class WorkerThread extends Thread {
+		final Worker worker;
+
+		WorkerThread(Worker worker, String name) {
+			super(worker, name);
+			this.worker = worker;
+		}
+	}
 
 	public Worker(WorkerPool pool) {
-		super("Worker-" + nextWorkerNumber++); //$NON-NLS-1$
+		this(pool, null);
+	}
+
+	/**
+	 * Creates a worker that runs on a new thread of the given virtual thread
+	 * factory, or on a new platform thread if the factory is null.
+	 */
+	Worker(WorkerPool pool, ThreadFactory virtualThreadFactory) {
 		this.pool = pool;
+		String name = "Worker-" + nextWorkerNumber++; //$NON-NLS-1$
+		if (virtualThreadFactory == null) {
+			thread = new WorkerThread(this, name);
+		} else {
+			thread = virtualThreadFactory.newThread(this);
+			thread.setName(name);
+		}
 		//set the context loader to avoid leaking the current context loader
 		//for the thread that spawns this worker (bug 98376)
-		setContextClassLoader(pool.defaultContextLoader);
+		thread.setContextClassLoader(pool.defaultContextLoader);
+	}
+
+	/**
+	 * Returns the worker running on the current thread, or null if the current
+	 * thread is not a worker thread.
+	 */
+	static Worker getCurrent() {
+		Thread current = Thread.currentThread();
+		if (current instanceof WorkerThread)
+			return ((WorkerThread) current).worker;
+		return virtualWorkers.isEmpty() ? null : virtualWorkers.get(current);
+	}
+
+	/**
+	 * Returns whether the given thread is running a worker of the job manager.
+	 */
+	public static boolean isWorkerThread(Thread thread) {
+		if (thread instanceof WorkerThread)
+			return true;
+		return thread != null && !virtualWorkers.isEmpty() && virtualWorkers.containsKey(thread);
 	}
 
 	/**
@@ -40,6 +101,29 @@ public class Worker extends Thread {
 		return (Job) currentJob;
 	}
 
+	/**
+	 * Returns the thread running this worker.
+	 */
+	Thread getThread() {
+		return thread;
+	}
+
+	/**
+	 * Returns whether this worker runs on a virtual thread.
+	 */
+	boolean isVirtual() {
+		return !(thread instanceof WorkerThread);
+	}
+
+	/**
+	 * Starts running jobs on the thread of this worker.
+	 */
+	void startWorker() {
+		if (isVirtual())
+			virtualWorkers.put(thread, this);
+		thread.start();
+	}
+
 	private IStatus handleException(InternalJob job, Throwable t) {
 		String message = NLS.bind(JobMessages.jobs_internalError, job.getName());
 		return new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, message, t);
@@ -47,7 +131,7 @@ public class Worker extends Thread {
 
 	@Override
 	public void run() {
-		setPriority(Thread.NORM_PRIORITY);
+		thread.setPriority(Thread.NORM_PRIORITY);
 		try {
 			while ((currentJob = pool.startJob(this)) != null) {
 				IStatus result = Status.OK_STATUS;
@@ -76,7 +160,7 @@ public class Worker extends Thread {
 					pool.endJob(currentJob, result);
 					currentJob = null;
 					//reset thread priority in case job changed it
-					setPriority(Thread.NORM_PRIORITY);
+					thread.setPriority(Thread.NORM_PRIORITY);
 				}
 			}
 		} catch (Throwable t) {
@@ -84,6 +168,13 @@ public class Worker extends Thread {
 		} finally {
 			currentJob = null;
 			pool.endWorker(this);
+			if (isVirtual())
+				virtualWorkers.remove(thread);
 		}
 	}
+
+	@Override
+	public String toString() {
+		return thread.toString();
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2003, 2012 IBM Corporation and others.
+ *  Copyright (c) 2003, 2017 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,8 +10,9 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
-import org.eclipse.core.runtime.Assert;
-import org.eclipse.core.runtime.IStatus;
+import java.util.concurrent.ThreadFactory;
+import org.eclipse.core.internal.runtime.RuntimeLog;
+import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 
 /**
@@ -19,6 +20,14 @@ import org.eclipse.core.runtime.jobs.Job;
  * required, and are eventually discarded if not in use for awhile. This class
  * maintains the thread creation/destruction policies for the job manager.
  *
+ * While the pool is smaller than its eager size, a new worker is created as
+ * soon as a job is queued and all workers are busy. Beyond that size, the pool
+ * only grows when the first waiting job is late, which is decided by the job
+ * manager from the priority of the job (see JobManager#getGrowthTime), so that
+ * a burst of short jobs is handled by the existing workers instead of a new
+ * thread for each job. The pool never grows beyond its maximum size, and idle
+ * workers beyond the minimum size end after the keep-alive time.
+ *
  * Implementation note: all the data structures of this class are protected
  * by the instance's object monitor.  To avoid deadlock with third party code,
  * this lock is never held when calling methods outside this class that may in
@@ -26,13 +35,45 @@ import org.eclipse.core.runtime.jobs.Job;
  */
 class WorkerPool {
 	/**
-	 * Threads not used by their best before timestamp are destroyed.
+	 * The default time in milliseconds after which idle threads are destroyed.
+	 */
+	static final long DEFAULT_KEEP_ALIVE = 60000;
+	/**
+	 * The default minimum number of idle workers.
+	 */
+	static final int DEFAULT_MIN_THREADS = 1;
+	/**
+	 * The number of processors available to the virtual machine.
+	 */
+	static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The number of workers per processor that are created as soon as they are needed.
+	 */
+	private static final int EAGER_THREADS_PER_PROCESSOR = 4;
+	/**
+	 * Threads not used for this long are destroyed.
+	 */
+	private long keepAlive = DEFAULT_KEEP_ALIVE;
+	/**
+	 * There will always be at least minThreads idle workers in the pool.
+	 */
+	private int minThreads = DEFAULT_MIN_THREADS;
+	/**
+	 * There will never be more than maxThreads workers in the pool.
+	 */
+	private int maxThreads = Integer.MAX_VALUE;
+	/**
+	 * The size up to which the pool grows as soon as all workers are busy.
 	 */
-	private static final int BEST_BEFORE = 60000;
+	private int eagerThreads = Math.max(DEFAULT_MIN_THREADS, EAGER_THREADS_PER_PROCESSOR * PROCESSORS);
 	/**
-	 * There will always be at least MIN_THREADS workers in the pool.
+	 * The largest number of workers the pool ever had.
 	 */
-	private static final int MIN_THREADS = 1;
+	private int peakThreads = 0;
+	/**
+	 * The number of workers ever created by the pool.
+	 */
+	private long createdThreads = 0;
 	/**
 	 * Use the busy thread count to avoid starting new threads when a living
 	 * thread is just doing house cleaning (notifying listeners, etc).
@@ -58,10 +99,21 @@ class WorkerPool {
 	 * The number of threads that are currently sleeping
 	 */
 	private int sleepingThreads = 0;
+	/**
+	 * The number of times jobQueued has been called. A worker that found no job
+	 * to run only goes to sleep if no job was queued since it last looked, so
+	 * that it cannot miss a notification.
+	 */
+	private long queuedCount = 0;
 	/**
 	 * The living set of workers in this pool.
 	 */
 	private Worker[] threads = new Worker[10];
+	/**
+	 * The factory creating the virtual threads that workers run on, or null if
+	 * workers run on platform threads.
+	 */
+	private volatile ThreadFactory virtualThreadFactory;
 
 	protected WorkerPool(JobManager manager) {
 		this.manager = manager;
@@ -79,6 +131,57 @@ class WorkerPool {
 			threads = newThreads;
 		}
 		threads[numThreads++] = worker;
+		createdThreads++;
+		peakThreads = Math.max(peakThreads, numThreads);
+	}
+
+	/**
+	 * Creates and starts a new worker.
+	 */
+	private synchronized void addWorker() {
+		Worker worker = new Worker(this, virtualThreadFactory);
+		//virtual threads are always daemon threads
+		if (!worker.isVirtual())
+			worker.getThread().setDaemon(isDaemon);
+		add(worker);
+		if (JobManager.DEBUG)
+			JobManager.debug("worker added to pool: " + worker); //$NON-NLS-1$
+		worker.startWorker();
+	}
+
+	/**
+	 * Checks whether a late job needs a new worker, and creates it. Called
+	 * by the timer thread at the times requested with JobManager#checkWorkerPoolAt.
+	 */
+	void checkGrowth() {
+		int threads;
+		synchronized (this) {
+			if (!needsWorker())
+				return;
+			threads = numThreads;
+		}
+		//must not hold the pool lock while looking at the wait queue
+		long growthTime = manager.getGrowthTime(threads);
+		if (growthTime == InternalJob.T_INFINITE)
+			return;
+		if (growthTime > System.currentTimeMillis()) {
+			manager.checkWorkerPoolAt(growthTime);
+			return;
+		}
+		synchronized (this) {
+			if (needsWorker())
+				addWorker();
+		}
+	}
+
+	/**
+	 * Sets the size limits and the keep-alive time of this pool.
+	 */
+	synchronized void configure(int min, int max, long keepAliveTime) {
+		minThreads = Math.max(0, min);
+		maxThreads = Math.max(Math.max(1, minThreads), max);
+		keepAlive = Math.max(1, keepAliveTime);
+		eagerThreads = Math.min(maxThreads, Math.max(minThreads, EAGER_THREADS_PER_PROCESSOR * PROCESSORS));
 	}
 
 	private synchronized void decrementBusyThreads() {
@@ -133,21 +236,59 @@ class WorkerPool {
 	 * creating a new worker if necessary. The provided job may be null.
 	 */
 	protected synchronized void jobQueued() {
-		//if there is a sleeping thread, wake it up
+		jobQueued(1);
+	}
+
+	/**
+	 * Notification that the given number of jobs have been added to the queue.
+	 * Wakes up to that many sleeping workers, or creates a new worker if necessary.
+	 * Further workers are woken as the queued jobs are started.
+	 */
+	protected synchronized void jobQueued(int count) {
+		queuedCount++;
+		//if there are sleeping threads, wake up one per job
 		if (sleepingThreads > 0) {
-			notify();
+			for (int i = Math.min(count, sleepingThreads); i > 0; i--)
+				notify();
 			return;
 		}
-		//create a thread if all threads are busy
-		if (busyThreads >= numThreads) {
-			Worker worker = new Worker(this);
-			worker.setDaemon(isDaemon);
-			add(worker);
-			if (JobManager.DEBUG)
-				JobManager.debug("worker added to pool: " + worker); //$NON-NLS-1$
-			worker.start();
+		if (!needsWorker())
+			return;
+		//create a thread if all threads are busy, and the pool is small or virtual threads are used
+		if (numThreads < eagerThreads || virtualThreadFactory != null) {
+			addWorker();
 			return;
 		}
+		//otherwise let the timer grow the pool once the first waiting job is late
+		manager.checkWorkerPoolAt(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns whether the given worker runs on another kind of thread than the
+	 * pool now uses for new workers, and must end.
+	 * @GuardedBy("this")
+	 */
+	private boolean isRetired(Worker worker) {
+		return worker.isVirtual() != (virtualThreadFactory != null);
+	}
+
+	/**
+	 * Ends a retired worker. If jobs are waiting, a worker of the right kind is
+	 * woken up or created to run them instead.
+	 * @GuardedBy("this")
+	 */
+	private void retire(Worker worker) {
+		endWorker(worker);
+		if (manager.sleepHint() <= 0)
+			jobQueued();
+	}
+
+	/**
+	 * Returns whether all workers are busy and the pool may still grow.
+	 * @GuardedBy("this")
+	 */
+	private boolean needsWorker() {
+		return sleepingThreads == 0 && busyThreads >= numThreads && numThreads < maxThreads;
 	}
 
 	/**
@@ -172,14 +313,72 @@ class WorkerPool {
 		this.isDaemon = value;
 	}
 
+	/**
+	 * Sets whether workers created in the worker pool should run on virtual
+	 * threads. Virtual threads are looked up reflectively, and platform threads
+	 * are used if the running VM does not support them.
+	 */
+	synchronized boolean setUseVirtualThreads(boolean value) {
+		virtualThreadFactory = null;
+		if (value) {
+			try {
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null); //$NON-NLS-1$
+				virtualThreadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder); //$NON-NLS-1$ //$NON-NLS-2$
+			} catch (Exception e) {
+				String msg = "Virtual threads are not supported by this VM, jobs will run on platform threads"; //$NON-NLS-1$
+				RuntimeLog.log(new Status(IStatus.WARNING, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, msg, e));
+			}
+		}
+		//idle workers of the other kind end when they wake up, see #isRetired
+		notifyAll();
+		return virtualThreadFactory != null;
+	}
+
 	protected synchronized void shutdown() {
 		notifyAll();
 	}
 
 	/**
-	 * Sleep for the given duration or until woken.
+	 * Returns the number of workers in the pool.
+	 * @GuardedBy("this")
+	 */
+	int getThreadCount() {
+		return numThreads;
+	}
+
+	/**
+	 * Returns the number of workers that are not idle.
+	 * @GuardedBy("this")
 	 */
-	private synchronized void sleep(long duration) {
+	int getBusyThreadCount() {
+		return Math.min(busyThreads, numThreads);
+	}
+
+	/**
+	 * @GuardedBy("this")
+	 */
+	int getPeakThreadCount() {
+		return peakThreads;
+	}
+
+	/**
+	 * @GuardedBy("this")
+	 */
+	long getCreatedThreadCount() {
+		return createdThreads;
+	}
+
+	private synchronized long getQueuedCount() {
+		return queuedCount;
+	}
+
+	/**
+	 * Sleep for the given duration or until woken. Returns immediately if a job
+	 * was queued since the given queued count was read.
+	 */
+	private synchronized void sleep(long lastQueuedCount, long duration) {
+		if (queuedCount != lastQueuedCount)
+			return;
 		sleepingThreads++;
 		busyThreads--;
 		if (JobManager.DEBUG)
@@ -206,31 +405,50 @@ class WorkerPool {
 				endWorker(worker);
 				return null;
 			}
+			if (isRetired(worker)) {
+				retire(worker);
+				return null;
+			}
 			//set the thread to be busy now in case of reentrant scheduling
 			incrementBusyThreads();
 		}
 		Job job = null;
 		try {
+			long lastQueuedCount = getQueuedCount();
 			job = manager.startJob(worker);
-			//spin until a job is found or until we have been idle for too long
+			//wait until a job is found or until we have been idle for too long
 			long idleStart = System.currentTimeMillis();
 			while (manager.isActive() && job == null) {
-				long hint = manager.sleepHint();
-				if (hint > 0)
-					sleep(Math.min(hint, BEST_BEFORE));
+				if (virtualThreadFactory != null) {
+					//virtual threads are cheap to create, so idle workers end right away
+					//unless a job was queued, and jobQueued creates a new worker as needed
+					synchronized (this) {
+						if (getQueuedCount() == lastQueuedCount) {
+							endWorker(worker);
+							return null;
+						}
+					}
+				} else {
+					//sleeping jobs are queued by the timer, so sleep until a job is queued
+					sleep(lastQueuedCount, keepAlive);
+				}
+				synchronized (this) {
+					if (isRetired(worker)) {
+						retire(worker);
+						return null;
+					}
+				}
+				lastQueuedCount = getQueuedCount();
 				job = manager.startJob(worker);
 				//if we were already idle, and there are still no new jobs, then
 				// the thread can expire
 				synchronized (this) {
-					if (job == null && (System.currentTimeMillis() - idleStart > BEST_BEFORE) && (numThreads - busyThreads) > MIN_THREADS) {
+					if (job == null && virtualThreadFactory == null && (System.currentTimeMillis() - idleStart > keepAlive) && (numThreads - busyThreads) > minThreads) {
 						//must remove the worker immediately to prevent all threads from expiring
 						endWorker(worker);
 						return null;
 					}
 				}
-				//if we didn't sleep but there was no job available, make sure we sleep to avoid a tight loop (bug 260724)
-				if (hint <= 0 && job == null)
-					sleep(50);
 			}
 			if (job != null) {
 				//if this job has a rule, then we are essentially acquiring a lock
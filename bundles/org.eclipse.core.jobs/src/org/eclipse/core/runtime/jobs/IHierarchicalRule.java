@@ -0,0 +1,49 @@
+/*******************************************************************************
+ *  Copyright (c) 2017 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A scheduling rule that occupies a position in a hierarchy, such as a rule
+ * that locks a resource and all of its descendants. Rules implementing this
+ * interface allow the job manager to find conflicting rules by looking up their
+ * paths in an index, rather than by asking every other rule whether it conflicts.
+ * <p>
+ * Implementations must guarantee that two hierarchical rules can only conflict,
+ * and that one can only contain the other, if the path of one rule is a prefix
+ * of the path of the other rule, as defined by <code>IPath.isPrefixOf(IPath)</code>.
+ * The converse is not required: the job manager still calls <code>isConflicting</code>
+ * or <code>contains</code> to confirm a conflict or containment between rules with
+ * related paths. Hierarchical rules may also conflict with, or contain, rules that
+ * do not implement this interface.
+ * </p><p>
+ * The path of a rule must not change for the lifetime of the rule.
+ * </p><p>
+ * A <code>MultiRule</code> whose children all implement this interface is
+ * indexed by the paths of its children, and so are the children of a
+ * <code>MultiRule</code> that implement this interface when there are many.
+ * </p><p>
+ * Clients may implement this interface.
+ * </p>
+ *
+ * @see ISchedulingRule#isConflicting(ISchedulingRule)
+ * @see MultiRule
+ * @since 3.9
+ */
+public interface IHierarchicalRule extends ISchedulingRule {
+	/**
+	 * Returns the path that describes the position of this rule in its hierarchy.
+	 *
+	 * @return the path of this rule, never <code>null</code>
+	 */
+	public IPath getRulePath();
+}
@@ -55,4 +55,16 @@ public interface IJobChangeEvent {
 	 * @since 3.7
 	 */
 	public IStatus getJobGroupResult();
+
+	/**
+	 * Returns whether the job was done after its deadline.  This value is only
+	 * applicable for the <code>done</code> event, and is always <code>false</code>
+	 * for jobs without deadline.
+	 *
+	 * @return <code>true</code> if the job missed its deadline, and
+	 * <code>false</code> otherwise
+	 * @see Job#setDeadline(long)
+	 * @since 3.9
+	 */
+	public boolean isDeadlineMissed();
 }
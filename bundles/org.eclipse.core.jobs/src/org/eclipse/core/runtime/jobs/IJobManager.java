@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.core.runtime.jobs;
 
+import java.util.Collection;
+import java.util.concurrent.Executor;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 
@@ -46,9 +48,160 @@ public interface IJobManager {
 	 */
 	public static final String PROP_USE_DAEMON_THREADS = "eclipse.jobs.daemon"; //$NON-NLS-1$
 
+	/**
+	 * A system property key indicating whether the job manager should run jobs
+	 * on virtual threads.  Set to <code>true</code> to run each job on a virtual
+	 * thread, which is useful when jobs spend most of their time blocked.  This
+	 * option is ignored if the virtual machine does not support virtual threads.
+	 * By default jobs run on platform threads.
+	 * @since 3.9
+	 */
+	public static final String PROP_USE_VIRTUAL_THREADS = "eclipse.jobs.virtualThreads"; //$NON-NLS-1$
+
+	/**
+	 * A system property key indicating whether the job manager should collect
+	 * metrics about the jobs it runs from the time it starts.  Set to
+	 * <code>true</code> to enable metrics collection.  By default no metrics are
+	 * collected until {@link #setMetricsEnabled(boolean)} is called.
+	 * @see #getMetrics()
+	 * @since 3.9
+	 */
+	public static final String PROP_COLLECT_METRICS = "eclipse.jobs.metrics"; //$NON-NLS-1$
+
+	/**
+	 * A system property key for the number of idle worker threads the job manager
+	 * keeps alive.  Idle worker threads beyond that number end after the keep-alive
+	 * time.  The default is <code>1</code>.
+	 * @see #PROP_KEEP_ALIVE
+	 * @since 3.9
+	 */
+	public static final String PROP_MIN_THREADS = "eclipse.jobs.minThreads"; //$NON-NLS-1$
+
+	/**
+	 * A system property key for the maximum number of worker threads running jobs.
+	 * By default the number of worker threads is not limited.  Jobs that are
+	 * waiting for other jobs to finish, for example by joining them, keep their
+	 * worker thread busy, so a small limit can prevent the jobs they wait for from
+	 * ever running.
+	 * <p>
+	 * Independently of this limit, once there are more worker threads than a small
+	 * multiple of the number of processors, new worker threads are only started for
+	 * jobs that have been waiting longer than usual for their priority.  Jobs with
+	 * the {@link Job#BUILD} and {@link Job#DECORATE} priorities wait longer, the
+	 * more worker threads there are per processor.
+	 * </p>
+	 * @since 3.9
+	 */
+	public static final String PROP_MAX_THREADS = "eclipse.jobs.maxThreads"; //$NON-NLS-1$
+
+	/**
+	 * A system property key for the time in milliseconds after which idle worker
+	 * threads end, if there are more idle worker threads than the minimum.  The
+	 * default is <code>60000</code>.
+	 * @see #PROP_MIN_THREADS
+	 * @since 3.9
+	 */
+	public static final String PROP_KEEP_ALIVE = "eclipse.jobs.keepAlive"; //$NON-NLS-1$
+
+	/**
+	 * A system property key for the minimum time in milliseconds between two
+	 * progress updates the job manager forwards from a running job to the
+	 * progress monitor created by the {@link ProgressProvider}.  Progress reported
+	 * in between is accumulated, and only the most recent task and sub task names
+	 * are kept.  All pending progress is forwarded when the task is done.  The
+	 * default is <code>50</code>.  Set to <code>0</code> to forward every
+	 * progress update as it happens.
+	 * @since 3.9
+	 */
+	public static final String PROP_PROGRESS_INTERVAL = "eclipse.jobs.progressInterval"; //$NON-NLS-1$
+
+	/**
+	 * A system property key for the priority aging limit of the job manager: the
+	 * longest time in milliseconds a waiting job can be passed by jobs that become
+	 * ready to run after it.  Waiting jobs run in the order in which they became
+	 * ready to run, each held back by a delay that grows as its priority gets lower,
+	 * from no delay for {@link Job#INTERACTIVE} jobs to one second for
+	 * {@link Job#DECORATE} jobs, and for jobs of a {@link JobGroup}, by the share
+	 * of their group.  The longer a job waits, the fewer jobs can still pass it.
+	 * The limit caps these delays, which bounds how long a steady stream of jobs
+	 * of higher priority can hold back a job, at the expense of the ordering by
+	 * priority.  Set to <code>0</code> to run waiting jobs in the order in which
+	 * they became ready to run.  By default there is no limit.
+	 * <p>
+	 * The limit does not change the priority of jobs as returned by
+	 * {@link Job#getPriority()}.  The wait times of the jobs of each priority can
+	 * be measured with {@link IJobStatistics#getQueueTimePercentile(double)}.
+	 * </p>
+	 * @see IJobManager#getMetrics()
+	 * @since 3.9
+	 */
+	public static final String PROP_PRIORITY_AGING = "eclipse.jobs.priorityAging"; //$NON-NLS-1$
+
+	/**
+	 * A system property key indicating whether the job manager should order
+	 * waiting jobs by deadline, earliest first.  Set to <code>true</code> to
+	 * let jobs with a deadline set by {@link Job#setDeadline(long)} start before
+	 * jobs whose priority allows them to wait longer.  By default the deadlines
+	 * of jobs are only used to report missed deadlines.
+	 * @see IJobChangeEvent#isDeadlineMissed()
+	 * @since 3.9
+	 */
+	public static final String PROP_DEADLINE_SCHEDULING = "eclipse.jobs.deadlineScheduling"; //$NON-NLS-1$
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#aboutToRun(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_ABOUT_TO_RUN = 0x01;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#awake(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_AWAKE = 0x02;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#done(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_DONE = 0x04;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#running(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_RUNNING = 0x08;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#scheduled(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_SCHEDULED = 0x10;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#sleeping(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_SLEEPING = 0x20;
+
+	/**
+	 * Event mask including all job change events.
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
+	 * @since 3.9
+	 */
+	public static final int EVENT_ALL = EVENT_ABOUT_TO_RUN | EVENT_AWAKE | EVENT_DONE | EVENT_RUNNING | EVENT_SCHEDULED | EVENT_SLEEPING;
+
 	/**
 	 * Registers a job listener with the job manager.
-	 * Has no effect if an identical listener is already registered.
+	 * Has no effect if an identical listener is already registered, including
+	 * when it is registered for asynchronous notification with
+	 * {@link #addJobChangeListener(IJobChangeListener, Executor, int)}.
 	 *
 	 * @param listener the listener to be added
 	 * @see #removeJobChangeListener(IJobChangeListener)
@@ -56,6 +209,49 @@ public interface IJobManager {
 	 */
 	public void addJobChangeListener(IJobChangeListener listener);
 
+	/**
+	 * Registers a job listener with the job manager that is notified
+	 * asynchronously. Has no effect if an identical listener is already registered,
+	 * including when it is registered for synchronous notification with
+	 * {@link #addJobChangeListener(IJobChangeListener)}: the listener keeps the
+	 * executor and event mask of its first registration. Removing the listener
+	 * removes it however it was registered.
+	 * <p>
+	 * The listener is only notified of the events selected by the given event
+	 * mask. Events are not delivered on the thread that changed the state of a job,
+	 * but in batches by tasks submitted to the given executor, at most one at a
+	 * time. The events of each job are delivered in the order in which they
+	 * occurred. Because delivery is delayed, the state of a job may have changed
+	 * again by the time the listener is notified.
+	 * </p><p>
+	 * Events for a job that have not been delivered yet are coalesced when a newer
+	 * event for the same job occurs: only the newest event is delivered, except
+	 * for <code>done</code> events, which are always delivered. A listener must
+	 * therefore not expect the events of a job to come in pairs. For example, it
+	 * may be notified that a job is <code>running</code> without having been
+	 * notified that it was <code>scheduled</code> or is <code>aboutToRun</code>.
+	 * </p><p>
+	 * The executor must run every task it accepts. If it rejects a task with a
+	 * <code>RejectedExecutionException</code>, the events that were not delivered
+	 * yet are dropped and an error is logged. An executor that discards tasks
+	 * without throwing an exception, such as one using
+	 * <code>ThreadPoolExecutor.DiscardPolicy</code>, stops the delivery of all
+	 * later events to the listener.
+	 * </p><p>
+	 * Asynchronous listeners can never veto or delay state changes of a job, so
+	 * this method should be preferred by listeners that only report job progress.
+	 * </p>
+	 *
+	 * @param listener the listener to be added
+	 * @param executor the executor delivering the events to the listener
+	 * @param eventMask a bit mask of the <code>EVENT_*</code> constants of this
+	 * interface selecting the events to deliver
+	 * @see #removeJobChangeListener(IJobChangeListener)
+	 * @see #EVENT_ALL
+	 * @since 3.9
+	 */
+	public void addJobChangeListener(IJobChangeListener listener, Executor executor, int eventMask);
+
 	/**
 	 * Begins applying this rule in the calling thread.  If the rule conflicts with another
 	 * rule currently running in another thread, this method blocks until there are
@@ -192,6 +388,30 @@ public interface IJobManager {
 	 */
 	public Job[] find(Object family);
 
+	/**
+	 * Returns a snapshot of the metrics collected about the jobs that ran since
+	 * metrics collection was last enabled. If metrics collection is disabled, the
+	 * returned snapshot contains the metrics collected until it was disabled.
+	 *
+	 * @return a snapshot of the collected metrics
+	 * @see #setMetricsEnabled(boolean)
+	 * @see IJobMetrics
+	 * @since 3.9
+	 */
+	public IJobMetrics getMetrics();
+
+	/**
+	 * Returns a snapshot of the jobs known to the job manager, and of the locks
+	 * and scheduling rules held or waited for by threads. The job manager is only
+	 * locked while its state is copied, so this method can be called at any time,
+	 * even while jobs are stuck, for example from a monitoring thread.
+	 *
+	 * @return a snapshot of the state of the job manager
+	 * @see IJobManagerSnapshot#toJSON()
+	 * @since 3.9
+	 */
+	public IJobManagerSnapshot snapshot();
+
 	/**
 	 * Returns whether the job manager is currently idle.  The job manager is
 	 * idle if no jobs are currently running or waiting to run.
@@ -251,12 +471,24 @@ public interface IJobManager {
 	 */
 	public ILock newLock();
 
+	/**
+	 * Creates a new read/write lock. The read and write locks of the returned
+	 * object take part in the same deadlock detection and recovery as the locks
+	 * created by {@link #newLock()}.
+	 *
+	 * @return the new read/write lock
+	 * @see IReadWriteLock
+	 * @since 3.9
+	 */
+	public IReadWriteLock newReadWriteLock();
+
 	/**
 	 * Removes a job listener from the job manager.
 	 * Has no effect if an identical listener is not already registered.
 	 *
 	 * @param listener the listener to be removed
 	 * @see #addJobChangeListener(IJobChangeListener)
+	 * @see #addJobChangeListener(IJobChangeListener, Executor, int)
 	 * @see IJobChangeListener
 	 */
 	public void removeJobChangeListener(IJobChangeListener listener);
@@ -294,6 +526,40 @@ public interface IJobManager {
 	 */
 	public void resume();
 
+	/**
+	 * Schedules all of the given jobs to be run after the specified delay. This
+	 * has the same effect as calling {@link Job#schedule(long)} on each job in
+	 * the order of the collection, but is more efficient when many jobs are
+	 * scheduled at once: the jobs are queued together, and worker threads are
+	 * only notified once all jobs have been queued.
+	 * <p>
+	 * Jobs that are already waiting or sleeping, and jobs whose
+	 * {@link Job#shouldSchedule()} method returns <code>false</code>, are not
+	 * scheduled. Jobs that are currently running are rescheduled after they
+	 * finish, as with {@link Job#schedule(long)}.
+	 * </p>
+	 *
+	 * @param jobs the jobs to schedule
+	 * @param delay a time delay in milliseconds before the jobs should run
+	 * @see Job#schedule(long)
+	 * @see JobGroup#schedule(Collection, long)
+	 * @since 3.9
+	 */
+	public void schedule(Collection<? extends Job> jobs, long delay);
+
+	/**
+	 * Sets whether this job manager orders waiting jobs by deadline, earliest
+	 * first.  Jobs that are already waiting keep their place in the queue.
+	 *
+	 * @param enabled <code>true</code> to let jobs with a deadline start before
+	 * jobs whose priority allows them to wait longer, and <code>false</code> to
+	 * only use deadlines to report missed deadlines
+	 * @see Job#setDeadline(long)
+	 * @see #PROP_DEADLINE_SCHEDULING
+	 * @since 3.9
+	 */
+	public void setDeadlineScheduling(boolean enabled);
+
 	/**
 	 * Provides a hook that is notified whenever a thread is about to wait on a lock,
 	 * or when a thread is about to release a lock.  This hook must only be set once.
@@ -305,6 +571,35 @@ public interface IJobManager {
 	 */
 	public void setLockListener(LockListener listener);
 
+	/**
+	 * Enables or disables the collection of metrics about the jobs run by this
+	 * job manager. Enabling metrics collection when it is disabled discards the
+	 * metrics collected so far. Disabling it keeps them available through
+	 * {@link #getMetrics()}. When metrics collection is disabled, the job manager
+	 * does not measure anything.
+	 *
+	 * @param enabled <code>true</code> to collect metrics, and <code>false</code>
+	 * to stop collecting them
+	 * @see #getMetrics()
+	 * @see #PROP_COLLECT_METRICS
+	 * @since 3.9
+	 */
+	public void setMetricsEnabled(boolean enabled);
+
+	/**
+	 * Sets the priority aging limit of this job manager: the longest time in
+	 * milliseconds a waiting job can be passed by jobs that become ready to run
+	 * after it.  A limit of <code>0</code> runs waiting jobs in the order in which
+	 * they became ready to run, and a negative limit removes the limit.  Jobs
+	 * that are already waiting keep their place in the queue.
+	 *
+	 * @param aging the priority aging limit in milliseconds, or a negative
+	 * value for no limit
+	 * @see #PROP_PRIORITY_AGING
+	 * @since 3.9
+	 */
+	public void setPriorityAging(long aging);
+
 	/**
 	 * Registers a progress provider with the job manager.  If there was a
 	 * provider already registered, it is replaced.
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+import java.util.List;
+
+/**
+ * A snapshot of the state of the job manager, meant for diagnosing jobs and
+ * threads that do not make progress. It describes the jobs that are sleeping,
+ * waiting, blocked, running or yielding, and the threads that hold or wait for
+ * locks and scheduling rules. A snapshot never changes once it has been returned.
+ * <p>
+ * The jobs that have a scheduling rule or a job group are copied at once while
+ * the job manager is locked, so they are consistent with each other. Jobs without
+ * either can neither block nor be blocked by other jobs, and are copied one at a
+ * time, each in a consistent state. A job that stays scheduled while the snapshot
+ * is taken always appears in it exactly once. The locks and rules of the threads
+ * are copied right after, without locking the job manager, so a job that changes
+ * state in between may appear with its old state in one part of the snapshot and
+ * with its new state in the other.
+ * </p>
+ *
+ * @see IJobManager#snapshot()
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IJobManagerSnapshot {
+	/**
+	 * Returns the time the snapshot was taken, as returned by
+	 * {@link System#currentTimeMillis()}.
+	 *
+	 * @return the time the snapshot was taken
+	 */
+	public long getTime();
+
+	/**
+	 * Returns the jobs that were running, blocked, waiting, yielding or sleeping.
+	 * The running jobs come first, each followed by the jobs it blocked. Threads
+	 * waiting in {@link IJobManager#beginRule(ISchedulingRule, org.eclipse.core.runtime.IProgressMonitor)}
+	 * are not jobs, they are part of {@link #getThreads()}. The returned list
+	 * cannot be modified.
+	 *
+	 * @return the jobs known to the job manager
+	 */
+	public List<IJobSnapshot> getJobs();
+
+	/**
+	 * Returns the threads that held or waited for locks or scheduling rules,
+	 * including the worker threads running jobs with a rule. The returned list
+	 * cannot be modified.
+	 *
+	 * @return the threads holding or waiting for locks and rules
+	 */
+	public List<IThreadSnapshot> getThreads();
+
+	/**
+	 * Returns this snapshot as a JSON document, for tools that monitor the job
+	 * manager from the outside. The document is an object with the fields
+	 * <code>time</code>, <code>jobs</code> and <code>threads</code>. Jobs are
+	 * identified by a number that is unique within the snapshot, which the
+	 * <code>blocker</code> field of blocked jobs refers to. Rules, locks and
+	 * threads are described by their string representation.
+	 *
+	 * @return this snapshot as a JSON document
+	 */
+	public String toJSON();
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics collected by the job manager about the jobs
+ * that ran since metrics collection was last enabled. A snapshot never changes
+ * once it has been returned, later job runs are only visible in new snapshots.
+ * <p>
+ * Statistics are kept for all jobs, for each job priority, for each family
+ * declared by jobs with {@link Job#setFamilies(Object...)}, and for each job
+ * group name. Families that are only known through {@link Job#belongsTo(Object)}
+ * are not tracked. Job groups with the same name share their statistics.
+ * </p><p>
+ * Statistics are kept for at most 256 families and 256 job group names, in the
+ * order in which their first jobs finished. The jobs of further families and job
+ * groups only count in the total and priority statistics. Enabling metrics
+ * again starts from scratch, see {@link IJobManager#setMetricsEnabled(boolean)}.
+ * </p><p>
+ * A snapshot also describes the worker threads of the job manager at the time
+ * it was taken. These values are available even when metrics are not collected.
+ * </p>
+ *
+ * @see IJobManager#getMetrics()
+ * @see IJobManager#setMetricsEnabled(boolean)
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IJobMetrics {
+	/**
+	 * Returns the statistics of all jobs.
+	 *
+	 * @return the statistics of all jobs
+	 */
+	public IJobStatistics getTotal();
+
+	/**
+	 * Returns the statistics of the jobs that had the given priority when
+	 * they finished.
+	 *
+	 * @param priority one of the job priority constants, such as {@link Job#LONG}
+	 * @return the statistics of the jobs with the given priority
+	 * @see Job#getPriority()
+	 */
+	public IJobStatistics getPriorityStatistics(int priority);
+
+	/**
+	 * Returns the statistics of the jobs in each declared family that had
+	 * jobs run, for at most 256 families. The returned map cannot be modified.
+	 *
+	 * @return the statistics of each declared family
+	 * @see Job#setFamilies(Object...)
+	 */
+	public Map<Object, IJobStatistics> getFamilyStatistics();
+
+	/**
+	 * Returns the statistics of the jobs in each job group, by job group name,
+	 * for at most 256 names. Job groups with the same name share their
+	 * statistics, so unrelated groups should be given distinct names. The
+	 * returned map cannot be modified.
+	 *
+	 * @return the statistics of each job group name
+	 * @see JobGroup#getName()
+	 */
+	public Map<String, IJobStatistics> getJobGroupStatistics();
+
+	/**
+	 * Returns the number of worker threads of the job manager.
+	 *
+	 * @return the number of worker threads
+	 */
+	public int getWorkerCount();
+
+	/**
+	 * Returns the number of worker threads that were not idle.
+	 *
+	 * @return the number of busy worker threads
+	 */
+	public int getBusyWorkerCount();
+
+	/**
+	 * Returns the largest number of worker threads the job manager ever had.
+	 *
+	 * @return the peak number of worker threads
+	 * @see IJobManager#PROP_MAX_THREADS
+	 */
+	public int getPeakWorkerCount();
+
+	/**
+	 * Returns the number of worker threads the job manager ever created.
+	 *
+	 * @return the number of created worker threads
+	 */
+	public long getCreatedWorkerCount();
+}
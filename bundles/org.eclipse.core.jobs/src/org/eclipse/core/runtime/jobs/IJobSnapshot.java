@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+/**
+ * The state of one job in a snapshot of the job manager. The values are
+ * those the job had when the snapshot was taken, they never change.
+ *
+ * @see IJobManagerSnapshot#getJobs()
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IJobSnapshot {
+	/**
+	 * Returns the job.
+	 *
+	 * @return the job
+	 */
+	public Job getJob();
+
+	/**
+	 * Returns the name of the job.
+	 *
+	 * @return the name of the job
+	 */
+	public String getName();
+
+	/**
+	 * Returns the state of the job, one of {@link Job#RUNNING},
+	 * {@link Job#WAITING} or {@link Job#SLEEPING}. Jobs that are blocked
+	 * or yielding are waiting.
+	 *
+	 * @return the state of the job
+	 * @see Job#getState()
+	 */
+	public int getState();
+
+	/**
+	 * Returns whether the job was waiting for a running job with a conflicting
+	 * rule to finish.
+	 *
+	 * @return <code>true</code> if the job was blocked
+	 * @see #getBlockingJob()
+	 */
+	public boolean isBlocked();
+
+	/**
+	 * Returns whether the job had yielded its rule to a blocked job, and was
+	 * waiting to get it back.
+	 *
+	 * @return <code>true</code> if the job was yielding
+	 * @see Job#yieldRule(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public boolean isYielding();
+
+	/**
+	 * Returns the priority of the job.
+	 *
+	 * @return the priority of the job
+	 * @see Job#getPriority()
+	 */
+	public int getPriority();
+
+	/**
+	 * Returns the scheduling rule of the job.
+	 *
+	 * @return the scheduling rule of the job, or <code>null</code>
+	 */
+	public ISchedulingRule getRule();
+
+	/**
+	 * Returns the running job a blocked job was waiting for.
+	 *
+	 * @return the blocking job, or <code>null</code> if the job was not blocked
+	 */
+	public Job getBlockingJob();
+
+	/**
+	 * Returns the thread that was running the job.
+	 *
+	 * @return the thread of the job, or <code>null</code> if it was not running
+	 */
+	public Thread getThread();
+
+	/**
+	 * Returns for how long the job had been in its state when the snapshot was
+	 * taken. For a waiting job, this is the time since it was scheduled or woken
+	 * up, including the time it was blocked. For a sleeping job, it is the time
+	 * since it was put to sleep. These times are always known, with millisecond
+	 * precision. For a running job, the time is only known if the job started
+	 * running while job metrics were collected, see
+	 * {@link IJobManager#setMetricsEnabled(boolean)}.
+	 *
+	 * @return the time in the current state in nanoseconds, or <code>-1</code>
+	 * if it is unknown
+	 */
+	public long getStateTime();
+
+	/**
+	 * Returns the time a sleeping job was going to wake up, as returned by
+	 * {@link System#currentTimeMillis()}.
+	 *
+	 * @return the wake up time, or <code>-1</code> if the job was not sleeping
+	 * or was sleeping until it is woken up
+	 */
+	public long getWakeTime();
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+/**
+ * Aggregated timings of the runs of a set of jobs, such as all jobs of a family,
+ * of a job group or of a priority. A run starts when a job is scheduled and ends
+ * when the job is done. Only runs that reached the point where the job started
+ * running are counted, runs of jobs that were canceled while waiting are not.
+ * <p>
+ * All times are in nanoseconds, as measured by {@link System#nanoTime()}.
+ * Statistics are immutable and never change once they have been returned.
+ * </p>
+ *
+ * @see IJobMetrics
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IJobStatistics {
+	/**
+	 * Returns the number of job runs that have been counted.
+	 *
+	 * @return the number of job runs
+	 */
+	public long getJobCount();
+
+	/**
+	 * Returns the total time jobs spent waiting to run, from the time they
+	 * were ready to run until they started running. This includes the time
+	 * jobs were blocked by conflicting jobs, but not the time they were
+	 * sleeping, either because they were scheduled with a delay or because
+	 * they were put to sleep.
+	 *
+	 * @return the total queue wait time in nanoseconds
+	 */
+	public long getQueueTime();
+
+	/**
+	 * Returns the longest time a single job run spent waiting to run.
+	 *
+	 * @return the maximum queue wait time in nanoseconds
+	 * @see #getQueueTime()
+	 */
+	public long getMaxQueueTime();
+
+	/**
+	 * Returns an estimate of the time that the given percentage of the job runs
+	 * waited to run at most, such as the median queue time for <code>50</code>.
+	 * Queue times are counted in buckets that are at most an eighth of their
+	 * lower bound wide, so the estimate is within 12.5% of the exact value, and
+	 * never larger than the maximum queue time.
+	 *
+	 * @param percentile the percentage of job runs, between <code>0</code> and
+	 * <code>100</code>
+	 * @return the queue wait time percentile in nanoseconds, or <code>0</code>
+	 * if no job runs have been counted
+	 * @throws IllegalArgumentException if the percentage is not between
+	 * <code>0</code> and <code>100</code>
+	 * @see #getQueueTime()
+	 */
+	public long getQueueTimePercentile(double percentile);
+
+	/**
+	 * Returns the total time jobs spent blocked by conflicting jobs, either
+	 * while waiting to run or after yielding their rule to another job.
+	 *
+	 * @return the total blocked time in nanoseconds
+	 */
+	public long getBlockedTime();
+
+	/**
+	 * Returns the total time jobs spent running, not including the time they
+	 * were yielding their rule to another job.
+	 *
+	 * @return the total run time in nanoseconds
+	 */
+	public long getRunTime();
+
+	/**
+	 * Returns the number of times running jobs yielded their rule to another job.
+	 *
+	 * @return the number of yields
+	 * @see Job#yieldRule(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public long getYieldCount();
+
+	/**
+	 * Returns the number of job runs of jobs that had a deadline.
+	 *
+	 * @return the number of job runs with a deadline
+	 * @see Job#setDeadline(long)
+	 */
+	public long getDeadlineCount();
+
+	/**
+	 * Returns the number of job runs that were done after the deadline of their
+	 * job.
+	 *
+	 * @return the number of missed deadlines
+	 * @see Job#setDeadline(long)
+	 * @see IJobChangeEvent#isDeadlineMissed()
+	 */
+	public long getMissedDeadlineCount();
+
+	/**
+	 * Returns the total time spent notifying job change listeners about the
+	 * jobs. Listeners that are notified asynchronously only account for the time
+	 * it took to hand the event over to their executor.
+	 *
+	 * @return the total listener time in nanoseconds
+	 */
+	public long getListenerTime();
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+/**
+ * A pair of locks controlling access to a resource that many threads may read
+ * at the same time, but only one thread may write. The read lock can be held by
+ * any number of threads as long as no thread holds the write lock. The write lock
+ * is exclusive.
+ * <p>
+ * Both locks are reentrant, and take part in the deadlock detection and recovery
+ * performed for all locks created by the job manager, as described in {@link ILock}.
+ * When a thread loses its locks to break a deadlock, it loses both its read and
+ * write holds on this lock, and gets them back before it proceeds.
+ * </p><p>
+ * A thread holding the write lock may also acquire the read lock. A thread
+ * holding only the read lock cannot acquire the write lock, as it would wait
+ * for itself. Once a thread is waiting for the write lock, threads that do not
+ * already hold the read lock have to wait until the writer is done before they
+ * can acquire it, so that writers are not starved by a stream of readers.
+ * </p>
+ *
+ * @see IJobManager#newReadWriteLock()
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IReadWriteLock {
+	/**
+	 * Returns the lock used to read the resource. The depth of this lock
+	 * is the number of nested acquires of the calling thread.
+	 *
+	 * @return the read lock
+	 */
+	public ILock readLock();
+
+	/**
+	 * Returns the lock used to write the resource.
+	 * <p>
+	 * Acquiring this lock while holding the read lock, but not the write lock,
+	 * throws an <code>IllegalStateException</code>.
+	 * </p>
+	 *
+	 * @return the write lock
+	 */
+	public ILock writeLock();
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+import java.util.Map;
+
+/**
+ * The locks and scheduling rules of one thread in a snapshot of the job
+ * manager. Locks created with {@link IJobManager#newLock()} and scheduling
+ * rules are both described by the rules they stand for. The values are
+ * those the thread had when the snapshot was taken, they never change.
+ *
+ * @see IJobManagerSnapshot#getThreads()
+ * @since 3.9
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ */
+public interface IThreadSnapshot {
+	/**
+	 * Returns the thread.
+	 *
+	 * @return the thread
+	 */
+	public Thread getThread();
+
+	/**
+	 * Returns the locks and rules the thread held, with the number of times it
+	 * acquired each of them. A rule held by the thread also counts for the rules
+	 * that conflict with it that other threads waited for. The returned map
+	 * cannot be modified.
+	 *
+	 * @return the locks and rules held by the thread with their depth
+	 */
+	public Map<ISchedulingRule, Integer> getHeldLocks();
+
+	/**
+	 * Returns the lock or rule the thread was waiting for.
+	 *
+	 * @return the lock or rule the thread waited for, or <code>null</code>
+	 */
+	public ISchedulingRule getWaitingLock();
+
+	/**
+	 * Returns for how long the thread had been waiting for its lock or rule
+	 * when the snapshot was taken.
+	 *
+	 * @return the wait time in nanoseconds, or <code>0</code> if the thread
+	 * was not waiting
+	 */
+	public long getWaitTime();
+}
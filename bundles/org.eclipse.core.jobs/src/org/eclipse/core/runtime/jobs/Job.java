@@ -13,6 +13,7 @@
  *******************************************************************************/
 package org.eclipse.core.runtime.jobs;
 
+import java.util.concurrent.CompletableFuture;
 import org.eclipse.core.internal.jobs.InternalJob;
 import org.eclipse.core.internal.jobs.JobManager;
 import org.eclipse.core.runtime.*;
@@ -251,18 +252,20 @@ public abstract class Job extends InternalJob implements IAdaptable {
 	 * by the job manager.  Thus, a job can choose to belong to any number of
 	 * families.
 	 * <p>
-	 * Clients may override this method.  This default implementation always returns
-	 * <code>false</code>.  Overriding implementations must return <code>false</code>
-	 * for families they do not recognize.
+	 * Clients may override this method.  This default implementation returns
+	 * <code>true</code> for the families declared with {@link #setFamilies(Object...)},
+	 * and <code>false</code> otherwise.  Overriding implementations must return
+	 * <code>false</code> for families they do not recognize.
 	 * </p>
 	 *
 	 * @param family the job family identifier
 	 * @return <code>true</code> if this job belongs to the given family, and
 	 * <code>false</code> otherwise.
+	 * @see #setFamilies(Object...)
 	 */
 	@Override
 	public boolean belongsTo(Object family) {
-		return false;
+		return super.belongsTo(family);
 	}
 
 	/**
@@ -313,6 +316,20 @@ public abstract class Job extends InternalJob implements IAdaptable {
 		super.done(result);
 	}
 
+	/**
+	 * Returns the deadline of this job: the time in milliseconds after the job
+	 * becomes ready to run by which it should be done, or <code>-1</code> if
+	 * this job has no deadline.
+	 *
+	 * @return the deadline of this job, or <code>-1</code>
+	 * @see #setDeadline(long)
+	 * @since 3.9
+	 */
+	@Override
+	public final long getDeadline() {
+		return super.getDeadline();
+	}
+
 	/**
 	 * Returns the human readable name of this job.  The name is never
 	 * <code>null</code>.
@@ -408,6 +425,19 @@ public abstract class Job extends InternalJob implements IAdaptable {
 		return super.getThread();
 	}
 
+	/**
+	 * Returns the families declared for this job, or <code>null</code> if this
+	 * job did not declare its families.
+	 *
+	 * @return the declared families of this job, or <code>null</code>
+	 * @see #setFamilies(Object...)
+	 * @since 3.9
+	 */
+	@Override
+	public final Object[] getFamilies() {
+		return super.getFamilies();
+	}
+
 	/**
 	 * Returns the job group this job belongs to, or <code>null</code> if this
 	 * job does not belongs to any group.
@@ -662,6 +692,69 @@ public abstract class Job extends InternalJob implements IAdaptable {
 		super.schedule(delay);
 	}
 
+	/**
+	 * Requests a run of this job, merging the request with the pending run of
+	 * this job if there is one. This is useful for jobs that refresh some state
+	 * in response to a burst of events, where one run can handle all the events
+	 * received so far.
+	 * <p>
+	 * If this job is not scheduled, it is scheduled like with {@link #schedule(long)},
+	 * with the given delay in trailing mode and without delay in leading mode.
+	 * Otherwise, the request is merged with the pending run:
+	 * <ul>
+	 * <li>In trailing mode, a job that is sleeping because it was scheduled with
+	 * a delay is now run after the given delay has elapsed from this request, so
+	 * that a burst of requests results in a single run once the requests stop.</li>
+	 * <li>In leading mode, the pending run is left as is, so that the first request
+	 * of a burst is served right away.</li>
+	 * <li>In both modes, a job that is waiting stays at its place in the queue, and
+	 * a job that is running is rescheduled once with the given delay as soon as it
+	 * finishes, like with {@link #schedule(long)}.</li>
+	 * </ul>
+	 * Merged requests do not notify job change listeners, in particular there are
+	 * no additional <code>scheduled</code> or <code>awake</code> events. A job that
+	 * was put to sleep with {@link #sleep()} is not affected.
+	 * </p>
+	 *
+	 * @param delay a time delay in milliseconds before the job should run
+	 * @param leading <code>true</code> to run the first request of a burst right
+	 * away, and <code>false</code> to run after the last request of a burst
+	 * @see #schedule(long)
+	 * @since 3.9
+	 */
+	@Override
+	public final void scheduleCoalesced(long delay, boolean leading) {
+		super.scheduleCoalesced(delay, leading);
+	}
+
+	/**
+	 * Sets the deadline of this job: the time in milliseconds after the job
+	 * becomes ready to run by which it should be done.  A job becomes ready to
+	 * run when it is scheduled, or when the delay it was scheduled with has
+	 * elapsed.  A negative deadline removes the deadline of this job.  If the job
+	 * is currently waiting or sleeping, the new deadline takes effect the next
+	 * time the job becomes ready to run.
+	 * <p>
+	 * When deadline scheduling is enabled with {@link IJobManager#PROP_DEADLINE_SCHEDULING},
+	 * waiting jobs are ordered by deadline, earliest first.  The priority of a job
+	 * acts as an implicit deadline, from none for {@link #INTERACTIVE} jobs to one
+	 * second for {@link #DECORATE} jobs, and a deadline only ever makes a job
+	 * start earlier than its priority alone would.  Whether or not deadline
+	 * scheduling is enabled, a job that is done after its deadline is reported by
+	 * {@link IJobChangeEvent#isDeadlineMissed()} and counted by
+	 * {@link IJobStatistics#getMissedDeadlineCount()}.
+	 * </p>
+	 *
+	 * @param deadline the time in milliseconds after becoming ready to run by
+	 * which the job should be done, or <code>-1</code> for no deadline
+	 * @see #getDeadline()
+	 * @since 3.9
+	 */
+	@Override
+	public final void setDeadline(long deadline) {
+		super.setDeadline(deadline);
+	}
+
 	/**
 	 * Changes the name of this job.  If the job is currently running, waiting,
 	 * or sleeping, the new job name may not take effect until the next time the
@@ -736,6 +829,30 @@ public abstract class Job extends InternalJob implements IAdaptable {
 		super.setProperty(key, value);
 	}
 
+	/**
+	 * Declares the families this job belongs to.  Families are compared using
+	 * <code>equals</code>.  This method must be called before the job is scheduled.
+	 * <p>
+	 * The job manager keeps an index of the jobs that declare their families, so
+	 * that finding, canceling, joining, putting to sleep or waking up the jobs of a
+	 * family does not need to ask every job whether it belongs to that family.  A
+	 * job that declares its families is a member of exactly these families: the job
+	 * manager does not call {@link #belongsTo(Object)} on it.  Jobs that do not
+	 * declare their families are still asked through {@link #belongsTo(Object)}.
+	 * </p>
+	 *
+	 * @param families the families of this job, or <code>null</code> to find
+	 * the families of this job through {@link #belongsTo(Object)}
+	 * @exception IllegalStateException if this job is not in the {@link #NONE} state
+	 * @see #getFamilies()
+	 * @see #belongsTo(Object)
+	 * @since 3.9
+	 */
+	@Override
+	public final void setFamilies(Object... families) {
+		super.setFamilies(families);
+	}
+
 	/**
 	 * Sets the scheduling rule to be used when scheduling this job.  This method
 	 * must be called before the job is scheduled.
@@ -869,6 +986,34 @@ public abstract class Job extends InternalJob implements IAdaptable {
 		return super.sleep();
 	}
 
+	/**
+	 * Returns a future that is completed with the result of this job the next
+	 * time it is done. If the job is currently waiting, sleeping or running, that
+	 * is the result of the current run, otherwise it is the result of the next run
+	 * after the job is scheduled. A job that is canceled before it runs completes
+	 * the future with {@link Status#CANCEL_STATUS}. Calling this method again before
+	 * the job is done returns the same future.
+	 * <p>
+	 * The future is completed by the job manager after the job change listeners
+	 * have been notified that the job is done, and dependent stages that are not
+	 * asynchronous run in the thread that finished the job. Unlike {@link #join()},
+	 * this allows to chain work after the job without blocking a thread.
+	 * </p>
+	 * <p>
+	 * Canceling the future cancels this job, as if by calling {@link #cancel()}.
+	 * Completing the future in any other way has no effect on the job.
+	 * </p>
+	 *
+	 * @return a future completed with the result of this job
+	 * @see #getResult()
+	 * @see #join()
+	 * @since 3.9
+	 */
+	@Override
+	public final CompletableFuture<IStatus> toFuture() {
+		return super.toFuture();
+	}
+
 	/**
 	 * Returns a string representation of this job to be used for debugging purposes only.
 	 * @since org.eclipse.core.jobs 3.5
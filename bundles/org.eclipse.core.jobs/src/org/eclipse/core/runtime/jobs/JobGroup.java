@@ -11,7 +11,9 @@
 
 package org.eclipse.core.runtime.jobs;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.eclipse.core.internal.jobs.InternalJobGroup;
 import org.eclipse.core.runtime.*;
 
@@ -23,6 +25,8 @@ import org.eclipse.core.runtime.*;
  * can be added to a group, but a Job can be part of only one group at a time.
  * <li>A JobGroup can be configured with a throttling number, so that only that many
  * jobs from the group are allowed to run in parallel.
+ * <li>A JobGroup has a weight, so that a group that schedules many jobs at once
+ * does not hold back the jobs scheduled later by others.
  * <li>One can join on all of the jobs in the group and observe the completion progress
  * of those jobs.
  * <li>One can cancel all the jobs in the group.
@@ -116,6 +120,46 @@ public class JobGroup extends InternalJobGroup {
 		return super.getMaxThreads();
 	}
 
+	/**
+	 * Returns the weight of this job group.
+	 *
+	 * @return the weight of this job group
+	 * @see #setWeight(int)
+	 * @since 3.9
+	 */
+	@Override
+	public final int getWeight() {
+		return super.getWeight();
+	}
+
+	/**
+	 * Sets the weight of this job group, which is the number of worker threads
+	 * the jobs of this group are entitled to while other jobs are waiting. The
+	 * default weight is <code>1</code>.
+	 * <p>
+	 * When the jobs of a group keep more worker threads busy than the weight of
+	 * the group, jobs of the same priority that are scheduled later by other groups,
+	 * or without group, are allowed to start before the remaining jobs of the group.
+	 * This keeps a group that schedules many jobs at once from delaying all other
+	 * jobs until it is done. As long as the jobs of a group use no more worker
+	 * threads than its weight, its jobs start in the same order as without group.
+	 * Jobs of a group are never put behind jobs of a lower priority that are
+	 * scheduled after them, and a job that is canceled or put to sleep before
+	 * it runs no longer holds back the jobs of the group scheduled after it.
+	 * </p><p>
+	 * The weight only orders jobs that are waiting to run. Use the maximum number
+	 * of threads of a group to limit the number of its jobs running at once.
+	 * </p>
+	 *
+	 * @param weight the weight of this job group, must be positive
+	 * @see #getMaxThreads()
+	 * @since 3.9
+	 */
+	@Override
+	public final void setWeight(int weight) {
+		super.setWeight(weight);
+	}
+
 	/**
 	 * Returns the result of this job group's last run. If a job group completes and then
 	 * its jobs are rescheduled, this method returns the results of the previous run.
@@ -181,6 +225,49 @@ public class JobGroup extends InternalJobGroup {
 		super.cancel();
 	}
 
+	/**
+	 * Adds all of the given jobs to this job group, and schedules them to be run
+	 * after the specified delay. This has the same effect as calling
+	 * {@link Job#setJobGroup(JobGroup)} and then {@link Job#schedule(long)} on
+	 * each job, but the jobs are queued together, as with
+	 * {@link IJobManager#schedule(Collection, long)}.
+	 *
+	 * @param jobs the jobs to add to this group and schedule
+	 * @param delay a time delay in milliseconds before the jobs should run
+	 * @exception IllegalStateException if one of the jobs has already been scheduled,
+	 * in which case none of the jobs are added to this group
+	 * @see Job#setJobGroup(JobGroup)
+	 * @see IJobManager#schedule(Collection, long)
+	 * @since 3.9
+	 */
+	@Override
+	public final void schedule(Collection<? extends Job> jobs, long delay) {
+		super.schedule(jobs, delay);
+	}
+
+	/**
+	 * Returns a future that is completed with the result of this job group the
+	 * next time all jobs belonging to the group have finished. If the group is
+	 * currently active, that is the result of the current run, otherwise it is the
+	 * result of the next run after jobs of the group are scheduled. The result is
+	 * the same {@link MultiStatus} as returned by {@link #getResult()}. Calling
+	 * this method again before the group finishes returns the same future.
+	 * <p>
+	 * Unlike {@link #join(long, IProgressMonitor)}, this allows to chain work after
+	 * the job group without blocking a thread. Canceling the future cancels this
+	 * job group, as if by calling {@link #cancel()}.
+	 * </p>
+	 *
+	 * @return a future completed with the result of this job group
+	 * @see #getResult()
+	 * @see #join(long, IProgressMonitor)
+	 * @since 3.9
+	 */
+	@Override
+	public final CompletableFuture<IStatus> toFuture() {
+		return super.toFuture();
+	}
+
 	/**
 	 * Waits until either all jobs belonging to this job group have finished or
 	 * the given timeout has expired. This method will block the calling thread
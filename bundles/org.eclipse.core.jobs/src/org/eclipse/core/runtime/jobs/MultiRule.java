@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2012 IBM Corporation and others.
+ * Copyright (c) 2003, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.core.runtime.jobs;
 
-import java.util.ArrayList;
+import java.util.*;
+import org.eclipse.core.internal.jobs.RulePaths;
+import org.eclipse.core.runtime.IPath;
 
 /**
  * A MultiRule is a compound scheduling rule that represents a fixed group of child
@@ -22,13 +24,52 @@ import java.util.ArrayList;
  * A MultiRule will never contain other MultiRules as children.  If a MultiRule is provided
  * as a child, its children will be added instead.
  * </p>
+ * <p>
+ * Children may be {@link SharedRule}s. Two shared children never conflict with each
+ * other, and a child contains the shared rules of the rules it contains.
+ * </p>
+ * <p>
+ * When a MultiRule has many children that implement {@link IHierarchicalRule},
+ * it also keeps them sorted by path, so that only the children at related paths
+ * are asked whether they contain or conflict with another rule.
+ * </p>
  *
  * @since 3.0
  * @noextend This class is not intended to be subclassed by clients.
  */
 public class MultiRule implements ISchedulingRule {
+	/**
+	 * The minimum number of hierarchical children a rule must have for its
+	 * children to be indexed by path.
+	 */
+	private static final int INDEX_THRESHOLD = 8;
+
 	private ISchedulingRule[] rules;
 
+	/**
+	 * The children that are hierarchical rules, or shared rules of hierarchical
+	 * rules, sorted by the keys of their paths, or <code>null</code> if the
+	 * children are not indexed. See IHierarchicalRule.
+	 */
+	private ISchedulingRule[] indexed;
+
+	/**
+	 * The keys of the paths of the indexed children, in the same order. A key
+	 * sorts right before the keys of the descendants of its path.
+	 */
+	private String[][] keys;
+
+	/**
+	 * The children that are not indexed, when the children are indexed.
+	 */
+	private ISchedulingRule[] opaque;
+
+	/**
+	 * What a child is asked about a rule, see #anyChild.
+	 */
+	private static final int CONFLICTS = 0;
+	private static final int CONTAINS = 1;
+
 	/**
 	 * Returns a scheduling rule that encompasses all provided rules.  The resulting
 	 * rule may or may not be an instance of <code>MultiRule</code>.  If all
@@ -40,17 +81,39 @@ public class MultiRule implements ISchedulingRule {
 	 * @since 3.1
 	 */
 	public static ISchedulingRule combine(ISchedulingRule[] ruleArray) {
+		//combine the rules one at a time, as combine(ISchedulingRule, ISchedulingRule)
+		//would, but only build the children of the result once
 		ISchedulingRule result = null;
+		Combination combination = null;
 		for (int i = 0; i < ruleArray.length; i++) {
-			if (ruleArray[i] == null)
+			ISchedulingRule rule = ruleArray[i];
+			if (rule == null)
+				continue;
+			if (combination == null) {
+				if (result == null || result == rule || result.contains(rule)) {
+					if (result == null)
+						result = rule;
+					continue;
+				}
+				if (rule.contains(result)) {
+					result = rule;
+					continue;
+				}
+				combination = new Combination();
+				combination.add(result);
+				combination.add(rule);
+				continue;
+			}
+			if (combination.encompasses(rule))
 				continue;
-			if (result == null) {
-				result = ruleArray[i];
+			if (combination.isContainedBy(rule)) {
+				result = rule;
+				combination = null;
 				continue;
 			}
-			result = combine(result, ruleArray[i]);
+			combination.add(rule);
 		}
-		return result;
+		return combination == null ? result : combination.toRule();
 	}
 
 	/**
@@ -74,12 +137,11 @@ public class MultiRule implements ISchedulingRule {
 			return rule1;
 		if (rule2.contains(rule1))
 			return rule2;
-		MultiRule result = new MultiRule();
-		result.rules = new ISchedulingRule[] {rule1, rule2};
+		ISchedulingRule[] children = new ISchedulingRule[] {rule1, rule2};
 		//make sure we don't end up with nested multi-rules
 		if (rule1 instanceof MultiRule || rule2 instanceof MultiRule)
-			result.rules = flatten(result.rules);
-		return result;
+			children = flatten(children);
+		return create(children);
 	}
 
 	/*
@@ -90,7 +152,7 @@ public class MultiRule implements ISchedulingRule {
 		ArrayList<ISchedulingRule> myRules = new ArrayList<>(nestedRules.length);
 		for (int i = 0; i < nestedRules.length; i++) {
 			if (nestedRules[i] instanceof MultiRule) {
-				ISchedulingRule[] children = ((MultiRule) nestedRules[i]).getChildren();
+				ISchedulingRule[] children = ((MultiRule) nestedRules[i]).rules;
 				for (int j = 0; j < children.length; j++)
 					myRules.add(children[j]);
 			} else {
@@ -100,6 +162,150 @@ public class MultiRule implements ISchedulingRule {
 		return myRules.toArray(new ISchedulingRule[myRules.size()]);
 	}
 
+	/*
+	 * Returns a new rule with the given children, that must be flattened. The
+	 * children are kept as they are, and indexed alongside.
+	 */
+	private static MultiRule create(ISchedulingRule[] children) {
+		MultiRule result = new MultiRule();
+		result.rules = children;
+		result.index();
+		return result;
+	}
+
+	/**
+	 * The children of a rule that is being combined from many rules. The
+	 * hierarchical children are kept in a trie by the keys of their paths as
+	 * they are added, so that a rule that is already contained is found without
+	 * asking every child.
+	 */
+	private static final class Combination {
+		/**
+		 * A node of the trie, for a key prefix.
+		 */
+		private static final class Node {
+			/**
+			 * The nodes for the keys that are one segment longer, or null if there are none.
+			 */
+			HashMap<String, Node> children;
+			/**
+			 * The children whose key ends at this node, or null if there are none.
+			 */
+			ArrayList<ISchedulingRule> rules;
+		}
+
+		final ArrayList<ISchedulingRule> children = new ArrayList<>();
+		/**
+		 * The children that are not hierarchical.
+		 */
+		final ArrayList<ISchedulingRule> opaque = new ArrayList<>();
+		final Node root = new Node();
+
+		/*
+		 * Adds the given rule to the children, or its children if it is a MultiRule.
+		 */
+		void add(ISchedulingRule rule) {
+			if (rule instanceof MultiRule) {
+				ISchedulingRule[] nested = ((MultiRule) rule).rules;
+				for (int i = 0; i < nested.length; i++)
+					add(nested[i]);
+				return;
+			}
+			children.add(rule);
+			IPath path = RulePaths.getPath(rule);
+			if (path == null) {
+				opaque.add(rule);
+				return;
+			}
+			Node node = root;
+			String[] key = RulePaths.getKey(path);
+			for (int i = 0; i < key.length; i++) {
+				if (node.children == null)
+					node.children = new HashMap<>(4);
+				Node child = node.children.get(key[i]);
+				if (child == null) {
+					child = new Node();
+					node.children.put(key[i], child);
+				}
+				node = child;
+			}
+			if (node.rules == null)
+				node.rules = new ArrayList<>(1);
+			node.rules.add(rule);
+		}
+
+		/*
+		 * Returns whether the combined rule contains the given rule, as
+		 * MultiRule#contains would.
+		 */
+		boolean encompasses(ISchedulingRule rule) {
+			if (rule instanceof MultiRule) {
+				ISchedulingRule[] nested = ((MultiRule) rule).rules;
+				for (int i = 0; i < nested.length; i++)
+					if (!encompasses(nested[i]))
+						return false;
+				return true;
+			}
+			IPath path = RulePaths.getPath(rule);
+			if (path == null)
+				return anyContains(children, rule);
+			if (anyContains(opaque, rule))
+				return true;
+			String[] key = RulePaths.getKey(path);
+			//the children at each ancestor of the path
+			Node node = root;
+			for (int i = 0; node != null; i++) {
+				if (anyContains(node.rules, rule))
+					return true;
+				if (i == key.length)
+					//the children at the descendants of the path
+					return anyDescendantContains(node, rule);
+				node = node.children == null ? null : node.children.get(key[i]);
+			}
+			return false;
+		}
+
+		private static boolean anyDescendantContains(Node node, ISchedulingRule rule) {
+			if (node.children == null)
+				return false;
+			for (Node child : node.children.values()) {
+				if (anyContains(child.rules, rule) || anyDescendantContains(child, rule))
+					return true;
+			}
+			return false;
+		}
+
+		private static boolean anyContains(ArrayList<ISchedulingRule> candidates, ISchedulingRule rule) {
+			if (candidates == null)
+				return false;
+			for (int i = 0, size = candidates.size(); i < size; i++)
+				if (contains(candidates.get(i), rule))
+					return true;
+			return false;
+		}
+
+		/*
+		 * Returns whether the given rule contains the combined rule. A rule that
+		 * does not contain the first child cannot contain all of them, so other
+		 * rules are only asked about the combined rule when they contain the first
+		 * child.
+		 */
+		boolean isContainedBy(ISchedulingRule rule) {
+			if (rule instanceof MultiRule) {
+				MultiRule multi = (MultiRule) rule;
+				for (int i = 0, size = children.size(); i < size; i++)
+					if (!multi.anyChild(children.get(i), CONTAINS))
+						return false;
+				return true;
+			}
+			return rule.contains(children.get(0)) && rule.contains(toRule());
+		}
+
+		MultiRule toRule() {
+			return create(children.toArray(new ISchedulingRule[children.size()]));
+		}
+	}
+
 	/**
 	 * Creates a new scheduling rule that composes a set of nested rules.
 	 *
@@ -107,6 +313,7 @@ public class MultiRule implements ISchedulingRule {
 	 */
 	public MultiRule(ISchedulingRule[] nestedRules) {
 		this.rules = flatten(nestedRules);
+		index();
 	}
 
 	/**
@@ -125,26 +332,203 @@ public class MultiRule implements ISchedulingRule {
 		return rules.clone();
 	}
 
+	/*
+	 * Compares the given key with the first segments of another key, segment
+	 * by segment, so that a key sorts right before the keys it is a prefix of.
+	 */
+	private static int compare(String[] key, String[] other, int length) {
+		int common = Math.min(key.length, length);
+		for (int i = 0; i < common; i++) {
+			int result = key[i].compareTo(other[i]);
+			if (result != 0)
+				return result;
+		}
+		return key.length - length;
+	}
+
+	/*
+	 * Sorts the hierarchical children by path, if there are enough of them
+	 * for looking them up to be faster than asking them all.
+	 */
+	private void index() {
+		ArrayList<ISchedulingRule> hierarchical = new ArrayList<>(rules.length);
+		ArrayList<ISchedulingRule> others = new ArrayList<>();
+		for (int i = 0; i < rules.length; i++) {
+			if (RulePaths.getPath(rules[i]) != null)
+				hierarchical.add(rules[i]);
+			else
+				others.add(rules[i]);
+		}
+		if (hierarchical.size() < INDEX_THRESHOLD)
+			return;
+		//children are not looked up by equals, because equal children are all kept
+		final String[][] paths = new String[hierarchical.size()][];
+		Integer[] order = new Integer[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = RulePaths.getKey(RulePaths.getPath(hierarchical.get(i)));
+			order[i] = i;
+		}
+		Arrays.sort(order, (first, second) -> compare(paths[first], paths[second], paths[second].length));
+		indexed = new ISchedulingRule[order.length];
+		keys = new String[order.length][];
+		for (int i = 0; i < order.length; i++) {
+			indexed[i] = hierarchical.get(order[i]);
+			keys[i] = paths[order[i]];
+		}
+		opaque = others.toArray(new ISchedulingRule[others.size()]);
+	}
+
+	/*
+	 * Returns the position of the first indexed child whose key does not sort
+	 * before the given number of first segments of the given key.
+	 */
+	private int lowerBound(String[] key, int length) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(keys[middle], key, length) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/*
+	 * Returns whether a child of this rule conflicts with the given rule or
+	 * contains it, depending on the given mode. The given rule is never a MultiRule. When
+	 * the children are indexed and the rule is hierarchical, only the children
+	 * whose path is an ancestor or a descendant of the path of the rule are asked.
+	 */
+	private boolean anyChild(ISchedulingRule rule, int mode) {
+		IPath path = indexed == null ? null : RulePaths.getPath(rule);
+		if (path == null)
+			return anyChild(rules, rule, mode);
+		if (anyChild(opaque, rule, mode))
+			return true;
+		String[] key = RulePaths.getKey(path);
+		//the children at each ancestor of the path
+		for (int length = 0; length < key.length; length++) {
+			for (int i = lowerBound(key, length); i < keys.length && keys[i].length == length && compare(keys[i], key, length) == 0; i++) {
+				if (test(indexed[i], rule, mode))
+					return true;
+			}
+		}
+		//the children at the path and at its descendants
+		for (int i = lowerBound(key, key.length); i < keys.length && keys[i].length >= key.length && compare(key, keys[i], key.length) == 0; i++) {
+			if (test(indexed[i], rule, mode))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Returns whether an indexed child of this rule conflicts with an indexed
+	 * child of the given rule. Walks both indexes at once in the order of their
+	 * keys, keeping a stack of the children of each rule whose path is a prefix
+	 * of the current key, so that each child is only compared with the children
+	 * of the other rule at the ancestors of its path and at the same path.
+	 */
+	private boolean isIndexConflicting(MultiRule other) {
+		int[] mine = new int[8];
+		int[] theirs = new int[8];
+		int mineSize = 0;
+		int theirsSize = 0;
+		for (int i = 0, j = 0; i < keys.length || j < other.keys.length;) {
+			boolean takeMine = j == other.keys.length || (i < keys.length && compare(keys[i], other.keys[j], other.keys[j].length) <= 0);
+			String[] key = takeMine ? keys[i] : other.keys[j];
+			mineSize = popUnrelated(mine, mineSize, keys, key);
+			theirsSize = popUnrelated(theirs, theirsSize, other.keys, key);
+			if (takeMine) {
+				for (int k = 0; k < theirsSize; k++)
+					if (isConflicting(indexed[i], other.indexed[theirs[k]]))
+						return true;
+				if (mineSize == mine.length)
+					mine = Arrays.copyOf(mine, mineSize * 2);
+				mine[mineSize++] = i++;
+			} else {
+				for (int k = 0; k < mineSize; k++)
+					if (isConflicting(indexed[mine[k]], other.indexed[j]))
+						return true;
+				if (theirsSize == theirs.length)
+					theirs = Arrays.copyOf(theirs, theirsSize * 2);
+				theirs[theirsSize++] = j++;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Pops the positions of the keys that are not a prefix of the given key
+	 * from the given stack, and returns the new size of the stack. Each key in
+	 * the stack is a prefix of the keys above it.
+	 */
+	private static int popUnrelated(int[] stack, int size, String[][] stackKeys, String[] key) {
+		while (size > 0) {
+			String[] top = stackKeys[stack[size - 1]];
+			if (top.length <= key.length && compare(top, key, top.length) == 0)
+				break;
+			size--;
+		}
+		return size;
+	}
+
+	private static boolean anyChild(ISchedulingRule[] children, ISchedulingRule rule, int mode) {
+		for (int i = 0; i < children.length; i++) {
+			if (test(children[i], rule, mode))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean test(ISchedulingRule child, ISchedulingRule rule, int mode) {
+		switch (mode) {
+			case CONTAINS :
+				return contains(child, rule);
+			default :
+				return isConflicting(child, rule);
+		}
+	}
+
+	/*
+	 * Returns whether the given child contains the given rule. Client rules
+	 * do not know about shared rules, so the shared mode of a rule is contained
+	 * in every rule that contains the rule itself.
+	 */
+	private static boolean contains(ISchedulingRule child, ISchedulingRule rule) {
+		if (child.contains(rule))
+			return true;
+		return rule instanceof SharedRule && !(child instanceof SharedRule) && child.contains(((SharedRule) rule).getRule());
+	}
+
+	/*
+	 * Returns whether the given child conflicts with the given rule. Client rules
+	 * do not know about shared rules, so shared rules are always asked, and two
+	 * shared rules never conflict.
+	 */
+	private static boolean isConflicting(ISchedulingRule child, ISchedulingRule rule) {
+		if (child instanceof SharedRule)
+			return !(rule instanceof SharedRule) && child.isConflicting(rule);
+		if (rule instanceof SharedRule)
+			return rule.isConflicting(child);
+		return child.isConflicting(rule);
+	}
+
 	@Override
 	public boolean contains(ISchedulingRule rule) {
 		if (this == rule)
 			return true;
 		if (rule instanceof MultiRule) {
-			ISchedulingRule[] otherRules = ((MultiRule) rule).getChildren();
+			ISchedulingRule[] otherRules = ((MultiRule) rule).rules;
 			//for each child of the target, there must be some child in this rule that contains it.
 			for (int other = 0; other < otherRules.length; other++) {
-				boolean found = false;
-				for (int mine = 0; !found && mine < rules.length; mine++)
-					found = rules[mine].contains(otherRules[other]);
-				if (!found)
+				if (!anyChild(otherRules[other], CONTAINS))
 					return false;
 			}
 			return true;
 		}
-		for (int i = 0; i < rules.length; i++)
-			if (rules[i].contains(rule))
-				return true;
-		return false;
+		return anyChild(rule, CONTAINS);
 	}
 
 	@Override
@@ -152,17 +536,25 @@ public class MultiRule implements ISchedulingRule {
 		if (this == rule)
 			return true;
 		if (rule instanceof MultiRule) {
-			ISchedulingRule[] otherRules = ((MultiRule) rule).getChildren();
-			for (int j = 0; j < otherRules.length; j++)
-				for (int i = 0; i < rules.length; i++)
-					if (rules[i].isConflicting(otherRules[j]))
+			MultiRule other = (MultiRule) rule;
+			if (indexed != null && other.indexed != null) {
+				for (int i = 0; i < opaque.length; i++)
+					if (other.anyChild(opaque[i], CONFLICTS))
 						return true;
-		} else {
-			for (int i = 0; i < rules.length; i++)
-				if (rules[i].isConflicting(rule))
+				for (int j = 0; j < other.opaque.length; j++)
+					if (anyChild(other.opaque[j], CONFLICTS))
+						return true;
+				return isIndexConflicting(other);
+			}
+			//look up the children of one rule in the index of the other, if any
+			MultiRule lookup = indexed == null && other.indexed != null ? other : this;
+			ISchedulingRule[] otherRules = lookup == this ? other.rules : rules;
+			for (int j = 0; j < otherRules.length; j++)
+				if (lookup.anyChild(otherRules[j], CONFLICTS))
 					return true;
+			return false;
 		}
-		return false;
+		return anyChild(rule, CONFLICTS);
 	}
 
 	/*
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+import org.eclipse.core.runtime.Assert;
+
+/**
+ * A scheduling rule that uses another rule in shared mode. Jobs that only read
+ * the state protected by a rule can use a shared rule instead, so that they can
+ * run at the same time as each other, while jobs using the rule itself remain
+ * exclusive.
+ * <p>
+ * A shared rule conflicts with every rule its underlying rule conflicts with,
+ * except with other shared rules. The job manager never considers two shared
+ * rules to conflict, not even two uses of the same shared rule instance, so
+ * reader jobs may share a single instance. Shared rules can be children of a
+ * <code>MultiRule</code>.
+ * </p><p>
+ * A shared rule contains the shared rules whose underlying rules are contained
+ * in its own underlying rule. A thread that owns a rule may begin the shared mode
+ * of any rule it contains, but a thread that owns a shared rule may not begin the
+ * underlying rule itself.
+ * </p>
+ *
+ * @see MultiRule
+ * @see IReadWriteLock
+ * @since 3.9
+ * @noextend This class is not intended to be subclassed by clients.
+ */
+public final class SharedRule implements ISchedulingRule {
+	private final ISchedulingRule rule;
+
+	/**
+	 * Creates a rule that uses the given rule in shared mode.
+	 *
+	 * @param rule the rule to share, which must not be a shared rule itself
+	 */
+	public SharedRule(ISchedulingRule rule) {
+		Assert.isNotNull(rule);
+		Assert.isLegal(!(rule instanceof SharedRule), "A shared rule cannot be shared again"); //$NON-NLS-1$
+		this.rule = rule;
+	}
+
+	/**
+	 * Returns the rule used in shared mode by this rule.
+	 *
+	 * @return the underlying rule
+	 */
+	public ISchedulingRule getRule() {
+		return rule;
+	}
+
+	@Override
+	public boolean contains(ISchedulingRule other) {
+		if (this == other)
+			return true;
+		if (other instanceof SharedRule)
+			return rule.contains(((SharedRule) other).rule);
+		return false;
+	}
+
+	/**
+	 * Returns whether this rule conflicts with the given rule. This rule conflicts
+	 * with itself, as every rule must, but the job manager never asks a shared rule
+	 * whether it conflicts with another shared rule.
+	 */
+	@Override
+	public boolean isConflicting(ISchedulingRule other) {
+		if (this == other)
+			return true;
+		if (other instanceof SharedRule)
+			return false;
+		//a multi-rule may contain shared rules, it knows how to compare them
+		if (other instanceof MultiRule)
+			return other.isConflicting(this);
+		return rule.isConflicting(other);
+	}
+
+	/*
+	 * For debugging purposes only.
+	 */
+	@Override
+	public String toString() {
+		return "SharedRule[" + rule + ']'; //$NON-NLS-1$
+	}
+}
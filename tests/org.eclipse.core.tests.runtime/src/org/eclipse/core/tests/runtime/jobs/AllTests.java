@@ -31,7 +31,11 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(IJobManagerTest.class);
 		suite.addTestSuite(JobGroupTest.class);
 		suite.addTestSuite(JobQueueTest.class);
+		suite.addTestSuite(ThrottledProgressMonitorTest.class);
+		suite.addTestSuite(JobTraceTest.class);
+		suite.addTestSuite(JobThroughputTest.class);
 		suite.addTestSuite(OrderedLockTest.class);
+		suite.addTestSuite(ReadWriteLockTest.class);
 		suite.addTestSuite(BeginEndRuleTest.class);
 		suite.addTestSuite(JobTest.class);
 		suite.addTestSuite(DeadlockDetectionTest.class);
@@ -40,6 +44,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(Bug_307282.class);
 		suite.addTestSuite(Bug_307391.class);
 		suite.addTestSuite(MultiRuleTest.class);
+		suite.addTestSuite(HierarchicalRuleTest.class);
 		suite.addTestSuite(Bug_311756.class);
 		suite.addTestSuite(Bug_311863.class);
 		suite.addTestSuite(Bug_316839.class);
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * An empty system job that reschedules itself until it has run the given
+ * number of times, and then counts down the given latch.
+ */
+public class ChainJob extends Job {
+	private final CountDownLatch finished;
+	private int remaining;
+
+	public ChainJob(int runs, CountDownLatch finished) {
+		super("ChainJob"); //$NON-NLS-1$
+		this.remaining = runs;
+		this.finished = finished;
+		setSystem(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		if (--remaining > 0)
+			schedule();
+		else
+			finished.countDown();
+		return Status.OK_STATUS;
+	}
+}
@@ -39,6 +39,94 @@ public class DeadlockDetectionTest extends TestCase {
 		//		return suite;
 	}
 
+	/**
+	 * A thread that acquires and releases locks one step at a time, as
+	 * told by the test. Every lock it acquires is logged, so that tests can
+	 * check the order in which a deadlock was resolved.
+	 */
+	static class LockStepThread extends Thread {
+		private final List<String> log;
+		private final LinkedList<Runnable> steps = new LinkedList<>();
+		private volatile boolean busy;
+		private volatile boolean acquiring;
+
+		LockStepThread(String name, List<String> log) {
+			super(name);
+			this.log = log;
+			setDaemon(true);
+		}
+
+		void acquire(final ILock lock, final String lockName) {
+			step(() -> {
+				acquiring = true;
+				lock.acquire();
+				acquiring = false;
+				log.add(getName() + ':' + lockName);
+			});
+		}
+
+		void release(ILock lock) {
+			step(() -> lock.release());
+		}
+
+		void finish() {
+			step(null);
+		}
+
+		private synchronized void step(Runnable step) {
+			busy = true;
+			steps.add(step);
+			notifyAll();
+		}
+
+		private synchronized Runnable nextStep() throws InterruptedException {
+			busy = !steps.isEmpty();
+			while (steps.isEmpty())
+				wait();
+			return steps.removeFirst();
+		}
+
+		/**
+		 * Waits until this thread has performed all its steps so far.
+		 */
+		void waitForIdle() {
+			int i = 0;
+			while (busy || getState() != Thread.State.WAITING) {
+				sleep();
+				assertTrue("Timeout waiting for " + getName() + " to finish its steps", ++i < 1000);
+			}
+		}
+
+		/**
+		 * Waits until this thread is blocked on a lock.
+		 */
+		void waitForBlocked() {
+			int i = 0;
+			while (!acquiring || (getState() != Thread.State.WAITING && getState() != Thread.State.TIMED_WAITING)) {
+				sleep();
+				assertTrue("Timeout waiting for " + getName() + " to block", ++i < 1000);
+			}
+		}
+
+		private static void sleep() {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				//ignore
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (Runnable step; (step = nextStep()) != null;)
+					step.run();
+			} catch (InterruptedException e) {
+				//ignore
+			}
+		}
+	}
+
 	/**
 	 * Creates n runnables on the given lock and adds them to the given list.
 	 */
@@ -1245,6 +1333,144 @@ public class DeadlockDetectionTest extends TestCase {
 		assertTrue("Jobs not removed from graph.", getLockManager().isEmpty());
 	}
 
+	/**
+	 * Starts the given number of lock step threads, which log to the given list.
+	 */
+	private LockStepThread[] startLockStepThreads(int n, List<String> log) {
+		LockStepThread[] threads = new LockStepThread[n];
+		for (int i = 0; i < n; i++) {
+			threads[i] = new LockStepThread("T" + i, log);
+			threads[i].start();
+		}
+		return threads;
+	}
+
+	/**
+	 * Asks the given lock step threads to stop, and waits until they are done.
+	 */
+	private void finish(LockStepThread[] threads) {
+		for (LockStepThread thread : threads)
+			thread.finish();
+		for (LockStepThread thread : threads)
+			waitForThreadDeath(thread);
+	}
+
+	/**
+	 * Test that in a deadlock of three threads, the thread that closed the cycle
+	 * gives up its lock, and that all threads then get their locks in order.
+	 */
+	public void testThreeThreadCycle() {
+		LockManager lockManager = new LockManager();
+		OrderedLock[] locks = {lockManager.newLock(), lockManager.newLock(), lockManager.newLock()};
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		LockStepThread[] threads = startLockStepThreads(3, log);
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].acquire(locks[i], "L" + i);
+			threads[i].waitForIdle();
+		}
+		threads[0].acquire(locks[1], "L1");
+		threads[0].waitForBlocked();
+		threads[1].acquire(locks[2], "L2");
+		threads[1].waitForBlocked();
+		//the third thread closes the cycle, so its lock goes to the second thread
+		threads[2].acquire(locks[0], "L0");
+		threads[1].waitForIdle();
+		threads[2].waitForBlocked();
+		assertEquals("1.0", Arrays.asList("T0:L0", "T1:L1", "T2:L2", "T1:L2"), log);
+
+		threads[1].release(locks[2]);
+		threads[1].release(locks[1]);
+		threads[0].waitForIdle();
+		assertEquals("2.0", "T0:L1", log.get(4));
+		threads[0].release(locks[1]);
+		threads[0].release(locks[0]);
+		threads[2].waitForIdle();
+		assertEquals("2.1", "T2:L0", log.get(5));
+		threads[2].release(locks[0]);
+		threads[2].release(locks[2]);
+		finish(threads);
+		assertEquals("3.0", 6, log.size());
+		assertTrue("Locks not removed from graph.", lockManager.isEmpty());
+	}
+
+	/**
+	 * Test a deadlock through a lock that several threads are waiting for. The
+	 * lock is given up to the waiting threads in the order they asked for it.
+	 */
+	public void testCycleWithSeveralWaiters() {
+		LockManager lockManager = new LockManager();
+		OrderedLock[] locks = {lockManager.newLock(), lockManager.newLock()};
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		LockStepThread[] threads = startLockStepThreads(4, log);
+		threads[0].acquire(locks[0], "L0");
+		threads[0].waitForIdle();
+		threads[3].acquire(locks[1], "L1");
+		threads[3].waitForIdle();
+		for (int i = 1; i < threads.length; i++) {
+			threads[i].acquire(locks[0], "L0");
+			threads[i].waitForBlocked();
+		}
+		//the first thread closes the cycle with the last one, and gives up its lock
+		threads[0].acquire(locks[1], "L1");
+		threads[1].waitForIdle();
+		threads[0].waitForBlocked();
+		assertEquals("1.0", Arrays.asList("T0:L0", "T3:L1", "T1:L0"), log);
+
+		threads[1].release(locks[0]);
+		threads[2].waitForIdle();
+		threads[2].release(locks[0]);
+		threads[3].waitForIdle();
+		threads[3].release(locks[0]);
+		threads[3].release(locks[1]);
+		threads[0].waitForIdle();
+		assertEquals("2.0", Arrays.asList("T0:L0", "T3:L1", "T1:L0", "T2:L0", "T3:L0", "T0:L1"), log);
+		threads[0].release(locks[1]);
+		threads[0].release(locks[0]);
+		finish(threads);
+		assertTrue("Locks not removed from graph.", lockManager.isEmpty());
+	}
+
+	/**
+	 * Test that a deadlock is still detected after a thread and a lock in the
+	 * middle of the graph were removed from it and added again.
+	 */
+	public void testCycleAfterRemoval() {
+		LockManager lockManager = new LockManager();
+		OrderedLock[] locks = {lockManager.newLock(), lockManager.newLock(), lockManager.newLock()};
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		LockStepThread[] threads = startLockStepThreads(3, log);
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].acquire(locks[i], "L" + i);
+			threads[i].waitForIdle();
+		}
+		//remove the middle thread and lock, then add them back at the end
+		threads[1].release(locks[1]);
+		threads[1].acquire(locks[1], "L1");
+		threads[1].waitForIdle();
+
+		threads[0].acquire(locks[2], "L2");
+		threads[0].waitForBlocked();
+		threads[2].acquire(locks[1], "L1");
+		threads[2].waitForBlocked();
+		//the middle thread closes the cycle, so its lock goes to the last thread
+		threads[1].acquire(locks[0], "L0");
+		threads[2].waitForIdle();
+		threads[1].waitForBlocked();
+		assertEquals("1.0", Arrays.asList("T0:L0", "T1:L1", "T2:L2", "T1:L1", "T2:L1"), log);
+
+		threads[2].release(locks[1]);
+		threads[2].release(locks[2]);
+		threads[0].waitForIdle();
+		threads[0].release(locks[2]);
+		threads[0].release(locks[0]);
+		threads[1].waitForIdle();
+		assertEquals("2.0", Arrays.asList("T0:L0", "T1:L1", "T2:L2", "T1:L1", "T2:L1", "T0:L2", "T1:L0"), log);
+		threads[1].release(locks[0]);
+		threads[1].release(locks[1]);
+		finish(threads);
+		assertTrue("Locks not removed from graph.", lockManager.isEmpty());
+	}
+
 	private void start(ArrayList<RandomTestRunnable> allRunnables) {
 		for (RandomTestRunnable r : allRunnables)
 			r.start();
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.jobs.IHierarchicalRule;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+/**
+ * A path rule that exposes its path to the job manager, so that it is looked
+ * up by path rather than asked about every other rule. A hierarchical path rule
+ * contains another one if its path is a prefix of the other rule's path, and
+ * conflicts with another one if either path is a prefix of the other.
+ */
+public class HierarchicalPathRule implements IHierarchicalRule {
+	private final IPath path;
+
+	public HierarchicalPathRule(IPath path) {
+		this.path = path;
+	}
+
+	public HierarchicalPathRule(String pathString) {
+		this.path = new Path(pathString);
+	}
+
+	@Override
+	public boolean contains(ISchedulingRule rule) {
+		if (this == rule)
+			return true;
+		if (!(rule instanceof HierarchicalPathRule))
+			return false;
+		return path.isPrefixOf(((HierarchicalPathRule) rule).getRulePath());
+	}
+
+	@Override
+	public boolean isConflicting(ISchedulingRule rule) {
+		if (!(rule instanceof HierarchicalPathRule))
+			return false;
+		IPath otherPath = ((HierarchicalPathRule) rule).getRulePath();
+		return path.isPrefixOf(otherPath) || otherPath.isPrefixOf(path);
+	}
+
+	@Override
+	public IPath getRulePath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return "HierarchicalPathRule(" + path + ")";
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Tests that the job manager finds conflicts between jobs using
+ * {@link IHierarchicalRule}s, alone or mixed with other rules.
+ */
+public class HierarchicalRuleTest extends AbstractJobManagerTest {
+	public static Test suite() {
+		return new TestSuite(HierarchicalRuleTest.class);
+	}
+
+	public HierarchicalRuleTest() {
+		super();
+	}
+
+	public HierarchicalRuleTest(String name) {
+		super(name);
+	}
+
+	private Job newJob(ISchedulingRule rule) {
+		Job job = new Job("HierarchicalRuleTest") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				return Status.OK_STATUS;
+			}
+		};
+		job.setRule(rule);
+		return job;
+	}
+
+	/**
+	 * Schedules a job with the given rule while the current thread owns another
+	 * rule, and asserts whether the job is blocked by it.
+	 */
+	private void assertBlocked(String message, boolean expected, ISchedulingRule owned, ISchedulingRule rule) {
+		Job job = newJob(rule);
+		manager.beginRule(owned, null);
+		try {
+			job.schedule();
+			if (expected) {
+				//give the job a chance to start, then make sure it didn't
+				sleep(100);
+				assertEquals(message, Job.WAITING, job.getState());
+			} else {
+				waitForCompletion(job);
+			}
+		} finally {
+			manager.endRule(owned);
+		}
+		waitForCompletion(job);
+	}
+
+	public void testAncestor() {
+		assertBlocked("1.0", true, new HierarchicalPathRule("/a/b/c"), new HierarchicalPathRule("/a"));
+		assertBlocked("1.1", true, new HierarchicalPathRule("/a/b/c"), new HierarchicalPathRule("/a/b"));
+		assertBlocked("1.2", true, new HierarchicalPathRule("/a"), new HierarchicalPathRule("/"));
+	}
+
+	public void testDescendant() {
+		assertBlocked("1.0", true, new HierarchicalPathRule("/a"), new HierarchicalPathRule("/a/b/c"));
+		assertBlocked("1.1", true, new HierarchicalPathRule("/a/b"), new HierarchicalPathRule("/a/b/c"));
+		assertBlocked("1.2", true, new HierarchicalPathRule("/"), new HierarchicalPathRule("/a"));
+	}
+
+	public void testSamePath() {
+		assertBlocked("1.0", true, new HierarchicalPathRule("/a/b"), new HierarchicalPathRule("/a/b"));
+	}
+
+	public void testUnrelated() {
+		assertBlocked("1.0", false, new HierarchicalPathRule("/a/b"), new HierarchicalPathRule("/a/c"));
+		assertBlocked("1.1", false, new HierarchicalPathRule("/a/b/c"), new HierarchicalPathRule("/a/c/b"));
+		assertBlocked("1.2", false, new HierarchicalPathRule("/a/b"), new IdentityRule());
+		assertBlocked("1.3", false, new IdentityRule(), new HierarchicalPathRule("/a/b"));
+	}
+
+	/**
+	 * Tests that devices are compared ignoring case, as IPath#isPrefixOf does.
+	 */
+	public void testDevice() {
+		assertBlocked("1.0", true, new HierarchicalPathRule(new Path("C:", "/a")), new HierarchicalPathRule(new Path("c:", "/a/b")));
+		assertBlocked("1.1", true, new HierarchicalPathRule(new Path("c:", "/a/b")), new HierarchicalPathRule(new Path("C:", "/a")));
+		assertBlocked("1.2", true, new HierarchicalPathRule(new Path("C:", "/a")), MultiRule.combine(new HierarchicalPathRule("/y"), new HierarchicalPathRule(new Path("c:", "/a"))));
+		assertBlocked("1.3", false, new HierarchicalPathRule(new Path("C:", "/a")), new HierarchicalPathRule(new Path("D:", "/a")));
+		assertBlocked("1.4", false, new HierarchicalPathRule(new Path("C:", "/a")), new HierarchicalPathRule("/a"));
+	}
+
+	public void testMultiRule() {
+		ISchedulingRule multi = MultiRule.combine(new HierarchicalPathRule("/x"), new HierarchicalPathRule("/a/b"));
+		assertBlocked("1.0", true, multi, new HierarchicalPathRule("/a/b/c"));
+		assertBlocked("1.1", true, multi, new HierarchicalPathRule("/x/y"));
+		assertBlocked("1.2", false, multi, new HierarchicalPathRule("/a/c"));
+		assertBlocked("1.3", true, new HierarchicalPathRule("/a"), MultiRule.combine(new HierarchicalPathRule("/y"), new HierarchicalPathRule("/a/b")));
+		assertBlocked("1.4", false, new HierarchicalPathRule("/a"), MultiRule.combine(new HierarchicalPathRule("/y"), new HierarchicalPathRule("/b")));
+	}
+
+	public void testMixedMultiRule() {
+		IdentityRule identity = new IdentityRule();
+		ISchedulingRule mixed = MultiRule.combine(new HierarchicalPathRule("/x"), identity);
+		assertBlocked("1.0", true, mixed, new HierarchicalPathRule("/x/y"));
+		assertBlocked("1.1", true, mixed, identity);
+		assertBlocked("1.2", false, mixed, new HierarchicalPathRule("/a"));
+		assertBlocked("1.3", true, mixed, MultiRule.combine(new HierarchicalPathRule("/y"), identity));
+		assertBlocked("1.4", true, identity, MultiRule.combine(new HierarchicalPathRule("/y"), identity));
+		assertBlocked("1.5", false, identity, MultiRule.combine(new HierarchicalPathRule("/y"), new IdentityRule()));
+	}
+
+	/**
+	 * Tests that a job is blocked by another job that is itself blocked.
+	 */
+	public void testBlockedChain() {
+		HierarchicalPathRule owned = new HierarchicalPathRule("/a");
+		Job first = newJob(new HierarchicalPathRule("/a/b"));
+		Job second = newJob(new HierarchicalPathRule("/a/b/c"));
+		manager.beginRule(owned, null);
+		try {
+			first.schedule();
+			sleep(100);
+			assertEquals("1.0", Job.WAITING, first.getState());
+			second.schedule();
+			sleep(100);
+			assertEquals("1.1", Job.WAITING, second.getState());
+		} finally {
+			manager.endRule(owned);
+		}
+		waitForCompletion(first);
+		waitForCompletion(second);
+	}
+}
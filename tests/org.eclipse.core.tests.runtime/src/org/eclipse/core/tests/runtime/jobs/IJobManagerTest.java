@@ -10,9 +10,11 @@
  *******************************************************************************/
 package org.eclipse.core.tests.runtime.jobs;
 
+import java.lang.reflect.Method;
 import java.util.*;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.*;
 import junit.framework.*;
+import org.eclipse.core.internal.jobs.JobManager;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
 import org.eclipse.core.tests.harness.*;
@@ -140,6 +142,114 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		//		manager.startup();
 	}
 
+	public void testAsyncListener() {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			@Override
+			public void aboutToRun(IJobChangeEvent event) {
+				events.add("aboutToRun");
+			}
+
+			@Override
+			public void done(IJobChangeEvent event) {
+				events.add("done");
+			}
+
+			@Override
+			public void running(IJobChangeEvent event) {
+				events.add("running");
+			}
+
+			@Override
+			public void scheduled(IJobChangeEvent event) {
+				events.add("scheduled");
+			}
+		};
+		final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<Runnable>());
+		TestJob job = new TestJob("testAsyncListener", 1, 1);
+		//events are only delivered when the executor runs the delivery task
+		manager.addJobChangeListener(listener, tasks::add, IJobManager.EVENT_ALL);
+		//global listeners are notified in order, so this one is notified after the done event was queued
+		final Semaphore doneQueued = new Semaphore(0);
+		IJobChangeListener doneListener = new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				doneQueued.release();
+			}
+		};
+		manager.addJobChangeListener(doneListener);
+		try {
+			//registering the same listener again has no effect
+			manager.addJobChangeListener(listener, tasks::add, IJobManager.EVENT_ALL);
+			job.schedule();
+			assertTrue("0.9", doneQueued.tryAcquire(10, TimeUnit.SECONDS));
+			waitForCompletion();
+			assertEquals("1.0", 1, tasks.size());
+			assertEquals("1.1", 0, events.size());
+			tasks.remove(0).run();
+			//all events of the job were coalesced into the done event
+			assertEquals("1.2", Arrays.asList("done"), events);
+		} catch (InterruptedException e) {
+			fail("4.99", e);
+		} finally {
+			manager.removeJobChangeListener(listener);
+			manager.removeJobChangeListener(doneListener);
+		}
+		//removing the listener also removes asynchronous registrations
+		events.clear();
+		job.schedule();
+		waitForCompletion();
+		assertEquals("2.0", 0, tasks.size());
+		assertEquals("2.1", 0, events.size());
+
+		//an executor that runs tasks immediately delivers all selected events
+		manager.addJobChangeListener(listener, Runnable::run, IJobManager.EVENT_SCHEDULED | IJobManager.EVENT_RUNNING | IJobManager.EVENT_DONE);
+		try {
+			job.schedule();
+			waitForCompletion();
+			for (int i = 0; i < 100 && events.size() < 3; i++)
+				sleep(10);
+			assertEquals("3.0", Arrays.asList("scheduled", "running", "done"), events);
+		} finally {
+			manager.removeJobChangeListener(listener);
+		}
+
+		//the first registration of a listener wins, whether it is asynchronous or not
+		events.clear();
+		manager.addJobChangeListener(listener);
+		manager.addJobChangeListener(listener, tasks::add, IJobManager.EVENT_ALL);
+		manager.addJobChangeListener(doneListener);
+		try {
+			job.schedule();
+			assertTrue("4.0", doneQueued.tryAcquire(10, TimeUnit.SECONDS));
+			assertEquals("4.1", 0, tasks.size());
+			assertEquals("4.2", Arrays.asList("scheduled", "aboutToRun", "running", "done"), events);
+		} catch (InterruptedException e) {
+			fail("4.99", e);
+		} finally {
+			manager.removeJobChangeListener(listener);
+			manager.removeJobChangeListener(doneListener);
+		}
+		events.clear();
+		manager.addJobChangeListener(listener, tasks::add, IJobManager.EVENT_DONE);
+		manager.addJobChangeListener(listener);
+		manager.addJobChangeListener(doneListener);
+		try {
+			job.schedule();
+			assertTrue("5.0", doneQueued.tryAcquire(10, TimeUnit.SECONDS));
+			assertEquals("5.1", 0, events.size());
+			assertEquals("5.2", 1, tasks.size());
+			tasks.remove(0).run();
+			assertEquals("5.3", Arrays.asList("done"), events);
+		} catch (InterruptedException e) {
+			fail("5.99", e);
+		} finally {
+			manager.removeJobChangeListener(listener);
+			manager.removeJobChangeListener(doneListener);
+		}
+	}
+
+
 	public void testBadGlobalListener() {
 		final int[] status = new int[] {-1};
 		Job job = new Job("testBadGlobalListener") {
@@ -216,6 +326,36 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	public void testBeginSharedRule() {
+		final ISchedulingRule rule = new PathRule("/testBeginSharedRule");
+		final ISchedulingRule sharedChild = new SharedRule(new PathRule("/testBeginSharedRule/child"));
+		//the shared mode of a contained rule can be begun while owning a rule
+		manager.beginRule(rule, null);
+		try {
+			manager.beginRule(sharedChild, null);
+			manager.endRule(sharedChild);
+		} finally {
+			manager.endRule(rule);
+		}
+		//a shared rule cannot be upgraded
+		ISchedulingRule shared = new SharedRule(rule);
+		manager.beginRule(shared, null);
+		try {
+			manager.beginRule(sharedChild, null);
+			manager.endRule(sharedChild);
+			try {
+				manager.beginRule(rule, null);
+				fail("1.0");
+			} catch (IllegalArgumentException e) {
+				// expected
+			} finally {
+				manager.endRule(rule);
+			}
+		} finally {
+			manager.endRule(shared);
+		}
+	}
+
 	/**
 	 * Tests that if we call beginRule with a monitor that has already been
 	 * cancelled, it won't try to obtain the rule.
@@ -437,6 +577,59 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		assertTrue("1.0", success[0]);
 	}
 
+	/**
+	 * Tests that IJobManager.currentJob stays consistent when several threads
+	 * set the thread of an asynchronously finishing job at the same time.
+	 */
+	public void testCurrentJobSetThreadConcurrently() throws Exception {
+		final int threadCount = 4;
+		final CountDownLatch started = new CountDownLatch(1);
+		final Job job = new Job("testCurrentJobSetThreadConcurrently") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				started.countDown();
+				return ASYNC_FINISH;
+			}
+		};
+		job.schedule();
+		assertTrue("1.0", started.await(5, TimeUnit.SECONDS));
+		final CyclicBarrier barrier = new CyclicBarrier(threadCount + 1);
+		final Job[] seenWhileRunning = new Job[threadCount];
+		final Job[] seenWhenDone = new Job[threadCount];
+		final Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int index = i;
+			threads[i] = new Thread("testCurrentJobSetThreadConcurrently-" + i) {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 1000; j++)
+							job.setThread(this);
+						barrier.await();
+						seenWhileRunning[index] = manager.currentJob();
+						barrier.await();
+						barrier.await();
+						seenWhenDone[index] = manager.currentJob();
+					} catch (Exception e) {
+						//the assertions below fail
+					}
+				}
+			};
+			threads[i].start();
+		}
+		barrier.await(5, TimeUnit.SECONDS);
+		Thread owner = job.getThread();
+		barrier.await(5, TimeUnit.SECONDS);
+		job.done(Status.OK_STATUS);
+		barrier.await(5, TimeUnit.SECONDS);
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join(5000);
+			//only the last thread that was set sees the job
+			assertEquals("2." + i, threads[i] == owner ? job : null, seenWhileRunning[i]);
+			assertNull("3." + i, seenWhenDone[i]);
+		}
+	}
+
 	/**
 	 * Tests for {@link IJobManager#currentRule()}.
 	 */
@@ -474,6 +667,55 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 
 	}
 
+	/**
+	 * Tests currentJob, currentRule and beginRule in jobs that run on virtual
+	 * threads. Does nothing if the VM does not support virtual threads.
+	 */
+	public void testVirtualWorker() throws Exception {
+		final Method isVirtual;
+		try {
+			isVirtual = Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			//virtual threads are not supported
+			return;
+		}
+		JobManager jobManager = (JobManager) manager;
+		try {
+			assertTrue("1.0", jobManager.setUseVirtualThreads(true));
+			final List<AssertionFailedError> errors = new ArrayList<>();
+			final boolean[] virtual = new boolean[1];
+			final Job[] current = new Job[1];
+			Job sequenceJob = new Job("testVirtualWorker") {
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					try {
+						virtual[0] = ((Boolean) isVirtual.invoke(Thread.currentThread())).booleanValue();
+						current[0] = manager.currentJob();
+						runRuleSequence();
+					} catch (AssertionFailedError e) {
+						errors.add(e);
+					} catch (ReflectiveOperationException e) {
+						errors.add(new AssertionFailedError(e.toString()));
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			//in a job without a rule, and in a job with a rule
+			for (int i = 0; i < 2; i++) {
+				sequenceJob.setRule(i == 0 ? null : new PathRule("/testVirtualWorker"));
+				sequenceJob.schedule();
+				waitForCompletion(sequenceJob);
+				if (!errors.isEmpty())
+					throw errors.iterator().next();
+				assertTrue("2." + i, virtual[0]);
+				assertEquals("3." + i, sequenceJob, current[0]);
+				assertNull("4." + i, manager.currentJob());
+			}
+		} finally {
+			jobManager.setUseVirtualThreads(false);
+		}
+	}
+
 	/**
 	 * Helper method for testing {@link IJobManager#currentRule()}.
 	 */
@@ -640,6 +882,130 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	/**
+	 * Tests that jobs with shared rules run at the same time, and that a job
+	 * with the underlying rule waits for them, and they for it.
+	 */
+	public void testSharedRule() throws Exception {
+		final ISchedulingRule rule = new PathRule("/testSharedRule");
+		final ISchedulingRule shared = new SharedRule(rule);
+		final CountDownLatch running = new CountDownLatch(3);
+		final CountDownLatch finish = new CountDownLatch(1);
+		//readers using the same shared rule instance, and the shared rule of a child
+		ISchedulingRule[] readerRules = new ISchedulingRule[] {shared, shared, new SharedRule(new PathRule("/testSharedRule/child"))};
+		Job[] readers = new Job[readerRules.length];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = Job.create("reader" + i, monitor -> {
+				running.countDown();
+				try {
+					finish.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				return Status.OK_STATUS;
+			});
+			readers[i].setRule(readerRules[i]);
+			readers[i].schedule();
+		}
+		try {
+			assertTrue("1.0", running.await(10, TimeUnit.SECONDS));
+			//a writer waits for the readers
+			Job writer = new TestJob("writer", 1, 1);
+			writer.setRule(rule);
+			writer.schedule();
+			Thread.sleep(100);
+			assertState("2.0", writer, Job.WAITING);
+			finish.countDown();
+			writer.join();
+			assertEquals("2.1", IStatus.OK, writer.getResult().getSeverity());
+			for (int i = 0; i < readers.length; i++)
+				assertState("2.2." + i, readers[i], Job.NONE);
+			//a reader scheduled while the rule is owned waits for it
+			Job reader = new TestJob("reader", 1, 1);
+			reader.setRule(shared);
+			manager.beginRule(rule, null);
+			try {
+				reader.schedule();
+				Thread.sleep(100);
+				assertState("3.0", reader, Job.WAITING);
+			} finally {
+				manager.endRule(rule);
+			}
+			reader.join();
+			assertEquals("3.1", IStatus.OK, reader.getResult().getSeverity());
+		} finally {
+			finish.countDown();
+		}
+	}
+
+	/**
+	 * Tests finding, waking, putting to sleep and canceling jobs that declare
+	 * their families, together with jobs that implement belongsTo.
+	 */
+	public void testJobFamilyDeclared() {
+		final String first = "testJobFamilyDeclared.first";
+		final String second = "testJobFamilyDeclared.second";
+		TestJobFamily third = new TestJobFamily(TestJobFamily.TYPE_THREE);
+		//declared families take precedence over belongsTo
+		TestJob both = new FamilyTestJob("both", TestJobFamily.TYPE_THREE);
+		both.setFamilies(first, second);
+		TestJob onlyFirst = new TestJob("onlyFirst");
+		onlyFirst.setFamilies(first);
+		TestJob undeclared = new FamilyTestJob("undeclared", TestJobFamily.TYPE_THREE);
+		assertNull("1.0", undeclared.getFamilies());
+		assertEquals("1.1", 2, both.getFamilies().length);
+		assertTrue("1.2", onlyFirst.belongsTo(first));
+		assertFalse("1.3", onlyFirst.belongsTo(second));
+
+		//hold the rule of the jobs so that woken jobs cannot run
+		ISchedulingRule rule = new IdentityRule();
+		TestJob[] jobs = new TestJob[] {both, onlyFirst, undeclared};
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i].setRule(rule);
+			jobs[i].schedule(1000000);
+		}
+		manager.beginRule(rule, null);
+		try {
+			both.setFamilies(third);
+			fail("2.0");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+		assertEquals("2.1", new HashSet<>(Arrays.asList(both, onlyFirst)), new HashSet<>(Arrays.asList(manager.find(first))));
+		assertEquals("2.2", Arrays.asList(both), Arrays.asList(manager.find(second)));
+		assertEquals("2.3", Arrays.asList(undeclared), Arrays.asList(manager.find(third)));
+		assertEquals("2.4", 0, manager.find("testJobFamilyDeclared.none").length);
+
+		//wake up one family, and put it to sleep again
+		try {
+			manager.wakeUp(second);
+			assertState("3.0", both, Job.WAITING);
+			assertState("3.1", onlyFirst, Job.SLEEPING);
+			manager.sleep(first);
+			assertState("3.2", both, Job.SLEEPING);
+			assertEquals("3.3", 2, manager.find(first).length);
+		} finally {
+			manager.endRule(rule);
+		}
+
+		manager.cancel(first);
+		assertState("4.0", both, Job.NONE);
+		assertState("4.1", onlyFirst, Job.NONE);
+		assertState("4.2", undeclared, Job.SLEEPING);
+		assertEquals("4.3", 0, manager.find(first).length);
+		assertEquals("4.4", 0, manager.find(second).length);
+
+		//families can change once the job is no longer scheduled
+		both.setFamilies((Object[]) null);
+		assertTrue("5.0", both.belongsTo(third));
+		both.schedule(1000000);
+		assertEquals("5.1", 0, manager.find(first).length);
+		assertEquals("5.2", new HashSet<>(Arrays.asList(both, undeclared)), new HashSet<>(Arrays.asList(manager.find(third))));
+		manager.cancel(third);
+		assertState("5.3", both, Job.NONE);
+		assertState("5.4", undeclared, Job.NONE);
+	}
+
 	public void testJobFamilyFind() {
 		//test of finding jobs based on the job family they belong to
 		final int NUM_JOBS = 20;
@@ -1703,6 +2069,338 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	public void testMetrics() throws Exception {
+		final String family = "testMetrics";
+		final long millis = TimeUnit.MILLISECONDS.toNanos(1);
+		ISchedulingRule rule = new PathRule("/testMetrics");
+		JobGroup group = new JobGroup("testMetrics", 0, 0);
+		manager.setMetricsEnabled(true);
+		try {
+			TestJob first = new TestJob("first", 10, 20);
+			TestJob second = new TestJob("second", 1, 1);
+			TestJob[] jobs = new TestJob[] {first, second};
+			for (TestJob job : jobs) {
+				job.setFamilies(family);
+				job.setRule(rule);
+				job.setJobGroup(group);
+				job.setPriority(Job.LONG);
+			}
+			//a listener that takes time to handle the second job
+			second.addJobChangeListener(new JobChangeAdapter() {
+				@Override
+				public void done(IJobChangeEvent event) {
+					try {
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+						// ignore
+					}
+				}
+			});
+			Future<IStatus> done = second.toFuture();
+			first.schedule();
+			waitForStart(first);
+			//the second job is blocked by the first one
+			second.schedule();
+			assertEquals("1.0", IStatus.OK, done.get(10, TimeUnit.SECONDS).getSeverity());
+
+			IJobMetrics metrics = manager.getMetrics();
+			IJobStatistics familyStatistics = metrics.getFamilyStatistics().get(family);
+			assertNotNull("2.0", familyStatistics);
+			assertEquals("2.1", 2, familyStatistics.getJobCount());
+			assertTrue("2.2", familyStatistics.getRunTime() >= 150 * millis);
+			assertTrue("2.3", familyStatistics.getBlockedTime() > 0);
+			assertTrue("2.4", familyStatistics.getQueueTime() >= familyStatistics.getBlockedTime());
+			assertTrue("2.5", familyStatistics.getMaxQueueTime() >= familyStatistics.getBlockedTime());
+			assertTrue("2.6", familyStatistics.getListenerTime() >= 20 * millis);
+			assertEquals("2.7", 0, familyStatistics.getYieldCount());
+			IJobStatistics groupStatistics = metrics.getJobGroupStatistics().get(group.getName());
+			assertNotNull("2.8", groupStatistics);
+			assertEquals("2.9", 2, groupStatistics.getJobCount());
+			assertTrue("2.10", metrics.getPriorityStatistics(Job.LONG).getJobCount() >= 2);
+			assertTrue("2.11", metrics.getTotal().getJobCount() >= 2);
+			assertEquals("2.12", 0, metrics.getPriorityStatistics(-1).getJobCount());
+			long median = familyStatistics.getQueueTimePercentile(50);
+			assertTrue("2.13", median <= familyStatistics.getQueueTimePercentile(99));
+			assertEquals("2.14", familyStatistics.getMaxQueueTime(), familyStatistics.getQueueTimePercentile(100));
+			assertEquals("2.15", familyStatistics.getMaxQueueTime(), familyStatistics.getQueueTimePercentile(99));
+			try {
+				familyStatistics.getQueueTimePercentile(101);
+				fail("2.16");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+
+			//disabled metrics are kept, but nothing more is collected
+			manager.setMetricsEnabled(false);
+			TestJob third = new TestJob("third", 1, 1);
+			third.setFamilies(family);
+			third.schedule();
+			third.join();
+			assertEquals("3.0", 2, manager.getMetrics().getFamilyStatistics().get(family).getJobCount());
+			//enabling metrics again starts from scratch
+			manager.setMetricsEnabled(true);
+			assertTrue("3.1", manager.getMetrics().getFamilyStatistics().isEmpty());
+			assertEquals("3.2", 0, manager.getMetrics().getTotal().getJobCount());
+		} finally {
+			manager.setMetricsEnabled(false);
+		}
+	}
+
+	/**
+	 * Tests that statistics are kept for a bounded number of families and job
+	 * group names, while all jobs still count in the total.
+	 */
+	public void testMetricsBounded() throws Exception {
+		//see IJobMetrics
+		final int LIMIT = 256;
+		final int JOB_COUNT = LIMIT + 10;
+		manager.setMetricsEnabled(true);
+		try {
+			for (int i = 0; i < JOB_COUNT; i++) {
+				TestJob job = new TestJob("testMetricsBounded" + i, 1, 1);
+				job.setFamilies(Integer.valueOf(i));
+				job.setJobGroup(new JobGroup("testMetricsBounded" + i, 0, 0));
+				job.schedule();
+				job.join();
+			}
+			IJobMetrics metrics = manager.getMetrics();
+			assertEquals("1.0", LIMIT, metrics.getFamilyStatistics().size());
+			assertEquals("1.1", LIMIT, metrics.getJobGroupStatistics().size());
+			assertTrue("1.2", metrics.getTotal().getJobCount() >= JOB_COUNT);
+			//the families that came first keep their statistics
+			assertEquals("1.3", 1, metrics.getFamilyStatistics().get(Integer.valueOf(0)).getJobCount());
+			assertNull("1.4", metrics.getFamilyStatistics().get(Integer.valueOf(JOB_COUNT - 1)));
+		} finally {
+			manager.setMetricsEnabled(false);
+		}
+	}
+
+	/**
+	 * Returns the entry of the given job in the given snapshot, or null.
+	 */
+	private IJobSnapshot find(IJobManagerSnapshot snapshot, Job job) {
+		for (IJobSnapshot entry : snapshot.getJobs()) {
+			if (entry.getJob() == job)
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the entry of the given thread in the given snapshot, or null.
+	 */
+	private IThreadSnapshot find(IJobManagerSnapshot snapshot, Thread thread) {
+		for (IThreadSnapshot entry : snapshot.getThreads()) {
+			if (entry.getThread() == thread)
+				return entry;
+		}
+		return null;
+	}
+
+	public void testSnapshot() throws Exception {
+		final ISchedulingRule rule = new PathRule("/testSnapshot");
+		final ILock lock = manager.newLock();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		Job first = Job.create("testSnapshot.first", monitor -> {
+			lock.acquire();
+			try {
+				started.countDown();
+				finish.await(20, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// ignore
+			} finally {
+				lock.release();
+			}
+			return Status.OK_STATUS;
+		});
+		first.setRule(rule);
+		first.setPriority(Job.SHORT);
+		Job second = Job.create("testSnapshot.second", monitor -> Status.OK_STATUS);
+		second.setRule(rule);
+		Job third = Job.create("testSnapshot.third", monitor -> Status.OK_STATUS);
+		Thread waiter = new Thread(() -> {
+			lock.acquire();
+			lock.release();
+		}, "testSnapshot.waiter");
+		try {
+			first.schedule();
+			assertTrue("1.0", started.await(5, TimeUnit.SECONDS));
+			second.schedule();
+			third.schedule(3600000);
+			waiter.start();
+			//wait until the second job is blocked and the thread waits for the lock
+			IJobManagerSnapshot snapshot = null;
+			for (int i = 0; i < 500; i++) {
+				snapshot = manager.snapshot();
+				IJobSnapshot entry = find(snapshot, second);
+				IThreadSnapshot thread = find(snapshot, waiter);
+				if (entry != null && entry.isBlocked() && thread != null && thread.getWaitingLock() != null)
+					break;
+				Thread.sleep(10);
+			}
+			assertTrue("1.1", snapshot.getTime() <= System.currentTimeMillis());
+
+			IJobSnapshot running = find(snapshot, first);
+			assertNotNull("2.0", running);
+			assertEquals("2.1", Job.RUNNING, running.getState());
+			assertEquals("2.2", "testSnapshot.first", running.getName());
+			assertEquals("2.3", Job.SHORT, running.getPriority());
+			assertEquals("2.4", rule, running.getRule());
+			assertNotNull("2.5", running.getThread());
+			assertNull("2.6", running.getBlockingJob());
+			//the time a job has been running is only measured while metrics are collected
+			assertEquals("2.7", -1, running.getStateTime());
+
+			IJobSnapshot blocked = find(snapshot, second);
+			assertNotNull("3.0", blocked);
+			assertEquals("3.1", Job.WAITING, blocked.getState());
+			assertTrue("3.2", blocked.isBlocked());
+			assertEquals("3.3", first, blocked.getBlockingJob());
+			assertNull("3.4", blocked.getThread());
+			//the time a job has been waiting is always known
+			assertTrue("3.5", blocked.getStateTime() >= 0);
+
+			IJobSnapshot sleeping = find(snapshot, third);
+			assertNotNull("4.0", sleeping);
+			assertEquals("4.1", Job.SLEEPING, sleeping.getState());
+			assertTrue("4.2", sleeping.getWakeTime() > System.currentTimeMillis());
+			assertEquals("4.3", -1, blocked.getWakeTime());
+			assertTrue("4.4", sleeping.getStateTime() >= 0);
+
+			//the thread of the first job holds the rule and the lock
+			IThreadSnapshot owner = find(snapshot, running.getThread());
+			assertNotNull("5.0", owner);
+			assertEquals("5.1", Integer.valueOf(1), owner.getHeldLocks().get(rule));
+			assertEquals("5.2", Integer.valueOf(1), owner.getHeldLocks().get(lock));
+			assertNull("5.3", owner.getWaitingLock());
+			IThreadSnapshot waiting = find(snapshot, waiter);
+			assertNotNull("5.4", waiting);
+			assertEquals("5.5", lock, waiting.getWaitingLock());
+			assertTrue("5.6", waiting.getWaitTime() >= 0);
+			assertTrue("5.7", waiting.getHeldLocks().isEmpty());
+
+			String json = snapshot.toJSON();
+			assertTrue("6.0", json.startsWith("{\"time\":" + snapshot.getTime() + ",\"jobs\":["));
+			assertTrue("6.1", json.contains("\"name\":\"testSnapshot.second\",\"state\":\"BLOCKED\""));
+			assertTrue("6.2", json.contains("\"name\":\"testSnapshot.third\",\"state\":\"SLEEPING\""));
+			assertTrue("6.3", json.contains("\"rule\":\"PathRule(/testSnapshot)\""));
+			assertTrue("6.4", json.contains("{\"name\":\"testSnapshot.waiter\",\"locks\":[],\"waitingFor\":"));
+			assertTrue("6.5", json.endsWith("]}"));
+		} finally {
+			finish.countDown();
+			third.cancel();
+			first.join();
+			second.join();
+			waiter.join();
+		}
+		//jobs and threads that are done are gone from new snapshots
+		IJobManagerSnapshot snapshot = manager.snapshot();
+		assertNull("7.0", find(snapshot, first));
+		assertNull("7.1", find(snapshot, second));
+		assertNull("7.2", find(snapshot, waiter));
+
+		manager.setMetricsEnabled(true);
+		try {
+			third.schedule(3600000);
+			assertTrue("8.0", find(manager.snapshot(), third).getStateTime() >= 0);
+		} finally {
+			third.cancel();
+			manager.setMetricsEnabled(false);
+		}
+	}
+
+	public void testWorkerPoolGrowth() throws Exception {
+		//more jobs than the pool creates eagerly, which must still all run at the same time
+		final int JOB_COUNT = 4 * Runtime.getRuntime().availableProcessors() + 10;
+		final CountDownLatch running = new CountDownLatch(JOB_COUNT);
+		final CountDownLatch finish = new CountDownLatch(1);
+		Job[] jobs = new Job[JOB_COUNT];
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i] = Job.create("testWorkerPoolGrowth" + i, monitor -> {
+				running.countDown();
+				try {
+					finish.await(20, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				return Status.OK_STATUS;
+			});
+			jobs[i].setPriority(i % 2 == 0 ? Job.SHORT : Job.LONG);
+		}
+		try {
+			for (int i = 0; i < JOB_COUNT; i++)
+				jobs[i].schedule();
+			assertTrue("1.0", running.await(10, TimeUnit.SECONDS));
+			IJobMetrics metrics = manager.getMetrics();
+			assertTrue("1.1", metrics.getBusyWorkerCount() >= JOB_COUNT);
+			assertTrue("1.2", metrics.getWorkerCount() >= metrics.getBusyWorkerCount());
+			assertTrue("1.3", metrics.getPeakWorkerCount() >= metrics.getWorkerCount());
+			assertTrue("1.4", metrics.getCreatedWorkerCount() >= metrics.getPeakWorkerCount());
+		} finally {
+			finish.countDown();
+		}
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i].join();
+			assertEquals("2." + i, IStatus.OK, jobs[i].getResult().getSeverity());
+		}
+	}
+
+	/**
+	 * Tests that the worker pool does not grow for a waiting job that could
+	 * not start anyway, because its job group already runs as many jobs as it may.
+	 */
+	public void testWorkerPoolGrowthThrottled() throws Exception {
+		manager.setMetricsEnabled(true);
+		try {
+			checkWorkerPoolGrowthThrottled();
+		} finally {
+			manager.setMetricsEnabled(false);
+		}
+	}
+
+	private void checkWorkerPoolGrowthThrottled() throws Exception {
+		IJobMetrics metrics = manager.getMetrics();
+		//keep every worker busy, so that any further job would need a new worker
+		final int JOB_COUNT = metrics.getWorkerCount() + 4 * Runtime.getRuntime().availableProcessors() + 10;
+		final CountDownLatch running = new CountDownLatch(JOB_COUNT);
+		final CountDownLatch finish = new CountDownLatch(1);
+		JobGroup group = new JobGroup("testWorkerPoolGrowthThrottled", 1, 0);
+		Job[] jobs = new Job[JOB_COUNT + 1];
+		for (int i = 0; i <= JOB_COUNT; i++) {
+			jobs[i] = Job.create("testWorkerPoolGrowthThrottled" + i, monitor -> {
+				running.countDown();
+				try {
+					finish.await(20, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				return Status.OK_STATUS;
+			});
+			jobs[i].setPriority(Job.SHORT);
+		}
+		//the first and the last job share a group that runs one job at a time
+		jobs[0].setJobGroup(group);
+		jobs[JOB_COUNT].setJobGroup(group);
+		try {
+			for (int i = 0; i < JOB_COUNT; i++)
+				jobs[i].schedule();
+			assertTrue("1.0", running.await(10, TimeUnit.SECONDS));
+			long created = manager.getMetrics().getCreatedWorkerCount();
+			jobs[JOB_COUNT].schedule();
+			//well past the time at which a late short job makes the pool grow
+			Thread.sleep(500);
+			assertEquals("1.1", Job.WAITING, jobs[JOB_COUNT].getState());
+			assertEquals("1.2", created, manager.getMetrics().getCreatedWorkerCount());
+		} finally {
+			finish.countDown();
+		}
+		for (int i = 0; i <= JOB_COUNT; i++) {
+			jobs[i].join();
+			assertEquals("2." + i, IStatus.OK, jobs[i].getResult().getSeverity());
+		}
+	}
+
 	public void testMutexRule() {
 		final int JOB_COUNT = 10;
 		TestJob[] jobs = new TestJob[JOB_COUNT];
@@ -1768,6 +2466,126 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	/**
+	 * Schedules the given jobs one after the other while the job manager is
+	 * suspended, then resumes it and returns the order in which the jobs
+	 * started. The jobs must not be able to run at the same time.
+	 */
+	private List<Job> getStartOrder(Job... jobs) throws InterruptedException {
+		final List<Job> started = Collections.synchronizedList(new ArrayList<Job>());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			@Override
+			public void running(IJobChangeEvent event) {
+				started.add(event.getJob());
+			}
+		};
+		for (Job job : jobs)
+			job.addJobChangeListener(listener);
+		try {
+			manager.suspend();
+			try {
+				for (Job job : jobs)
+					job.schedule();
+			} finally {
+				manager.resume();
+			}
+			for (Job job : jobs)
+				job.join();
+		} finally {
+			for (Job job : jobs)
+				job.removeJobChangeListener(listener);
+		}
+		return new ArrayList<>(started);
+	}
+
+	public void testPriorityAging() throws Exception {
+		//a group that runs one job at a time
+		JobGroup group = new JobGroup("testPriorityAging", 1, 0);
+		TestJob decorate = new TestJob("decorate", 1, 1);
+		decorate.setPriority(Job.DECORATE);
+		decorate.setJobGroup(group);
+		TestJob interactive = new TestJob("interactive", 1, 1);
+		interactive.setPriority(Job.INTERACTIVE);
+		interactive.setJobGroup(group);
+		try {
+			//without aging, the interactive job passes the decoration job
+			assertEquals("1.0", Arrays.asList(interactive, decorate), getStartOrder(decorate, interactive));
+
+			//without any delay, jobs run in the order in which they were scheduled
+			manager.setPriorityAging(0);
+			assertEquals("2.0", Arrays.asList(decorate, interactive), getStartOrder(decorate, interactive));
+			assertEquals("2.1", Job.DECORATE, decorate.getPriority());
+		} finally {
+			manager.setPriorityAging(-1);
+		}
+	}
+
+	public void testDeadlineScheduling() throws Exception {
+		//a group that runs one job at a time
+		JobGroup group = new JobGroup("testDeadlineScheduling", 1, 0);
+		TestJob decorate = new TestJob("decorate", 1, 1);
+		decorate.setPriority(Job.DECORATE);
+		decorate.setDeadline(10);
+		decorate.setJobGroup(group);
+		TestJob build = new TestJob("build", 1, 1);
+		build.setPriority(Job.BUILD);
+		build.setJobGroup(group);
+		assertEquals("1.0", 10, decorate.getDeadline());
+		assertEquals("1.1", -1, build.getDeadline());
+		try {
+			//without deadline scheduling, the build job passes the decoration job
+			assertEquals("2.0", Arrays.asList(build, decorate), getStartOrder(decorate, build));
+
+			//the deadline of the decoration job is earlier than the implicit deadline of the build job
+			manager.setDeadlineScheduling(true);
+			assertEquals("3.0", Arrays.asList(decorate, build), getStartOrder(decorate, build));
+			assertEquals("3.1", Job.DECORATE, decorate.getPriority());
+		} finally {
+			manager.setDeadlineScheduling(false);
+		}
+	}
+
+	public void testMissedDeadline() throws Exception {
+		final String family = "testMissedDeadline";
+		final List<Job> missed = Collections.synchronizedList(new ArrayList<Job>());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				if (event.isDeadlineMissed())
+					missed.add(event.getJob());
+			}
+		};
+		TestJob slow = new TestJob("slow", 5, 10);
+		slow.setDeadline(1);
+		TestJob fast = new TestJob("fast", 1, 1);
+		fast.setDeadline(TimeUnit.MINUTES.toMillis(1));
+		TestJob none = new TestJob("none", 1, 1);
+		none.setDeadline(-5);
+		assertEquals("1.0", -1, none.getDeadline());
+		TestJob[] jobs = new TestJob[] {slow, fast, none};
+		manager.setMetricsEnabled(true);
+		manager.addJobChangeListener(listener);
+		try {
+			List<Future<IStatus>> done = new ArrayList<>();
+			for (TestJob job : jobs) {
+				job.setFamilies(family);
+				//futures are completed after the listeners are notified
+				done.add(job.toFuture());
+				job.schedule();
+			}
+			for (Future<IStatus> future : done)
+				future.get(10, TimeUnit.SECONDS);
+			assertEquals("2.0", Collections.singletonList(slow), missed);
+			IJobStatistics statistics = manager.getMetrics().getFamilyStatistics().get(family);
+			assertEquals("2.1", 3, statistics.getJobCount());
+			assertEquals("2.2", 2, statistics.getDeadlineCount());
+			assertEquals("2.3", 1, statistics.getMissedDeadlineCount());
+		} finally {
+			manager.removeJobChangeListener(listener);
+			manager.setMetricsEnabled(false);
+		}
+	}
+
 	public void testReverseOrder() {
 		//ensure jobs are run in order from lowest to highest sleep time.
 		final List<Job> done = Collections.synchronizedList(new ArrayList<Job>());
@@ -1981,6 +2799,165 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		assertTrue("1.1", !manager.isSuspended());
 	}
 
+	/**
+	 * Tests scheduling a collection of jobs at once.
+	 */
+	public void testScheduleCollection() {
+		final List<Job> scheduled = Collections.synchronizedList(new ArrayList<Job>());
+		IJobChangeListener listener = new JobChangeAdapter() {
+			@Override
+			public void scheduled(IJobChangeEvent event) {
+				scheduled.add(event.getJob());
+			}
+		};
+		TestJob[] jobs = new TestJob[10];
+		for (int i = 0; i < jobs.length; i++)
+			jobs[i] = new TestJob("testScheduleCollection(" + i + ")", 1, 1);
+		jobs[1].setRule(new IdentityRule());
+		//not a TestJob, so that waitForCompletion does not wait for it
+		Job sleeper = new Job("testScheduleCollection sleeper") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				return Status.OK_STATUS;
+			}
+		};
+		sleeper.schedule(1000000);
+		manager.addJobChangeListener(listener);
+		try {
+			List<Job> toSchedule = new ArrayList<Job>(Arrays.asList(jobs));
+			//jobs that are already scheduled or appear twice are only scheduled once
+			toSchedule.add(sleeper);
+			toSchedule.add(jobs[0]);
+			manager.schedule(toSchedule, 0);
+			waitForCompletion();
+			assertEquals("1.0", jobs.length, scheduled.size());
+			for (int i = 0; i < jobs.length; i++) {
+				assertEquals("1.1." + i, 1, jobs[i].getRunCount());
+				assertTrue("1.2." + i, scheduled.contains(jobs[i]));
+			}
+			assertState("1.3", sleeper, Job.SLEEPING);
+			//schedule with a delay
+			scheduled.clear();
+			manager.schedule(Arrays.asList(jobs), 100);
+			for (int i = 0; i < jobs.length; i++)
+				assertState("2.0." + i, jobs[i], Job.SLEEPING);
+			waitForCompletion();
+			for (int i = 0; i < jobs.length; i++)
+				assertEquals("2.1." + i, 2, jobs[i].getRunCount());
+		} finally {
+			manager.removeJobChangeListener(listener);
+			sleeper.cancel();
+		}
+	}
+
+	/**
+	 * Tests that waiting jobs with and without scheduling rules and job groups
+	 * can be found, reprioritized and run.
+	 */
+	public void testWaitingJobsWithoutRule() {
+		final int[] priorities = new int[] {Job.DECORATE, Job.INTERACTIVE, Job.BUILD, Job.SHORT, Job.LONG};
+		TestJobFamily family = new TestJobFamily(TestJobFamily.TYPE_ONE);
+		Job[] jobs = new Job[priorities.length * 3];
+		JobGroup group = new JobGroup("testWaitingJobsWithoutRule", 1, 1);
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new FamilyTestJob("testWaitingJobsWithoutRule(" + i + ")", 1, 1, TestJobFamily.TYPE_ONE);
+			jobs[i].setPriority(priorities[i % priorities.length]);
+			if (i % 3 == 1)
+				jobs[i].setRule(new IdentityRule());
+			else if (i == 2)
+				jobs[i].setJobGroup(group);
+		}
+		manager.suspend();
+		try {
+			for (int i = 0; i < jobs.length; i++)
+				jobs[i].schedule();
+			assertTrue("1.0", !manager.isIdle());
+			assertEquals("1.1", jobs.length, manager.find(family).length);
+			for (int i = 0; i < jobs.length; i++) {
+				assertState("1.2." + i, jobs[i], Job.WAITING);
+				jobs[i].setPriority(priorities[(i + 1) % priorities.length]);
+			}
+			assertEquals("1.3", jobs.length, manager.find(family).length);
+			jobs[0].cancel();
+			assertState("1.4", jobs[0], Job.NONE);
+			assertEquals("1.5", jobs.length - 1, manager.find(family).length);
+		} finally {
+			manager.resume();
+		}
+		waitForCompletion();
+		for (int i = 1; i < jobs.length; i++)
+			assertEquals("2." + i, 1, ((TestJob) jobs[i]).getRunCount());
+		assertEquals("3.0", 0, manager.find(family).length);
+	}
+
+	/**
+	 * Tests that jobs without scheduling rule and job group are found exactly
+	 * once while they move from the sleeping queue to the wait queue and on to
+	 * running, which they do without holding the job manager lock, while other
+	 * such jobs keep the workers busy.
+	 */
+	public void testFindWhileIndependentJobsChurn() throws InterruptedException {
+		final int CHAINS = 4;
+		final int WATCHED = 10;
+		final boolean[] stop = new boolean[1];
+		Job[] chains = new Job[CHAINS];
+		for (int i = 0; i < CHAINS; i++) {
+			chains[i] = new Job("testFindWhileIndependentJobsChurn.chain") { //$NON-NLS-1$
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					synchronized (stop) {
+						if (!stop[0])
+							schedule();
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			chains[i].setSystem(true);
+			chains[i].schedule();
+		}
+		try {
+			for (int round = 0; round < 20; round++) {
+				final CountDownLatch release = new CountDownLatch(1);
+				Job[] watched = new Job[WATCHED];
+				for (int i = 0; i < WATCHED; i++) {
+					watched[i] = Job.create("testFindWhileIndependentJobsChurn", monitor -> { //$NON-NLS-1$
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return Status.OK_STATUS;
+					});
+					watched[i].setSystem(true);
+					watched[i].schedule(i % 3);
+				}
+				try {
+					long timeout = System.currentTimeMillis() + 10000;
+					boolean allRunning = false;
+					while (!allRunning) {
+						assertTrue("1." + round, System.currentTimeMillis() < timeout);
+						List<Job> found = Arrays.asList(manager.find(null));
+						allRunning = true;
+						for (int i = 0; i < WATCHED; i++) {
+							assertEquals("2." + round + "." + i, 1, Collections.frequency(found, watched[i]));
+							allRunning &= watched[i].getState() == Job.RUNNING;
+						}
+					}
+				} finally {
+					release.countDown();
+				}
+				for (int i = 0; i < WATCHED; i++)
+					watched[i].join();
+			}
+		} finally {
+			synchronized (stop) {
+				stop[0] = true;
+			}
+			for (int i = 0; i < CHAINS; i++)
+				chains[i].join();
+		}
+	}
+
 	/**
 	 * Tests the following sequence:
 	 * [Thread[main,6,main]]Suspend rule: R/
@@ -2198,6 +3175,56 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	/**
+	 * Tests that currentRule() and currentJob() follow a rule that is
+	 * transferred to another thread and back.
+	 */
+	public void testTransferCurrentRule() {
+		final PathRule rule = new PathRule("testTransferCurrentRule");
+		final Thread testThread = Thread.currentThread();
+		final Object[] seen = new Object[3];
+		final Exception[] failure = new Exception[1];
+		Thread destination = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					seen[0] = manager.currentRule();
+					seen[1] = manager.currentJob();
+					manager.transferRule(rule, testThread);
+					seen[2] = manager.currentRule();
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		});
+		manager.beginRule(rule, null);
+		try {
+			Job threadJob = manager.currentJob();
+			assertNotNull("1.0", threadJob);
+			assertEquals("1.1", rule, manager.currentRule());
+			manager.transferRule(rule, destination);
+			assertNull("1.2", manager.currentRule());
+			assertNull("1.3", manager.currentJob());
+			destination.start();
+			try {
+				destination.join();
+			} catch (InterruptedException e) {
+				fail("1.99", e);
+			}
+			if (failure[0] != null)
+				fail("2.0", failure[0]);
+			assertEquals("2.1", rule, seen[0]);
+			assertEquals("2.2", threadJob, seen[1]);
+			assertNull("2.3", seen[2]);
+			assertEquals("3.0", rule, manager.currentRule());
+			assertEquals("3.1", threadJob, manager.currentJob());
+		} finally {
+			manager.endRule(rule);
+		}
+		assertNull("4.0", manager.currentRule());
+		assertNull("4.1", manager.currentJob());
+	}
+
 	/**
 	 * Simple test of rule transfer
 	 */
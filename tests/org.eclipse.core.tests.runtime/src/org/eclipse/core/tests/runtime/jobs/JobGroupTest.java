@@ -12,6 +12,9 @@
 package org.eclipse.core.tests.runtime.jobs;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.AssertionFailedError;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
@@ -121,6 +124,72 @@ public class JobGroupTest extends AbstractJobTest {
 		}
 	}
 
+	public void testScheduleCollection() {
+		final int NUM_JOBS = 20;
+		final JobGroup jobGroup = new JobGroup("JobGroup", 2, NUM_JOBS);
+		List<TestJob> jobs = new ArrayList<>();
+		for (int i = 0; i < NUM_JOBS; i++)
+			jobs.add(new TestJob("TestJob", 1, 1));
+		jobGroup.schedule(jobs, 0);
+		for (int i = 0; i < NUM_JOBS; i++)
+			assertSame("1." + i, jobGroup, jobs.get(i).getJobGroup());
+		waitForCompletion(jobGroup);
+		assertEquals("2.0", JobGroup.NONE, jobGroup.getState());
+		for (int i = 0; i < NUM_JOBS; i++)
+			assertEquals("3." + i, 1, jobs.get(i).getRunCount());
+		//scheduled jobs cannot be added to a group, and then no job is added
+		TestJob job = new TestJob("TestJob", 1000000, 10);
+		TestJob other = new TestJob("TestJob", 1, 1);
+		job.schedule();
+		try {
+			new JobGroup("JobGroup", 1, 1).schedule(Arrays.asList(other, job), 0);
+			fail("4.0");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			job.cancel();
+			waitForCompletion(job);
+		}
+		assertNull("4.1", other.getJobGroup());
+		assertEquals("4.2", Job.NONE, other.getState());
+		//nor when one of the jobs is null
+		try {
+			new JobGroup("JobGroup", 1, 1).schedule(Arrays.asList(other, null), 0);
+			fail("5.0");
+		} catch (AssertionFailedException e) {
+			// expected
+		}
+		assertNull("5.1", other.getJobGroup());
+		assertEquals("5.2", Job.NONE, other.getState());
+	}
+
+	public void testToFuture() throws Exception {
+		final int NUM_JOBS = 5;
+		final JobGroup jobGroup = new JobGroup("JobGroup", 2, NUM_JOBS);
+		CompletableFuture<IStatus> future = jobGroup.toFuture();
+		assertSame("1.0", future, jobGroup.toFuture());
+		List<TestJob> jobs = new ArrayList<>();
+		for (int i = 0; i < NUM_JOBS; i++)
+			jobs.add(new TestJob("TestJob", 1, 1));
+		jobGroup.schedule(jobs, 0);
+		IStatus result = future.get(10, TimeUnit.SECONDS);
+		assertEquals("1.1", JobGroup.NONE, jobGroup.getState());
+		assertSame("1.2", jobGroup.getResult(), result);
+		for (int i = 0; i < NUM_JOBS; i++)
+			assertEquals("1.3." + i, 1, jobs.get(i).getRunCount());
+
+		//canceling the future cancels the group
+		future = jobGroup.toFuture();
+		assertFalse("2.0", future.isDone());
+		jobs.clear();
+		for (int i = 0; i < NUM_JOBS; i++)
+			jobs.add(new TestJob("TestJob", 1000000, 10));
+		jobGroup.schedule(jobs, 0);
+		assertTrue("2.1", future.cancel(true));
+		waitForCompletion(jobGroup);
+		assertEquals("2.2", IStatus.CANCEL, jobGroup.getResult().getSeverity());
+	}
+
 	public void testSeedJobsWhenSeedJobsAddNewJobs() {
 		final int NUM_SEED_JOBS = 10;
 		final int NUM_CHILD_JOBS = 10;
@@ -1354,6 +1423,161 @@ public class JobGroupTest extends AbstractJobTest {
 		waitForCompletion(jobGroup);
 	}
 
+	/**
+	 * Tests that a job group that schedules many jobs at once does not hold back the
+	 * jobs of another group that are scheduled later.
+	 */
+	public void testWeight() throws Exception {
+		final int NUM_LARGE_JOBS = 200;
+		JobGroup largeGroup = new JobGroup("LargeGroup", 0, NUM_LARGE_JOBS);
+		JobGroup smallGroup = new JobGroup("SmallGroup", 0, 1);
+		assertEquals("1.0", 1, largeGroup.getWeight());
+		try {
+			largeGroup.setWeight(0);
+			fail("1.1");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		final AtomicInteger largeJobsStarted = new AtomicInteger();
+		for (int i = 0; i < NUM_LARGE_JOBS; i++) {
+			Job job = Job.create("LargeGroupJob", monitor -> {
+				largeJobsStarted.incrementAndGet();
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				return Status.OK_STATUS;
+			});
+			job.setJobGroup(largeGroup);
+			job.schedule();
+		}
+		final int[] startedBeforeSmallJob = new int[] {-1};
+		Job smallJob = Job.create("SmallGroupJob", monitor -> {
+			startedBeforeSmallJob[0] = largeJobsStarted.get();
+			return Status.OK_STATUS;
+		});
+		smallJob.setJobGroup(smallGroup);
+		try {
+			//schedule the small job once the large group is busy
+			long timeout = System.currentTimeMillis() + 10000;
+			while (largeJobsStarted.get() == 0 && System.currentTimeMillis() < timeout)
+				Thread.sleep(1);
+			int startedBeforeSchedule = largeJobsStarted.get();
+			smallJob.schedule();
+			smallJob.join();
+			assertEquals("2.0", IStatus.OK, smallJob.getResult().getSeverity());
+			//the small job only waits for a worker, not for the large group to finish
+			assertTrue("2.1", startedBeforeSmallJob[0] - startedBeforeSchedule < NUM_LARGE_JOBS / 4);
+		} finally {
+			largeGroup.cancel();
+			waitForCompletion(largeGroup);
+		}
+	}
+
+	/**
+	 * Tests that the jobs of a busy group are not put behind jobs of a lower
+	 * priority that are scheduled after them.
+	 */
+	public void testWeightPriority() throws Exception {
+		final int NUM_GROUP_JOBS = 20;
+		//a group that runs one job at a time
+		JobGroup jobGroup = new JobGroup("JobGroup", 1, NUM_GROUP_JOBS + 1);
+		List<Job> started = Collections.synchronizedList(new ArrayList<Job>());
+		Job[] longJobs = new Job[NUM_GROUP_JOBS];
+		Job buildJob = createRecordingJob("BuildJob", Job.BUILD, started);
+		buildJob.setJobGroup(jobGroup);
+		manager.suspend();
+		try {
+			for (int i = 0; i < NUM_GROUP_JOBS; i++) {
+				longJobs[i] = createRecordingJob("LongJob" + i, Job.LONG, started);
+				longJobs[i].setJobGroup(jobGroup);
+				longJobs[i].schedule();
+			}
+			buildJob.schedule();
+		} finally {
+			manager.resume();
+		}
+		waitForCompletion(jobGroup);
+		assertEquals("1.0", NUM_GROUP_JOBS + 1, started.size());
+		assertEquals("1.1", buildJob, started.get(NUM_GROUP_JOBS));
+	}
+
+	/**
+	 * Tests that waiting jobs of a group that are canceled do not hold back the
+	 * jobs of the group that are scheduled after them.
+	 */
+	public void testWeightCancel() throws Exception {
+		final int NUM_CANCELED_JOBS = 10;
+		//a group that runs one job at a time
+		JobGroup jobGroup = new JobGroup("JobGroup", 1, NUM_CANCELED_JOBS + 2);
+		List<Job> started = Collections.synchronizedList(new ArrayList<Job>());
+		Job buildJob = createRecordingJob("BuildJob", Job.BUILD, started);
+		buildJob.setJobGroup(jobGroup);
+		Job longJob = createRecordingJob("LongJob", Job.LONG, started);
+		longJob.setJobGroup(jobGroup);
+		manager.suspend();
+		try {
+			for (int i = 0; i < NUM_CANCELED_JOBS; i++) {
+				Job job = createRecordingJob("CanceledJob" + i, Job.LONG, started);
+				job.setJobGroup(jobGroup);
+				job.schedule();
+				assertTrue("1." + i, job.cancel());
+			}
+			//without the canceled jobs, the long job passes the build job
+			buildJob.schedule();
+			longJob.schedule();
+		} finally {
+			manager.resume();
+		}
+		waitForCompletion(jobGroup);
+		assertEquals("2.0", Arrays.asList(longJob, buildJob), started);
+	}
+
+	/**
+	 * Tests that waiting jobs of a group whose priority changes before they are
+	 * canceled give back their share to the priority they were queued with.
+	 */
+	public void testWeightSetPriorityCancel() throws Exception {
+		final int NUM_CANCELED_JOBS = 10;
+		//a group that runs one job at a time
+		JobGroup jobGroup = new JobGroup("JobGroup", 1, NUM_CANCELED_JOBS + 2);
+		List<Job> started = Collections.synchronizedList(new ArrayList<Job>());
+		Job buildJob = createRecordingJob("BuildJob", Job.BUILD, started);
+		buildJob.setJobGroup(jobGroup);
+		Job longJob = createRecordingJob("LongJob", Job.LONG, started);
+		longJob.setJobGroup(jobGroup);
+		manager.suspend();
+		try {
+			for (int i = 0; i < NUM_CANCELED_JOBS; i++) {
+				Job job = createRecordingJob("CanceledJob" + i, Job.LONG, started);
+				job.setJobGroup(jobGroup);
+				job.schedule();
+				job.setPriority(Job.SHORT);
+				assertTrue("1." + i, job.cancel());
+			}
+			//without the canceled jobs, the long job passes the build job
+			buildJob.schedule();
+			longJob.schedule();
+		} finally {
+			manager.resume();
+		}
+		waitForCompletion(jobGroup);
+		assertEquals("2.0", Arrays.asList(longJob, buildJob), started);
+	}
+
+	private static Job createRecordingJob(String name, int priority, final List<Job> started) {
+		Job job = new Job(name) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				started.add(this);
+				return Status.OK_STATUS;
+			}
+		};
+		job.setPriority(priority);
+		return job;
+	}
+
 	/**
 	 * Tests that the JobManager publishes a final job group status to IJobChangeListeners.
 	 */
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.core.tests.runtime.jobs;
 
+import java.util.Iterator;
+import java.util.Random;
 import junit.framework.TestCase;
 import org.eclipse.core.internal.jobs.InternalJob;
 import org.eclipse.core.internal.jobs.JobQueue;
@@ -93,6 +95,57 @@ public class JobQueueTest extends TestCase {
 		assertEquals("3.1", 0, count);
 	}
 
+	public void testHeapEqualValues() {
+		queue = new JobQueue(true, true, true);
+		testEqualValues();
+	}
+
+	public void testHeapBasic() {
+		queue = new JobQueue(true, true, true);
+		testBasic();
+	}
+
+	/**
+	 * Tests that removing arbitrary entries from a heap based queue keeps the
+	 * remaining entries in order.
+	 */
+	public void testHeapRemove() {
+		queue = new JobQueue(true, true, true);
+		final int NUM_ENTRIES = 100;
+		Entry[] entries = new Entry[NUM_ENTRIES];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = new Entry(Job.LONG);
+			queue.enqueue(entries[i]);
+		}
+		Random random = new Random(42);
+		boolean[] removed = new boolean[NUM_ENTRIES];
+		for (int i = 0; i < NUM_ENTRIES / 2; i++) {
+			int index = random.nextInt(NUM_ENTRIES);
+			if (removed[index])
+				continue;
+			queue.remove(entries[index]);
+			removed[index] = true;
+		}
+		//an entry that is enqueued again goes after all other entries
+		if (!removed[0])
+			queue.remove(entries[0]);
+		queue.enqueue(entries[0]);
+		removed[0] = false;
+		int count = 0;
+		for (Iterator it = queue.iterator(); it.hasNext(); it.next())
+			count++;
+		for (int i = 1; i < entries.length; i++) {
+			if (!removed[i]) {
+				assertEquals("1.0." + i, entries[i], queue.dequeue());
+				count--;
+			}
+		}
+		assertEquals("2.0", entries[0], queue.dequeue());
+		count--;
+		assertEquals("3.0", 0, count);
+		assertTrue("3.1", queue.isEmpty());
+	}
+
 	private Entry[] createEntries() {
 		return new Entry[] {new Entry(Job.INTERACTIVE), new Entry(Job.BUILD), new Entry(Job.INTERACTIVE), new Entry(Job.SHORT), new Entry(Job.DECORATE), new Entry(Job.LONG), new Entry(Job.SHORT), new Entry(Job.BUILD), new Entry(Job.LONG), new Entry(Job.DECORATE),};
 	}
@@ -16,6 +16,8 @@
  *******************************************************************************/
 package org.eclipse.core.tests.runtime.jobs;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.internal.jobs.JobManager;
@@ -118,13 +120,13 @@ public class JobTest extends AbstractJobTest {
 		assertTrue("3.0", main.getState() == Job.RUNNING);
 		//the asynchronous process that assigns the thread the job is going to run in has not been started yet
 		//the job is running in the thread provided to it by the manager
-		assertTrue("3.1" + main.getThread().getName(), main.getThread() instanceof Worker);
+		assertTrue("3.1" + main.getThread().getName(), Worker.isWorkerThread(main.getThread()));
 
 		status[0] = TestBarrier.STATUS_START;
 		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_WAIT_FOR_START);
 
 		//the asynchronous process has been started, but the set thread method has not been called yet
-		assertTrue("3.2", main.getThread() instanceof Worker);
+		assertTrue("3.2", Worker.isWorkerThread(main.getThread()));
 
 		status[0] = TestBarrier.STATUS_WAIT_FOR_RUN;
 
@@ -154,13 +156,13 @@ public class JobTest extends AbstractJobTest {
 
 		//the asynchronous process that assigns the thread the job is going to run in has not been started yet
 		//job is running in the thread provided by the manager
-		assertTrue("5.1", main.getThread() instanceof Worker);
+		assertTrue("5.1", Worker.isWorkerThread(main.getThread()));
 
 		status[0] = TestBarrier.STATUS_START;
 		TestBarrier.waitForStatus(status, 0, TestBarrier.STATUS_WAIT_FOR_START);
 
 		//the asynchronous process has been started, but the set thread method has not been called yet
-		assertTrue("5.2", main.getThread() instanceof Worker);
+		assertTrue("5.2", Worker.isWorkerThread(main.getThread()));
 
 		status[0] = TestBarrier.STATUS_WAIT_FOR_RUN;
 
@@ -201,7 +203,7 @@ public class JobTest extends AbstractJobTest {
 		//every job should now be waiting for the STATUS_START flag
 		for (int i = 0; i < status.length; i++) {
 			assertTrue("3." + i, jobs[i].getState() == Job.RUNNING);
-			assertTrue("4." + i, jobs[i].getThread() instanceof Worker);
+			assertTrue("4." + i, Worker.isWorkerThread(jobs[i].getThread()));
 			status[i] = TestBarrier.STATUS_START;
 		}
 
@@ -210,7 +212,7 @@ public class JobTest extends AbstractJobTest {
 
 		//every job should now be waiting for the STATUS_WAIT_FOR_RUN flag
 		for (int i = 0; i < status.length; i++) {
-			assertTrue("5. " + i, jobs[i].getThread() instanceof Worker);
+			assertTrue("5. " + i, Worker.isWorkerThread(jobs[i].getThread()));
 			status[i] = TestBarrier.STATUS_WAIT_FOR_RUN;
 		}
 
@@ -264,7 +266,7 @@ public class JobTest extends AbstractJobTest {
 		for (int i = 0; i < 3; i++) {
 			TestBarrier.waitForStatus(status, i, TestBarrier.STATUS_RUNNING);
 			assertTrue("3." + i, jobs[i].getState() == Job.RUNNING);
-			assertTrue("4." + i, jobs[i].getThread() instanceof Worker);
+			assertTrue("4." + i, Worker.isWorkerThread(jobs[i].getThread()));
 			status[i] = TestBarrier.STATUS_START;
 		}
 
@@ -274,7 +276,7 @@ public class JobTest extends AbstractJobTest {
 
 		//the 3 jobs should now be waiting for the STATUS_WAIT_FOR_RUN flag
 		for (int i = 0; i < 3; i++) {
-			assertTrue("5. " + i, jobs[i].getThread() instanceof Worker);
+			assertTrue("5. " + i, Worker.isWorkerThread(jobs[i].getThread()));
 			status[i] = TestBarrier.STATUS_WAIT_FOR_RUN;
 		}
 
@@ -704,6 +706,57 @@ public class JobTest extends AbstractJobTest {
 		assertTrue("2.0", longJob.getResult().getSeverity() == IStatus.CANCEL);
 	}
 
+	public void testToFuture() throws Exception {
+		//the future of an unscheduled job completes when the job is next done
+		CompletableFuture<IStatus> future = shortJob.toFuture();
+		assertFalse("1.0", future.isDone());
+		assertSame("1.1", future, shortJob.toFuture());
+		CompletableFuture<Integer> severity = future.thenApply(IStatus::getSeverity);
+		shortJob.schedule();
+		assertEquals("1.2", IStatus.OK, severity.get(10, TimeUnit.SECONDS).intValue());
+		assertSame("1.3", shortJob.getResult(), future.get());
+
+		//a new future is returned once the previous one is complete
+		CompletableFuture<IStatus> second = shortJob.toFuture();
+		assertNotSame("2.0", future, second);
+		assertFalse("2.1", second.isDone());
+		shortJob.schedule();
+		assertEquals("2.2", IStatus.OK, second.get(10, TimeUnit.SECONDS).getSeverity());
+
+		//canceling a running job completes its future with the canceled result
+		longJob.schedule();
+		waitForState(longJob, Job.RUNNING);
+		future = longJob.toFuture();
+		longJob.cancel();
+		assertEquals("3.0", IStatus.CANCEL, future.get(10, TimeUnit.SECONDS).getSeverity());
+
+		//canceling a sleeping job completes its future with the cancel status
+		longJob.schedule(1000000);
+		future = longJob.toFuture();
+		longJob.cancel();
+		assertTrue("4.0", future.isDone());
+		assertSame("4.1", Status.CANCEL_STATUS, future.get());
+	}
+
+	public void testToFutureCancel() throws Exception {
+		//canceling the future cancels the job
+		longJob.schedule();
+		waitForState(longJob, Job.RUNNING);
+		CompletableFuture<IStatus> future = longJob.toFuture();
+		assertTrue("1.0", future.cancel(true));
+		assertTrue("1.1", future.isCancelled());
+		waitForState(longJob, Job.NONE);
+		assertEquals("1.2", IStatus.CANCEL, longJob.getResult().getSeverity());
+
+		//a future canceled before the job is scheduled is replaced
+		future = shortJob.toFuture();
+		future.cancel(false);
+		CompletableFuture<IStatus> next = shortJob.toFuture();
+		assertNotSame("2.0", future, next);
+		shortJob.schedule();
+		assertEquals("2.1", IStatus.OK, next.get(10, TimeUnit.SECONDS).getSeverity());
+	}
+
 	public void testGetRule() {
 		//set several rules for the job, check if getRule returns the rule that was set
 		//no rule was set yet
@@ -1330,6 +1383,147 @@ public class JobTest extends AbstractJobTest {
 		assertEquals("1.1", REPEATS, count[0]);
 	}
 
+	/*
+	 * Schedule a job with a delay, and make sure it runs once the delay has passed.
+	 */
+	public void testScheduleDelay() {
+		final long DELAY = 200;
+		final long[] started = new long[] {0};
+		Job job = new Job("testScheduleDelay") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				started[0] = System.currentTimeMillis();
+				return Status.OK_STATUS;
+			}
+		};
+		long scheduled = System.currentTimeMillis();
+		job.schedule(DELAY);
+		assertEquals("1.0", Job.SLEEPING, job.getState());
+		waitForState(job, Job.NONE);
+		assertTrue("1.1", started[0] - scheduled >= DELAY);
+	}
+
+	/*
+	 * Request many trailing coalesced runs of a job, and make sure they result
+	 * in a single run after the last request without further listener events.
+	 */
+	public void testScheduleCoalesced() {
+		final long DELAY = 200;
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger scheduled = new AtomicInteger();
+		final AtomicInteger awake = new AtomicInteger();
+		final long[] started = new long[] {0};
+		Job job = new Job("testScheduleCoalesced") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				started[0] = System.currentTimeMillis();
+				runs.incrementAndGet();
+				return Status.OK_STATUS;
+			}
+		};
+		job.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void scheduled(IJobChangeEvent event) {
+				scheduled.incrementAndGet();
+			}
+
+			@Override
+			public void awake(IJobChangeEvent event) {
+				awake.incrementAndGet();
+			}
+		});
+		long last = 0;
+		for (int i = 0; i < 5; i++) {
+			last = System.currentTimeMillis();
+			job.scheduleCoalesced(DELAY, false);
+			assertEquals("1." + i, Job.SLEEPING, job.getState());
+			sleep(DELAY / 4);
+		}
+		waitForState(job, Job.NONE);
+		assertEquals("2.0", 1, runs.get());
+		assertEquals("2.1", 1, scheduled.get());
+		assertEquals("2.2", 0, awake.get());
+		//the job ran after the last request, not after the first one
+		assertTrue("2.3", started[0] - last >= DELAY);
+
+		//requests while the job is put to sleep do not wake it up
+		job.schedule(DELAY);
+		job.sleep();
+		job.scheduleCoalesced(0, false);
+		sleep(DELAY * 2);
+		assertEquals("3.0", Job.SLEEPING, job.getState());
+		assertEquals("3.1", 1, runs.get());
+		job.wakeUp();
+		waitForState(job, Job.NONE);
+		assertEquals("3.2", 2, runs.get());
+	}
+
+	/*
+	 * Request many leading coalesced runs of a job, and make sure the first
+	 * request runs right away and the requests made while it runs result in a
+	 * single run afterwards.
+	 */
+	public void testScheduleCoalescedLeading() {
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger scheduled = new AtomicInteger();
+		final TestBarrier barrier = new TestBarrier();
+		Job job = new Job("testScheduleCoalescedLeading") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				if (runs.incrementAndGet() == 1) {
+					barrier.setStatus(TestBarrier.STATUS_RUNNING);
+					barrier.waitForStatus(TestBarrier.STATUS_WAIT_FOR_DONE);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void scheduled(IJobChangeEvent event) {
+				scheduled.incrementAndGet();
+			}
+		});
+		job.scheduleCoalesced(10000, true);
+		barrier.waitForStatus(TestBarrier.STATUS_RUNNING);
+		for (int i = 0; i < 5; i++)
+			job.scheduleCoalesced(1000, true);
+		barrier.setStatus(TestBarrier.STATUS_WAIT_FOR_DONE);
+		//the job is rescheduled once, then absorbs further requests while sleeping
+		waitForState(job, Job.SLEEPING);
+		for (int i = 0; i < 5; i++)
+			job.scheduleCoalesced(1000, true);
+		waitForState(job, Job.NONE);
+		assertEquals("1.0", 2, runs.get());
+		assertEquals("1.1", 2, scheduled.get());
+	}
+
+	/*
+	 * Schedule a job with a delay while the job manager is suspended, and make
+	 * sure it only runs once the job manager is resumed.
+	 */
+	public void testScheduleDelaySuspended() {
+		final int[] count = new int[] {0};
+		Job job = new Job("testScheduleDelaySuspended") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				count[0]++;
+				return Status.OK_STATUS;
+			}
+		};
+		IJobManager manager = Job.getJobManager();
+		manager.suspend();
+		try {
+			job.schedule(10);
+			sleep(500);
+			assertEquals("1.0", Job.SLEEPING, job.getState());
+			assertEquals("1.1", 0, count[0]);
+		} finally {
+			manager.resume();
+		}
+		waitForState(job, Job.NONE);
+		assertEquals("1.2", 1, count[0]);
+	}
+
 	/*
 	 * Schedule a job to run, and then reschedule it
 	 */
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+
+/**
+ * Measures the throughput of the job manager for a growing number of workers.
+ * Each test executes the same total number of empty jobs, spread over a number
+ * of concurrently runnable job chains. Each chain keeps one worker busy, so
+ * comparing the elapsed times shows how throughput scales with the number of
+ * workers competing for the job manager.
+ */
+public class JobThroughputTest extends AbstractJobTest {
+	/**
+	 * The total number of job executions in a single measurement.
+	 */
+	private static final int JOB_RUNS = 20000;
+
+	public JobThroughputTest() {
+		super();
+	}
+
+	public JobThroughputTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Runs JOB_RUNS empty jobs using the given number of concurrent job chains.
+	 */
+	private void runChains(final int chains) {
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				CountDownLatch finished = new CountDownLatch(chains);
+				ChainJob[] jobs = new ChainJob[chains];
+				for (int i = 0; i < chains; i++)
+					jobs[i] = new ChainJob(JOB_RUNS / chains, finished);
+				for (int i = 0; i < chains; i++)
+					jobs[i].schedule();
+				try {
+					assertTrue("Timeout waiting for jobs", finished.await(60, TimeUnit.SECONDS)); //$NON-NLS-1$
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	public void testOneWorker() {
+		runChains(1);
+	}
+
+	public void testTwoWorkers() {
+		runChains(2);
+	}
+
+	public void testFourWorkers() {
+		runChains(4);
+	}
+
+	public void testEightWorkers() {
+		runChains(8);
+	}
+
+	public void testSixteenWorkers() {
+		runChains(16);
+	}
+
+	public void testThirtyTwoWorkers() {
+		runChains(32);
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import org.eclipse.core.internal.jobs.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.tests.harness.TestJob;
+import org.eclipse.core.tests.runtime.perf.JobTraceReplay;
+
+/**
+ * Tests recording job traces and replaying them.
+ */
+public class JobTraceTest extends AbstractJobManagerTest {
+	public JobTraceTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Runs two conflicting jobs and a thread that begins the same rule while
+	 * recording a trace, and returns the trace.
+	 */
+	private JobTrace.Trace record() throws IOException, InterruptedException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		JobManager jobManager = (JobManager) manager;
+		PathRule rule = new PathRule("/testTrace");
+		jobManager.startTrace(output);
+		try {
+			TestJob first = new TestJob("JobTraceTest.first", 5, 20);
+			first.setRule(rule);
+			first.setPriority(Job.SHORT);
+			TestJob second = new TestJob("JobTraceTest.second", 5, 20);
+			second.setRule(rule);
+			second.setSystem(true);
+			first.schedule();
+			second.schedule(50);
+			first.join();
+			second.join();
+			Thread thread = new Thread(() -> {
+				manager.beginRule(rule, null);
+				manager.endRule(rule);
+			});
+			thread.start();
+			thread.join();
+		} finally {
+			jobManager.stopTrace();
+		}
+		return JobTrace.read(new ByteArrayInputStream(output.toByteArray()));
+	}
+
+	/**
+	 * Returns the runs of the jobs of this test in the given trace.
+	 */
+	private List<JobTrace.Run> runs(JobTrace.Trace trace) {
+		List<JobTrace.Run> runs = new ArrayList<>();
+		for (JobTrace.Run run : trace.getRuns()) {
+			if (run.getName().startsWith("JobTraceTest.") || (run.isImplicit() && "PathRule(/testTrace)".equals(trace.getRuleDescription(run.getRule()))))
+				runs.add(run);
+		}
+		return runs;
+	}
+
+	public void testRecord() throws IOException, InterruptedException {
+		JobTrace.Trace trace = record();
+		//stopping the trace writes all the state changes recorded so far
+		assertEquals("0.0", 0, trace.getLostCount());
+		List<JobTrace.Run> runs = runs(trace);
+		assertEquals("1.0", 3, runs.size());
+		JobTrace.Run first = runs.get(0);
+		JobTrace.Run second = runs.get(1);
+		JobTrace.Run implicit = runs.get(2);
+		assertEquals("1.1", "JobTraceTest.first", first.getName());
+		assertEquals("1.2", "JobTraceTest.second", second.getName());
+		assertTrue("1.3", implicit.isImplicit());
+		assertEquals("1.4", first.getRule(), second.getRule());
+		assertEquals("1.5", first.getRule(), implicit.getRule());
+		assertEquals("1.6", Job.SHORT, first.getPriority());
+		assertEquals("1.7", Job.LONG, second.getPriority());
+
+		assertTrue("2.0", first.isStarted());
+		assertTrue("2.1", second.isStarted());
+		assertTrue("2.2", implicit.isStarted());
+		//the jobs run for five ticks of twenty milliseconds
+		assertTrue("2.3", first.getRunTime() >= 90 * 1000000L);
+		assertTrue("2.4", second.getRunTime() >= 90 * 1000000L);
+		assertTrue("2.5", second.getDelay() >= 40);
+		assertTrue("2.6", second.getScheduleTime() >= first.getScheduleTime());
+		assertTrue("2.7", first.getQueueTime() >= 0);
+	}
+
+	public void testReplay() throws IOException, InterruptedException, TimeoutException {
+		JobTrace.Trace trace = record();
+		int started = 0;
+		for (JobTrace.Run run : trace.getRuns()) {
+			if (run.isStarted())
+				started++;
+		}
+		JobTraceReplay.Result result = new JobTraceReplay(trace, 2).replay(60000);
+		assertEquals("1.0", started, result.getRunCount());
+		assertTrue("1.1", result.getMaxReplayedQueueTime() >= 0);
+	}
+
+	/**
+	 * Tests that jobs keep running while the trace cannot be written, and that
+	 * the state changes that do not fit in the queue are dropped and counted.
+	 */
+	public void testBlockedWriter() throws Exception {
+		final String family = "testBlockedWriter";
+		final CountDownLatch release = new CountDownLatch(1);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		OutputStream blocked = new FilterOutputStream(output) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				out.write(b, off, len);
+			}
+		};
+		JobManager jobManager = (JobManager) manager;
+		jobManager.startTrace(blocked);
+		try {
+			//each run of a job changes its state at least four times
+			for (int i = 0; i < 20000; i++) {
+				Job job = new Job("JobTraceTest.blocked") {
+					@Override
+					public boolean belongsTo(Object object) {
+						return family == object;
+					}
+
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						return Status.OK_STATUS;
+					}
+				};
+				job.setSystem(true);
+				job.schedule();
+			}
+			manager.join(family, null);
+		} finally {
+			release.countDown();
+			jobManager.stopTrace();
+		}
+		JobTrace.Trace trace = JobTrace.read(new ByteArrayInputStream(output.toByteArray()));
+		assertTrue("1.0", trace.getLostCount() > 0);
+	}
+
+	public void testReadInvalid() {
+		try {
+			JobTrace.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}));
+			fail("1.0");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -12,8 +12,8 @@ package org.eclipse.core.tests.runtime.jobs;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
-import org.eclipse.core.runtime.jobs.ISchedulingRule;
-import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.jobs.*;
 
 /**
  * Tests for {@link MultiRule}.
@@ -80,4 +80,149 @@ public class MultiRuleTest extends AbstractJobTest {
 		assertTrue("1.5", multi2.isConflicting(multi1));
 		assertTrue("1.6", multi1.isConflicting(multi1));
 	}
+
+	public void testSharedChildren() {
+		ISchedulingRule child1 = new PathRule("/a");
+		ISchedulingRule childOfChild1 = new PathRule("/a/b");
+		ISchedulingRule shared1 = new SharedRule(child1);
+		ISchedulingRule sharedChildOfChild1 = new SharedRule(childOfChild1);
+		ISchedulingRule nonChild = new PathRule("/z/d");
+		MultiRule readers = new MultiRule(new ISchedulingRule[] {shared1, nonChild});
+		MultiRule writers = new MultiRule(new ISchedulingRule[] {childOfChild1});
+
+		//shared children never conflict with each other
+		assertTrue("1.0", !readers.isConflicting(sharedChildOfChild1));
+		assertTrue("1.1", !readers.isConflicting(new MultiRule(new ISchedulingRule[] {shared1})));
+		assertTrue("1.2", readers.isConflicting(writers));
+		assertTrue("1.3", writers.isConflicting(readers));
+		assertTrue("1.4", writers.isConflicting(sharedChildOfChild1));
+		assertTrue("1.5", sharedChildOfChild1.isConflicting(writers));
+		assertTrue("1.6", readers.isConflicting(nonChild));
+		assertTrue("1.7", readers.isConflicting(readers));
+
+		//rules contain the shared mode of the rules they contain
+		assertTrue("2.0", readers.contains(sharedChildOfChild1));
+		assertTrue("2.1", !readers.contains(childOfChild1));
+		assertTrue("2.2", new MultiRule(new ISchedulingRule[] {child1, nonChild}).contains(readers));
+		assertTrue("2.3", !readers.contains(new MultiRule(new ISchedulingRule[] {child1, nonChild})));
+	}
+	/**
+	 * Returns rules for the given number of folders, each with two files.
+	 */
+	private ISchedulingRule[] createFileRules(int folders) {
+		ISchedulingRule[] rules = new ISchedulingRule[folders * 2];
+		for (int i = 0; i < folders; i++) {
+			rules[2 * i] = new HierarchicalPathRule("/p/f" + i + "/a");
+			rules[2 * i + 1] = new HierarchicalPathRule("/p/f" + i + "/b");
+		}
+		return rules;
+	}
+
+	public void testCombineMany() {
+		ISchedulingRule[] files = createFileRules(50);
+		ISchedulingRule folder = new HierarchicalPathRule("/p/f7");
+		ISchedulingRule other = new IdentityRule();
+		ISchedulingRule[] rules = new ISchedulingRule[files.length + 4];
+		System.arraycopy(files, 0, rules, 0, files.length);
+		rules[files.length] = files[0];
+		rules[files.length + 1] = null;
+		rules[files.length + 2] = folder;
+		rules[files.length + 3] = other;
+
+		//rules already contained by the rules before them are left out
+		MultiRule combined = (MultiRule) MultiRule.combine(rules);
+		ISchedulingRule[] children = combined.getChildren();
+		assertEquals("1.0", files.length + 2, children.length);
+		for (int i = 0; i < files.length; i++)
+			assertSame("1.1." + i, files[i], children[i]);
+		assertSame("1.2", folder, children[files.length]);
+		assertSame("1.3", other, children[files.length + 1]);
+		for (int i = 0; i < rules.length; i++)
+			assertTrue("1.4." + i, rules[i] == null || combined.contains(rules[i]));
+
+		//a rule that encompasses the rules before it replaces them
+		assertEquals("2.0", combined, MultiRule.combine(new ISchedulingRule[] {files[3], combined, folder}));
+		MultiRule allFiles = new MultiRule(files);
+		assertSame("2.1", allFiles, MultiRule.combine(new ISchedulingRule[] {files[0], files[1], allFiles, files[2]}));
+		assertTrue("2.2", MultiRule.combine(files) instanceof MultiRule);
+		ISchedulingRule root = new HierarchicalPathRule("/p");
+		ISchedulingRule[] withRoot = files.clone();
+		withRoot[10] = root;
+		//a single rule does not know that it encompasses a multi rule, so the rules before it are kept
+		children = ((MultiRule) MultiRule.combine(withRoot)).getChildren();
+		assertEquals("2.3", 11, children.length);
+		for (int i = 0; i < children.length; i++)
+			assertSame("2.4." + i, withRoot[i], children[i]);
+
+		//equal rules are contained in each other
+		ISchedulingRule same1 = new HierarchicalPathRule("/p/same");
+		ISchedulingRule same2 = new HierarchicalPathRule("/p/same");
+		assertSame("3.0", same1, MultiRule.combine(new ISchedulingRule[] {same1, same2, new HierarchicalPathRule("/p/same/child")}));
+		assertSame("3.1", files[0], MultiRule.combine(new ISchedulingRule[] {files[0], null, files[0]}));
+	}
+
+	public void testIndexedChildren() {
+		ISchedulingRule[] files = createFileRules(100);
+		ISchedulingRule other = new IdentityRule();
+		ISchedulingRule[] children = new ISchedulingRule[files.length + 1];
+		System.arraycopy(files, 0, children, 0, files.length);
+		children[files.length] = other;
+		MultiRule multi = new MultiRule(children);
+
+		//single rules
+		assertTrue("1.0", multi.contains(files[57]));
+		assertTrue("1.1", multi.contains(new HierarchicalPathRule("/p/f57/a/deeper")));
+		assertTrue("1.2", !multi.contains(new HierarchicalPathRule("/p/f57")));
+		assertTrue("1.3", !multi.contains(new HierarchicalPathRule("/p/f57/c")));
+		assertTrue("1.4", multi.contains(other));
+		assertTrue("1.5", !multi.contains(new IdentityRule()));
+		assertTrue("1.6", multi.isConflicting(new HierarchicalPathRule("/p/f57")));
+		assertTrue("1.7", multi.isConflicting(new HierarchicalPathRule("/")));
+		assertTrue("1.8", multi.isConflicting(new HierarchicalPathRule("/p/f99/b/deeper")));
+		assertTrue("1.9", !multi.isConflicting(new HierarchicalPathRule("/p/f100")));
+		assertTrue("1.10", !multi.isConflicting(new HierarchicalPathRule("/p/f500")));
+		assertTrue("1.11", !multi.isConflicting(new HierarchicalPathRule("/q")));
+		assertTrue("1.12", multi.isConflicting(other));
+		assertTrue("1.13", !multi.isConflicting(new IdentityRule()));
+
+		//shared rules
+		assertTrue("2.0", multi.contains(new SharedRule(files[8])));
+		assertTrue("2.1", multi.isConflicting(new SharedRule(new HierarchicalPathRule("/p/f8"))));
+		MultiRule readers = new MultiRule(new ISchedulingRule[] {new SharedRule(new HierarchicalPathRule("/p")), new HierarchicalPathRule("/x")});
+		assertTrue("2.2", readers.isConflicting(multi));
+		assertTrue("2.3", multi.isConflicting(readers));
+
+		//multi rules
+		MultiRule some = new MultiRule(new ISchedulingRule[] {files[0], files[199], new HierarchicalPathRule("/p/f3/b/c")});
+		assertTrue("3.0", multi.contains(some));
+		assertTrue("3.1", !some.contains(multi));
+		assertTrue("3.2", multi.isConflicting(some));
+		assertTrue("3.3", some.isConflicting(multi));
+		MultiRule others = new MultiRule(createFileRules(200));
+		MultiRule disjoint = new MultiRule(new ISchedulingRule[] {new HierarchicalPathRule("/p/f200/a"), new HierarchicalPathRule("/p/f500"), new HierarchicalPathRule("/q")});
+		assertTrue("3.4", !multi.isConflicting(disjoint));
+		assertTrue("3.5", !disjoint.isConflicting(multi));
+		assertTrue("3.6", others.contains(new MultiRule(files)));
+		assertTrue("3.7", !others.contains(multi));
+		assertTrue("3.8", others.isConflicting(multi));
+	}
+
+	/**
+	 * Tests that devices are compared ignoring case, as IPath#isPrefixOf does.
+	 */
+	public void testIndexedDevice() {
+		ISchedulingRule[] files = new ISchedulingRule[20];
+		for (int i = 0; i < files.length; i++)
+			files[i] = new HierarchicalPathRule(new Path("C:", "/p/f" + i));
+		MultiRule multi = new MultiRule(files);
+		assertTrue("1.0", multi.contains(new HierarchicalPathRule(new Path("c:", "/p/f7/a"))));
+		assertTrue("1.1", multi.isConflicting(new HierarchicalPathRule(new Path("c:", "/p"))));
+		assertTrue("1.2", !multi.isConflicting(new HierarchicalPathRule(new Path("d:", "/p"))));
+		assertSame("1.3", multi, MultiRule.combine(new ISchedulingRule[] {multi, new HierarchicalPathRule(new Path("c:", "/p/f3"))}));
+		ISchedulingRule[] lowerCase = new ISchedulingRule[files.length];
+		for (int i = 0; i < files.length; i++)
+			lowerCase[i] = new HierarchicalPathRule(new Path("c:", "/p/f" + i + "/a"));
+		assertTrue("1.4", multi.isConflicting(new MultiRule(lowerCase)));
+		assertTrue("1.5", new MultiRule(lowerCase).isConflicting(multi));
+	}
 }
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.eclipse.core.internal.jobs.LockManager;
+import org.eclipse.core.runtime.jobs.ILock;
+import org.eclipse.core.runtime.jobs.IReadWriteLock;
+
+/**
+ * Tests implementation of IReadWriteLock objects
+ */
+public class ReadWriteLockTest extends TestCase {
+	public ReadWriteLockTest() {
+		super(null);
+	}
+
+	public ReadWriteLockTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Runs the given runnable in a new thread, recording any failure.
+	 */
+	private Thread start(final Runnable runnable, final Throwable[] failure) {
+		Thread thread = new Thread(() -> {
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				failure[0] = t;
+			}
+		}, getName());
+		thread.start();
+		return thread;
+	}
+
+	private void await(CountDownLatch latch) {
+		try {
+			assertTrue("Timed out", latch.await(10, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			fail("Interrupted");
+		}
+	}
+
+	public void testReaders() throws Exception {
+		LockManager manager = new LockManager();
+		final IReadWriteLock lock = manager.newReadWriteLock();
+		final CountDownLatch reading = new CountDownLatch(2);
+		final CountDownLatch done = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		Runnable reader = () -> {
+			lock.readLock().acquire();
+			try {
+				reading.countDown();
+				await(done);
+			} finally {
+				lock.readLock().release();
+			}
+		};
+		Thread first = start(reader, failure);
+		Thread second = start(reader, failure);
+		//both readers hold the lock at the same time
+		await(reading);
+		assertEquals("1.0", 0, lock.readLock().getDepth());
+		//a writer cannot get the lock while they read
+		assertFalse("1.1", lock.writeLock().acquire(0));
+		assertFalse("1.2", lock.writeLock().acquire(100));
+		done.countDown();
+		assertTrue("2.0", lock.writeLock().acquire(10000));
+		assertEquals("2.1", 1, lock.writeLock().getDepth());
+		lock.writeLock().release();
+		first.join();
+		second.join();
+		assertNull("3.0", failure[0]);
+		assertTrue("Locks not removed from graph.", manager.isEmpty());
+	}
+
+	public void testReentrance() throws Exception {
+		LockManager manager = new LockManager();
+		IReadWriteLock lock = manager.newReadWriteLock();
+		ILock read = lock.readLock();
+		ILock write = lock.writeLock();
+		//a writer may nest writes and reads
+		write.acquire();
+		write.acquire();
+		read.acquire();
+		assertEquals("1.0", 2, write.getDepth());
+		assertEquals("1.1", 1, read.getDepth());
+		write.release();
+		write.release();
+		assertEquals("1.2", 0, write.getDepth());
+		//the writer is now a reader, and cannot write again
+		try {
+			write.acquire(0);
+			fail("2.0");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		read.acquire();
+		assertEquals("2.1", 2, read.getDepth());
+		read.release();
+		read.release();
+		assertEquals("2.2", 0, read.getDepth());
+		assertTrue("Locks not removed from graph.", manager.isEmpty());
+	}
+
+	public void testWaitingWriter() throws Exception {
+		LockManager manager = new LockManager();
+		final IReadWriteLock lock = manager.newReadWriteLock();
+		final CountDownLatch writing = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		lock.readLock().acquire();
+		Thread writer = start(() -> {
+			lock.writeLock().acquire();
+			writing.countDown();
+			lock.writeLock().release();
+		}, failure);
+		//wait until the writer is queued
+		Thread.sleep(100);
+		//new readers wait for the writer, but existing readers do not
+		final boolean[] acquired = new boolean[] {true};
+		Thread reader = start(() -> {
+			try {
+				acquired[0] = lock.readLock().acquire(100);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}, failure);
+		reader.join();
+		assertFalse("1.0", acquired[0]);
+		assertTrue("1.1", lock.readLock().acquire(0));
+		lock.readLock().release();
+		assertEquals("1.2", 1, writing.getCount());
+		lock.readLock().release();
+		await(writing);
+		writer.join();
+		assertNull("2.0", failure[0]);
+		assertTrue("Locks not removed from graph.", manager.isEmpty());
+	}
+
+	/**
+	 * A reader waiting for an exclusive lock held by a thread that waits to
+	 * write deadlocks. The deadlock must be detected and resolved.
+	 */
+	public void testDeadlock() throws Exception {
+		LockManager manager = new LockManager();
+		final IReadWriteLock lock = manager.newReadWriteLock();
+		final ILock other = manager.newLock();
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch owning = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		Thread reader = start(() -> {
+			lock.readLock().acquire();
+			try {
+				reading.countDown();
+				await(owning);
+				other.acquire();
+				other.release();
+				assertEquals("1.0", 1, lock.readLock().getDepth());
+			} finally {
+				lock.readLock().release();
+			}
+		}, failure);
+		Thread writer = start(() -> {
+			other.acquire();
+			try {
+				owning.countDown();
+				await(reading);
+				lock.writeLock().acquire();
+				lock.writeLock().release();
+				assertEquals("2.0", 1, other.getDepth());
+			} finally {
+				other.release();
+			}
+		}, failure);
+		reader.join(10000);
+		writer.join(10000);
+		assertFalse("3.0", reader.isAlive());
+		assertFalse("3.1", writer.isAlive());
+		assertNull("3.2", failure[0]);
+		assertTrue("Locks not removed from graph.", manager.isEmpty());
+	}
+}
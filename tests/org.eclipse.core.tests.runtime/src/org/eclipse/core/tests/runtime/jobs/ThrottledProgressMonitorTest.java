@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import junit.framework.TestCase;
+import org.eclipse.core.internal.jobs.ThrottledProgressMonitor;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.tests.harness.TestProgressMonitor;
+
+/**
+ * Tests the progress monitor that limits how often progress is reported
+ * to the monitors of running jobs.
+ */
+public class ThrottledProgressMonitorTest extends TestCase {
+	/**
+	 * Counts the calls it receives.
+	 */
+	static class CountingMonitor extends TestProgressMonitor {
+		int beginTaskCalls, doneCalls, workedCalls, subTaskCalls, taskNameCalls;
+		int worked;
+		String subTask;
+		volatile boolean canceled;
+
+		@Override
+		public void beginTask(String name, int totalWork) {
+			beginTaskCalls++;
+		}
+
+		@Override
+		public void done() {
+			doneCalls++;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		@Override
+		public void setCanceled(boolean value) {
+			canceled = value;
+		}
+
+		@Override
+		public void setTaskName(String name) {
+			taskNameCalls++;
+		}
+
+		@Override
+		public void subTask(String name) {
+			subTaskCalls++;
+			subTask = name;
+		}
+
+		@Override
+		public void worked(int work) {
+			workedCalls++;
+			worked += work;
+		}
+	}
+
+	public ThrottledProgressMonitorTest(String name) {
+		super(name);
+	}
+
+	public void testBatching() {
+		CountingMonitor counting = new CountingMonitor();
+		ThrottledProgressMonitor monitor = new ThrottledProgressMonitor(counting, 60000);
+		monitor.beginTask("testBatching", 100000);
+		assertEquals("1.0", 1, counting.beginTaskCalls);
+		for (int i = 0; i < 100000; i++) {
+			monitor.worked(1);
+			monitor.subTask("item " + i % 10);
+			monitor.setTaskName("testBatching");
+		}
+		//nothing got through within the interval
+		assertEquals("2.0", 0, counting.workedCalls);
+		assertEquals("2.1", 0, counting.subTaskCalls);
+		assertEquals("2.2", 0, counting.taskNameCalls);
+		//done forwards the pending work and the last sub task
+		monitor.done();
+		assertEquals("3.0", 1, counting.doneCalls);
+		assertEquals("3.1", 100000, counting.worked);
+		assertEquals("3.2", 1, counting.workedCalls);
+		assertEquals("3.3", 1, counting.subTaskCalls);
+		assertEquals("3.4", "item 9", counting.subTask);
+		//the task name never changed
+		assertEquals("3.5", 0, counting.taskNameCalls);
+	}
+
+	public void testInterval() throws InterruptedException {
+		CountingMonitor counting = new CountingMonitor();
+		ThrottledProgressMonitor monitor = new ThrottledProgressMonitor(counting, 200);
+		monitor.beginTask("testInterval", IProgressMonitor.UNKNOWN);
+		monitor.worked(1);
+		monitor.worked(1);
+		assertEquals("1.0", 0, counting.worked);
+		Thread.sleep(300);
+		monitor.worked(1);
+		assertEquals("1.1", 3, counting.worked);
+		monitor.worked(1);
+		assertEquals("1.2", 3, counting.worked);
+		monitor.done();
+	}
+
+	public void testCancel() throws InterruptedException {
+		CountingMonitor counting = new CountingMonitor();
+		ThrottledProgressMonitor monitor = new ThrottledProgressMonitor(counting, 10);
+		assertFalse("1.0", monitor.isCanceled());
+		monitor.setCanceled(true);
+		assertTrue("1.1", monitor.isCanceled());
+		assertTrue("1.2", counting.isCanceled());
+		monitor.setCanceled(false);
+		assertFalse("1.3", monitor.isCanceled());
+		//canceling the wrapped monitor is noticed within the interval
+		counting.setCanceled(true);
+		Thread.sleep(50);
+		assertTrue("2.0", monitor.isCanceled());
+	}
+}
@@ -42,6 +42,9 @@ public class AllTests extends TestCase {
 
 		suite.addTest(new UIPerformanceSessionTestSuite(RuntimeTestsPlugin.PI_RUNTIME_TESTS, 5, UIStartupTest.class));
 		suite.addTest(BenchPath.suite());
+		suite.addTest(JobManagerPerformanceTest.suite());
+		suite.addTest(JobQueuePerformanceTest.suite());
+		suite.addTest(LockPerformanceTest.suite());
 		suite.addTest(ContentTypePerformanceTest.suite());
 		suite.addTest(PreferencePerformanceTest.suite());
 		return suite;
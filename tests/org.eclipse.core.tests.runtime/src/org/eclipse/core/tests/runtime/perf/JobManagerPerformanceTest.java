@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.runtime.RuntimeTest;
+import org.eclipse.core.tests.runtime.jobs.ChainJob;
+
+/**
+ * Performance tests for the job manager scheduling core: scheduling many jobs
+ * at once, finding the jobs of a family, joining jobs and the latency of small
+ * job groups. See JobThroughputTest for the throughput for a growing number of
+ * workers.
+ */
+public class JobManagerPerformanceTest extends RuntimeTest {
+	/**
+	 * The total number of job executions in a single measurement.
+	 */
+	private static final int JOB_RUNS = 20000;
+
+	public static Test suite() {
+		return new TestSuite(JobManagerPerformanceTest.class);
+	}
+
+	public JobManagerPerformanceTest() {
+		super();
+	}
+
+	public JobManagerPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * Schedules JOB_RUNS empty jobs of mixed priorities at once, so that many jobs
+	 * are waiting while they are scheduled. The jobs are either scheduled one by one,
+	 * or all together through IJobManager#schedule(Collection, long).
+	 */
+	private void fanOut(final boolean batch) {
+		final int[] priorities = new int[] {Job.DECORATE, Job.BUILD, Job.LONG, Job.SHORT, Job.INTERACTIVE};
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				CountDownLatch finished = new CountDownLatch(JOB_RUNS);
+				List<Job> jobs = new ArrayList<>(JOB_RUNS);
+				for (int i = 0; i < JOB_RUNS; i++) {
+					ChainJob job = new ChainJob(1, finished);
+					job.setPriority(priorities[i % priorities.length]);
+					jobs.add(job);
+				}
+				if (batch) {
+					Job.getJobManager().schedule(jobs, 0);
+				} else {
+					for (Job job : jobs)
+						job.schedule();
+				}
+				try {
+					assertTrue("Timeout waiting for jobs", finished.await(60, TimeUnit.SECONDS)); //$NON-NLS-1$
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Finds the jobs of one family many times while JOB_RUNS jobs of one hundred
+	 * families are sleeping. The jobs either declare their families, or implement
+	 * Job#belongsTo(Object).
+	 */
+	private void findFamily(final boolean declared) {
+		final int families = 100;
+		List<Job> jobs = new ArrayList<>(JOB_RUNS);
+		for (int i = 0; i < JOB_RUNS; i++) {
+			final Integer family = Integer.valueOf(i % families);
+			ChainJob job = new ChainJob(1, new CountDownLatch(1)) {
+				@Override
+				public boolean belongsTo(Object other) {
+					return family.equals(other);
+				}
+			};
+			if (declared)
+				job.setFamilies(family);
+			jobs.add(job);
+		}
+		Job.getJobManager().schedule(jobs, 1000000);
+		try {
+			new PerformanceTestRunner() {
+				@Override
+				protected void test() {
+					for (int i = 0; i < families; i++)
+						assertEquals(JOB_RUNS / families, Job.getJobManager().find(Integer.valueOf(i)).length);
+				}
+			}.run(this, 10, 10);
+		} finally {
+			for (Job job : jobs)
+				job.cancel();
+		}
+	}
+
+	public void testFindDeclaredFamily() {
+		findFamily(true);
+	}
+
+	public void testFindFamily() {
+		findFamily(false);
+	}
+
+	/**
+	 * Schedules an empty job and waits for it to finish, JOINS times in a row.
+	 * The jobs finish almost immediately, so the elapsed time shows how long it
+	 * takes to wake up the joining thread.
+	 */
+	private void joinLatency(final boolean family) {
+		final int JOINS = 100;
+		final Object jobFamily = new Object();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				try {
+					for (int i = 0; i < JOINS; i++) {
+						ChainJob job = new ChainJob(1, new CountDownLatch(1));
+						job.setFamilies(jobFamily);
+						job.schedule();
+						if (family)
+							Job.getJobManager().join(jobFamily, null);
+						else
+							job.join();
+					}
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Runs the jobs of a small job group one after the other while a large group
+	 * has queued enough jobs to keep all workers busy for several seconds. The
+	 * elapsed time is the total time the small group waited for its jobs to run,
+	 * which stays bounded by the time it takes a worker to become available.
+	 */
+	public void testSmallGroupLatency() {
+		final int LARGE_JOBS = JOB_RUNS / 10;
+		final int SMALL_JOBS = 20;
+		final JobGroup largeGroup = new JobGroup("LargeGroup", 0, 0); //$NON-NLS-1$
+		final JobGroup smallGroup = new JobGroup("SmallGroup", 0, 0); //$NON-NLS-1$
+		new PerformanceTestRunner() {
+			@Override
+			protected void setUp() {
+				final CountDownLatch started = new CountDownLatch(1);
+				List<Job> jobs = new ArrayList<>(LARGE_JOBS);
+				for (int i = 0; i < LARGE_JOBS; i++) {
+					Job job = Job.create("LargeGroupJob", monitor -> { //$NON-NLS-1$
+						started.countDown();
+						try {
+							Thread.sleep(5);
+						} catch (InterruptedException e) {
+							// ignore
+						}
+						return Status.OK_STATUS;
+					});
+					job.setSystem(true);
+					job.setJobGroup(largeGroup);
+					jobs.add(job);
+				}
+				Job.getJobManager().schedule(jobs, 0);
+				try {
+					assertTrue("Timeout waiting for jobs", started.await(60, TimeUnit.SECONDS)); //$NON-NLS-1$
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+
+			@Override
+			protected void test() {
+				try {
+					for (int i = 0; i < SMALL_JOBS; i++) {
+						ChainJob job = new ChainJob(1, new CountDownLatch(1));
+						job.setJobGroup(smallGroup);
+						job.schedule();
+						job.join();
+					}
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+
+			@Override
+			protected void tearDown() {
+				largeGroup.cancel();
+				try {
+					largeGroup.join(0, null);
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	public void testJoinLatency() {
+		joinLatency(false);
+	}
+
+	public void testJoinFamilyLatency() {
+		joinLatency(true);
+	}
+
+	public void testFanOutMixedPriorities() {
+		fanOut(false);
+	}
+
+	public void testFanOutBatch() {
+		fanOut(true);
+	}
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.runtime.RuntimeTest;
+
+/**
+ * Performance tests for the queues of the job manager. Most tests schedule a
+ * large number of jobs with distinct delays, so the jobs are kept sorted by
+ * wake-up time in the sleeping queue.
+ */
+public class JobQueuePerformanceTest extends RuntimeTest {
+	/**
+	 * The number of delayed jobs in a single measurement.
+	 */
+	private static final int JOB_COUNT = 50000;
+
+	/**
+	 * The minimum delay of the scheduled jobs, long enough that no job wakes up
+	 * during a measurement.
+	 */
+	private static final long MIN_DELAY = 3600000;
+
+	static class EmptyJob extends Job {
+		EmptyJob() {
+			super("EmptyJob"); //$NON-NLS-1$
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			return Status.OK_STATUS;
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(JobQueuePerformanceTest.class);
+	}
+
+	public JobQueuePerformanceTest() {
+		super();
+	}
+
+	public JobQueuePerformanceTest(String testName) {
+		super(testName);
+	}
+
+	private Job[] createJobs() {
+		Job[] jobs = new Job[JOB_COUNT];
+		for (int i = 0; i < jobs.length; i++)
+			jobs[i] = new EmptyJob();
+		return jobs;
+	}
+
+	/**
+	 * Schedules all jobs with random delays, then cancels them in scheduling order.
+	 */
+	public void testScheduleDelayed() {
+		final Job[] jobs = createJobs();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				Random random = new Random(42);
+				for (int i = 0; i < jobs.length; i++)
+					jobs[i].schedule(MIN_DELAY + random.nextInt(JOB_COUNT));
+				for (int i = 0; i < jobs.length; i++)
+					jobs[i].cancel();
+			}
+		}.run(this, 5, 1);
+	}
+
+	/**
+	 * Schedules all jobs to run right away with mixed priorities while the
+	 * workers are taking jobs from the wait queue, and waits for all of them
+	 * to finish. The jobs have distinct rules that never conflict, so that
+	 * they are all kept in the wait queue rather than in a per-priority lane.
+	 */
+	public void testScheduleWaiting() {
+		final int[] priorities = new int[] {Job.DECORATE, Job.BUILD, Job.LONG, Job.SHORT, Job.INTERACTIVE};
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				final CountDownLatch finished = new CountDownLatch(JOB_COUNT);
+				for (int i = 0; i < JOB_COUNT; i++) {
+					Job job = new EmptyJob() {
+						@Override
+						protected IStatus run(IProgressMonitor monitor) {
+							finished.countDown();
+							return Status.OK_STATUS;
+						}
+					};
+					job.setPriority(priorities[i % priorities.length]);
+					job.setRule(new ISchedulingRule() {
+						@Override
+						public boolean contains(ISchedulingRule rule) {
+							return rule == this;
+						}
+
+						@Override
+						public boolean isConflicting(ISchedulingRule rule) {
+							return rule == this;
+						}
+					});
+					job.schedule();
+				}
+				try {
+					assertTrue("Timeout waiting for jobs", finished.await(60, TimeUnit.SECONDS)); //$NON-NLS-1$
+				} catch (InterruptedException e) {
+					fail("Interrupted", e); //$NON-NLS-1$
+				}
+			}
+		}.run(this, 5, 1);
+	}
+
+	/**
+	 * Schedules all jobs with random delays, then changes the delay of every job.
+	 */
+	public void testRescheduleDelayed() {
+		final Job[] jobs = createJobs();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				Random random = new Random(42);
+				for (int i = 0; i < jobs.length; i++)
+					jobs[i].schedule(MIN_DELAY + random.nextInt(JOB_COUNT));
+				for (int i = 0; i < jobs.length; i++)
+					jobs[i].schedule(MIN_DELAY + random.nextInt(JOB_COUNT));
+				for (int i = 0; i < jobs.length; i++)
+					jobs[i].cancel();
+			}
+		}.run(this, 5, 1);
+	}
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.core.internal.jobs.JobTrace;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Replays a job trace recorded by JobTrace with synthetic jobs, through the
+ * public job API, so that the scheduling of a real workload can be measured
+ * against the job manager in use, for example against a modified version of
+ * this bundle.
+ *
+ * Each run in the trace that started running is replayed by a job with the same
+ * name, priority, system and user flags, that is scheduled at the same time
+ * relative to the start of the trace, with the delay after which the recorded
+ * job was ready to run, and that stays busy for as long as the recorded job was
+ * running. Implicit jobs are replayed by threads that begin and end a rule.
+ * The rules of the trace are replayed by rules that only conflict with
+ * themselves, since only the descriptions of the recorded rules are known.
+ * Job groups are replayed by job groups with the same name, maximum number of
+ * threads and weight.
+ *
+ * The replay can be run headless with the jobs and equinox common bundles and
+ * this class on the class path, see #main(String[]).
+ */
+public class JobTraceReplay {
+	/**
+	 * A rule standing for a rule of the trace.
+	 */
+	private static final class ReplayRule implements ISchedulingRule {
+		private final String description;
+
+		ReplayRule(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+
+	/**
+	 * The queue times of the recorded and of the replayed runs.
+	 */
+	public static final class Result {
+		private final long[] recorded;
+		private final long[] replayed;
+
+		Result(long[] recorded, long[] replayed) {
+			this.recorded = recorded;
+			this.replayed = replayed;
+		}
+
+		/**
+		 * Returns the number of replayed runs.
+		 */
+		public int getRunCount() {
+			return recorded.length;
+		}
+
+		/**
+		 * Returns the total time in nanoseconds the recorded runs waited to run.
+		 */
+		public long getRecordedQueueTime() {
+			return sum(recorded);
+		}
+
+		/**
+		 * Returns the total time in nanoseconds the replayed runs waited to run.
+		 */
+		public long getReplayedQueueTime() {
+			return sum(replayed);
+		}
+
+		/**
+		 * Returns the longest time in nanoseconds a recorded run waited to run.
+		 */
+		public long getMaxRecordedQueueTime() {
+			return max(recorded);
+		}
+
+		/**
+		 * Returns the longest time in nanoseconds a replayed run waited to run.
+		 */
+		public long getMaxReplayedQueueTime() {
+			return max(replayed);
+		}
+
+		private static long sum(long[] times) {
+			long sum = 0;
+			for (int i = 0; i < times.length; i++)
+				sum += times[i];
+			return sum;
+		}
+
+		private static long max(long[] times) {
+			long max = 0;
+			for (int i = 0; i < times.length; i++)
+				max = Math.max(max, times[i]);
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "JobTraceReplay(runs=" + getRunCount() + ", recordedQueue=" + getRecordedQueueTime() / 1000 + "us, replayedQueue=" + getReplayedQueueTime() / 1000 + "us, maxRecordedQueue=" + getMaxRecordedQueueTime() / 1000 + "us, maxReplayedQueue=" + getMaxReplayedQueueTime() / 1000 + "us)"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+		}
+	}
+
+	private final JobTrace.Trace trace;
+	private final double speed;
+
+	/**
+	 * Creates a replay of the given trace. All the times of the trace are
+	 * divided by the given speed, so a speed of 2 replays the trace twice as
+	 * fast as it was recorded.
+	 */
+	public JobTraceReplay(JobTrace.Trace trace, double speed) {
+		Assert.isLegal(speed > 0, "Replay speed must be positive"); //$NON-NLS-1$
+		this.trace = trace;
+		this.speed = speed;
+	}
+
+	private long scale(long nanos) {
+		return (long) (nanos / speed);
+	}
+
+	private static void spend(long nanos) {
+		long end = System.nanoTime() + nanos;
+		for (long remaining = nanos; remaining > 0; remaining = end - System.nanoTime())
+			LockSupport.parkNanos(remaining);
+	}
+
+	/**
+	 * Replays the trace and waits until all replayed runs are done, or until
+	 * the given timeout in milliseconds has elapsed.
+	 *
+	 * @return the queue times of the recorded and the replayed runs
+	 * @throws InterruptedException if the replay is interrupted
+	 * @throws TimeoutException if the replayed runs are not done in time
+	 */
+	public Result replay(long timeout) throws InterruptedException, TimeoutException {
+		final List<JobTrace.Run> runs = new ArrayList<>();
+		for (JobTrace.Run run : trace.getRuns()) {
+			if (run.isStarted())
+				runs.add(run);
+		}
+		Map<Integer, ISchedulingRule> rules = new HashMap<>();
+		Map<Integer, JobGroup> groups = new HashMap<>();
+		for (JobTrace.Run run : runs) {
+			Integer rule = Integer.valueOf(run.getRule());
+			if (run.getRule() >= 0 && !rules.containsKey(rule))
+				rules.put(rule, new ReplayRule(trace.getRuleDescription(run.getRule())));
+			Integer group = Integer.valueOf(run.getGroup());
+			JobTrace.Group recorded = trace.getGroup(run.getGroup());
+			if (recorded != null && !groups.containsKey(group)) {
+				JobGroup jobGroup = new JobGroup(recorded.getName(), recorded.getMaxThreads(), 0);
+				jobGroup.setWeight(recorded.getWeight());
+				groups.put(group, jobGroup);
+			}
+		}
+		final long[] recorded = new long[runs.size()];
+		final long[] replayed = new long[runs.size()];
+		final CountDownLatch done = new CountDownLatch(runs.size());
+		ExecutorService threads = Executors.newCachedThreadPool();
+		IJobManager manager = Job.getJobManager();
+		try {
+			long base = System.nanoTime();
+			for (int i = 0; i < runs.size(); i++) {
+				final JobTrace.Run run = runs.get(i);
+				final int index = i;
+				recorded[i] = run.getQueueTime();
+				final long runTime = scale(run.getRunTime());
+				final ISchedulingRule rule = rules.get(Integer.valueOf(run.getRule()));
+				long wait = base + scale(run.getScheduleTime()) - System.nanoTime();
+				if (wait > 0)
+					TimeUnit.NANOSECONDS.sleep(wait);
+				final long delay = scale(run.getDelay() * 1000000) / 1000000;
+				final long ready = System.nanoTime() + delay * 1000000;
+				if (run.isImplicit()) {
+					threads.execute(() -> {
+						try {
+							spend(delay * 1000000);
+							manager.beginRule(rule, null);
+							try {
+								replayed[index] = Math.max(0, System.nanoTime() - ready);
+								spend(runTime);
+							} finally {
+								manager.endRule(rule);
+							}
+						} finally {
+							done.countDown();
+						}
+					});
+					continue;
+				}
+				Job job = new Job(run.getName()) {
+					@Override
+					protected IStatus run(IProgressMonitor monitor) {
+						replayed[index] = Math.max(0, System.nanoTime() - ready);
+						spend(runTime);
+						done.countDown();
+						return Status.OK_STATUS;
+					}
+				};
+				job.setPriority(run.getPriority());
+				job.setSystem(run.isSystem());
+				job.setUser(run.isUser());
+				job.setRule(rule);
+				job.setJobGroup(groups.get(Integer.valueOf(run.getGroup())));
+				job.schedule(delay);
+			}
+			if (!done.await(timeout, TimeUnit.MILLISECONDS))
+				throw new TimeoutException("Replayed jobs are not done after " + timeout + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			threads.shutdown();
+		}
+		return new Result(recorded, replayed);
+	}
+
+	/**
+	 * Replays the given trace file and prints the result.
+	 * Arguments: trace file, and optionally the replay speed.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: JobTraceReplay <trace file> [speed]"); //$NON-NLS-1$
+			return;
+		}
+		JobTrace.Trace trace;
+		try (InputStream input = new FileInputStream(args[0])) {
+			trace = JobTrace.read(input);
+		}
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		System.out.println(new JobTraceReplay(trace, speed).replay(Long.MAX_VALUE / 1000000));
+		System.exit(0);
+	}
+}
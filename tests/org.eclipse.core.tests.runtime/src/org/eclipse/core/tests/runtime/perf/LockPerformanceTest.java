@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.runtime.jobs.*;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.runtime.RuntimeTest;
+import org.eclipse.core.tests.runtime.jobs.HierarchicalPathRule;
+import org.eclipse.core.tests.runtime.jobs.PathRule;
+
+/**
+ * Performance tests for scheduling rules and locks. Every acquire and release
+ * of a rule or lock updates the deadlock detection graph, so these tests also
+ * measure the cost of keeping that graph up to date. The contention tests run
+ * the same total number of acquires spread over a growing number of threads.
+ */
+public class LockPerformanceTest extends RuntimeTest {
+	/**
+	 * The total number of acquires of a rule or lock in a single measurement.
+	 */
+	private static final int ACQUIRES = 20000;
+
+	public static Test suite() {
+		return new TestSuite(LockPerformanceTest.class);
+	}
+
+	public LockPerformanceTest() {
+		super();
+	}
+
+	public LockPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * Runs the given task in the given number of threads at once, and waits
+	 * for all of them to finish.
+	 */
+	private void runThreads(int threads, final Runnable task) {
+		final CountDownLatch finished = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					task.run();
+				} finally {
+					finished.countDown();
+				}
+			}, "LockPerformanceTest"); //$NON-NLS-1$
+			thread.start();
+		}
+		try {
+			assertTrue("Timeout waiting for threads", finished.await(60, TimeUnit.SECONDS)); //$NON-NLS-1$
+		} catch (InterruptedException e) {
+			fail("Interrupted", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Begins and ends the same rule ACQUIRES times in total, from the given
+	 * number of threads at once.
+	 */
+	private void ruleContention(final int threads) {
+		final ISchedulingRule rule = new PathRule("/project"); //$NON-NLS-1$
+		final IJobManager manager = Job.getJobManager();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				runThreads(threads, () -> {
+					for (int i = 0; i < ACQUIRES / threads; i++) {
+						manager.beginRule(rule, null);
+						manager.endRule(rule);
+					}
+				});
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Acquires and releases the same lock ACQUIRES times in total, from the
+	 * given number of threads at once.
+	 */
+	private void lockContention(final int threads) {
+		final ILock lock = Job.getJobManager().newLock();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				runThreads(threads, () -> {
+					for (int i = 0; i < ACQUIRES / threads; i++) {
+						lock.acquire();
+						lock.release();
+					}
+				});
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Begins a rule nested in the rule of the enclosing beginRule, one level
+	 * deeper each time, then ends them all. Nested rules must be checked against
+	 * all the rules the thread already owns.
+	 */
+	public void testNestedRules() {
+		final int DEPTH = 20;
+		final ISchedulingRule[] rules = new ISchedulingRule[DEPTH];
+		String path = ""; //$NON-NLS-1$
+		for (int i = 0; i < DEPTH; i++)
+			rules[i] = new PathRule(path += "/" + i); //$NON-NLS-1$
+		final IJobManager manager = Job.getJobManager();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				for (int i = 0; i < ACQUIRES / DEPTH; i++) {
+					for (int j = 0; j < DEPTH; j++)
+						manager.beginRule(rules[j], null);
+					for (int j = DEPTH - 1; j >= 0; j--)
+						manager.endRule(rules[j]);
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Acquires many distinct locks in a nested fashion, then releases them all,
+	 * from several threads at once. Every acquire and release adds or removes an
+	 * edge of the deadlock detection graph, which grows with the number of locks.
+	 */
+	public void testNestedLocks() {
+		final int LOCKS = 50;
+		final int THREADS = 4;
+		final ILock[] locks = new ILock[LOCKS * THREADS];
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = Job.getJobManager().newLock();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				final int[] next = new int[] {0};
+				runThreads(THREADS, () -> {
+					int first;
+					synchronized (next) {
+						first = next[0];
+						next[0] += LOCKS;
+					}
+					for (int i = 0; i < ACQUIRES / LOCKS / THREADS; i++) {
+						for (int j = first; j < first + LOCKS; j++)
+							locks[j].acquire();
+						for (int j = first + LOCKS - 1; j >= first; j--)
+							locks[j].release();
+					}
+				});
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Begins nested rules of its own from each of many threads at once, while
+	 * the threads also share a lock. The deadlock detection graph then has a
+	 * row for each thread and a column for each rule, but few of its entries
+	 * are in use.
+	 */
+	public void testManyThreadsAndRules() {
+		final int DEPTH = 10;
+		final int THREADS = 32;
+		final ISchedulingRule[][] rules = new ISchedulingRule[THREADS][DEPTH];
+		for (int i = 0; i < THREADS; i++) {
+			String path = "/project" + i; //$NON-NLS-1$
+			for (int j = 0; j < DEPTH; j++)
+				rules[i][j] = new PathRule(path += "/" + j); //$NON-NLS-1$
+		}
+		final IJobManager manager = Job.getJobManager();
+		final ILock lock = manager.newLock();
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				final int[] next = new int[] {0};
+				runThreads(THREADS, () -> {
+					ISchedulingRule[] own;
+					synchronized (next) {
+						own = rules[next[0]++];
+					}
+					for (int i = 0; i < ACQUIRES / DEPTH / THREADS; i++) {
+						for (int j = 0; j < DEPTH; j++)
+							manager.beginRule(own[j], null);
+						lock.acquire();
+						lock.release();
+						for (int j = DEPTH - 1; j >= 0; j--)
+							manager.endRule(own[j]);
+					}
+				});
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Checks a multi rule of many children for conflicts with rules that conflict
+	 * with none, one or all of its children.
+	 */
+	public void testMultiRuleConflicts() {
+		final int CHILDREN = 200;
+		ISchedulingRule[] children = new ISchedulingRule[CHILDREN];
+		for (int i = 0; i < CHILDREN; i++)
+			children[i] = new HierarchicalPathRule("/project" + i + "/folder"); //$NON-NLS-1$ //$NON-NLS-2$
+		final ISchedulingRule multi = MultiRule.combine(children);
+		final ISchedulingRule[] others = new ISchedulingRule[] {new HierarchicalPathRule("/other"), new HierarchicalPathRule("/project" + (CHILDREN - 1)), new HierarchicalPathRule("/")}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final ISchedulingRule otherMulti = MultiRule.combine(others);
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				for (int i = 0; i < ACQUIRES; i++) {
+					for (int j = 0; j < others.length; j++)
+						multi.isConflicting(others[j]);
+					multi.isConflicting(otherMulti);
+					multi.contains(others[i % others.length]);
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	/**
+	 * Combines thousands of file rules, and checks the result for conflicts with
+	 * another large multi rule and with single rules, like a workspace operation
+	 * on many files that is blocked by another one.
+	 */
+	public void testHierarchicalMultiRules() {
+		final int FILES = 5000;
+		final ISchedulingRule[] files = new ISchedulingRule[FILES];
+		final ISchedulingRule[] otherFiles = new ISchedulingRule[FILES];
+		for (int i = 0; i < FILES; i++) {
+			files[i] = new HierarchicalPathRule("/project/folder" + i % 50 + "/file" + i); //$NON-NLS-1$ //$NON-NLS-2$
+			otherFiles[i] = new HierarchicalPathRule("/other/folder" + i % 50 + "/file" + i); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		final ISchedulingRule folder = new HierarchicalPathRule("/project/folder7"); //$NON-NLS-1$
+		new PerformanceTestRunner() {
+			@Override
+			protected void test() {
+				ISchedulingRule multi = MultiRule.combine(files);
+				ISchedulingRule otherMulti = MultiRule.combine(otherFiles);
+				for (int i = 0; i < 100; i++) {
+					multi.isConflicting(otherMulti);
+					multi.contains(otherMulti);
+					multi.isConflicting(folder);
+					multi.contains(files[i]);
+				}
+			}
+		}.run(this, 10, 1);
+	}
+
+	public void testRuleOneThread() {
+		ruleContention(1);
+	}
+
+	public void testRuleContentionTwoThreads() {
+		ruleContention(2);
+	}
+
+	public void testRuleContentionFourThreads() {
+		ruleContention(4);
+	}
+
+	public void testRuleContentionEightThreads() {
+		ruleContention(8);
+	}
+
+	public void testLockOneThread() {
+		lockContention(1);
+	}
+
+	public void testLockContentionTwoThreads() {
+		lockContention(2);
+	}
+
+	public void testLockContentionFourThreads() {
+		lockContention(4);
+	}
+
+	public void testLockContentionEightThreads() {
+		lockContention(8);
+	}
+}